@@ -0,0 +1,263 @@
+package fun.timu.shop.common.components;
+
+import com.alibaba.fastjson2.JSON;
+import com.rabbitmq.client.Channel;
+import fun.timu.shop.common.config.BatchConsumerConfig;
+import fun.timu.shop.common.util.RabbitMQUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 批量消息消费模板
+ * <p>
+ * 1. 一批消息处理后只发送一次 basicAck(multiple=true)；默认逐条调用 handle，子类可重写 handleBatch 整批处理
+ * 2. 处理返回false或抛出异常时，带上重试次数重新投递到延迟队列，等下一个周期再处理，不在原队列中无限requeue
+ * 3. 超过最大重试次数或消息体无法解析时转入停放队列，等待人工排查
+ * 4. 重新投递失败（Broker异常）时才对单条消息 basicNack 并 requeue
+ * <p>
+ * 子类只需提供队列路由、处理逻辑和带 @RabbitListener 的监听方法，最大重试次数取自 {@link BatchConsumerConfig}
+ *
+ * @param <T> 消息体类型
+ * @author zhengke
+ */
+@Slf4j
+public abstract class BatchMessageConsumer<T> {
+
+    /**
+     * 重试次数消息头
+     */
+    public static final String RETRY_COUNT_HEADER = "x-retry-count";
+
+    private final Class<T> messageType;
+
+    private final RabbitTemplate rabbitTemplate;
+
+    private final MQConsumerMetrics metrics;
+
+    private final BatchConsumerConfig consumerConfig;
+
+    private final Route route;
+
+    protected BatchMessageConsumer(Class<T> messageType, RabbitTemplate rabbitTemplate, MQConsumerMetrics metrics,
+                                   BatchConsumerConfig consumerConfig, Route route) {
+        this.messageType = messageType;
+        this.rabbitTemplate = rabbitTemplate;
+        this.metrics = metrics;
+        this.consumerConfig = consumerConfig;
+        this.route = route;
+    }
+
+    /**
+     * 监听队列及其重试、停放路由
+     *
+     * @param queue             监听的队列名称，用于日志和指标
+     * @param exchange          重试与停放消息使用的交换机
+     * @param retryRoutingKey   重试时投递的延迟队列路由key
+     * @param parkingRoutingKey 停放队列路由key
+     * @param retryDelay        重试间隔（毫秒）
+     */
+    public record Route(String queue, String exchange, String retryRoutingKey, String parkingRoutingKey, long retryDelay) {
+    }
+
+    /**
+     * 处理单条消息
+     *
+     * @return true 处理完成可以确认；false 暂时无法处理，需要稍后重试
+     */
+    protected abstract boolean handle(T message);
+
+    /**
+     * 处理一批消息，默认逐条调用 handle
+     * 子类可重写为一次处理整批（例如合并为批量SQL），抛出异常时整批稍后重试
+     *
+     * @param messages 解析成功的消息，顺序与拉取顺序一致
+     * @return 与入参一一对应的处理结果，含义同 handle
+     */
+    protected List<Boolean> handleBatch(List<T> messages) {
+        List<Boolean> results = new ArrayList<>(messages.size());
+        for (T message : messages) {
+            boolean success;
+            try {
+                success = handle(message);
+            } catch (Exception e) {
+                log.error("消息处理异常，queue={}, message={}", route.queue(), message, e);
+                success = false;
+            }
+            results.add(success);
+        }
+        return results;
+    }
+
+    /**
+     * 消费一批消息，由子类的 @RabbitListener 方法调用
+     *
+     * @param messages 同一信道上拉取到的一批消息
+     * @param channel  信道
+     */
+    protected void consume(List<Message> messages, Channel channel) throws IOException {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        String queue = route.queue();
+        metrics.recordBatchSize(queue, messages.size());
+
+        long lastAckTag = -1;
+        List<Long> requeueTags = new ArrayList<>();
+        List<Message> parsedMessages = new ArrayList<>(messages.size());
+        List<T> bodies = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            recordLag(queue, message.getMessageProperties());
+            T body = parse(queue, message);
+            if (body != null) {
+                parsedMessages.add(message);
+                bodies.add(body);
+            } else if (park(queue, message)) {
+                lastAckTag = Math.max(lastAckTag, message.getMessageProperties().getDeliveryTag());
+            } else {
+                requeueTags.add(message.getMessageProperties().getDeliveryTag());
+            }
+        }
+
+        List<Boolean> results = handleAll(queue, bodies);
+        for (int i = 0; i < parsedMessages.size(); i++) {
+            Message message = parsedMessages.get(i);
+            long deliveryTag = message.getMessageProperties().getDeliveryTag();
+            if (settle(queue, message, bodies.get(i), results.get(i))) {
+                lastAckTag = Math.max(lastAckTag, deliveryTag);
+            } else {
+                requeueTags.add(deliveryTag);
+            }
+        }
+
+        // 先单独拒绝需要requeue的消息，再用一次批量确认覆盖其余消息
+        for (Long tag : requeueTags) {
+            channel.basicNack(tag, false, true);
+        }
+        if (lastAckTag >= 0) {
+            channel.basicAck(lastAckTag, true);
+        }
+        log.debug("批量消费完成，queue={}, size={}, requeue={}", queue, messages.size(), requeueTags.size());
+    }
+
+    /**
+     * 解析消息体，无法解析时返回null
+     */
+    private T parse(String queue, Message message) {
+        try {
+            return JSON.parseObject(message.getBody(), messageType);
+        } catch (Exception e) {
+            log.error("消息体解析失败，转入停放队列，queue={}, messageId={}", queue,
+                    message.getMessageProperties().getMessageId(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 处理一批消息，处理耗时平均到每条消息记录
+     */
+    private List<Boolean> handleAll(String queue, List<T> bodies) {
+        if (bodies.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        long start = System.nanoTime();
+        List<Boolean> results;
+        try {
+            results = handleBatch(bodies);
+        } catch (Exception e) {
+            log.error("批量消息处理异常，整批稍后重试，queue={}, size={}", queue, bodies.size(), e);
+            results = null;
+        }
+        long elapsed = (System.nanoTime() - start) / bodies.size();
+        for (int i = 0; i < bodies.size(); i++) {
+            metrics.recordHandleTime(queue, elapsed);
+        }
+
+        if (results == null || results.size() != bodies.size()) {
+            return Collections.nCopies(bodies.size(), Boolean.FALSE);
+        }
+        return results;
+    }
+
+    /**
+     * 根据处理结果确认、转投重试或停放单条消息
+     *
+     * @return true 消息可以确认（已处理、已转投重试或停放）；false 需要requeue
+     */
+    private boolean settle(String queue, Message message, T body, Boolean success) {
+        if (Boolean.TRUE.equals(success)) {
+            metrics.recordResult(queue, MQConsumerMetrics.RESULT_SUCCESS);
+            return true;
+        }
+
+        MessageProperties properties = message.getMessageProperties();
+        int retryCount = getRetryCount(properties);
+        if (retryCount >= consumerConfig.getMaxRetryTimes()) {
+            log.warn("消息重试次数已达上限，转入停放队列，queue={}, retryCount={}, message={}", queue, retryCount, body);
+            return park(queue, message);
+        }
+        return retry(queue, message, retryCount + 1);
+    }
+
+    private boolean retry(String queue, Message message, int retryCount) {
+        MessageProperties properties = message.getMessageProperties();
+        long delay = route.retryDelay();
+        properties.setHeader(RETRY_COUNT_HEADER, retryCount);
+        properties.setHeader(RabbitMQUtil.DUE_TIME_HEADER, System.currentTimeMillis() + delay);
+        properties.setExpiration(String.valueOf(delay));
+        try {
+            rabbitTemplate.send(route.exchange(), route.retryRoutingKey(), message);
+            metrics.recordResult(queue, MQConsumerMetrics.RESULT_RETRY);
+            log.info("消息稍后重试，queue={}, retryCount={}, delay={}ms", queue, retryCount, delay);
+            return true;
+        } catch (Exception e) {
+            log.error("消息重新投递失败，将requeue，queue={}", queue, e);
+            metrics.recordResult(queue, MQConsumerMetrics.RESULT_REQUEUE);
+            return false;
+        }
+    }
+
+    private boolean park(String queue, Message message) {
+        message.getMessageProperties().setExpiration(null);
+        try {
+            rabbitTemplate.send(route.exchange(), route.parkingRoutingKey(), message);
+            metrics.recordResult(queue, MQConsumerMetrics.RESULT_PARKED);
+            return true;
+        } catch (Exception e) {
+            log.error("消息转入停放队列失败，将requeue，queue={}", queue, e);
+            metrics.recordResult(queue, MQConsumerMetrics.RESULT_REQUEUE);
+            return false;
+        }
+    }
+
+    private int getRetryCount(MessageProperties properties) {
+        Object value = properties.getHeader(RETRY_COUNT_HEADER);
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    /**
+     * 延迟消息以到期时间为基准，普通消息以发送时间为基准
+     */
+    private void recordLag(String queue, MessageProperties properties) {
+        Object dueTime = properties.getHeader(RabbitMQUtil.DUE_TIME_HEADER);
+        long base;
+        if (dueTime instanceof Number) {
+            base = ((Number) dueTime).longValue();
+        } else {
+            Date timestamp = properties.getTimestamp();
+            if (timestamp == null) {
+                return;
+            }
+            base = timestamp.getTime();
+        }
+        metrics.recordLag(queue, System.currentTimeMillis() - base);
+    }
+}
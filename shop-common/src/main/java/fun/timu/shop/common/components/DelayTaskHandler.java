@@ -0,0 +1,23 @@
+package fun.timu.shop.common.components;
+
+/**
+ * 延迟任务处理器
+ * 注册为Spring Bean后，DelayTaskScheduler 会在本实例上调度对应主题的定时器
+ *
+ * @author zhengke
+ */
+public interface DelayTaskHandler {
+
+    /**
+     * 处理的任务主题
+     */
+    String topic();
+
+    /**
+     * 定时器到期时调用
+     *
+     * @param taskId 任务ID，如订单号
+     * @return true 处理完成；false 处理失败，租约到期后重新触发
+     */
+    boolean handle(String taskId);
+}
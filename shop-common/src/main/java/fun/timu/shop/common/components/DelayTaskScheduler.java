@@ -0,0 +1,344 @@
+package fun.timu.shop.common.components;
+
+import fun.timu.shop.common.config.DelayTaskProperties;
+import fun.timu.shop.common.util.HierarchicalTimingWheel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 延迟任务调度器
+ * <p>
+ * 1. 定时器以 (主题, 任务ID) 为成员、到期时间为分数写入Redis有序集合，同一任务ID只保留一个定时器，支持百万级待触发任务
+ * 2. 本实例注册了处理器的主题，每个tick把未来 lookaheadMs 内到期的任务加载到本地分层时间轮，按秒精确触发，
+ * 不同延迟的任务互不阻塞
+ * 3. 触发时用Lua脚本比对分数并把分数改为租约到期时间完成认领，多实例下只有一个实例执行；处理成功后删除，
+ * 失败或实例宕机时租约到期后重新触发
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+public class DelayTaskScheduler implements SmartLifecycle {
+
+    /**
+     * 认领任务：分数与加载时一致才把分数改为租约到期时间
+     */
+    private static final DefaultRedisScript<Long> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local score = redis.call('ZSCORE', KEYS[1], ARGV[1]) " +
+                    "if score and tonumber(score) == tonumber(ARGV[2]) then " +
+                    "  redis.call('ZADD', KEYS[1], ARGV[3], ARGV[1]) " +
+                    "  return 1 " +
+                    "end " +
+                    "return 0",
+            Long.class);
+
+    /**
+     * 完成任务：分数仍为本次租约时才删除，避免误删期间被重新调度的定时器
+     */
+    private static final DefaultRedisScript<Long> COMPLETE_SCRIPT = new DefaultRedisScript<>(
+            "local score = redis.call('ZSCORE', KEYS[1], ARGV[1]) " +
+                    "if score and tonumber(score) == tonumber(ARGV[2]) then " +
+                    "  return redis.call('ZREM', KEYS[1], ARGV[1]) " +
+                    "end " +
+                    "return 0",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final DelayTaskProperties properties;
+
+    private final ObjectProvider<DelayTaskHandler> handlerProvider;
+
+    /**
+     * 本实例注册的处理器，启动时收集，避免处理器依赖调度器时产生循环依赖
+     */
+    private Map<String, DelayTaskHandler> handlers = Collections.emptyMap();
+
+    /**
+     * 已加载到本地时间轮或正在执行的任务，value为加载时的分数，用于去重
+     */
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 各主题已加载到的分数位置
+     */
+    private final Map<String, Long> loadedUpTo = new ConcurrentHashMap<>();
+
+    private HierarchicalTimingWheel<DelayTask> timingWheel;
+
+    private ScheduledExecutorService ticker;
+
+    private ExecutorService workers;
+
+    private long lastSweepTime;
+
+    private volatile boolean running;
+
+    public DelayTaskScheduler(RedisConnectionFactory connectionFactory, DelayTaskProperties properties,
+                              ObjectProvider<DelayTaskHandler> handlerProvider) {
+        // 调度在独立线程执行，不参与业务事务，使用不开启事务支持的模板
+        StringRedisTemplate template = new StringRedisTemplate(connectionFactory);
+        template.afterPropertiesSet();
+        this.redisTemplate = template;
+        this.properties = properties;
+        this.handlerProvider = handlerProvider;
+    }
+
+    /**
+     * 注册（或覆盖）定时器
+     *
+     * @param topic   任务主题
+     * @param taskId  任务ID，同一主题下唯一
+     * @param delayMs 延迟时间（毫秒）
+     */
+    public void schedule(String topic, String taskId, long delayMs) {
+        long dueTime = System.currentTimeMillis() + delayMs;
+        redisTemplate.opsForZSet().add(buildKey(topic), taskId, dueTime);
+
+        // 到期时间已落在本实例加载窗口内时直接放入时间轮，否则等待下一次加载
+        Long loaded = loadedUpTo.get(topic);
+        if (running && handlers.containsKey(topic) && loaded != null && dueTime <= loaded) {
+            enqueue(new DelayTask(topic, taskId, dueTime));
+        }
+        log.debug("注册延迟任务: topic={}, taskId={}, delay={}ms", topic, taskId, delayMs);
+    }
+
+    /**
+     * 取消定时器
+     */
+    public boolean cancel(String topic, String taskId) {
+        Long removed = redisTemplate.opsForZSet().remove(buildKey(topic), taskId);
+        return removed != null && removed > 0;
+    }
+
+    /**
+     * 查询主题下待触发的定时器数量
+     */
+    public long pendingCount(String topic) {
+        Long count = redisTemplate.opsForZSet().zCard(buildKey(topic));
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    public void start() {
+        handlers = handlerProvider.orderedStream()
+                .collect(Collectors.toMap(DelayTaskHandler::topic, Function.identity()));
+        if (handlers.isEmpty()) {
+            log.info("未注册延迟任务处理器，本实例只注册定时器不触发");
+            return;
+        }
+        long now = System.currentTimeMillis();
+        timingWheel = new HierarchicalTimingWheel<>(properties.getTickMs(), properties.getWheelSize(), now);
+        lastSweepTime = now;
+
+        AtomicInteger workerIndex = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(properties.getWorkerThreads(), r -> {
+            Thread thread = new Thread(r, "delay-task-worker-" + workerIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "delay-task-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        ticker.scheduleAtFixedRate(this::tick, 0, properties.getTickMs(), TimeUnit.MILLISECONDS);
+        log.info("延迟任务调度器启动: topics={}, tickMs={}, lookaheadMs={}",
+                handlers.keySet(), properties.getTickMs(), properties.getLookaheadMs());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (workers != null) {
+            workers.shutdown();
+            try {
+                if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                    workers.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                workers.shutdownNow();
+            }
+        }
+        pending.clear();
+        loadedUpTo.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            for (String topic : handlers.keySet()) {
+                load(topic, now);
+            }
+            if (now - lastSweepTime >= properties.getSweepIntervalMs()) {
+                lastSweepTime = now;
+                for (String topic : handlers.keySet()) {
+                    sweep(topic, now);
+                }
+            }
+            for (DelayTask task : timingWheel.advance(now)) {
+                dispatch(task);
+            }
+        } catch (Exception e) {
+            // 异常不能抛出，否则定时线程会停止调度
+            log.error("延迟任务调度异常", e);
+        }
+    }
+
+    /**
+     * 从上次加载位置开始，把加载窗口内到期的任务放入时间轮
+     */
+    private void load(String topic, long now) {
+        long upper = now + properties.getLookaheadMs();
+        long lower = loadedUpTo.getOrDefault(topic, 0L);
+        Set<ZSetOperations.TypedTuple<String>> tuples = redisTemplate.opsForZSet()
+                .rangeByScoreWithScores(buildKey(topic), lower, upper, 0, properties.getLoadBatchSize());
+        if (tuples == null || tuples.isEmpty()) {
+            loadedUpTo.put(topic, upper);
+            return;
+        }
+
+        long lastScore = lower;
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            if (tuple.getValue() == null || tuple.getScore() == null) {
+                continue;
+            }
+            long dueTime = tuple.getScore().longValue();
+            lastScore = Math.max(lastScore, dueTime);
+            enqueue(new DelayTask(topic, tuple.getValue(), dueTime));
+        }
+
+        if (tuples.size() < properties.getLoadBatchSize()) {
+            loadedUpTo.put(topic, upper);
+        } else {
+            // 本批已满，下次从最后一个分数继续；同一分数任务超过一批时跳过剩余部分，由过期扫描兜底
+            loadedUpTo.put(topic, lastScore == lower ? lastScore + 1 : lastScore);
+        }
+    }
+
+    /**
+     * 兜底扫描已经过期仍留在Redis中的任务，包括加载窗口之前注册的、处理失败租约到期的和宕机实例遗留的
+     */
+    private void sweep(String topic, long now) {
+        Set<ZSetOperations.TypedTuple<String>> tuples = redisTemplate.opsForZSet()
+                .rangeByScoreWithScores(buildKey(topic), 0, now - properties.getTickMs(), 0, properties.getLoadBatchSize());
+        if (tuples == null || tuples.isEmpty()) {
+            return;
+        }
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            if (tuple.getValue() != null && tuple.getScore() != null) {
+                enqueue(new DelayTask(topic, tuple.getValue(), tuple.getScore().longValue()));
+            }
+        }
+    }
+
+    /**
+     * 放入时间轮，已到期的直接执行
+     */
+    private void enqueue(DelayTask task) {
+        Long previous = pending.put(task.pendingKey(), task.dueTime);
+        if (previous != null && previous == task.dueTime) {
+            return;
+        }
+        if (!timingWheel.add(task.dueTime, task)) {
+            dispatch(task);
+        }
+    }
+
+    private void dispatch(DelayTask task) {
+        // 时间轮中的旧定时器在任务被重新调度后失效，只执行最新的一次
+        if (!Long.valueOf(task.dueTime).equals(pending.get(task.pendingKey()))) {
+            return;
+        }
+        try {
+            workers.execute(() -> execute(task));
+        } catch (Exception e) {
+            pending.remove(task.pendingKey(), task.dueTime);
+            log.error("延迟任务提交失败，等待兜底扫描: topic={}, taskId={}", task.topic, task.taskId, e);
+        }
+    }
+
+    private void execute(DelayTask task) {
+        String key = buildKey(task.topic);
+        try {
+            long leaseUntil = System.currentTimeMillis() + properties.getLeaseMs();
+            Long claimed = redisTemplate.execute(CLAIM_SCRIPT, Collections.singletonList(key),
+                    task.taskId, String.valueOf(task.dueTime), String.valueOf(leaseUntil));
+            if (claimed == null || claimed != 1L) {
+                // 已被其他实例认领、已取消或已重新调度
+                return;
+            }
+
+            boolean success;
+            try {
+                success = handlers.get(task.topic).handle(task.taskId);
+            } catch (Exception e) {
+                log.error("延迟任务处理异常: topic={}, taskId={}", task.topic, task.taskId, e);
+                success = false;
+            }
+
+            if (success) {
+                redisTemplate.execute(COMPLETE_SCRIPT, Collections.singletonList(key),
+                        task.taskId, String.valueOf(leaseUntil));
+                log.info("延迟任务处理完成: topic={}, taskId={}, delay={}ms",
+                        task.topic, task.taskId, System.currentTimeMillis() - task.dueTime);
+            } else {
+                log.warn("延迟任务处理失败，租约到期后重试: topic={}, taskId={}, leaseUntil={}",
+                        task.topic, task.taskId, leaseUntil);
+                enqueue(new DelayTask(task.topic, task.taskId, leaseUntil));
+            }
+        } catch (Exception e) {
+            log.error("延迟任务执行异常，等待兜底扫描: topic={}, taskId={}", task.topic, task.taskId, e);
+        } finally {
+            pending.remove(task.pendingKey(), task.dueTime);
+        }
+    }
+
+    private String buildKey(String topic) {
+        return properties.getKeyPrefix() + topic;
+    }
+
+    private static final class DelayTask {
+        private final String topic;
+        private final String taskId;
+        private final long dueTime;
+
+        private DelayTask(String topic, String taskId, long dueTime) {
+            this.topic = topic;
+            this.taskId = taskId;
+            this.dueTime = dueTime;
+        }
+
+        private String pendingKey() {
+            return topic + ":" + taskId;
+        }
+    }
+}
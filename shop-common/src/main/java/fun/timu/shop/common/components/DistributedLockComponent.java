@@ -1,23 +1,32 @@
 package fun.timu.shop.common.components;
 
 import fun.timu.shop.common.util.DistributedLock;
+import fun.timu.shop.common.util.LockReleaseSubscriber;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 分布式锁组件
+ * 创建的锁共享一个释放通知订阅连接和一个看门狗线程，均在首次使用时创建
  *
  * @author zhengke
  */
 @Slf4j
 @Component
-public class DistributedLockComponent {
+public class DistributedLockComponent implements DisposableBean {
 
     private final StringRedisTemplate redisTemplate;
 
+    private volatile LockReleaseSubscriber releaseSubscriber;
+
+    private volatile ScheduledExecutorService watchdog;
+
     /**
      * 默认锁过期时间（秒）
      */
@@ -56,7 +65,29 @@ public class DistributedLockComponent {
      * @return 分布式锁实例
      */
     public DistributedLock createLock(String lockKey, long expireTime, TimeUnit timeUnit) {
-        return new DistributedLock(redisTemplate, lockKey, expireTime, timeUnit);
+        return new DistributedLock(redisTemplate, lockKey, expireTime, timeUnit, releaseSubscriber(), null);
+    }
+
+    /**
+     * 创建带看门狗的分布式锁，持有期间自动续期，用于耗时不确定的临界区
+     *
+     * @param lockKey 锁的key
+     * @return 分布式锁实例
+     */
+    public DistributedLock createWatchdogLock(String lockKey) {
+        return createWatchdogLock(lockKey, DEFAULT_EXPIRE_TIME, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 创建带看门狗的分布式锁
+     *
+     * @param lockKey    锁的key
+     * @param expireTime 每次续期的时长，实例异常退出后锁最多保留这么久
+     * @param timeUnit   时间单位
+     * @return 分布式锁实例
+     */
+    public DistributedLock createWatchdogLock(String lockKey, long expireTime, TimeUnit timeUnit) {
+        return new DistributedLock(redisTemplate, lockKey, expireTime, timeUnit, releaseSubscriber(), watchdog());
     }
 
     /**
@@ -202,4 +233,40 @@ public class DistributedLockComponent {
             return false;
         }
     }
+
+    @Override
+    public void destroy() {
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+        if (releaseSubscriber != null) {
+            releaseSubscriber.destroy();
+        }
+    }
+
+    private LockReleaseSubscriber releaseSubscriber() {
+        if (releaseSubscriber == null) {
+            synchronized (this) {
+                if (releaseSubscriber == null) {
+                    releaseSubscriber = new LockReleaseSubscriber(redisTemplate.getConnectionFactory());
+                }
+            }
+        }
+        return releaseSubscriber;
+    }
+
+    private ScheduledExecutorService watchdog() {
+        if (watchdog == null) {
+            synchronized (this) {
+                if (watchdog == null) {
+                    watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "distributed-lock-watchdog");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return watchdog;
+    }
 }
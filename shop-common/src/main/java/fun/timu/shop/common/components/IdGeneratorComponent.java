@@ -1,32 +1,146 @@
 package fun.timu.shop.common.components;
 
+import fun.timu.shop.common.enums.BizCodeEnum;
+import fun.timu.shop.common.exception.BizException;
 import fun.timu.shop.common.util.SnowflakeIdGenerator;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Component;
 
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
 
 /**
  * 分布式ID生成器组件
- * 
+ * <p>
+ * 未配置 app.snowflake.machine-id 时，从Redis租约一个机器ID：
+ * 1. 启动时用Lua脚本从随机位置开始 SET NX PX 抢占 0-1023 中空闲的机器ID，值为本实例的令牌
+ * 2. 后台按 TTL/3 续约，续约时校验令牌；本地只在租约有效期（续约时刻 + TTL*2/3）内发号
+ * 3. 续约发现令牌不匹配（租约被他人占用）或超过租约有效期仍未续约成功时，停止发号直到重新租约成功
+ * 4. 租约和续约时先把租约有效期截止时间作为预留时间戳持久化，发号时间戳不会超过已持久化的值，
+ *    宕机时不会丢失最后两次续约之间的发号时间；正常停机释放租约时改为持久化实际的最后发号时间戳
+ * 5. 租约成功后读取该机器ID持久化的时间戳，当前时钟落后于它时拒绝发号，防止重启后时钟回拨产生重复ID
+ *
  * @author zhengke
  */
 @Slf4j
 @Component
 public class IdGeneratorComponent {
-    
+
+    /**
+     * 租约key前缀，hash tag 保证Lua脚本访问的key落在同一槽位
+     */
+    private static final String LEASE_KEY_PREFIX = "snowflake:{worker}:lease:";
+
+    /**
+     * 最后发号时间戳（或发号预留时间戳）key前缀
+     */
+    private static final String TIMESTAMP_KEY_PREFIX = "snowflake:{worker}:ts:";
+
+    /**
+     * 最后发号时间戳保留时长（天）
+     */
+    private static final long TIMESTAMP_RETAIN_DAYS = 30;
+
+    /**
+     * 机器ID数量 (0-1023)
+     */
+    private static final int MACHINE_ID_COUNT = 1024;
+
+    /**
+     * 从 start 开始环形查找空闲机器ID并占用，返回机器ID，全部被占用时返回-1
+     */
+    private static final DefaultRedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "local count = tonumber(ARGV[4]) " +
+            "local start = tonumber(ARGV[3]) " +
+            "for i = 0, count - 1 do " +
+            "  local id = (start + i) % count " +
+            "  if redis.call('SET', ARGV[1] .. id, ARGV[2], 'NX', 'PX', ARGV[5]) then return id end " +
+            "end " +
+            "return -1", Long.class);
+
+    /**
+     * 令牌匹配时续约并推进发号预留时间戳，返回1；令牌不匹配返回0
+     */
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "local last = tonumber(redis.call('GET', KEYS[2]) or '0') " +
+            "if tonumber(ARGV[3]) > last then redis.call('SET', KEYS[2], ARGV[3], 'EX', ARGV[4]) " +
+            "else redis.call('EXPIRE', KEYS[2], ARGV[4]) end " +
+            "return 1", Long.class);
+
+    /**
+     * 令牌匹配时把预留时间戳改为实际的最后发号时间戳并释放租约
+     */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end " +
+            "redis.call('SET', KEYS[2], ARGV[2], 'EX', ARGV[3]) " +
+            "return redis.call('DEL', KEYS[1])", Long.class);
+
     /**
-     * 机器ID，可通过配置文件配置
+     * 机器ID，配置后直接使用，不再从Redis租约（本地调试或单实例部署）
      */
     @Value("${app.snowflake.machine-id:#{null}}")
     private Long machineId;
-    
+
+    /**
+     * 租约有效期（毫秒）
+     */
+    @Value("${app.snowflake.lease-ttl-ms:30000}")
+    private long leaseTtlMs;
+
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * 本实例的租约令牌
+     */
+    private final String token;
+
+    /**
+     * 租约续约线程
+     */
+    private ScheduledExecutorService leaseExecutor;
+
     /**
      * Snowflake ID生成器实例
      */
-    private SnowflakeIdGenerator snowflakeIdGenerator;
-    
+    private volatile SnowflakeIdGenerator snowflakeIdGenerator;
+
+    /**
+     * 当前租约的机器ID，-1表示未持有租约
+     */
+    private volatile long leasedMachineId = -1;
+
+    /**
+     * 租约有效截止时间，超过后停止发号
+     */
+    private volatile long leaseValidUntil;
+
+    /**
+     * 租约时读取的持久化时间戳，当前时钟落后于它时停止发号
+     */
+    private volatile long notBefore;
+
+    public IdGeneratorComponent(RedisConnectionFactory connectionFactory) {
+        // 不使用开启了事务支持的RedisTemplate，保证脚本立即执行并返回结果
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.redisTemplate.afterPropertiesSet();
+        this.token = getHostName() + ":" + UUID.randomUUID();
+    }
+
     /**
      * 初始化ID生成器
      */
@@ -34,38 +148,201 @@ public class IdGeneratorComponent {
     public void init() {
         if (machineId != null) {
             snowflakeIdGenerator = SnowflakeIdGenerator.getInstance(machineId);
+            leaseValidUntil = Long.MAX_VALUE;
             log.info("使用配置的机器ID初始化ID生成器: {}", machineId);
-        } else {
-            snowflakeIdGenerator = SnowflakeIdGenerator.getInstance();
-            log.info("使用默认机器ID初始化ID生成器");
+            return;
+        }
+
+        leaseExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "snowflake-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!acquireLease()) {
+            log.warn("启动时未能租约机器ID，ID生成器暂不可用，将在后台重试");
+        }
+        long period = Math.max(leaseTtlMs / 3, 1000);
+        leaseExecutor.scheduleWithFixedDelay(this::heartbeat, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止续约和发号并释放租约，释放时持久化实际的最后发号时间戳，下一个持有者无需等待预留时间
+     */
+    @PreDestroy
+    public void destroy() {
+        if (leaseExecutor == null) {
+            return;
+        }
+        leaseExecutor.shutdownNow();
+        long id = leasedMachineId;
+        if (id < 0) {
+            return;
+        }
+        loseLease();
+        try {
+            long lastTimestamp = Math.max(snowflakeIdGenerator.getLastTimestamp(), System.currentTimeMillis());
+            redisTemplate.execute(RELEASE_SCRIPT, Arrays.asList(LEASE_KEY_PREFIX + id, TIMESTAMP_KEY_PREFIX + id),
+                    token, String.valueOf(lastTimestamp), String.valueOf(TimeUnit.DAYS.toSeconds(TIMESTAMP_RETAIN_DAYS)));
+            log.info("已释放机器ID租约: {}", id);
+        } catch (Exception e) {
+            log.warn("释放机器ID租约失败，等待租约自然过期，machineId={}", id, e);
         }
     }
-    
+
     /**
      * 生成分布式ID
-     * 
+     *
      * @return 分布式ID
      */
     public Long generateId() {
-        return snowflakeIdGenerator.nextId();
+        return available().nextId();
+    }
+
+    /**
+     * 批量生成分布式ID，一次CAS预留一段连续ID
+     *
+     * @param count 数量
+     * @return 递增的分布式ID数组
+     */
+    public long[] generateIds(int count) {
+        return available().nextIds(count);
     }
-    
+
     /**
      * 生成分布式ID（String类型）
-     * 
+     *
      * @return 分布式ID字符串
      */
     public String generateIdString() {
-        return String.valueOf(snowflakeIdGenerator.nextId());
+        return String.valueOf(generateId());
     }
-    
+
     /**
      * 解析ID信息（用于调试）
-     * 
+     *
      * @param id 分布式ID
      * @return ID解析信息
      */
     public SnowflakeIdGenerator.IdInfo parseId(long id) {
         return SnowflakeIdGenerator.parseId(id);
     }
+
+    /**
+     * 校验租约和时钟，返回可用的生成器
+     */
+    private SnowflakeIdGenerator available() {
+        long now = System.currentTimeMillis();
+        SnowflakeIdGenerator generator = snowflakeIdGenerator;
+        if (generator == null || now >= leaseValidUntil) {
+            log.error("机器ID租约无效，拒绝生成ID");
+            throw new BizException(BizCodeEnum.ID_GENERATOR_UNAVAILABLE);
+        }
+        if (now < notBefore) {
+            log.error("时钟落后于最后发号时间，拒绝生成ID，落后: {}毫秒", notBefore - now);
+            throw new BizException(BizCodeEnum.ID_GENERATOR_UNAVAILABLE);
+        }
+        return generator;
+    }
+
+    /**
+     * 定时续约，租约丢失或过期时重新租约
+     */
+    private void heartbeat() {
+        try {
+            long id = leasedMachineId;
+            if (id < 0) {
+                acquireLease();
+                return;
+            }
+            long validUntil = System.currentTimeMillis() + leaseTtlMs - leaseTtlMs / 3;
+            if (renew(id, validUntil)) {
+                leaseValidUntil = validUntil;
+                return;
+            }
+            log.error("机器ID租约已被占用，停止发号并重新租约，machineId={}", id);
+            loseLease();
+            acquireLease();
+        } catch (Exception e) {
+            // Redis不可用时保留现有租约直到有效期结束，之后由available()拒绝发号
+            log.warn("机器ID租约续约失败，租约有效期至: {}", leaseValidUntil, e);
+            if (leasedMachineId >= 0 && System.currentTimeMillis() >= leaseValidUntil) {
+                log.error("机器ID租约已过期，停止发号，machineId={}", leasedMachineId);
+                loseLease();
+            }
+        }
+    }
+
+    /**
+     * 租约一个机器ID，优先沿用上一次持有的机器ID
+     *
+     * @return 是否租约成功
+     */
+    private boolean acquireLease() {
+        long start = System.currentTimeMillis();
+        SnowflakeIdGenerator previous = snowflakeIdGenerator;
+        long offset = previous != null ? previous.getMachineId() : ThreadLocalRandom.current().nextInt(MACHINE_ID_COUNT);
+        Long id = redisTemplate.execute(ACQUIRE_SCRIPT, Collections.emptyList(), LEASE_KEY_PREFIX, token,
+                String.valueOf(offset), String.valueOf(MACHINE_ID_COUNT), String.valueOf(leaseTtlMs));
+        if (id == null || id < 0) {
+            log.error("没有空闲的机器ID可以租约");
+            return false;
+        }
+
+        // 衔接该机器ID上一次持久化的时间戳：上一持有者宕机时为其发号预留时间，正常释放时为实际的最后发号时间
+        String lastValue = redisTemplate.opsForValue().get(TIMESTAMP_KEY_PREFIX + id);
+        long lastTimestamp = lastValue == null ? 0 : Long.parseLong(lastValue);
+        SnowflakeIdGenerator generator = SnowflakeIdGenerator.getInstance(id);
+        if (lastTimestamp > 0) {
+            generator.advanceTo(lastTimestamp);
+            if (lastTimestamp > start) {
+                log.error("检测到时钟回拨，当前时钟落后于该机器ID已持久化的发号时间{}毫秒，追上前拒绝发号，machineId={}",
+                        lastTimestamp - start, id);
+            }
+        }
+
+        // 开始发号前先持久化本次租约的预留时间戳
+        long validUntil = start + leaseTtlMs - leaseTtlMs / 3;
+        if (!renew(id, generator, validUntil)) {
+            log.error("租约机器ID后续约失败，租约已被占用，machineId={}", id);
+            return false;
+        }
+
+        notBefore = lastTimestamp;
+        snowflakeIdGenerator = generator;
+        leasedMachineId = id;
+        leaseValidUntil = validUntil;
+        log.info("租约机器ID成功: {}, 令牌: {}", id, token);
+        return true;
+    }
+
+    private boolean renew(long id, long validUntil) {
+        return renew(id, snowflakeIdGenerator, validUntil);
+    }
+
+    /**
+     * 续约并持久化发号预留时间戳：租约有效期截止时间，不小于已发号的最后时间戳
+     *
+     * @return false 表示令牌不匹配，租约已丢失
+     */
+    private boolean renew(long id, SnowflakeIdGenerator generator, long validUntil) {
+        long reservedTimestamp = Math.max(validUntil, generator.getLastTimestamp());
+        Long result = redisTemplate.execute(RENEW_SCRIPT,
+                Arrays.asList(LEASE_KEY_PREFIX + id, TIMESTAMP_KEY_PREFIX + id),
+                token, String.valueOf(leaseTtlMs), String.valueOf(reservedTimestamp),
+                String.valueOf(TimeUnit.DAYS.toSeconds(TIMESTAMP_RETAIN_DAYS)));
+        return result != null && result == 1;
+    }
+
+    private void loseLease() {
+        leaseValidUntil = 0;
+        leasedMachineId = -1;
+    }
+
+    private static String getHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
 }
@@ -0,0 +1,67 @@
+package fun.timu.shop.common.components;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息消费指标组件
+ * 按队列统计消费结果、处理耗时、消费延迟和批次大小，通过 /actuator/metrics 查看
+ *
+ * @author zhengke
+ */
+@Component
+@RequiredArgsConstructor
+public class MQConsumerMetrics {
+
+    public static final String RESULT_SUCCESS = "success";
+    public static final String RESULT_RETRY = "retry";
+    public static final String RESULT_PARKED = "parked";
+    public static final String RESULT_REQUEUE = "requeue";
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 记录一条消息的消费结果，按结果计数即为各队列吞吐量
+     */
+    public void recordResult(String queue, String result) {
+        meterRegistry.counter("shop.mq.consumer.messages", "queue", queue, "result", result).increment();
+    }
+
+    /**
+     * 记录单条消息的业务处理耗时，整批处理时为批次耗时平均到每条消息
+     */
+    public void recordHandleTime(String queue, long nanos) {
+        Timer.builder("shop.mq.consumer.handle")
+                .description("单条消息业务处理耗时")
+                .tag("queue", queue)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录消费延迟：消息应被处理的时间点到实际处理的时间差
+     */
+    public void recordLag(String queue, long lagMillis) {
+        Timer.builder("shop.mq.consumer.lag")
+                .description("消息到期到被消费的延迟")
+                .tag("queue", queue)
+                .register(meterRegistry)
+                .record(Math.max(lagMillis, 0), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录每次拉取到的批次大小
+     */
+    public void recordBatchSize(String queue, int size) {
+        DistributionSummary.builder("shop.mq.consumer.batch.size")
+                .description("每批消费的消息数")
+                .tag("queue", queue)
+                .register(meterRegistry)
+                .record(size);
+    }
+}
@@ -1,9 +1,12 @@
 package fun.timu.shop.common.config;
 
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.core.Exchange;
 import org.springframework.amqp.core.TopicExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.context.annotation.Bean;
@@ -83,4 +86,34 @@ public class BaseRabbitMQConfig {
     protected Binding createBinding(String queueName, String exchangeName, String routingKey) {
         return new Binding(queueName, Binding.DestinationType.QUEUE, exchangeName, routingKey, null);
     }
+
+    /**
+     * 创建批量消费的监听容器工厂
+     * 手动确认，一次拉取 batchSize 条消息交给监听方法，由监听方法统一做批量ack
+     *
+     * @param connectionFactory 连接工厂
+     * @param prefetch          每个消费者的预取数量，不小于批次大小
+     * @param concurrency       初始消费者数量
+     * @param maxConcurrency    最大消费者数量
+     * @param batchSize         每批消息数
+     * @param receiveTimeout    凑批等待时间（毫秒），超时后不足一批也会下发
+     * @return SimpleRabbitListenerContainerFactory
+     */
+    protected SimpleRabbitListenerContainerFactory createBatchListenerContainerFactory(ConnectionFactory connectionFactory,
+                                                                                      int prefetch, int concurrency,
+                                                                                      int maxConcurrency, int batchSize,
+                                                                                      long receiveTimeout) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setPrefetchCount(Math.max(prefetch, batchSize));
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(Math.max(concurrency, maxConcurrency));
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(receiveTimeout);
+        factory.setDefaultRequeueRejected(false);
+        return factory;
+    }
 }
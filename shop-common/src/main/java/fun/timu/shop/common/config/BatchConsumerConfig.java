@@ -0,0 +1,86 @@
+package fun.timu.shop.common.config;
+
+import lombok.Data;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 批量消费公共配置
+ * 各服务共用的消费者数量、批次大小和最大重试次数，并提供默认的批量消费监听容器工厂
+ *
+ * @author zhengke
+ */
+@Configuration
+@Data
+public class BatchConsumerConfig extends BaseRabbitMQConfig {
+
+    /**
+     * 消费者预取数量
+     */
+    @Value("${mqconfig.consumer_prefetch:50}")
+    private Integer consumerPrefetch;
+
+    /**
+     * 初始消费者数量
+     */
+    @Value("${mqconfig.consumer_concurrency:2}")
+    private Integer consumerConcurrency;
+
+    /**
+     * 最大消费者数量
+     */
+    @Value("${mqconfig.consumer_max_concurrency:8}")
+    private Integer consumerMaxConcurrency;
+
+    /**
+     * 每批消费的消息数
+     */
+    @Value("${mqconfig.consumer_batch_size:20}")
+    private Integer consumerBatchSize;
+
+    /**
+     * 凑批等待时间,毫秒
+     */
+    @Value("${mqconfig.consumer_receive_timeout:1000}")
+    private Long consumerReceiveTimeout;
+
+    /**
+     * 消息最大重试次数,超过后转入停放队列
+     */
+    @Value("${mqconfig.max_retry_times:5}")
+    private Integer maxRetryTimes;
+
+    /**
+     * 批量消费监听容器工厂
+     *
+     * @param connectionFactory 连接工厂
+     * @return SimpleRabbitListenerContainerFactory
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchListenerContainerFactory(ConnectionFactory connectionFactory) {
+        return createBatchListenerContainerFactory(connectionFactory, consumerBatchSize, consumerReceiveTimeout);
+    }
+
+    /**
+     * 创建批次大小和凑批等待时间不同的监听容器工厂，预取数量不小于批次大小，消费者数量沿用公共配置
+     *
+     * @param connectionFactory 连接工厂
+     * @param batchSize         每批消息数
+     * @param receiveTimeout    凑批等待时间（毫秒）
+     * @return SimpleRabbitListenerContainerFactory
+     */
+    public SimpleRabbitListenerContainerFactory createBatchListenerContainerFactory(ConnectionFactory connectionFactory,
+                                                                                   int batchSize, long receiveTimeout) {
+        return createBatchListenerContainerFactory(
+                connectionFactory,
+                consumerPrefetch,
+                consumerConcurrency,
+                consumerMaxConcurrency,
+                batchSize,
+                receiveTimeout
+        );
+    }
+}
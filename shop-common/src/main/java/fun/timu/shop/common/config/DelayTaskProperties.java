@@ -0,0 +1,57 @@
+package fun.timu.shop.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 延迟任务调度配置属性
+ * 定时器持久化在Redis有序集合中，临近到期的部分加载到本地分层时间轮精确触发
+ *
+ * @author zhengke
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "delay-task")
+public class DelayTaskProperties {
+
+    /**
+     * 有序集合Key前缀，后接任务主题
+     */
+    private String keyPrefix = "delay:task:";
+
+    /**
+     * 时间轮每格时长（毫秒），即触发精度
+     */
+    private Long tickMs = 1000L;
+
+    /**
+     * 时间轮每层格数
+     */
+    private Integer wheelSize = 60;
+
+    /**
+     * 提前加载到本地时间轮的时间窗口（毫秒）
+     */
+    private Long lookaheadMs = 60000L;
+
+    /**
+     * 每次从Redis加载的最大任务数
+     */
+    private Integer loadBatchSize = 5000;
+
+    /**
+     * 扫描已过期但未被触发任务的间隔（毫秒），用于实例宕机或处理失败后的兜底
+     */
+    private Long sweepIntervalMs = 5000L;
+
+    /**
+     * 任务被某个实例认领后的租约时长（毫秒），处理失败或实例宕机时租约到期后重新触发
+     */
+    private Long leaseMs = 60000L;
+
+    /**
+     * 执行任务的工作线程数
+     */
+    private Integer workerThreads = 4;
+}
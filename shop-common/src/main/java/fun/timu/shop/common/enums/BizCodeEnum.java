@@ -57,6 +57,12 @@ public enum BizCodeEnum {
     COUPON_GET_FAIL(270407, "优惠券领取失败"),
     COUPON_RECORD_LOCK_FAIL(270409, "优惠券锁定失败"),
 
+    /**
+     * 商品
+     */
+    PRODUCT_CURSOR_INVALID(230001, "翻页游标无效"),
+    PRODUCT_PAGE_TOO_DEEP(230002, "页码过深，请使用游标翻页"),
+
     /**
      * 订单
      */
@@ -69,11 +75,13 @@ public enum BizCodeEnum {
     ORDER_CONFIRM_NOT_EXIST(280010, "订单不存在"),
     ORDER_CONFIRM_CART_ITEM_NOT_EXIST(280011, "购物车商品项不存在"),
     ORDER_CONFIRM_SAVE_ORDER_FAIL(280012, "创建订单-保存订单失败"),
+    ORDER_CONFIRM_CART_ITEM_UNAVAILABLE(280013, "创建订单-购物车商品库存不足或已下架"),
     /**
      * 系统异常
      */
     SYSTEM_TIMEOUT_ERROR(500001, "系统繁忙，请稍后重试"),
     SYSTEM_ERROR(500002, "系统内部错误，请稍后重试"),
+    ID_GENERATOR_UNAVAILABLE(500003, "ID生成器暂不可用，请稍后重试"),
     /**
      * 文件相关
      */
@@ -9,12 +9,24 @@ public class BizException extends RuntimeException {
     private int code;
     private String msg;
 
+    /**
+     * 随错误一起返回给调用方的数据，如不可购买的商品明细
+     */
+    private Object data;
+
     public BizException(int code, String msg) {
         super(msg);
         this.code = code;
         this.msg = msg;
     }
 
+    public BizException(BizCodeEnum bizCodeEnum, String msg, Object data) {
+        super(msg);
+        this.code = bizCodeEnum.getCode();
+        this.msg = msg;
+        this.data = data;
+    }
+
     public BizException(BizCodeEnum bizCodeEnum) {
         super(bizCodeEnum.getMessage());
         this.code = bizCodeEnum.getCode();
@@ -25,7 +25,7 @@ public class CustomExceptionHandler {
     @ResponseBody
     public JsonData handleBizException(BizException e, HttpServletRequest request) {
         log.warn("[业务异常] 请求地址: {}, 异常信息: {}", request.getRequestURI(), e.getMsg());
-        return JsonData.buildCodeAndMsg(e.getCode(), e.getMsg());
+        return new JsonData(e.getCode(), e.getData(), e.getMsg());
     }
 
     /**
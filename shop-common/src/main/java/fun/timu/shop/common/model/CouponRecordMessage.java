@@ -18,7 +18,7 @@ public class CouponRecordMessage {
 
 
     /**
-     * 库存锁定任务id
+     * 优惠券锁定任务id，为空时按订单号释放整单锁定的优惠券
      */
     private Long taskId;
 
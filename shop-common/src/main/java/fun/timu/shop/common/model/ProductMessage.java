@@ -20,7 +20,7 @@ public class ProductMessage {
     private String outTradeNo;
 
     /**
-     * 商品任务ID
+     * 商品任务ID，为空时按订单号释放整单锁定的库存
      */
     private Long taskId;
 }
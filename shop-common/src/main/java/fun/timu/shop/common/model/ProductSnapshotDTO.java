@@ -0,0 +1,49 @@
+package fun.timu.shop.common.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * 商品快照
+ * 商品服务批量查询商品时返回，只包含购物车展示需要的字段，字段类型在序列化前后保持一致
+ *
+ * @author zhengke
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductSnapshotDTO {
+
+    /**
+     * 商品ID
+     */
+    private Long id;
+
+    /**
+     * 商品标题
+     */
+    private String title;
+
+    /**
+     * 封面图
+     */
+    private String coverImg;
+
+    /**
+     * 价格
+     */
+    private BigDecimal price;
+
+    /**
+     * 库存
+     */
+    private Integer stock;
+
+    /**
+     * 状态：1-上架，0-下架
+     */
+    private Integer status;
+}
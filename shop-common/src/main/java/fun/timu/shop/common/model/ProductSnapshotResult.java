@@ -0,0 +1,30 @@
+package fun.timu.shop.common.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量查询商品快照的RPC响应
+ * 结构与 JsonData 相同，调用方直接按类型反序列化 data，不再经过 Map 中转
+ *
+ * @author zhengke
+ */
+@Data
+public class ProductSnapshotResult {
+
+    /**
+     * 状态码 0 表示成功
+     */
+    private Integer code;
+
+    /**
+     * 商品快照，商品全部不存在时为空列表
+     */
+    private List<ProductSnapshotDTO> data;
+
+    /**
+     * 描述
+     */
+    private String msg;
+}
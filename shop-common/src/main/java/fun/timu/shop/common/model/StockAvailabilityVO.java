@@ -0,0 +1,41 @@
+package fun.timu.shop.common.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 单个商品的库存验证结果
+ *
+ * @author zhengke
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockAvailabilityVO {
+
+    /**
+     * 商品ID
+     */
+    private Long productId;
+
+    /**
+     * 请求数量
+     */
+    private Integer requestQuantity;
+
+    /**
+     * 可用库存，商品不存在时为0
+     */
+    private Integer availableStock;
+
+    /**
+     * 是否可以购买
+     */
+    private Boolean available;
+
+    /**
+     * 不可购买的原因，可购买时为null
+     */
+    private String reason;
+}
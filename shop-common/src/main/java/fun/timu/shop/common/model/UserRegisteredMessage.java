@@ -0,0 +1,34 @@
+package fun.timu.shop.common.model;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 用户注册事件消息，由优惠券服务消费发放新用户福利
+ *
+ * @author zhengke
+ */
+@Data
+public class UserRegisteredMessage {
+
+    /**
+     * 消息id
+     */
+    private Long messageId;
+
+    /**
+     * 用户ID
+     */
+    private Long userId;
+
+    /**
+     * 用户昵称
+     */
+    private String userName;
+
+    /**
+     * 注册时间
+     */
+    private Date registerTime;
+}
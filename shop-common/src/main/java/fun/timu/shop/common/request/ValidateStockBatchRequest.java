@@ -0,0 +1,21 @@
+package fun.timu.shop.common.request;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量验证商品库存请求类
+ *
+ * @author zhengke
+ */
+@Data
+public class ValidateStockBatchRequest {
+
+    /**
+     * 待验证的商品及数量，同一商品出现多次时数量累加
+     */
+    @JsonProperty("items")
+    private List<ValidateStockRequest> items;
+}
@@ -5,35 +5,104 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 基于Redis的分布式锁工具类
+ * <p>
+ * 1. 锁的值为 实例ID:线程ID，同一线程可重入，本地记录重入次数，最后一次释放才删除Redis中的锁
+ * 2. 释放锁时在锁的释放频道发布消息，等待线程订阅该频道，收到通知或超时后才重新加锁，不再按固定间隔轮询Redis
+ * 3. 开启看门狗时，持有期间每隔 过期时间/3 续期一次，长耗时的临界区不会因锁过期而失去互斥
  *
  * @author zhengke
  */
 @Slf4j
 public class DistributedLock {
 
+    /**
+     * 当前JVM实例的ID，与线程ID组成锁的持有者
+     */
+    private static final String INSTANCE_ID = UUID.randomUUID().toString();
+
+    /**
+     * 锁释放频道前缀
+     */
+    private static final String RELEASE_CHANNEL_PREFIX = "lock:release:";
+
+    /**
+     * 订阅模式下等待通知的最长时间（毫秒），通知丢失时以此兜底重新加锁
+     */
+    private static final long MAX_PARK_MS = 500;
+
+    /**
+     * 当前线程持有的锁：锁的key -> 持有状态
+     */
+    private static final ThreadLocal<Map<String, Hold>> HOLDS = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * Lua脚本：加锁，锁不存在或由当前线程持有时设置过期时间并返回nil，否则返回锁的剩余过期时间（毫秒）
+     */
+    private static final DefaultRedisScript<Long> LOCK_SCRIPT = new DefaultRedisScript<>(
+            "local owner = redis.call('get', KEYS[1]) " +
+                    "if owner == false then " +
+                    "    redis.call('set', KEYS[1], ARGV[1], 'px', ARGV[2]) " +
+                    "    return nil " +
+                    "end " +
+                    "if owner == ARGV[1] then " +
+                    "    redis.call('pexpire', KEYS[1], ARGV[2]) " +
+                    "    return nil " +
+                    "end " +
+                    "return redis.call('pttl', KEYS[1])",
+            Long.class);
+
+    /**
+     * Lua脚本：释放锁，并通知等待线程
+     */
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "    redis.call('del', KEYS[1]) " +
+                    "    redis.call('publish', ARGV[2], ARGV[1]) " +
+                    "    return 1 " +
+                    "else " +
+                    "    return 0 " +
+                    "end",
+            Long.class);
+
+    /**
+     * Lua脚本：看门狗续期
+     */
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "    return redis.call('pexpire', KEYS[1], ARGV[2]) " +
+                    "else " +
+                    "    return 0 " +
+                    "end",
+            Long.class);
+
     private final StringRedisTemplate redisTemplate;
     private final String lockKey;
-    private final String lockValue;
+    private final String releaseChannel;
     private final long expireTime;
     private final TimeUnit timeUnit;
+    private final long expireMs;
 
     /**
-     * Lua脚本：释放锁
+     * 锁释放通知订阅器，为null时按重试间隔轮询
      */
-    private static final String UNLOCK_SCRIPT =
-            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
-                    "    return redis.call('del', KEYS[1]) " +
-                    "else " +
-                    "    return 0 " +
-                    "end";
+    private final LockReleaseSubscriber releaseSubscriber;
 
     /**
-     * 构造分布式锁
+     * 看门狗线程池，为null时不续期
+     */
+    private final ScheduledExecutorService watchdog;
+
+    /**
+     * 构造分布式锁，等待时轮询，不续期
      *
      * @param redisTemplate Redis模板
      * @param lockKey       锁的key
@@ -41,11 +110,29 @@ public class DistributedLock {
      * @param timeUnit      时间单位
      */
     public DistributedLock(StringRedisTemplate redisTemplate, String lockKey, long expireTime, TimeUnit timeUnit) {
+        this(redisTemplate, lockKey, expireTime, timeUnit, null, null);
+    }
+
+    /**
+     * 构造分布式锁
+     *
+     * @param redisTemplate     Redis模板
+     * @param lockKey           锁的key
+     * @param expireTime        锁的过期时间，开启看门狗时为每次续期的时长
+     * @param timeUnit          时间单位
+     * @param releaseSubscriber 锁释放通知订阅器，为null时等待锁按重试间隔轮询
+     * @param watchdog          看门狗线程池，为null时不续期
+     */
+    public DistributedLock(StringRedisTemplate redisTemplate, String lockKey, long expireTime, TimeUnit timeUnit,
+                           LockReleaseSubscriber releaseSubscriber, ScheduledExecutorService watchdog) {
         this.redisTemplate = redisTemplate;
         this.lockKey = lockKey;
-        this.lockValue = UUID.randomUUID().toString();
+        this.releaseChannel = RELEASE_CHANNEL_PREFIX + lockKey;
         this.expireTime = expireTime;
         this.timeUnit = timeUnit;
+        this.expireMs = timeUnit.toMillis(expireTime);
+        this.releaseSubscriber = releaseSubscriber;
+        this.watchdog = watchdog;
     }
 
     /**
@@ -55,17 +142,15 @@ public class DistributedLock {
      */
     public boolean tryLock() {
         try {
-            Boolean result = redisTemplate.opsForValue().setIfAbsent(lockKey, lockValue, expireTime, timeUnit);
-            boolean lockResult = Boolean.TRUE.equals(result);
-
-            if (lockResult) {
-                log.debug("获取分布式锁成功: key={}, value={}, expireTime={}{}", 
-                         lockKey, lockValue, expireTime, timeUnit.name().toLowerCase());
-            } else {
-                log.debug("获取分布式锁失败，锁已被占用: key={}", lockKey);
+            Long ttl = acquire();
+            if (ttl == null) {
+                log.debug("获取分布式锁成功: key={}, owner={}, expireTime={}{}",
+                        lockKey, currentOwner(), expireTime, timeUnit.name().toLowerCase());
+                return true;
             }
 
-            return lockResult;
+            log.debug("获取分布式锁失败，锁已被占用: key={}", lockKey);
+            return false;
         } catch (Exception e) {
             log.error("获取分布式锁异常: key={}, 可能是Redis连接问题", lockKey, e);
             // Redis异常时不要无限重试，直接返回false
@@ -75,26 +160,38 @@ public class DistributedLock {
 
     /**
      * 尝试获取锁，带重试
+     * 开启订阅时每次重试前最多等待 retryInterval 毫秒的释放通知，收到通知立即重试
      *
      * @param retryTimes    重试次数
      * @param retryInterval 重试间隔（毫秒）
      * @return true-获取成功，false-获取失败
      */
     public boolean tryLock(int retryTimes, long retryInterval) {
-        for (int i = 0; i <= retryTimes; i++) {
-            if (tryLock()) {
-                return true;
-            }
+        LockReleaseSubscriber.Waiters waiters = null;
+        try {
+            for (int i = 0; i <= retryTimes; i++) {
+                if (acquire() == null) {
+                    return true;
+                }
 
-            if (i < retryTimes) {
-                try {
-                    Thread.sleep(retryInterval);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    log.warn("获取分布式锁重试被中断: key={}", lockKey);
-                    return false;
+                if (i < retryTimes) {
+                    if (waiters == null && releaseSubscriber != null) {
+                        waiters = releaseSubscriber.register(releaseChannel);
+                    }
+                    park(waiters, retryInterval);
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("获取分布式锁重试被中断: key={}", lockKey);
+            return false;
+        } catch (Exception e) {
+            log.error("获取分布式锁异常: key={}, 可能是Redis连接问题", lockKey, e);
+            return false;
+        } finally {
+            if (waiters != null) {
+                releaseSubscriber.deregister(waiters);
+            }
         }
 
         log.warn("获取分布式锁失败，重试{}次后放弃: key={}", retryTimes, lockKey);
@@ -103,7 +200,8 @@ public class DistributedLock {
 
     /**
      * 尝试获取锁，带超时和重试
-     * 优化版本：使用指数退避算法减少重试压力
+     * 开启订阅时等待锁的释放通知，首次最多等待 retryInterval 毫秒以覆盖订阅生效前的窗口，
+     * 之后以锁的剩余过期时间为上限；未开启订阅时使用指数退避算法轮询
      *
      * @param waitTime      等待时间
      * @param retryInterval 重试间隔（毫秒）
@@ -115,62 +213,168 @@ public class DistributedLock {
         long endTime = System.currentTimeMillis() + waitTimeMs;
         int attempts = 0;
         long currentInterval = retryInterval;
-        
-        log.debug("开始尝试获取分布式锁: key={}, waitTime={}ms, retryInterval={}ms", 
-                 lockKey, waitTimeMs, retryInterval);
-        
-        while (System.currentTimeMillis() < endTime) {
-            attempts++;
-            if (tryLock()) {
-                log.debug("获取分布式锁成功: key={}, attempts={}", lockKey, attempts);
-                return true;
-            }
-            
-            // 指数退避算法：随着重试次数增加，延迟时间增加
-            if (attempts > 20) {
-                currentInterval = Math.min(retryInterval * 2, 200); // 最大200ms
+        LockReleaseSubscriber.Waiters waiters = null;
+
+        log.debug("开始尝试获取分布式锁: key={}, waitTime={}ms, retryInterval={}ms",
+                lockKey, waitTimeMs, retryInterval);
+
+        try {
+            while (true) {
+                attempts++;
+                Long ttl = acquire();
+                if (ttl == null) {
+                    log.debug("获取分布式锁成功: key={}, attempts={}", lockKey, attempts);
+                    return true;
+                }
+
+                long remaining = endTime - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+
+                if (releaseSubscriber != null) {
+                    long parkMs = retryInterval;
+                    if (waiters == null) {
+                        waiters = releaseSubscriber.register(releaseChannel);
+                    } else {
+                        parkMs = ttl > 0 ? Math.min(ttl, MAX_PARK_MS) : MAX_PARK_MS;
+                    }
+                    park(waiters, Math.min(parkMs, remaining));
+                    continue;
+                }
+
+                // 指数退避算法：随着重试次数增加，延迟时间增加
+                if (attempts > 20) {
+                    currentInterval = Math.min(retryInterval * 2, 200); // 最大200ms
+                }
+                park(null, Math.min(currentInterval, remaining));
             }
-            
-            try {
-                Thread.sleep(currentInterval);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.warn("获取分布式锁重试被中断: key={}, attempts={}", lockKey, attempts);
-                return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("获取分布式锁重试被中断: key={}, attempts={}", lockKey, attempts);
+            return false;
+        } catch (Exception e) {
+            log.error("获取分布式锁异常: key={}, attempts={}, 可能是Redis连接问题", lockKey, attempts, e);
+            return false;
+        } finally {
+            if (waiters != null) {
+                releaseSubscriber.deregister(waiters);
             }
         }
-        
+
         log.warn("获取分布式锁超时失败: key={}, waitTime={}ms, attempts={}", lockKey, waitTimeMs, attempts);
         return false;
     }
 
     /**
      * 释放锁
+     * 重入时只减少本地重入次数，最后一次释放才删除Redis中的锁并通知等待线程
      *
      * @return true-释放成功，false-释放失败
      */
     public boolean unlock() {
-        try {
-            DefaultRedisScript<Long> script = new DefaultRedisScript<>();
-            script.setScriptText(UNLOCK_SCRIPT);
-            script.setResultType(Long.class);
+        Map<String, Hold> holds = HOLDS.get();
+        Hold hold = holds.get(lockKey);
+        if (hold != null && hold.count > 1) {
+            hold.count--;
+            log.debug("释放重入的分布式锁: key={}, count={}", lockKey, hold.count);
+            return true;
+        }
+        if (hold != null) {
+            holds.remove(lockKey);
+            if (hold.renewal != null) {
+                hold.renewal.cancel(false);
+            }
+        }
 
-            Long result = redisTemplate.execute(script, Collections.singletonList(lockKey), lockValue);
+        String owner = currentOwner();
+        try {
+            Long result = redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), owner, releaseChannel);
             boolean unlockResult = Long.valueOf(1).equals(result);
 
             if (unlockResult) {
-                log.debug("释放分布式锁成功: key={}, value={}", lockKey, lockValue);
+                log.debug("释放分布式锁成功: key={}, owner={}", lockKey, owner);
             } else {
-                log.warn("释放分布式锁失败，锁可能已过期或被其他线程释放: key={}, value={}", lockKey, lockValue);
+                log.warn("释放分布式锁失败，锁可能已过期或被其他线程释放: key={}, owner={}", lockKey, owner);
             }
 
             return unlockResult;
         } catch (Exception e) {
-            log.error("释放分布式锁异常: key={}, value={}", lockKey, lockValue, e);
+            log.error("释放分布式锁异常: key={}, owner={}", lockKey, owner, e);
             return false;
         }
     }
 
+    /**
+     * 执行一次加锁脚本，成功时记录重入次数并启动看门狗
+     *
+     * @return null-获取成功，否则为锁的剩余过期时间（毫秒）
+     */
+    private Long acquire() {
+        String owner = currentOwner();
+        Long ttl = redisTemplate.execute(LOCK_SCRIPT, Collections.singletonList(lockKey), owner, String.valueOf(expireMs));
+        if (ttl != null) {
+            return ttl;
+        }
+
+        Hold hold = HOLDS.get().computeIfAbsent(lockKey, key -> new Hold());
+        hold.count++;
+        if (hold.count == 1 && watchdog != null) {
+            long interval = Math.max(expireMs / 3, 1);
+            hold.renewal = watchdog.scheduleAtFixedRate(() -> renew(owner, hold), interval, interval, TimeUnit.MILLISECONDS);
+        }
+        return null;
+    }
+
+    /**
+     * 看门狗续期，锁已不属于当前持有者时停止续期
+     */
+    private void renew(String owner, Hold hold) {
+        try {
+            Long result = redisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(lockKey), owner, String.valueOf(expireMs));
+            if (!Long.valueOf(1).equals(result)) {
+                log.warn("分布式锁续期失败，锁已过期或被其他线程持有: key={}, owner={}", lockKey, owner);
+                ScheduledFuture<?> renewal = hold.renewal;
+                if (renewal != null) {
+                    renewal.cancel(false);
+                }
+            }
+        } catch (Exception e) {
+            // 下一个周期继续续期，锁的剩余时间足够覆盖一次失败
+            log.error("分布式锁续期异常: key={}, owner={}", lockKey, owner, e);
+        }
+    }
+
+    /**
+     * 等待锁释放通知，未开启订阅时休眠
+     */
+    private void park(LockReleaseSubscriber.Waiters waiters, long timeoutMs) throws InterruptedException {
+        if (waiters == null) {
+            Thread.sleep(timeoutMs);
+        } else {
+            waiters.await(timeoutMs);
+        }
+    }
+
+    private String currentOwner() {
+        return INSTANCE_ID + ":" + Thread.currentThread().getId();
+    }
+
+    /**
+     * 当前线程对一把锁的持有状态
+     */
+    private static final class Hold {
+        /**
+         * 重入次数
+         */
+        private int count;
+
+        /**
+         * 看门狗续期任务
+         */
+        private volatile ScheduledFuture<?> renewal;
+    }
+
     /**
      * 执行带锁的操作
      *
@@ -310,7 +514,7 @@ public class DistributedLock {
     public boolean isLockedByCurrentThread() {
         try {
             String currentHolder = redisTemplate.opsForValue().get(lockKey);
-            return lockValue.equals(currentHolder);
+            return currentOwner().equals(currentHolder);
         } catch (Exception e) {
             log.error("检查锁持有状态异常: key={}", lockKey, e);
             return false;
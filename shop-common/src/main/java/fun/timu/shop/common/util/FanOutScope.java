@@ -0,0 +1,222 @@
+package fun.timu.shop.common.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 并行扇出作用域
+ * <p>
+ * 按 JDK StructuredTaskScope.ShutdownOnFailure 的语义在有界线程池上并行执行一组子任务：
+ * 1. 每个子任务有独立的截止时间，超时视为失败
+ * 2. 任一子任务失败（异常、超时、线程池拒绝）后立即取消其余子任务，join 返回，由 throwIfFailed 抛出第一个失败原因
+ * 3. fork 时捕获调用线程的 ThreadLocal（如登录用户）并在子任务线程中恢复
+ * 4. 记录每个子任务的耗时
+ * <p>
+ * 用法：try (FanOutScope scope = new FanOutScope(executor, ...)) { fork...; scope.join(); scope.throwIfFailed(); }
+ * 非线程安全，fork/join 需在同一线程调用
+ *
+ * @author zhengke
+ */
+public class FanOutScope implements AutoCloseable {
+
+    private final ExecutorService executor;
+
+    private final ThreadLocal<Object>[] inherited;
+
+    private final List<Subtask<?>> subtasks = new ArrayList<>();
+
+    /**
+     * 每个子任务结束时释放一个许可，join 据此被唤醒
+     */
+    private final Semaphore completions = new Semaphore(0);
+
+    private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+
+    /**
+     * @param executor  执行子任务的线程池，应为有界线程池
+     * @param inherited 需要传递到子任务线程的 ThreadLocal
+     */
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    public FanOutScope(ExecutorService executor, ThreadLocal<?>... inherited) {
+        this.executor = executor;
+        this.inherited = (ThreadLocal<Object>[]) inherited;
+    }
+
+    /**
+     * 提交子任务
+     *
+     * @param name      子任务名称，用于耗时统计和超时信息
+     * @param timeoutMs 子任务截止时间（毫秒），从提交时开始计算
+     * @param task      子任务
+     */
+    public <T> Subtask<T> fork(String name, long timeoutMs, Callable<T> task) {
+        Subtask<T> subtask = new Subtask<>(name, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+        subtasks.add(subtask);
+        if (firstFailure.get() != null) {
+            // 已有子任务失败，后续子任务不再执行
+            subtask.complete(null, new CancellationException(name + " 已取消"));
+            return subtask;
+        }
+
+        Object[] values = new Object[inherited.length];
+        for (int i = 0; i < inherited.length; i++) {
+            values[i] = inherited[i].get();
+        }
+        try {
+            subtask.future = executor.submit(() -> {
+                for (int i = 0; i < inherited.length; i++) {
+                    inherited[i].set(values[i]);
+                }
+                try {
+                    subtask.complete(task.call(), null);
+                } catch (Throwable e) {
+                    subtask.complete(null, e);
+                } finally {
+                    for (ThreadLocal<Object> threadLocal : inherited) {
+                        threadLocal.remove();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            subtask.complete(null, e);
+        }
+        return subtask;
+    }
+
+    /**
+     * 等待全部子任务完成，或任一子任务失败/超时
+     */
+    public void join() throws InterruptedException {
+        int done = 0;
+        while (firstFailure.get() == null && done < subtasks.size()) {
+            long now = System.nanoTime();
+            long nextDeadline = Long.MAX_VALUE;
+            for (Subtask<?> subtask : subtasks) {
+                if (subtask.done) {
+                    continue;
+                }
+                if (now - subtask.deadlineNanos >= 0) {
+                    subtask.complete(null, new TimeoutException(subtask.name + " 超时"));
+                } else {
+                    nextDeadline = Math.min(nextDeadline, subtask.deadlineNanos);
+                }
+            }
+            if (firstFailure.get() != null) {
+                break;
+            }
+            if (completions.tryAcquire(Math.max(nextDeadline - now, 0), TimeUnit.NANOSECONDS)) {
+                done++;
+            }
+        }
+        if (firstFailure.get() != null) {
+            cancelAll();
+        }
+    }
+
+    /**
+     * 存在失败的子任务时抛出第一个失败原因
+     */
+    public void throwIfFailed() throws ExecutionException {
+        Throwable failure = firstFailure.get();
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+    }
+
+    /**
+     * 各子任务耗时（毫秒），未完成的子任务为到当前的耗时
+     */
+    public Map<String, Long> timings() {
+        Map<String, Long> timings = new LinkedHashMap<>();
+        for (Subtask<?> subtask : subtasks) {
+            long end = subtask.done ? subtask.endNanos : System.nanoTime();
+            timings.put(subtask.name, TimeUnit.NANOSECONDS.toMillis(end - subtask.startNanos));
+        }
+        return Collections.unmodifiableMap(timings);
+    }
+
+    /**
+     * 取消仍在运行的子任务
+     */
+    @Override
+    public void close() {
+        cancelAll();
+    }
+
+    private void cancelAll() {
+        for (Subtask<?> subtask : subtasks) {
+            if (!subtask.done && subtask.future != null) {
+                subtask.future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 子任务句柄
+     */
+    public final class Subtask<T> {
+
+        private final String name;
+
+        private final long startNanos = System.nanoTime();
+
+        private final long deadlineNanos;
+
+        private volatile Future<?> future;
+
+        private volatile boolean done;
+
+        private volatile long endNanos;
+
+        private volatile T result;
+
+        private volatile Throwable failure;
+
+        private Subtask(String name, long deadlineNanos) {
+            this.name = name;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * 子任务结果，只能在 join 且 throwIfFailed 通过后调用
+         */
+        public T get() {
+            if (!done || failure != null) {
+                throw new IllegalStateException(name + " 未成功完成");
+            }
+            return result;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        private synchronized void complete(T value, Throwable error) {
+            if (done) {
+                return;
+            }
+            this.result = value;
+            this.failure = error;
+            this.endNanos = System.nanoTime();
+            this.done = true;
+            if (error != null) {
+                firstFailure.compareAndSet(null, error);
+            }
+            completions.release();
+        }
+    }
+}
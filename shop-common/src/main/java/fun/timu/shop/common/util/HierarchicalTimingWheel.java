@@ -0,0 +1,166 @@
+package fun.timu.shop.common.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分层时间轮
+ * <p>
+ * 第一层每格 tickMs，共 wheelSize 格；超出本层范围的任务放入上一层（每格为下一层一整圈），按需逐层创建。
+ * 每次推进一格时，上层到点的格子降级重新插入底层，底层到点的格子整体过期。
+ * 添加和过期均为 O(1)，适合大量短期定时任务；任务不会早于到期时间触发，最多延迟一个 tickMs。
+ * <p>
+ * 非线程安全的内部结构由对象锁保护，add/advance 可在不同线程调用。
+ *
+ * @param <T> 任务类型
+ * @author zhengke
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private final Level<T> root;
+
+    private int size;
+
+    /**
+     * @param tickMs    底层每格时长（毫秒）
+     * @param wheelSize 每层格数
+     * @param startMs   起始时间（毫秒）
+     */
+    public HierarchicalTimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickMs和wheelSize必须大于0");
+        }
+        this.root = new Level<>(tickMs, wheelSize, startMs - startMs % tickMs);
+    }
+
+    /**
+     * 添加定时任务
+     *
+     * @param expireAt 到期时间（毫秒）
+     * @param task     任务
+     * @return false 表示任务已到期，未加入时间轮，调用方应立即执行
+     */
+    public synchronized boolean add(long expireAt, T task) {
+        boolean added = root.add(new Entry<>(expireAt, task));
+        if (added) {
+            size++;
+        }
+        return added;
+    }
+
+    /**
+     * 把时间轮推进到 now，返回期间到期的任务
+     *
+     * @param now 当前时间（毫秒）
+     * @return 到期任务，按到期格子顺序排列
+     */
+    public synchronized List<T> advance(long now) {
+        List<T> expired = new ArrayList<>();
+        List<Entry<T>> cascade = new ArrayList<>();
+        while (root.currentTime + root.tickMs <= now) {
+            // 1. 底层当前格整体过期，格内任务到期时间均早于下一格起点
+            root.drain(root.currentTime, expired);
+            long time = root.currentTime + root.tickMs;
+            root.currentTime = time;
+
+            // 2. 上层到达格子边界时，把该格任务取出降级
+            for (Level<T> level = root.overflow; level != null; level = level.overflow) {
+                if (time % level.tickMs != 0) {
+                    break;
+                }
+                level.currentTime = time;
+                level.drainEntries(time, cascade);
+            }
+            for (Entry<T> entry : cascade) {
+                if (!root.add(entry)) {
+                    expired.add(entry.task);
+                }
+            }
+            cascade.clear();
+        }
+        size -= expired.size();
+        return expired;
+    }
+
+    /**
+     * 时间轮中尚未到期的任务数
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 当前时间轮时间（毫秒）
+     */
+    public synchronized long currentTime() {
+        return root.currentTime;
+    }
+
+    private static final class Entry<T> {
+        private final long expireAt;
+        private final T task;
+
+        private Entry(long expireAt, T task) {
+            this.expireAt = expireAt;
+            this.task = task;
+        }
+    }
+
+    private static final class Level<T> {
+        private final long tickMs;
+        private final int wheelSize;
+        private final long interval;
+        private final List<Entry<T>>[] buckets;
+        private long currentTime;
+        private Level<T> overflow;
+
+        @SuppressWarnings("unchecked")
+        private Level(long tickMs, int wheelSize, long currentTime) {
+            this.tickMs = tickMs;
+            this.wheelSize = wheelSize;
+            this.interval = tickMs * wheelSize;
+            this.buckets = new List[wheelSize];
+            this.currentTime = currentTime;
+        }
+
+        private boolean add(Entry<T> entry) {
+            if (entry.expireAt < currentTime) {
+                return false;
+            }
+            if (entry.expireAt < currentTime + interval) {
+                int index = (int) ((entry.expireAt / tickMs) % wheelSize);
+                List<Entry<T>> bucket = buckets[index];
+                if (bucket == null) {
+                    bucket = new ArrayList<>();
+                    buckets[index] = bucket;
+                }
+                bucket.add(entry);
+                return true;
+            }
+            if (overflow == null) {
+                overflow = new Level<>(interval, wheelSize, currentTime - currentTime % interval);
+            }
+            return overflow.add(entry);
+        }
+
+        private void drain(long time, List<T> out) {
+            int index = (int) ((time / tickMs) % wheelSize);
+            List<Entry<T>> bucket = buckets[index];
+            if (bucket != null) {
+                for (Entry<T> entry : bucket) {
+                    out.add(entry.task);
+                }
+                buckets[index] = null;
+            }
+        }
+
+        private void drainEntries(long time, List<Entry<T>> out) {
+            int index = (int) ((time / tickMs) % wheelSize);
+            List<Entry<T>> bucket = buckets[index];
+            if (bucket != null) {
+                out.addAll(bucket);
+                buckets[index] = null;
+            }
+        }
+    }
+}
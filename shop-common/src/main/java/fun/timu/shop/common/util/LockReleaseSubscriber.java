@@ -0,0 +1,115 @@
+package fun.timu.shop.common.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式锁释放通知订阅器
+ * 有线程等待某把锁时才订阅该锁的释放频道，同一实例内同一把锁只订阅一次，最后一个等待线程离开时取消订阅；
+ * 每收到一条释放消息唤醒一个等待线程，由它重新尝试加锁
+ *
+ * @author zhengke
+ */
+@Slf4j
+public class LockReleaseSubscriber {
+
+    private final RedisMessageListenerContainer container;
+
+    /**
+     * 频道 -> 等待该频道的线程
+     */
+    private final Map<String, Waiters> waitersByChannel = new ConcurrentHashMap<>();
+
+    public LockReleaseSubscriber(RedisConnectionFactory connectionFactory) {
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.afterPropertiesSet();
+        container.start();
+    }
+
+    /**
+     * 登记一个等待线程，首个等待线程负责订阅频道
+     *
+     * @param channel 锁释放频道
+     * @return 该频道的等待队列
+     */
+    public Waiters register(String channel) {
+        return waitersByChannel.compute(channel, (key, waiters) -> {
+            if (waiters == null) {
+                waiters = new Waiters(key);
+                container.addMessageListener(waiters, new ChannelTopic(key));
+            }
+            waiters.count++;
+            return waiters;
+        });
+    }
+
+    /**
+     * 注销一个等待线程，最后一个等待线程负责取消订阅
+     *
+     * @param waiters 登记时返回的等待队列
+     */
+    public void deregister(Waiters waiters) {
+        waitersByChannel.computeIfPresent(waiters.channel, (key, current) -> {
+            if (--current.count > 0) {
+                return current;
+            }
+            container.removeMessageListener(current, new ChannelTopic(key));
+            return null;
+        });
+    }
+
+    /**
+     * 关闭订阅连接
+     */
+    public void destroy() {
+        try {
+            container.destroy();
+        } catch (Exception e) {
+            log.warn("关闭分布式锁释放通知订阅失败", e);
+        }
+    }
+
+    /**
+     * 同一频道的等待线程，释放消息先于等待到达时保留许可，避免丢失唤醒
+     */
+    public static class Waiters implements MessageListener {
+
+        private final String channel;
+
+        private final Semaphore permits = new Semaphore(0);
+
+        /**
+         * 等待线程数，只在 waitersByChannel 的 compute 中修改
+         */
+        private int count;
+
+        private Waiters(String channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void onMessage(Message message, byte[] pattern) {
+            permits.release();
+        }
+
+        /**
+         * 等待锁释放通知
+         *
+         * @param timeoutMs 最长等待时间（毫秒）
+         * @return true-收到通知，false-等待超时
+         */
+        public boolean await(long timeoutMs) throws InterruptedException {
+            return permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
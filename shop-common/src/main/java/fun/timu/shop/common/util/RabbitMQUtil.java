@@ -9,6 +9,7 @@ import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Date;
 import java.util.UUID;
 
 /**
@@ -20,6 +21,11 @@ import java.util.UUID;
 @AllArgsConstructor
 public class RabbitMQUtil {
 
+    /**
+     * 延迟消息的到期时间戳消息头（毫秒），消费端据此统计消费延迟
+     */
+    public static final String DUE_TIME_HEADER = "x-due-time";
+
     private final RabbitTemplate rabbitTemplate;
 
     /**
@@ -32,7 +38,10 @@ public class RabbitMQUtil {
     public void sendMessage(String exchange, String routingKey, Object message) {
         try {
             CorrelationData correlationData = new CorrelationData(UUID.randomUUID().toString());
-            rabbitTemplate.convertAndSend(exchange, routingKey, message, correlationData);
+            rabbitTemplate.convertAndSend(exchange, routingKey, message, msg -> {
+                msg.getMessageProperties().setTimestamp(new Date());
+                return msg;
+            }, correlationData);
             log.info("消息发送成功：exchange={}, routingKey={}, message={}", exchange, routingKey, message);
         } catch (Exception e) {
             log.error("消息发送失败：exchange={}, routingKey={}, message={}", exchange, routingKey, message, e);
@@ -53,7 +62,10 @@ public class RabbitMQUtil {
             CorrelationData correlationData = new CorrelationData(UUID.randomUUID().toString());
             rabbitTemplate.convertAndSend(exchange, routingKey, message, msg -> {
                 // 设置消息的延迟时间
+                long now = System.currentTimeMillis();
                 msg.getMessageProperties().setExpiration(String.valueOf(delayTime));
+                msg.getMessageProperties().setTimestamp(new Date(now));
+                msg.getMessageProperties().setHeader(DUE_TIME_HEADER, now + delayTime);
                 return msg;
             }, correlationData);
             log.info("延迟消息发送成功：exchange={}, routingKey={}, message={}, delayTime={}ms",
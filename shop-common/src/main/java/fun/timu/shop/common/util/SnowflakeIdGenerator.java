@@ -2,6 +2,8 @@ package fun.timu.shop.common.util;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Snowflake分布式ID生成器
  * 
@@ -13,6 +15,7 @@ import lombok.extern.slf4j.Slf4j;
  * - 不重复：在分布式系统中保证ID不重复
  * - 高性能：本地生成，无需网络通信
  * - 高可用：不依赖第三方系统
+ * - 无锁：时间戳与序列号打包在一个AtomicLong中，通过CAS分配，支持一次预留一段ID
  * 
  * @author zhengke
  */
@@ -61,14 +64,31 @@ public class SnowflakeIdGenerator {
     private final long machineId;
     
     /**
-     * 序列号
+     * 时间戳与序列号打包后的状态：高位为相对起始时间的毫秒数，低12位为该毫秒内最后分配的序列号
+     * 通过CAS推进，无需加锁
      */
-    private long sequence = 0L;
+    private final AtomicLong state = new AtomicLong(0L);
     
     /**
-     * 上次生成ID的时间戳
+     * 允许时间戳领先系统时钟的最大毫秒数
+     * 序列号用完时借用下一毫秒继续分配，小幅时钟回拨时沿用上次时间戳，超过该值视为严重时间回拨
      */
-    private long lastTimestamp = -1L;
+    private static final long MAX_CLOCK_LEAD_MS = 5L;
+    
+    /**
+     * 线程本地ID缓冲区默认大小
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 64;
+    
+    /**
+     * 线程本地缓冲区中的ID允许滞后的最大毫秒数，超过后丢弃剩余ID重新预留，保持ID趋势递增
+     */
+    private static final long BUFFER_MAX_AGE_MS = 1L;
+    
+    /**
+     * 线程本地ID缓冲区
+     */
+    private final ThreadLocal<IdBuffer> threadBuffer = ThreadLocal.withInitial(IdBuffer::new);
     
     /**
      * 实例缓存，每个机器ID对应一个实例
@@ -119,73 +139,133 @@ public class SnowflakeIdGenerator {
      * 
      * @return 分布式ID
      */
-    public synchronized long nextId() {
-        long timestamp = getCurrentTimestamp();
-        
-        // 时间回拨检查
-        if (timestamp < lastTimestamp) {
-            long offset = lastTimestamp - timestamp;
-            if (offset <= 5) {
-                // 小幅度时间回拨，等待追赶
-                try {
-                    Thread.sleep(offset << 1);
-                    timestamp = getCurrentTimestamp();
-                    if (timestamp < lastTimestamp) {
-                        throw new RuntimeException(
-                            String.format("时间回拨异常，拒绝生成ID。当前时间: %d, 上次时间: %d", 
-                                timestamp, lastTimestamp));
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new RuntimeException("等待时间追赶被中断", e);
-                }
-            } else {
-                throw new RuntimeException(
-                    String.format("严重时间回拨，拒绝生成ID。回拨时间: %d毫秒", offset));
-            }
+    public long nextId() {
+        return toId(reserve(1));
+    }
+    
+    /**
+     * 批量生成ID，每次CAS预留一段连续的序列号
+     * 
+     * @param n 数量
+     * @return 递增的分布式ID数组
+     */
+    public long[] nextIds(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("批量生成ID数量必须大于0");
         }
-        
-        // 同一毫秒内生成ID
-        if (timestamp == lastTimestamp) {
-            sequence = (sequence + 1) & MAX_SEQUENCE;
-            if (sequence == 0) {
-                // 序列号用完，等待下一毫秒
-                timestamp = getNextTimestamp(lastTimestamp);
+        long[] ids = new long[n];
+        int index = 0;
+        while (index < n) {
+            int count = (int) Math.min(n - index, MAX_SEQUENCE + 1);
+            long start = reserve(count);
+            for (int i = 0; i < count; i++) {
+                ids[index++] = toId(start + i);
             }
-        } else {
-            // 新的毫秒，序列号重置
-            sequence = 0L;
         }
-        
-        lastTimestamp = timestamp;
-        
-        // 组装ID
-        return ((timestamp - START_TIMESTAMP) << TIMESTAMP_SHIFT)
-                | (machineId << MACHINE_ID_SHIFT)
-                | sequence;
+        return ids;
     }
     
     /**
-     * 获取当前时间戳
+     * 从线程本地缓冲区取ID，缓冲区用完或过旧时一次预留 DEFAULT_BUFFER_SIZE 个
+     * 适合单线程高频生成的场景，同一线程内ID递增，不同线程之间只保证唯一
      * 
-     * @return 当前时间戳
+     * @return 分布式ID
      */
-    private long getCurrentTimestamp() {
-        return System.currentTimeMillis();
+    public long nextBufferedId() {
+        IdBuffer buffer = threadBuffer.get();
+        if (buffer.next > buffer.end
+                || getCurrentTimestamp() - START_TIMESTAMP - (buffer.next >>> SEQUENCE_BITS) > BUFFER_MAX_AGE_MS) {
+            buffer.next = reserve(DEFAULT_BUFFER_SIZE);
+            buffer.end = buffer.next + DEFAULT_BUFFER_SIZE - 1;
+        }
+        return toId(buffer.next++);
     }
     
     /**
-     * 等待下一毫秒
+     * 预留 n 个同一毫秒内的连续序列号
      * 
-     * @param lastTimestamp 上次时间戳
-     * @return 下一毫秒时间戳
+     * @param n 数量，不超过单毫秒序列号上限
+     * @return 第一个序列号对应的打包状态
      */
-    private long getNextTimestamp(long lastTimestamp) {
-        long timestamp = getCurrentTimestamp();
-        while (timestamp <= lastTimestamp) {
-            timestamp = getCurrentTimestamp();
+    private long reserve(int n) {
+        while (true) {
+            long current = state.get();
+            long lastTimestamp = current >>> SEQUENCE_BITS;
+            long timestamp = getCurrentTimestamp() - START_TIMESTAMP;
+            
+            long start;
+            if (timestamp > lastTimestamp) {
+                // 新的毫秒，序列号从0开始
+                start = timestamp << SEQUENCE_BITS;
+            } else {
+                long lead = lastTimestamp - timestamp;
+                if (lead > MAX_CLOCK_LEAD_MS) {
+                    throw new RuntimeException(
+                        String.format("严重时间回拨，拒绝生成ID。回拨时间: %d毫秒", lead));
+                }
+                long sequence = current & MAX_SEQUENCE;
+                if (sequence + n <= MAX_SEQUENCE) {
+                    // 同一毫秒内（或小幅时钟回拨时沿用上次时间戳）继续分配
+                    start = current + 1;
+                } else if (lead < MAX_CLOCK_LEAD_MS) {
+                    // 序列号不足，借用下一毫秒
+                    start = (lastTimestamp + 1) << SEQUENCE_BITS;
+                } else {
+                    // 已领先系统时钟过多，等待时钟追赶
+                    Thread.onSpinWait();
+                    continue;
+                }
+            }
+            
+            if (state.compareAndSet(current, start + n - 1)) {
+                return start;
+            }
         }
-        return timestamp;
+    }
+    
+    /**
+     * 把时间戳推进到指定时间之后，之后生成的ID时间戳都大于该时间
+     * 用于重启或重新租约机器ID后，衔接上一次持久化的最后发号时间
+     * 
+     * @param timestamp 毫秒时间戳
+     */
+    public void advanceTo(long timestamp) {
+        long target = ((timestamp - START_TIMESTAMP) << SEQUENCE_BITS) | MAX_SEQUENCE;
+        state.accumulateAndGet(target, Math::max);
+    }
+    
+    /**
+     * 获取最后一次发号使用的时间戳
+     * 
+     * @return 毫秒时间戳，未发号时返回起始时间戳
+     */
+    public long getLastTimestamp() {
+        return (state.get() >>> SEQUENCE_BITS) + START_TIMESTAMP;
+    }
+    
+    /**
+     * 获取机器ID
+     */
+    public long getMachineId() {
+        return machineId;
+    }
+    
+    /**
+     * 打包状态转换为ID
+     */
+    private long toId(long packed) {
+        return ((packed >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT)
+                | (machineId << MACHINE_ID_SHIFT)
+                | (packed & MAX_SEQUENCE);
+    }
+    
+    /**
+     * 获取当前时间戳
+     * 
+     * @return 当前时间戳
+     */
+    private long getCurrentTimestamp() {
+        return System.currentTimeMillis();
     }
     
     /**
@@ -231,6 +311,14 @@ public class SnowflakeIdGenerator {
         return new IdInfo(timestamp, machineId, sequence);
     }
     
+    /**
+     * 线程本地ID缓冲区，记录预留区间内下一个和最后一个打包状态
+     */
+    private static final class IdBuffer {
+        private long next = 1L;
+        private long end = 0L;
+    }
+    
     /**
      * ID解析结果
      */
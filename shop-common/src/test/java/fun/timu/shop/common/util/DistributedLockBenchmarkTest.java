@@ -0,0 +1,173 @@
+package fun.timu.shop.common.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分布式锁轮询等待与订阅通知等待的对比，统计Redis命令数/秒和锁交接延迟（释放到下一个线程获得锁）
+ * 需要本地Redis，使用 -Dlock.benchmark=true 开启
+ *
+ * @author zhengke
+ */
+@EnabledIfSystemProperty(named = "lock.benchmark", matches = "true")
+public class DistributedLockBenchmarkTest {
+
+    private static final int CONTENDER_COUNT = Integer.getInteger("lock.benchmark.contenders", 100);
+    private static final int ROUNDS_PER_CONTENDER = Integer.getInteger("lock.benchmark.rounds", 5);
+    private static final long HOLD_MS = Long.getLong("lock.benchmark.holdMs", 2);
+    private static final String LOCK_KEY = "lock:{benchmark}:contended";
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private LockReleaseSubscriber releaseSubscriber;
+    private ScheduledExecutorService watchdog;
+
+    @BeforeEach
+    public void setUp() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                System.getProperty("lock.benchmark.redisHost", "127.0.0.1"),
+                Integer.getInteger("lock.benchmark.redisPort", 6379)));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        releaseSubscriber = new LockReleaseSubscriber(connectionFactory);
+        watchdog = Executors.newSingleThreadScheduledExecutor();
+        redisTemplate.delete(LOCK_KEY);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        redisTemplate.delete(LOCK_KEY);
+        watchdog.shutdownNow();
+        releaseSubscriber.destroy();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    public void testPollingHandoff() throws InterruptedException {
+        run("轮询等待", () -> new DistributedLock(redisTemplate, LOCK_KEY, 30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPubSubHandoff() throws InterruptedException {
+        run("订阅通知等待", () -> new DistributedLock(redisTemplate, LOCK_KEY, 30, TimeUnit.SECONDS,
+                releaseSubscriber, null));
+    }
+
+    @Test
+    public void testReentrant() {
+        DistributedLock outer = new DistributedLock(redisTemplate, LOCK_KEY, 30, TimeUnit.SECONDS, releaseSubscriber, null);
+        DistributedLock inner = new DistributedLock(redisTemplate, LOCK_KEY, 30, TimeUnit.SECONDS, releaseSubscriber, null);
+
+        assertTrue(outer.tryLock());
+        assertTrue(inner.tryLock(), "同一线程应可重入");
+        assertTrue(inner.unlock());
+        assertTrue(outer.isLockedByCurrentThread(), "内层释放后外层仍持有锁");
+        assertTrue(outer.unlock());
+        assertFalse(outer.isLocked());
+    }
+
+    @Test
+    public void testWatchdogRenewal() throws InterruptedException {
+        DistributedLock lock = new DistributedLock(redisTemplate, LOCK_KEY, 1, TimeUnit.SECONDS, releaseSubscriber, watchdog);
+
+        assertTrue(lock.tryLock());
+        Thread.sleep(2500);
+        assertTrue(lock.isLockedByCurrentThread(), "看门狗应在过期前续期");
+        assertTrue(lock.unlock());
+
+        Thread.sleep(1000);
+        assertFalse(lock.isLocked(), "释放后不再续期");
+    }
+
+    private void run(String name, Supplier<DistributedLock> lockFactory) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(CONTENDER_COUNT);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch doneLatch = new CountDownLatch(CONTENDER_COUNT);
+        int total = CONTENDER_COUNT * ROUNDS_PER_CONTENDER;
+        long[] handoffs = new long[total];
+        AtomicInteger handoffCount = new AtomicInteger();
+        AtomicInteger acquired = new AtomicInteger();
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger overlapped = new AtomicInteger();
+        AtomicLong lastRelease = new AtomicLong();
+
+        for (int i = 0; i < CONTENDER_COUNT; i++) {
+            executor.submit(() -> {
+                try {
+                    startLatch.await();
+                    for (int round = 0; round < ROUNDS_PER_CONTENDER; round++) {
+                        DistributedLock lock = lockFactory.get();
+                        if (!lock.tryLock(60, 30, TimeUnit.SECONDS)) {
+                            continue;
+                        }
+                        long released = lastRelease.get();
+                        if (released > 0) {
+                            handoffs[handoffCount.getAndIncrement()] = System.nanoTime() - released;
+                        }
+                        if (inside.incrementAndGet() != 1) {
+                            overlapped.incrementAndGet();
+                        }
+                        acquired.incrementAndGet();
+                        Thread.sleep(HOLD_MS);
+                        inside.decrementAndGet();
+                        lastRelease.set(System.nanoTime());
+                        lock.unlock();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    doneLatch.countDown();
+                }
+            });
+        }
+
+        long commandsBefore = totalCommands();
+        long startTime = System.nanoTime();
+        startLatch.countDown();
+        doneLatch.await();
+        long durationNanos = System.nanoTime() - startTime;
+        long commands = totalCommands() - commandsBefore;
+        executor.shutdown();
+
+        long[] latencies = Arrays.copyOf(handoffs, handoffCount.get());
+        Arrays.sort(latencies);
+        System.out.printf("%s: 竞争线程=%d, 获得锁=%d, 耗时=%dms, Redis命令=%d (%d 次/s), 交接延迟 p50=%.2fms, p99=%.2fms%n",
+                name, CONTENDER_COUNT, acquired.get(), TimeUnit.NANOSECONDS.toMillis(durationNanos), commands,
+                commands * TimeUnit.SECONDS.toNanos(1) / Math.max(durationNanos, 1),
+                percentile(latencies, 0.50) / 1_000_000.0, percentile(latencies, 0.99) / 1_000_000.0);
+        assertEquals(0, overlapped.get(), "同一时刻只能有一个线程持有锁");
+        assertEquals(total, acquired.get(), "等待时间内所有线程都应获得锁");
+    }
+
+    private long totalCommands() {
+        Properties stats = redisTemplate.execute((RedisConnection connection) -> connection.serverCommands().info("stats"));
+        return Long.parseLong(stats.getProperty("total_commands_processed").trim());
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min((int) (sorted.length * percentile), sorted.length - 1)];
+    }
+}
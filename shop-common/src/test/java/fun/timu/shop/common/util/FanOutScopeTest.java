@@ -0,0 +1,101 @@
+package fun.timu.shop.common.util;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FanOutScope 测试类
+ *
+ * @author zhengke
+ */
+public class FanOutScopeTest {
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(4);
+
+    private static final ThreadLocal<String> CONTEXT = new ThreadLocal<>();
+
+    @AfterAll
+    public static void shutdown() {
+        EXECUTOR.shutdownNow();
+    }
+
+    @Test
+    public void testParallelSuccess() throws Exception {
+        CONTEXT.set("user-1");
+        try (FanOutScope scope = new FanOutScope(EXECUTOR, CONTEXT)) {
+            long start = System.currentTimeMillis();
+            FanOutScope.Subtask<String> a = scope.fork("a", 1000, () -> {
+                Thread.sleep(200);
+                return CONTEXT.get();
+            });
+            FanOutScope.Subtask<Integer> b = scope.fork("b", 1000, () -> {
+                Thread.sleep(200);
+                return 2;
+            });
+            scope.join();
+            scope.throwIfFailed();
+            long elapsed = System.currentTimeMillis() - start;
+
+            assertEquals("user-1", a.get(), "ThreadLocal应传递到子任务线程");
+            assertEquals(2, b.get());
+            assertTrue(elapsed < 390, "子任务应并行执行，耗时: " + elapsed);
+            assertEquals(2, scope.timings().size());
+        } finally {
+            CONTEXT.remove();
+        }
+    }
+
+    @Test
+    public void testFailFastAndCancel() throws Exception {
+        AtomicBoolean interrupted = new AtomicBoolean();
+        try (FanOutScope scope = new FanOutScope(EXECUTOR)) {
+            long start = System.currentTimeMillis();
+            scope.fork("slow", 5000, () -> {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                    throw e;
+                }
+                return null;
+            });
+            scope.fork("fail", 1000, () -> {
+                throw new IllegalStateException("boom");
+            });
+            scope.join();
+            long elapsed = System.currentTimeMillis() - start;
+
+            ExecutionException e = assertThrows(ExecutionException.class, scope::throwIfFailed);
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+            assertTrue(elapsed < 1000, "任一子任务失败后应立即返回，耗时: " + elapsed);
+        }
+        Thread.sleep(100);
+        assertTrue(interrupted.get(), "失败后其余子任务应被取消");
+    }
+
+    @Test
+    public void testSubtaskDeadline() throws Exception {
+        try (FanOutScope scope = new FanOutScope(EXECUTOR)) {
+            long start = System.currentTimeMillis();
+            scope.fork("fast", 1000, () -> 1);
+            scope.fork("slow", 100, () -> {
+                Thread.sleep(2000);
+                return 2;
+            });
+            scope.join();
+            long elapsed = System.currentTimeMillis() - start;
+
+            ExecutionException e = assertThrows(ExecutionException.class, scope::throwIfFailed);
+            assertInstanceOf(TimeoutException.class, e.getCause());
+            assertTrue(elapsed < 500, "超过子任务截止时间应立即返回，耗时: " + elapsed);
+        }
+    }
+}
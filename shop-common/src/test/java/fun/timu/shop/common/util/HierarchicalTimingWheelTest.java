@@ -0,0 +1,86 @@
+package fun.timu.shop.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HierarchicalTimingWheel 测试类
+ *
+ * @author zhengke
+ */
+public class HierarchicalTimingWheelTest {
+
+    private static final long START = 1_700_000_000_123L;
+
+    @Test
+    public void testExpiredTaskRejected() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1000, 60, START);
+
+        assertFalse(wheel.add(START - 2000, "expired"), "已过期的任务不应加入时间轮");
+        assertTrue(wheel.add(START + 500, "current"), "当前格内的任务应加入时间轮");
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    public void testFireAfterDueTime() {
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(1000, 60, START);
+        Random random = new Random(42);
+
+        // 覆盖三层：1分钟内、1小时内、数小时后
+        int count = 100000;
+        for (int i = 0; i < count; i++) {
+            long dueTime = START + (long) (random.nextDouble() * 5 * 3600 * 1000L);
+            assertTrue(wheel.add(dueTime, dueTime));
+        }
+
+        long now = START;
+        int fired = 0;
+        while (wheel.size() > 0) {
+            now += 1000;
+            List<Long> expired = wheel.advance(now);
+            long wheelTime = wheel.currentTime();
+            for (Long dueTime : expired) {
+                assertTrue(dueTime < wheelTime, "任务不能早于到期时间触发");
+                assertTrue(wheelTime - dueTime <= 1000, "任务触发延迟不应超过一格: " + (wheelTime - dueTime));
+            }
+            fired += expired.size();
+        }
+        assertEquals(count, fired, "所有任务都应触发");
+    }
+
+    @Test
+    public void testAdvanceCatchUp() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1000, 60, START);
+        wheel.add(START + 10_000, "a");
+        wheel.add(START + 3_700_000, "b");
+
+        // 调度线程停顿后一次推进多格，期间到期的任务都应返回
+        assertEquals(List.of("a"), wheel.advance(START + 120_000));
+        assertEquals(List.of("b"), wheel.advance(START + 3_702_000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testPerformance() {
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(1000, 60, START);
+        int count = 1_000_000;
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            wheel.add(START + (i % 1800) * 1000L + 1, i);
+        }
+        long addTime = System.currentTimeMillis() - startTime;
+
+        startTime = System.currentTimeMillis();
+        int fired = wheel.advance(START + 1800 * 1000L + 1000).size();
+        long advanceTime = System.currentTimeMillis() - startTime;
+
+        System.out.println("添加 " + count + " 个定时任务耗时: " + addTime + "ms");
+        System.out.println("推进30分钟触发 " + fired + " 个任务耗时: " + advanceTime + "ms");
+        assertEquals(count, fired);
+    }
+}
@@ -2,11 +2,15 @@ package fun.timu.shop.common.util;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -138,4 +142,156 @@ public class SnowflakeIdGeneratorTest {
         
         assertTrue(duration < 10000, "生成10万个ID应该在10秒内完成");
     }
+
+    @Test
+    public void testBatchGeneration() {
+        SnowflakeIdGenerator generator = SnowflakeIdGenerator.getInstance(6);
+        
+        // 超过单毫秒序列号上限，会分多次预留
+        long[] ids = generator.nextIds(10000);
+        assertEquals(10000, ids.length);
+        for (int i = 1; i < ids.length; i++) {
+            assertTrue(ids[i] > ids[i - 1], "批量生成的ID应该递增");
+        }
+        
+        long nextId = generator.nextId();
+        assertTrue(nextId > ids[ids.length - 1], "批量之后生成的ID应该更大");
+        assertEquals(6, SnowflakeIdGenerator.parseId(nextId).getMachineId());
+        
+        assertThrows(IllegalArgumentException.class, () -> generator.nextIds(0));
+    }
+
+    @Test
+    public void testMultiThreadMixedGeneration() throws InterruptedException {
+        SnowflakeIdGenerator generator = SnowflakeIdGenerator.getInstance(7);
+        
+        int threadCount = 16;
+        int loops = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch latch = new CountDownLatch(threadCount);
+        Set<Long> allIds = ConcurrentHashMap.newKeySet();
+        
+        for (int i = 0; i < threadCount; i++) {
+            final int mode = i % 3;
+            executor.submit(() -> {
+                try {
+                    long previous = 0;
+                    for (int j = 0; j < loops; j++) {
+                        if (mode == 0) {
+                            long id = generator.nextId();
+                            assertTrue(allIds.add(id), "ID应该唯一: " + id);
+                        } else if (mode == 1) {
+                            long id = generator.nextBufferedId();
+                            assertTrue(id > previous, "同一线程内缓冲区ID应该递增");
+                            previous = id;
+                            assertTrue(allIds.add(id), "ID应该唯一: " + id);
+                        } else {
+                            for (long id : generator.nextIds(8)) {
+                                assertTrue(allIds.add(id), "ID应该唯一: " + id);
+                            }
+                        }
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        
+        latch.await();
+        executor.shutdown();
+        
+        int expected = 0;
+        for (int i = 0; i < threadCount; i++) {
+            expected += (i % 3 == 2) ? loops * 8 : loops;
+        }
+        assertEquals(expected, allIds.size(), "混合生成方式下ID应该全部唯一");
+    }
+
+    /**
+     * 与原 synchronized 实现的吞吐量对比，覆盖1~64线程
+     * 运行方式: mvn test -pl shop-common -Dtest=SnowflakeIdGeneratorTest -Dsnowflake.benchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "snowflake.benchmark", matches = "true")
+    public void testThroughputComparison() throws InterruptedException {
+        SnowflakeIdGenerator generator = SnowflakeIdGenerator.getInstance(8);
+        SynchronizedSnowflake legacy = new SynchronizedSnowflake(9);
+        long durationMs = 1000;
+        
+        System.out.printf("%-8s %18s %18s %18s %18s%n", "threads", "synchronized", "cas nextId", "nextBufferedId", "nextIds(64)");
+        for (int threads : new int[]{1, 2, 4, 8, 16, 32, 64}) {
+            long legacyOps = measure(threads, durationMs, legacy::nextId, 1);
+            long casOps = measure(threads, durationMs, generator::nextId, 1);
+            long bufferedOps = measure(threads, durationMs, generator::nextBufferedId, 1);
+            long batchOps = measure(threads, durationMs, () -> generator.nextIds(64)[63], 64);
+            System.out.printf("%-8d %15d/s %15d/s %15d/s %15d/s%n", threads, legacyOps, casOps, bufferedOps, batchOps);
+        }
+    }
+
+    /**
+     * 在指定线程数下持续生成ID，返回每秒生成的ID数
+     */
+    private long measure(int threads, long durationMs, LongSupplier supplier, int idsPerCall) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicLong total = new AtomicLong();
+        long[] deadline = new long[1];
+        
+        for (int i = 0; i < threads; i++) {
+            executor.submit(() -> {
+                long count = 0;
+                long sink = 0;
+                ready.countDown();
+                try {
+                    start.await();
+                    while (System.nanoTime() < deadline[0]) {
+                        sink ^= supplier.getAsLong();
+                        count += idsPerCall;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                total.addAndGet(count + (sink == 42 ? 1 : 0));
+            });
+        }
+        
+        ready.await();
+        deadline[0] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMs);
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(durationMs * 10, TimeUnit.MILLISECONDS);
+        return total.get() * 1000 / durationMs;
+    }
+
+    /**
+     * 原 synchronized + 自旋等待下一毫秒的实现，作为对比基准
+     */
+    private static class SynchronizedSnowflake {
+        private static final long START_TIMESTAMP = 1672531200000L;
+        private static final long MAX_SEQUENCE = 4095L;
+        private final long machineId;
+        private long sequence = 0L;
+        private long lastTimestamp = -1L;
+
+        private SynchronizedSnowflake(long machineId) {
+            this.machineId = machineId;
+        }
+
+        private synchronized long nextId() {
+            long timestamp = System.currentTimeMillis();
+            if (timestamp == lastTimestamp) {
+                sequence = (sequence + 1) & MAX_SEQUENCE;
+                if (sequence == 0) {
+                    while (timestamp <= lastTimestamp) {
+                        timestamp = System.currentTimeMillis();
+                    }
+                }
+            } else {
+                sequence = 0L;
+            }
+            lastTimestamp = timestamp;
+            return ((timestamp - START_TIMESTAMP) << 22) | (machineId << 12) | sequence;
+        }
+    }
 }
@@ -0,0 +1,47 @@
+package fun.timu.shop.coupon.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 领券记录过期标记配置属性
+ * 沿(use_state, end_time, id)索引分批把已过期的领券记录标记为EXPIRED，每次执行有时间上限，未完成时记录游标下次继续
+ *
+ * @author zhengke
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "coupon.expire")
+public class CouponExpireProperties {
+
+    /**
+     * 执行间隔（毫秒）
+     */
+    private Long intervalMs = 60000L;
+
+    /**
+     * 每批标记的记录数，每批一个短事务，只锁定本批记录
+     */
+    private Integer batchSize = 500;
+
+    /**
+     * 每次执行的时间上限（毫秒），超出后保存游标，由下次执行继续
+     */
+    private Long timeBudgetMs = 20000L;
+
+    /**
+     * 批次之间的停顿（毫秒），降低从库复制延迟
+     */
+    private Long batchPauseMs = 20L;
+
+    /**
+     * 多实例只由一个实例执行，分布式锁Key
+     */
+    private String lockKey = "coupon:expire:lock";
+
+    /**
+     * 游标Key，保存上次停止位置的 结束时间毫秒:记录ID
+     */
+    private String checkpointKey = "coupon:expire:checkpoint";
+}
@@ -0,0 +1,80 @@
+package fun.timu.shop.coupon.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 领券引擎配置属性
+ * 优惠券库存、已领用户和每日发放量托管在Redis中，通过Lua脚本原子校验和扣减，领券记录异步批量写入MySQL
+ *
+ * @author zhengke
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "coupon.grab")
+public class CouponGrabProperties {
+
+    /**
+     * 是否启用Redis领券引擎，关闭时按MySQL逐条校验领券
+     */
+    private Boolean enabled = true;
+
+    /**
+     * 关闭领券引擎时，是否在MySQL领券外层加用户级分布式锁；默认不加锁，并发重复领取由领取序号唯一索引拦截
+     */
+    private Boolean lockFallback = false;
+
+    /**
+     * 优惠券定义在本地缓存的时间（毫秒），发布状态和领取时间的校验使用缓存，不查询MySQL
+     */
+    private Long couponCacheMs = 3000L;
+
+    private Redis redis = new Redis();
+    private Flush flush = new Flush();
+    private Reconcile reconcile = new Reconcile();
+
+    @Data
+    public static class Redis {
+        /**
+         * Key前缀，使用同一个hash tag保证领券脚本和回写脚本在集群模式下落在同一个slot
+         */
+        private String keyPrefix = "coupon:{grab}:";
+    }
+
+    @Data
+    public static class Flush {
+        /**
+         * 领券记录写入MySQL的间隔（毫秒）
+         */
+        private Long intervalMs = 500L;
+
+        /**
+         * 每批写入的领券记录数
+         */
+        private Integer batchSize = 500;
+
+        /**
+         * 多实例只由一个实例写入，分布式锁Key
+         */
+        private String lockKey = "coupon:{grab}:flush:lock";
+    }
+
+    @Data
+    public static class Reconcile {
+        /**
+         * 启动时是否与coupon、coupon_record对账，并加载领取中的优惠券
+         */
+        private Boolean onStartup = true;
+
+        /**
+         * 对账不一致时是否自动以MySQL为准修正Redis库存、补齐已领用户
+         */
+        private Boolean autoFix = false;
+
+        /**
+         * 定时同步库存的间隔（毫秒）：Redis库存多于MySQL时以MySQL为准下调，不受autoFix控制
+         */
+        private Long stockSyncIntervalMs = 60000L;
+    }
+}
@@ -0,0 +1,110 @@
+package fun.timu.shop.coupon.config;
+
+import fun.timu.shop.common.components.DistributedLockComponent;
+import fun.timu.shop.common.util.DistributedLock;
+import fun.timu.shop.coupon.manager.CouponGrabManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis领券引擎定时任务
+ * 启动时写完遗留的领券记录并与MySQL对账，运行期间定时把领券记录批量写入MySQL，并定时下调多于MySQL的Redis库存；
+ * 多实例时只由获得锁的实例写入，对账与写入使用同一把锁，保证对账期间MySQL不变
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CouponGrabTask implements ApplicationRunner {
+
+    /**
+     * 写入锁的过期时间（秒），持有期间由看门狗续期，实例异常退出后由其他实例接管
+     */
+    private static final long FLUSH_LOCK_SECONDS = 30;
+
+    private final CouponGrabManager couponGrabManager;
+    private final CouponGrabProperties couponGrabProperties;
+    private final DistributedLockComponent distributedLockComponent;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!Boolean.TRUE.equals(couponGrabProperties.getEnabled())
+                || !Boolean.TRUE.equals(couponGrabProperties.getReconcile().getOnStartup())) {
+            return;
+        }
+
+        DistributedLock lock = distributedLockComponent.createWatchdogLock(couponGrabProperties.getFlush().getLockKey(),
+                FLUSH_LOCK_SECONDS, TimeUnit.SECONDS);
+        // 其他实例的写入很快完成，等待其释放锁
+        if (!lock.tryLock(FLUSH_LOCK_SECONDS, 100, TimeUnit.SECONDS)) {
+            log.warn("未获取到领券引擎写入锁，跳过启动对账");
+            return;
+        }
+
+        log.info("开始领券引擎启动对账");
+        try {
+            couponGrabManager.reconcile();
+        } catch (Exception e) {
+            // 对账失败不影响应用启动，未加载的优惠券会在首次领取时从MySQL加载
+            log.error("领券引擎启动对账失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 定时写入领券记录，一次写不完时继续下一批；关闭领券引擎后仍继续写完遗留的记录
+     */
+    @Scheduled(fixedDelayString = "${coupon.grab.flush.interval-ms:500}")
+    public void flushClaims() {
+        DistributedLock lock = distributedLockComponent.createWatchdogLock(couponGrabProperties.getFlush().getLockKey(),
+                FLUSH_LOCK_SECONDS, TimeUnit.SECONDS);
+        if (!lock.tryLock()) {
+            return;
+        }
+
+        try {
+            int batchSize = couponGrabProperties.getFlush().getBatchSize();
+            int flushed;
+            do {
+                flushed = couponGrabManager.flush();
+            } while (flushed >= batchSize);
+        } catch (Exception e) {
+            log.error("定时任务执行失败：写入领券记录", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 定时同步库存：引擎之外扣减MySQL库存后，Redis中的库存会偏多，以MySQL为准下调
+     * 与写入共用一把锁，保证读取MySQL库存时pending中的记录都尚未写入
+     */
+    @Scheduled(fixedDelayString = "${coupon.grab.reconcile.stock-sync-interval-ms:60000}",
+            initialDelayString = "${coupon.grab.reconcile.stock-sync-interval-ms:60000}")
+    public void syncStock() {
+        DistributedLock lock = distributedLockComponent.createWatchdogLock(couponGrabProperties.getFlush().getLockKey(),
+                FLUSH_LOCK_SECONDS, TimeUnit.SECONDS);
+        if (!lock.tryLock()) {
+            return;
+        }
+
+        try {
+            int fixed = couponGrabManager.syncStock();
+            if (fixed > 0) {
+                log.warn("领券引擎同步库存完成: fixed={}", fixed);
+            }
+        } catch (Exception e) {
+            log.error("定时任务执行失败：同步领券引擎库存", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
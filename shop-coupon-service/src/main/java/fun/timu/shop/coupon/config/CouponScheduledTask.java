@@ -19,30 +19,15 @@ public class CouponScheduledTask {
     }
 
     /**
-     * 每天凌晨1点执行批量更新过期优惠券
+     * 定时分批更新过期优惠券，每次执行有时间上限，未完成的部分由下次执行从游标继续
      */
-    @Scheduled(cron = "0 0 1 * * ?")
+    @Scheduled(fixedDelayString = "${coupon.expire.interval-ms:60000}")
     public void batchUpdateExpiredCoupons() {
-        log.info("开始执行定时任务：批量更新过期优惠券");
+        log.debug("开始执行定时任务：批量更新过期优惠券");
         try {
             couponService.batchUpdateExpiredCoupons();
-            log.info("定时任务执行完成：批量更新过期优惠券");
         } catch (Exception e) {
             log.error("定时任务执行失败：批量更新过期优惠券", e);
         }
     }
-
-    /**
-     * 每小时执行一次，用于实时更新过期优惠券
-     */
-    @Scheduled(cron = "0 0 * * * ?")
-    public void hourlyUpdateExpiredCoupons() {
-        log.debug("开始执行每小时定时任务：更新过期优惠券");
-        try {
-            couponService.batchUpdateExpiredCoupons();
-            log.debug("每小时定时任务执行完成：更新过期优惠券");
-        } catch (Exception e) {
-            log.error("每小时定时任务执行失败：更新过期优惠券", e);
-        }
-    }
 }
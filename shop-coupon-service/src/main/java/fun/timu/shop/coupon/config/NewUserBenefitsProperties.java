@@ -0,0 +1,23 @@
+package fun.timu.shop.coupon.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 新用户福利发放配置属性
+ * 用户服务发布注册事件，优惠券服务按批次为一批新用户一次性发放全部新用户优惠券
+ *
+ * @author zhengke
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "coupon.new-user-benefits")
+public class NewUserBenefitsProperties {
+
+    /**
+     * 可发放的新用户优惠券列表在本地缓存的时间（毫秒），注册高峰期每批发放不再重复查询；
+     * 库存以发放时锁定的优惠券行为准
+     */
+    private Long couponCacheMs = 5000L;
+}
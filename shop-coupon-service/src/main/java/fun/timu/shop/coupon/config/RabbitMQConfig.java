@@ -1,9 +1,12 @@
 package fun.timu.shop.coupon.config;
 
 import fun.timu.shop.common.config.BaseRabbitMQConfig;
+import fun.timu.shop.common.config.BatchConsumerConfig;
 import lombok.Data;
 import org.springframework.amqp.core.Exchange;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
@@ -53,6 +56,72 @@ public class RabbitMQConfig extends BaseRabbitMQConfig {
     @Value("${mqconfig.coupon_release_routing_key}")
     private String couponReleaseRoutingKey;
 
+    /**
+     * 优惠券释放停放队列，超过重试次数或无法解析的消息转入此队列等待人工排查
+     */
+    @Value("${mqconfig.coupon_release_parking_queue}")
+    private String couponReleaseParkingQueue;
+
+    /**
+     * 优惠券释放停放队列路由key
+     */
+    @Value("${mqconfig.coupon_release_parking_routing_key}")
+    private String couponReleaseParkingRoutingKey;
+
+    /**
+     * 用户服务交换机，用户注册事件由此投递
+     */
+    @Value("${mqconfig.user_event_exchange}")
+    private String userEventExchange;
+
+    /**
+     * 用户注册队列，监听发放新用户福利
+     */
+    @Value("${mqconfig.user_register_queue}")
+    private String userRegisterQueue;
+
+    /**
+     * 用户注册事件路由key
+     */
+    @Value("${mqconfig.user_register_routing_key}")
+    private String userRegisterRoutingKey;
+
+    /**
+     * 用户注册重试延迟队列，发放失败的消息过期后重新投递到用户注册队列
+     */
+    @Value("${mqconfig.user_register_retry_queue}")
+    private String userRegisterRetryQueue;
+
+    /**
+     * 进入用户注册重试延迟队列的路由key
+     */
+    @Value("${mqconfig.user_register_retry_routing_key}")
+    private String userRegisterRetryRoutingKey;
+
+    /**
+     * 用户注册停放队列，超过重试次数或无法解析的消息转入此队列等待人工排查
+     */
+    @Value("${mqconfig.user_register_parking_queue}")
+    private String userRegisterParkingQueue;
+
+    /**
+     * 用户注册停放队列路由key
+     */
+    @Value("${mqconfig.user_register_parking_routing_key}")
+    private String userRegisterParkingRoutingKey;
+
+    /**
+     * 用户注册消息每批消费的消息数
+     */
+    @Value("${mqconfig.user_register_batch_size:100}")
+    private Integer userRegisterBatchSize;
+
+    /**
+     * 用户注册消息凑批等待时间,毫秒
+     */
+    @Value("${mqconfig.user_register_receive_timeout:200}")
+    private Long userRegisterReceiveTimeout;
+
     /**
      * 过期时间
      */
@@ -127,4 +196,126 @@ public class RabbitMQConfig extends BaseRabbitMQConfig {
     public Binding couponReleaseBinding() {
         return createBinding(couponReleaseQueue, eventExchange, couponReleaseRoutingKey);
     }
+
+    /**
+     * 停放队列，普通队列，不被自动消费
+     *
+     * @return Queue
+     */
+    @Bean
+    public Queue couponReleaseParkingQueue() {
+        return createQueue(couponReleaseParkingQueue, true, false, false);
+    }
+
+    /**
+     * 停放队列绑定关系建立
+     *
+     * @return Binding
+     */
+    @Bean
+    public Binding couponReleaseParkingBinding() {
+        return createBinding(couponReleaseParkingQueue, eventExchange, couponReleaseParkingRoutingKey);
+    }
+
+    /**
+     * 用户服务交换机，与用户服务声明一致，优惠券服务先于用户服务启动时也能建立绑定
+     *
+     * @return Exchange
+     */
+    @Bean
+    public Exchange userEventExchange() {
+        return createTopicExchange(userEventExchange, true, false);
+    }
+
+    /**
+     * 用户注册队列，普通队列，用于被监听
+     *
+     * @return Queue
+     */
+    @Bean
+    public Queue userRegisterQueue() {
+        return createQueue(userRegisterQueue, true, false, false);
+    }
+
+    /**
+     * 用户注册队列绑定用户服务交换机
+     *
+     * @return Binding
+     */
+    @Bean
+    public Binding userRegisterBinding() {
+        return createBinding(userRegisterQueue, userEventExchange, userRegisterRoutingKey);
+    }
+
+    /**
+     * 用户注册队列绑定优惠券交换机，接收重试延迟队列过期后转发的消息
+     *
+     * @return Binding
+     */
+    @Bean
+    public Binding userRegisterRedeliverBinding() {
+        return createBinding(userRegisterQueue, eventExchange, userRegisterRoutingKey);
+    }
+
+    /**
+     * 用户注册重试延迟队列，不能被监听消费
+     *
+     * @return Queue
+     */
+    @Bean
+    public Queue userRegisterRetryQueue() {
+        return createDelayQueue(
+                userRegisterRetryQueue,
+                ttl,
+                eventExchange,
+                userRegisterRoutingKey,
+                true,
+                false,
+                false
+        );
+    }
+
+    /**
+     * 用户注册重试延迟队列绑定关系建立
+     *
+     * @return Binding
+     */
+    @Bean
+    public Binding userRegisterRetryBinding() {
+        return createBinding(userRegisterRetryQueue, eventExchange, userRegisterRetryRoutingKey);
+    }
+
+    /**
+     * 用户注册停放队列，普通队列，不被自动消费
+     *
+     * @return Queue
+     */
+    @Bean
+    public Queue userRegisterParkingQueue() {
+        return createQueue(userRegisterParkingQueue, true, false, false);
+    }
+
+    /**
+     * 用户注册停放队列绑定关系建立
+     *
+     * @return Binding
+     */
+    @Bean
+    public Binding userRegisterParkingBinding() {
+        return createBinding(userRegisterParkingQueue, eventExchange, userRegisterParkingRoutingKey);
+    }
+
+    /**
+     * 用户注册消息批量消费监听容器工厂，注册高峰期凑满一批或等待超时后整批发放
+     *
+     * @param connectionFactory   连接工厂
+     * @param batchConsumerConfig 批量消费公共配置
+     * @return SimpleRabbitListenerContainerFactory
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory userRegisterListenerContainerFactory(ConnectionFactory connectionFactory,
+                                                                                     BatchConsumerConfig batchConsumerConfig) {
+        return batchConsumerConfig.createBatchListenerContainerFactory(
+                connectionFactory, userRegisterBatchSize, userRegisterReceiveTimeout);
+    }
 }
@@ -0,0 +1,52 @@
+package fun.timu.shop.coupon.listener;
+
+import com.rabbitmq.client.Channel;
+import fun.timu.shop.common.components.BatchMessageConsumer;
+import fun.timu.shop.common.components.MQConsumerMetrics;
+import fun.timu.shop.common.config.BatchConsumerConfig;
+import fun.timu.shop.common.model.CouponRecordMessage;
+import fun.timu.shop.coupon.config.RabbitMQConfig;
+import fun.timu.shop.coupon.service.CouponRecordService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 优惠券释放消息监听
+ * 订单未支付时返回false，消息重新进入延迟队列等待下一轮检查，超过重试次数转入停放队列
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+public class CouponReleaseListener extends BatchMessageConsumer<CouponRecordMessage> {
+
+    private final CouponRecordService couponRecordService;
+
+    public CouponReleaseListener(RabbitTemplate rabbitTemplate, MQConsumerMetrics metrics, BatchConsumerConfig consumerConfig,
+                                 CouponRecordService couponRecordService, RabbitMQConfig rabbitMQConfig) {
+        super(CouponRecordMessage.class, rabbitTemplate, metrics, consumerConfig, new Route(
+                rabbitMQConfig.getCouponReleaseQueue(),
+                rabbitMQConfig.getEventExchange(),
+                rabbitMQConfig.getCouponReleaseDelayRoutingKey(),
+                rabbitMQConfig.getCouponReleaseParkingRoutingKey(),
+                rabbitMQConfig.getTtl()));
+        this.couponRecordService = couponRecordService;
+    }
+
+    @RabbitListener(queues = "${mqconfig.coupon_release_queue}", containerFactory = "batchListenerContainerFactory")
+    public void onMessage(List<Message> messages, Channel channel) throws IOException {
+        consume(messages, channel);
+    }
+
+    @Override
+    protected boolean handle(CouponRecordMessage message) {
+        log.info("监听到优惠券释放消息: {}", message);
+        return couponRecordService.releaseCouponRecord(message);
+    }
+}
@@ -0,0 +1,62 @@
+package fun.timu.shop.coupon.listener;
+
+import com.rabbitmq.client.Channel;
+import fun.timu.shop.common.components.BatchMessageConsumer;
+import fun.timu.shop.common.components.MQConsumerMetrics;
+import fun.timu.shop.common.config.BatchConsumerConfig;
+import fun.timu.shop.common.model.UserRegisteredMessage;
+import fun.timu.shop.coupon.config.RabbitMQConfig;
+import fun.timu.shop.coupon.service.CouponService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 用户注册消息监听
+ * 按批次为新用户发放新用户福利优惠券，发放冲突的用户进入重试队列，超过重试次数转入停放队列
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+public class NewUserBenefitsListener extends BatchMessageConsumer<UserRegisteredMessage> {
+
+    private final CouponService couponService;
+
+    public NewUserBenefitsListener(RabbitTemplate rabbitTemplate, MQConsumerMetrics metrics, BatchConsumerConfig consumerConfig,
+                                   CouponService couponService, RabbitMQConfig rabbitMQConfig) {
+        super(UserRegisteredMessage.class, rabbitTemplate, metrics, consumerConfig, new Route(
+                rabbitMQConfig.getUserRegisterQueue(),
+                rabbitMQConfig.getEventExchange(),
+                rabbitMQConfig.getUserRegisterRetryRoutingKey(),
+                rabbitMQConfig.getUserRegisterParkingRoutingKey(),
+                rabbitMQConfig.getTtl()));
+        this.couponService = couponService;
+    }
+
+    @RabbitListener(queues = "${mqconfig.user_register_queue}", containerFactory = "userRegisterListenerContainerFactory")
+    public void onMessage(List<Message> messages, Channel channel) throws IOException {
+        consume(messages, channel);
+    }
+
+    @Override
+    protected List<Boolean> handleBatch(List<UserRegisteredMessage> messages) {
+        log.info("监听到用户注册消息: size={}", messages.size());
+        Set<Long> failed = couponService.grantNewUserBenefitsBatch(messages);
+        return messages.stream()
+                .map(message -> message.getUserId() != null && !failed.contains(message.getUserId()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    protected boolean handle(UserRegisteredMessage message) {
+        return handleBatch(List.of(message)).get(0);
+    }
+}
@@ -0,0 +1,19 @@
+package fun.timu.shop.coupon.manager;
+
+import fun.timu.shop.coupon.model.DTO.CouponExpireStatsDTO;
+
+/**
+ * 领券记录过期标记
+ * 已过期仍为NEW的领券记录分批标记为EXPIRED，替代一次性全表UPDATE，避免长时间锁定大范围记录和从库复制延迟
+ *
+ * @author zhengke
+ */
+public interface CouponExpireManager {
+
+    /**
+     * 从上次保存的游标开始分批标记过期记录，直到遍历完或达到时间上限；调用方需保证只有一个实例在执行
+     *
+     * @return 本次执行的统计结果，同时更新过期标记指标
+     */
+    CouponExpireStatsDTO sweep();
+}
@@ -0,0 +1,65 @@
+package fun.timu.shop.coupon.manager;
+
+import fun.timu.shop.coupon.model.DO.CouponDO;
+
+/**
+ * Redis领券引擎
+ * 优惠券库存、已领用户和每日发放量托管在Redis中，一次Lua脚本完成校验和扣减，
+ * 领取成功的记录进入待写入队列，由定时任务批量写入coupon_record并扣减coupon库存
+ *
+ * @author zhengke
+ */
+public interface CouponGrabManager {
+
+    /**
+     * 领取成功
+     */
+    int GRAB_SUCCESS = 1;
+
+    /**
+     * 库存不足
+     */
+    int GRAB_NO_STOCK = 0;
+
+    /**
+     * 用户已领取过
+     */
+    int GRAB_OUT_OF_LIMIT = 2;
+
+    /**
+     * 超过每日限量
+     */
+    int GRAB_DAILY_LIMIT = 3;
+
+    /**
+     * 查询优惠券定义，短时间缓存在本地，不存在时返回null
+     */
+    CouponDO getCoupon(Long couponId);
+
+    /**
+     * 原子校验用户领取次数、每日限量和库存并扣减，优惠券未加载到Redis时先从MySQL加载
+     *
+     * @return 领取结果，取值见 GRAB_* 常量
+     */
+    int grab(CouponDO couponDO, Long userId, String userName);
+
+    /**
+     * 将一批待写入的领券记录写入MySQL，调用方需持有回写锁
+     * MySQL库存不足的记录不写入，从已领用户中移除，并以MySQL为准修正该优惠券的Redis库存
+     *
+     * @return 本次处理的记录数
+     */
+    int flush();
+
+    /**
+     * Redis库存多于MySQL时以MySQL为准下调，覆盖关闭引擎期间按MySQL领取、后台修改库存等引擎之外的扣减，调用方需持有回写锁
+     *
+     * @return 修正的优惠券数
+     */
+    int syncStock();
+
+    /**
+     * 写完遗留的领券记录后与MySQL对账，并加载领取中的优惠券，调用方需持有回写锁
+     */
+    void reconcile();
+}
@@ -4,7 +4,9 @@ import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
 import fun.timu.shop.coupon.model.DO.CouponDO;
+import fun.timu.shop.coupon.model.DTO.CouponStockDeltaDTO;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface CouponManager extends IService<CouponDO> {
@@ -43,9 +45,32 @@ public interface CouponManager extends IService<CouponDO> {
     int reduceStockWithLock(Long couponId);
 
     /**
-     * 查询所有可用的新用户优惠券
+     * 查询所有可用的新用户优惠券，结果在本地短暂缓存
      *
      * @return 新用户优惠券列表
      */
     List<CouponDO> getAvailableNewUserCoupons();
+
+    /**
+     * 批量扣减库存，只扣减库存足够的优惠券
+     *
+     * @param deltas 库存扣减量，同一优惠券ID只能出现一次
+     * @return 影响行数，少于优惠券数时说明有优惠券库存不足，调用方需回滚事务
+     */
+    int reduceStockBatch(List<CouponStockDeltaDTO> deltas);
+
+    /**
+     * 锁定优惠券行并读取最新库存，需在事务中调用
+     *
+     * @param couponIds 优惠券ID
+     * @return 只包含id、stock和dailyLimit的优惠券列表
+     */
+    List<CouponDO> selectStockForUpdate(Collection<Long> couponIds);
+
+    /**
+     * 查询当前处于领取时间内的已发布优惠券
+     *
+     * @return 优惠券列表
+     */
+    List<CouponDO> listReceivableCoupons();
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import fun.timu.shop.coupon.model.DO.CouponRecordDO;
 import org.apache.ibatis.annotations.Param;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -66,14 +67,85 @@ public interface CouponRecordManager extends IService<CouponRecordDO> {
      */
     List<CouponRecordDO> getExpiringSoonRecords(int expireDays);
 
+    int lockUseStateBatch(Long userId, String useState, List<Long> lockCouponRecordIds);
+
+    void updateState(Long couponRecordId, String useState);
+
     /**
-     * 批量更新过期优惠券状态
+     * 批量释放被订单锁定的优惠券记录，USED恢复为NEW
      *
+     * @param couponRecordIds 优惠券记录ID
      * @return 影响行数
      */
-    int batchUpdateExpiredCoupons();
+    int releaseUseStateBatch(List<Long> couponRecordIds);
 
-    int lockUseStateBatch(Long userId, String useState, List<Long> lockCouponRecordIds);
+    /**
+     * 批量插入领券记录，使用记录中预先生成的ID
+     *
+     * @param records 领券记录
+     * @return 影响行数
+     */
+    int insertBatch(List<CouponRecordDO> records);
 
-    void updateState(Long couponRecordId, String useState);
+    /**
+     * 查询已存在的领券记录ID，包含逻辑删除的记录
+     *
+     * @param ids 领券记录ID
+     * @return 已存在的ID
+     */
+    List<Long> selectExistingIds(Collection<Long> ids);
+
+    /**
+     * 查询领取过指定优惠券的用户ID，包含逻辑删除的记录
+     *
+     * @param couponId 优惠券ID
+     * @return 用户ID，已去重
+     */
+    List<Long> selectUserIdsByCouponId(Long couponId);
+
+    /**
+     * 查询用户领取指定优惠券的最大序号，包含逻辑删除的记录
+     *
+     * @param couponId 优惠券ID
+     * @param userId   用户ID
+     * @return 最大领取序号，没有记录时返回0
+     */
+    int selectMaxClaimSeq(Long couponId, Long userId);
+
+    /**
+     * 查询一批用户已领取的优惠券，包含逻辑删除的记录
+     *
+     * @param couponIds 优惠券ID
+     * @param userIds   用户ID
+     * @return 只包含优惠券ID和用户ID的领券记录
+     */
+    List<CouponRecordDO> selectClaimedRecords(Collection<Long> couponIds, Collection<Long> userIds);
+
+    /**
+     * 按(end_time, id)游标查询一批已过期仍未使用的记录，包含逻辑删除的记录
+     *
+     * @param now           过期判定时间
+     * @param cursorEndTime 游标的结束时间，只返回在游标之后的记录
+     * @param cursorId      游标的记录ID
+     * @param limit         每批条数
+     * @return 只包含ID和结束时间的领券记录，按结束时间、ID升序
+     */
+    List<CouponRecordDO> selectExpiredAfter(Date now, Date cursorEndTime, Long cursorId, int limit);
+
+    /**
+     * 按ID批量标记过期，只更新仍未使用且已过期的记录，逻辑删除的记录也一并标记，使积压量能降到0
+     *
+     * @param ids 领券记录ID
+     * @param now 过期判定时间
+     * @return 影响行数
+     */
+    int expireByIds(Collection<Long> ids, Date now);
+
+    /**
+     * 统计已过期仍未标记的记录数，即过期标记的积压量
+     *
+     * @param now 过期判定时间
+     * @return 记录数
+     */
+    long countExpired(Date now);
 }
@@ -11,4 +11,8 @@ public interface CouponTaskManager {
     CouponTaskDO selectById(Long taskId);
 
     boolean updateEntity(CouponTaskDO taskDO, Long taskId);
+
+    List<CouponTaskDO> listByOutTradeNo(String outTradeNo, String lockState);
+
+    int updateLockStateByOutTradeNo(String outTradeNo, String oldLockState, String newLockState);
 }
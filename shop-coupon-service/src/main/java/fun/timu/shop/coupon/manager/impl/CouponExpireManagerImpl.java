@@ -0,0 +1,135 @@
+package fun.timu.shop.coupon.manager.impl;
+
+import fun.timu.shop.coupon.config.CouponExpireProperties;
+import fun.timu.shop.coupon.manager.CouponExpireManager;
+import fun.timu.shop.coupon.manager.CouponRecordManager;
+import fun.timu.shop.coupon.model.DO.CouponRecordDO;
+import fun.timu.shop.coupon.model.DTO.CouponExpireStatsDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 领券记录过期标记实现
+ * <p>
+ * 沿(use_state, end_time, id)索引按(end_time, id)游标分批读取已过期仍为NEW的记录ID，每批一条按ID的UPDATE，
+ * 只锁定本批记录；读取和积压统计只走索引，不过滤逻辑删除，逻辑删除的记录也一并标记，积压量才能降到0。
+ * <p>
+ * 达到时间上限时把游标保存到Redis，下次执行从游标继续；遍历到末尾时删除游标，下次从头开始，
+ * 游标之前因订单取消重新变为NEW的记录在下一轮被标记。
+ * <p>
+ * 指标：shop.coupon.expire.rows（累计标记数），shop.coupon.expire.rate（上次执行每秒标记数），
+ * shop.coupon.expire.backlog（已过期仍未标记的记录数）
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+public class CouponExpireManagerImpl implements CouponExpireManager {
+
+    /**
+     * 游标保存时间，长时间未执行时游标失效，从头开始
+     */
+    private static final long CHECKPOINT_TTL_HOURS = 24;
+
+    private final CouponRecordManager couponRecordManager;
+    private final CouponExpireProperties couponExpireProperties;
+    private final StringRedisTemplate redisTemplate;
+
+    private final AtomicLong rowsPerSecond = new AtomicLong();
+    private final AtomicLong backlog = new AtomicLong();
+    private final Counter expiredCounter;
+
+    public CouponExpireManagerImpl(CouponRecordManager couponRecordManager, CouponExpireProperties couponExpireProperties,
+                                   RedisConnectionFactory connectionFactory, MeterRegistry meterRegistry) {
+        this.couponRecordManager = couponRecordManager;
+        this.couponExpireProperties = couponExpireProperties;
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.redisTemplate.afterPropertiesSet();
+
+        this.expiredCounter = Counter.builder("shop.coupon.expire.rows")
+                .description("标记为过期的领券记录数")
+                .register(meterRegistry);
+        Gauge.builder("shop.coupon.expire.rate", rowsPerSecond, AtomicLong::get)
+                .description("上次执行每秒标记的领券记录数")
+                .register(meterRegistry);
+        Gauge.builder("shop.coupon.expire.backlog", backlog, AtomicLong::get)
+                .description("已过期仍未标记的领券记录数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public CouponExpireStatsDTO sweep() {
+        int batchSize = couponExpireProperties.getBatchSize();
+        long startTime = System.currentTimeMillis();
+        long deadline = startTime + couponExpireProperties.getTimeBudgetMs();
+        Date now = new Date(startTime);
+        CouponExpireStatsDTO stats = new CouponExpireStatsDTO();
+
+        Date cursorEndTime = new Date(0);
+        long cursorId = 0L;
+        String checkpoint = redisTemplate.opsForValue().get(couponExpireProperties.getCheckpointKey());
+        if (checkpoint != null) {
+            String[] parts = checkpoint.split(":");
+            cursorEndTime = new Date(Long.parseLong(parts[0]));
+            cursorId = Long.parseLong(parts[1]);
+        }
+
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                List<CouponRecordDO> rows = couponRecordManager.selectExpiredAfter(now, cursorEndTime, cursorId, batchSize);
+                if (rows.isEmpty()) {
+                    stats.setFinished(true);
+                    break;
+                }
+
+                List<Long> ids = rows.stream().map(CouponRecordDO::getId).collect(Collectors.toList());
+                int expired = couponRecordManager.expireByIds(ids, now);
+                expiredCounter.increment(expired);
+                stats.setScannedRows(stats.getScannedRows() + rows.size());
+                stats.setExpiredRows(stats.getExpiredRows() + expired);
+                stats.setBatches(stats.getBatches() + 1);
+
+                CouponRecordDO last = rows.get(rows.size() - 1);
+                cursorEndTime = last.getEndTime();
+                cursorId = last.getId();
+                if (rows.size() < batchSize) {
+                    stats.setFinished(true);
+                    break;
+                }
+                TimeUnit.MILLISECONDS.sleep(couponExpireProperties.getBatchPauseMs());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("领券记录过期标记被中断，下次从游标继续");
+        } finally {
+            // 异常或超时停止时保存已完成批次的位置
+            saveCheckpoint(stats.isFinished(), cursorEndTime, cursorId);
+        }
+
+        stats.setElapsedMs(System.currentTimeMillis() - startTime);
+        stats.setBacklog(couponRecordManager.countExpired(new Date()));
+        rowsPerSecond.set(stats.getExpiredRows() * 1000 / Math.max(stats.getElapsedMs(), 1));
+        backlog.set(stats.getBacklog());
+        return stats;
+    }
+
+    private void saveCheckpoint(boolean finished, Date cursorEndTime, long cursorId) {
+        if (finished) {
+            redisTemplate.delete(couponExpireProperties.getCheckpointKey());
+            return;
+        }
+        redisTemplate.opsForValue().set(couponExpireProperties.getCheckpointKey(),
+                cursorEndTime.getTime() + ":" + cursorId, CHECKPOINT_TTL_HOURS, TimeUnit.HOURS);
+    }
+}
@@ -0,0 +1,601 @@
+package fun.timu.shop.coupon.manager.impl;
+
+import fun.timu.shop.common.components.IdGeneratorComponent;
+import fun.timu.shop.common.enums.CouponStateEnum;
+import fun.timu.shop.coupon.config.CouponGrabProperties;
+import fun.timu.shop.coupon.manager.CouponGrabManager;
+import fun.timu.shop.coupon.manager.CouponManager;
+import fun.timu.shop.coupon.manager.CouponRecordManager;
+import fun.timu.shop.coupon.model.DO.CouponDO;
+import fun.timu.shop.coupon.model.DO.CouponRecordDO;
+import fun.timu.shop.coupon.model.DTO.CouponClaimDTO;
+import fun.timu.shop.coupon.model.DTO.CouponStockDeltaDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Redis领券引擎实现
+ * <p>
+ * 每张优惠券对应一个Hash，stock为剩余库存；另有已领用户Set和按天的发放计数。
+ * 已领取但尚未写入MySQL的记录数（pending）按优惠券ID记在一个不过期的计数Hash中，由领券和移出队列的脚本维护，
+ * 优惠券Key过期后仍然保留。领券脚本在同一次执行中校验并扣减，库存只会被脚本减少，
+ * 加载时以MySQL库存减去该优惠券的pending为初值。已领用户从全部领券记录加载，包含逻辑删除的记录，与领取序号唯一索引一致。
+ * 领取成功的记录追加到待写入队列，写入MySQL与带 stock >= 扣减量 条件的库存扣减在同一事务中完成，提交后再从队列移除，
+ * 重复写入时按预先生成的记录ID跳过已存在的记录。
+ * <p>
+ * 只在引擎内领取时，stock + pending 始终等于MySQL库存，已领用户数 - pending 始终等于coupon_record中的用户数，
+ * 启动对账据此比较Redis与MySQL。引擎之外的库存扣减（关闭引擎期间按MySQL领取、后台修改库存）会让Redis库存偏多，
+ * 此时由MySQL的条件扣减兜底：扣减行数不足时整批回滚，改为逐条写入，库存不足的记录不写入并从已领用户中移除，
+ * 随后以MySQL为准下调该优惠券的Redis库存；定时同步库存也会下调偏多的Redis库存。因此写入coupon_record的记录数
+ * 始终不超过MySQL库存。Redis需配置为noeviction，否则被淘汰的Key会丢失已领用户和待写入记录。
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+public class CouponGrabManagerImpl implements CouponGrabManager {
+
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.BASIC_ISO_DATE;
+
+    /**
+     * 每日发放计数的保留时间（秒），覆盖跨天前后的领取
+     */
+    private static final long DAILY_TTL_SECONDS = TimeUnit.DAYS.toSeconds(2);
+
+    /**
+     * 领取时间结束后Key继续保留的时间，等待待写入记录全部写入MySQL
+     */
+    private static final long KEY_RETAIN_MS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * 每次SADD写入的用户数
+     */
+    private static final int USER_CHUNK_SIZE = 1000;
+
+    /**
+     * Lua脚本：领券
+     * KEYS[1]优惠券Hash，KEYS[2]已领用户Set，KEYS[3]当日发放计数，KEYS[4]待写入队列，KEYS[5]pending计数Hash
+     * ARGV[1]用户ID，ARGV[2]每日限量(0不限)，ARGV[3]领券记录，ARGV[4]当日计数过期时间(秒)，ARGV[5]优惠券ID
+     * 返回-1未加载，0库存不足，1成功，2已领取，3超过每日限量
+     */
+    private static final String GRAB_SCRIPT =
+            "local stock = redis.call('hget', KEYS[1], 'stock') " +
+                    "if not stock then return -1 end " +
+                    "if redis.call('sismember', KEYS[2], ARGV[1]) == 1 then return 2 end " +
+                    "if tonumber(stock) <= 0 then return 0 end " +
+                    "local dailyLimit = tonumber(ARGV[2]) " +
+                    "if dailyLimit > 0 and tonumber(redis.call('get', KEYS[3]) or '0') >= dailyLimit then return 3 end " +
+                    "redis.call('hincrby', KEYS[1], 'stock', -1) " +
+                    "redis.call('hincrby', KEYS[5], ARGV[5], 1) " +
+                    "redis.call('sadd', KEYS[2], ARGV[1]) " +
+                    "if redis.call('pttl', KEYS[2]) == -1 then " +
+                    "    local ttl = redis.call('pttl', KEYS[1]) " +
+                    "    if ttl > 0 then redis.call('pexpire', KEYS[2], ttl) end " +
+                    "end " +
+                    "if redis.call('incr', KEYS[3]) == 1 then redis.call('expire', KEYS[3], ARGV[4]) end " +
+                    "redis.call('rpush', KEYS[4], ARGV[3]) " +
+                    "return 1";
+
+    /**
+     * Lua脚本：优惠券Hash不存在时以MySQL库存初始化，已领用户需在执行前写入
+     * Key过期后重新加载时，队列中可能还有该优惠券尚未写入的记录，从库存中扣除其pending
+     * KEYS[1]优惠券Hash，KEYS[2]已领用户Set，KEYS[3]当日发放计数，KEYS[4]pending计数Hash
+     * ARGV[1]库存，ARGV[2]当日已发放数，ARGV[3]过期时间戳(毫秒，0不过期)，ARGV[4]当日计数过期时间(秒)，ARGV[5]优惠券ID
+     */
+    private static final String LOAD_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end " +
+                    "local pending = tonumber(redis.call('hget', KEYS[4], ARGV[5]) or '0') " +
+                    "redis.call('hset', KEYS[1], 'stock', tonumber(ARGV[1]) - pending) " +
+                    "redis.call('set', KEYS[3], ARGV[2], 'EX', ARGV[4], 'NX') " +
+                    "if tonumber(ARGV[3]) > 0 then " +
+                    "    redis.call('pexpireat', KEYS[1], ARGV[3]) " +
+                    "    redis.call('pexpireat', KEYS[2], ARGV[3]) " +
+                    "end " +
+                    "return 1";
+
+    /**
+     * Lua脚本：领券记录写入MySQL后从待写入队列移除，并减少对应优惠券的pending，减到0时删除计数
+     * KEYS[1]待写入队列，KEYS[2]pending计数Hash；ARGV[1]移除的记录数，之后按(优惠券ID, 写入的记录数)成对排列
+     */
+    private static final String ACK_SCRIPT =
+            "redis.call('ltrim', KEYS[1], ARGV[1], -1) " +
+                    "for i = 2, #ARGV, 2 do " +
+                    "    if redis.call('hincrby', KEYS[2], ARGV[i], -tonumber(ARGV[i + 1])) <= 0 then " +
+                    "        redis.call('hdel', KEYS[2], ARGV[i]) " +
+                    "    end " +
+                    "end " +
+                    "return 1";
+
+    /**
+     * Lua脚本：读取库存、pending和已领用户数的一致快照，未加载时返回空列表
+     * KEYS[1]优惠券Hash，KEYS[2]已领用户Set，KEYS[3]pending计数Hash；ARGV[1]优惠券ID
+     */
+    private static final String SNAPSHOT_SCRIPT =
+            "local stock = redis.call('hget', KEYS[1], 'stock') " +
+                    "if not stock then return {} end " +
+                    "return {stock, redis.call('hget', KEYS[3], ARGV[1]) or '0', tostring(redis.call('scard', KEYS[2]))}";
+
+    /**
+     * Lua脚本：以MySQL库存为准修正Redis库存，保留尚未写入的pending
+     * KEYS[1]优惠券Hash，KEYS[2]pending计数Hash；ARGV[1]MySQL库存，ARGV[2]优惠券ID
+     */
+    private static final String FIX_STOCK_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 0 then return 0 end " +
+                    "local pending = tonumber(redis.call('hget', KEYS[2], ARGV[2]) or '0') " +
+                    "redis.call('hset', KEYS[1], 'stock', tonumber(ARGV[1]) - pending) " +
+                    "return 1";
+
+    /**
+     * Lua脚本：MySQL库存不足而未写入的记录，从已领用户中移除并回退当日发放计数
+     * KEYS[1]已领用户Set，KEYS[2]领取当日的发放计数；ARGV[1]用户ID
+     */
+    private static final String REJECT_SCRIPT =
+            "redis.call('srem', KEYS[1], ARGV[1]) " +
+                    "if tonumber(redis.call('get', KEYS[2]) or '0') > 0 then redis.call('decr', KEYS[2]) end " +
+                    "return 1";
+
+    private static final DefaultRedisScript<Long> GRAB = new DefaultRedisScript<>(GRAB_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> LOAD = new DefaultRedisScript<>(LOAD_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> ACK = new DefaultRedisScript<>(ACK_SCRIPT, Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> SNAPSHOT = new DefaultRedisScript<>(SNAPSHOT_SCRIPT, List.class);
+    private static final DefaultRedisScript<Long> FIX_STOCK = new DefaultRedisScript<>(FIX_STOCK_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> REJECT = new DefaultRedisScript<>(REJECT_SCRIPT, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final CouponManager couponManager;
+    private final CouponRecordManager couponRecordManager;
+    private final IdGeneratorComponent idGeneratorComponent;
+    private final TransactionTemplate transactionTemplate;
+    private final CouponGrabProperties couponGrabProperties;
+
+    /**
+     * 优惠券定义本地缓存，只缓存存在的优惠券
+     */
+    private final Map<Long, CachedCoupon> couponCache = new ConcurrentHashMap<>();
+
+    /**
+     * 同一实例内同一优惠券只由一个线程从MySQL加载
+     */
+    private final Map<Long, Object> loadLocks = new ConcurrentHashMap<>();
+
+    public CouponGrabManagerImpl(RedisConnectionFactory connectionFactory, CouponManager couponManager,
+                                 CouponRecordManager couponRecordManager, IdGeneratorComponent idGeneratorComponent,
+                                 TransactionTemplate transactionTemplate, CouponGrabProperties couponGrabProperties) {
+        // 领券脚本必须立即拿到执行结果，使用不开启事务支持的独立模板，避免在@Transactional中被MULTI排队而返回null
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.redisTemplate.afterPropertiesSet();
+        this.couponManager = couponManager;
+        this.couponRecordManager = couponRecordManager;
+        this.idGeneratorComponent = idGeneratorComponent;
+        this.transactionTemplate = transactionTemplate;
+        this.couponGrabProperties = couponGrabProperties;
+    }
+
+    @Override
+    public CouponDO getCoupon(Long couponId) {
+        long now = System.currentTimeMillis();
+        CachedCoupon cached = couponCache.get(couponId);
+        if (cached != null && cached.expireAt() > now) {
+            return cached.couponDO();
+        }
+
+        CouponDO couponDO = couponManager.getById(couponId);
+        if (couponDO == null) {
+            couponCache.remove(couponId);
+            return null;
+        }
+        couponCache.put(couponId, new CachedCoupon(couponDO, now + couponGrabProperties.getCouponCacheMs()));
+        return couponDO;
+    }
+
+    @Override
+    public int grab(CouponDO couponDO, Long userId, String userName) {
+        Long couponId = couponDO.getId();
+        long now = System.currentTimeMillis();
+        CouponClaimDTO claim = new CouponClaimDTO(idGeneratorComponent.generateId(), couponId, userId, now, userName);
+
+        List<String> keys = Arrays.asList(couponKey(couponId), usersKey(couponId), dailyKey(couponId, LocalDate.now()),
+                pendingKey(), pendingCountKey());
+        int dailyLimit = couponDO.getDailyLimit() != null ? Math.max(couponDO.getDailyLimit(), 0) : 0;
+
+        // 第一次执行发现未加载时从MySQL加载后重试一次
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Long result = redisTemplate.execute(GRAB, keys, String.valueOf(userId), String.valueOf(dailyLimit),
+                    encodeClaim(claim), String.valueOf(DAILY_TTL_SECONDS), String.valueOf(couponId));
+            if (result == null) {
+                throw new IllegalStateException("领券脚本未返回结果: couponId=" + couponId);
+            }
+            if (result != -1) {
+                return result.intValue();
+            }
+            load(couponId);
+        }
+        log.warn("领券引擎加载优惠券后仍不可用: couponId={}", couponId);
+        return GRAB_NO_STOCK;
+    }
+
+    @Override
+    public int flush() {
+        int batchSize = couponGrabProperties.getFlush().getBatchSize();
+        List<String> entries = redisTemplate.opsForList().range(pendingKey(), 0, batchSize - 1);
+        if (entries == null || entries.isEmpty()) {
+            return 0;
+        }
+
+        List<CouponClaimDTO> claims = new ArrayList<>(entries.size());
+        for (String entry : entries) {
+            CouponClaimDTO claim = decodeClaim(entry);
+            if (claim == null) {
+                log.error("领券引擎丢弃无法解析的领券记录: entry={}", entry);
+                continue;
+            }
+            claims.add(claim);
+        }
+
+        // 上次写入MySQL后未来得及移出队列的记录不再重复写入
+        Set<Long> existingIds = claims.isEmpty() ? Collections.emptySet()
+                : new HashSet<>(couponRecordManager.selectExistingIds(
+                claims.stream().map(CouponClaimDTO::getRecordId).collect(Collectors.toList())));
+        List<CouponClaimDTO> freshClaims = claims.stream()
+                .filter(claim -> !existingIds.contains(claim.getRecordId()))
+                .collect(Collectors.toList());
+
+        List<CouponRecordDO> rejected = new ArrayList<>();
+        if (!freshClaims.isEmpty()) {
+            Map<Long, CouponDO> couponMap = couponManager.listByIds(freshClaims.stream()
+                            .map(CouponClaimDTO::getCouponId).collect(Collectors.toSet())).stream()
+                    .collect(Collectors.toMap(CouponDO::getId, Function.identity()));
+
+            List<CouponRecordDO> records = new ArrayList<>(freshClaims.size());
+            Map<Long, Integer> stockMap = new TreeMap<>();
+            for (CouponClaimDTO claim : freshClaims) {
+                CouponDO couponDO = couponMap.get(claim.getCouponId());
+                if (couponDO == null) {
+                    log.error("领券引擎写入失败，优惠券不存在，需人工处理: claim={}", claim);
+                    continue;
+                }
+                records.add(toCouponRecord(couponDO, claim));
+                stockMap.merge(claim.getCouponId(), 1, Integer::sum);
+            }
+            List<CouponStockDeltaDTO> deltas = stockMap.entrySet().stream()
+                    .map(entry -> new CouponStockDeltaDTO(entry.getKey(), entry.getValue()))
+                    .collect(Collectors.toList());
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    if (!records.isEmpty()) {
+                        couponRecordManager.insertBatch(records);
+                        int rows = couponManager.reduceStockBatch(deltas);
+                        if (rows != deltas.size()) {
+                            throw new StockShortageException(deltas.size(), rows);
+                        }
+                    }
+                });
+            } catch (DuplicateKeyException | StockShortageException e) {
+                // 用户在引擎之外已领取过，或MySQL库存少于Redis（引擎之外扣减过库存），逐条写入并跳过冲突和库存不足的记录
+                log.warn("领券记录批量写入失败，改为逐条写入: count={}, reason={}", records.size(), e.getMessage());
+                for (CouponRecordDO record : records) {
+                    if (!insertOne(record)) {
+                        rejected.add(record);
+                    }
+                }
+            } catch (Exception e) {
+                // 记录仍在待写入队列中，下一轮重试
+                log.error("领券记录写入MySQL失败，等待下一轮重试: count={}", records.size(), e);
+                return 0;
+            }
+        }
+
+        ack(entries.size(), claims);
+        if (!rejected.isEmpty()) {
+            reject(rejected);
+        }
+        log.debug("领券记录写入MySQL完成: count={}, skipped={}", freshClaims.size(), claims.size() - freshClaims.size());
+        return entries.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int syncStock() {
+        int fixed = 0;
+        for (CouponDO couponDO : couponManager.listReceivableCoupons()) {
+            Long couponId = couponDO.getId();
+            List<String> snapshot = redisTemplate.execute(SNAPSHOT,
+                    Arrays.asList(couponKey(couponId), usersKey(couponId), pendingCountKey()), String.valueOf(couponId));
+            if (snapshot == null || snapshot.isEmpty()) {
+                continue;
+            }
+
+            long redisStock = Long.parseLong(snapshot.get(0));
+            long pending = Long.parseLong(snapshot.get(1));
+            long dbStock = couponDO.getStock() != null ? couponDO.getStock() : 0;
+            if (redisStock + pending > dbStock) {
+                fixStock(couponId, dbStock);
+                log.warn("领券引擎Redis库存多于MySQL，以MySQL为准下调: couponId={}, redisStock={}, pending={}, dbStock={}",
+                        couponId, redisStock, pending, dbStock);
+                fixed++;
+            }
+        }
+        return fixed;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void reconcile() {
+        // 先把遗留的领券记录全部写入，之后pending只包含对账期间新领取的记录
+        int batchSize = couponGrabProperties.getFlush().getBatchSize();
+        int flushed;
+        do {
+            flushed = flush();
+        } while (flushed >= batchSize);
+
+        List<CouponDO> coupons = couponManager.listReceivableCoupons();
+        int loaded = 0;
+        int mismatched = 0;
+        for (CouponDO couponDO : coupons) {
+            Long couponId = couponDO.getId();
+            List<String> snapshot = redisTemplate.execute(SNAPSHOT,
+                    Arrays.asList(couponKey(couponId), usersKey(couponId), pendingCountKey()), String.valueOf(couponId));
+            if (snapshot == null || snapshot.isEmpty()) {
+                if (load(couponId)) {
+                    loaded++;
+                }
+                continue;
+            }
+
+            // 回写锁保证MySQL在对账期间不变，并发领取不改变 stock + pending 与 已领用户数 - pending
+            long redisStock = Long.parseLong(snapshot.get(0));
+            long pending = Long.parseLong(snapshot.get(1));
+            long redisUsers = Long.parseLong(snapshot.get(2));
+            long dbStock = couponDO.getStock() != null ? couponDO.getStock() : 0;
+            List<Long> dbUserIds = couponRecordManager.selectUserIdsByCouponId(couponId);
+
+            boolean stockMatched = redisStock + pending == dbStock;
+            boolean usersMatched = redisUsers - pending == dbUserIds.size();
+            if (stockMatched && usersMatched) {
+                continue;
+            }
+
+            mismatched++;
+            if (redisStock + pending > dbStock) {
+                log.error("领券引擎对账-Redis库存多于MySQL，可能超发: couponId={}, redisStock={}, pending={}, dbStock={}",
+                        couponId, redisStock, pending, dbStock);
+            } else if (!stockMatched) {
+                log.warn("领券引擎对账-Redis库存少于MySQL: couponId={}, redisStock={}, pending={}, dbStock={}",
+                        couponId, redisStock, pending, dbStock);
+            }
+            if (!usersMatched) {
+                log.warn("领券引擎对账-已领用户与coupon_record不一致: couponId={}, redisUsers={}, pending={}, dbUsers={}",
+                        couponId, redisUsers, pending, dbUserIds.size());
+            }
+
+            if (Boolean.TRUE.equals(couponGrabProperties.getReconcile().getAutoFix())) {
+                // 已领用户只补不删，避免修正期间放行重复领取
+                addUsers(couponId, dbUserIds);
+                fixStock(couponId, dbStock);
+                log.info("领券引擎对账-以MySQL为准修正: couponId={}, dbStock={}, dbUsers={}", couponId, dbStock, dbUserIds.size());
+            } else if (redisStock + pending > dbStock) {
+                // Redis库存偏多会放行超出MySQL库存的领取，不论是否开启自动修正都下调
+                fixStock(couponId, dbStock);
+                log.info("领券引擎对账-以MySQL为准下调库存: couponId={}, dbStock={}", couponId, dbStock);
+            }
+        }
+
+        log.info("领券引擎对账完成: coupons={}, loaded={}, mismatched={}", coupons.size(), loaded, mismatched);
+    }
+
+    /**
+     * 从MySQL加载优惠券的库存、已领用户和当日发放量，已加载时不覆盖
+     */
+    private boolean load(Long couponId) {
+        synchronized (loadLocks.computeIfAbsent(couponId, id -> new Object())) {
+            if (Boolean.TRUE.equals(redisTemplate.hasKey(couponKey(couponId)))) {
+                return false;
+            }
+
+            CouponDO couponDO = couponManager.getById(couponId);
+            if (couponDO == null) {
+                return false;
+            }
+
+            // 已领用户先于库存写入，库存出现之前领券脚本不会放行任何请求
+            addUsers(couponId, couponRecordManager.selectUserIdsByCouponId(couponId));
+            Long todayCount = couponRecordManager.getTodayReceiveCount(couponId);
+            Long result = redisTemplate.execute(LOAD,
+                    Arrays.asList(couponKey(couponId), usersKey(couponId), dailyKey(couponId, LocalDate.now()), pendingCountKey()),
+                    String.valueOf(couponDO.getStock() != null ? couponDO.getStock() : 0),
+                    String.valueOf(todayCount != null ? todayCount : 0),
+                    String.valueOf(expireAt(couponDO)),
+                    String.valueOf(DAILY_TTL_SECONDS),
+                    String.valueOf(couponId));
+            boolean loaded = Long.valueOf(1).equals(result);
+            if (loaded) {
+                log.info("领券引擎加载优惠券: couponId={}, stock={}, todayCount={}", couponId, couponDO.getStock(), todayCount);
+            }
+            return loaded;
+        }
+    }
+
+    /**
+     * 单条写入领券记录并扣减库存，领取序号冲突时跳过
+     *
+     * @return MySQL库存不足而未写入时返回false
+     */
+    private boolean insertOne(CouponRecordDO record) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                couponRecordManager.insertBatch(List.of(record));
+                if (couponManager.reduceStockBatch(List.of(new CouponStockDeltaDTO(record.getCouponId(), 1))) != 1) {
+                    throw new StockShortageException(1, 0);
+                }
+            });
+        } catch (DuplicateKeyException e) {
+            log.error("领券引擎丢弃重复领取的记录，需人工对账: recordId={}, couponId={}, userId={}",
+                    record.getId(), record.getCouponId(), record.getUserId());
+        } catch (StockShortageException e) {
+            log.error("领券引擎丢弃超出MySQL库存的记录: recordId={}, couponId={}, userId={}",
+                    record.getId(), record.getCouponId(), record.getUserId());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 库存不足未写入的记录从已领用户中移除，用户可以重新领取；再以MySQL为准下调这些优惠券的Redis库存，
+     * 需在ack之后执行，此时pending只包含尚未写入MySQL的记录
+     */
+    private void reject(List<CouponRecordDO> rejected) {
+        Set<Long> couponIds = new TreeSet<>();
+        for (CouponRecordDO record : rejected) {
+            LocalDate claimDay = record.getCreateTime().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+            redisTemplate.execute(REJECT, Arrays.asList(usersKey(record.getCouponId()), dailyKey(record.getCouponId(), claimDay)),
+                    String.valueOf(record.getUserId()));
+            couponIds.add(record.getCouponId());
+        }
+
+        for (CouponDO couponDO : couponManager.listByIds(couponIds)) {
+            long dbStock = couponDO.getStock() != null ? couponDO.getStock() : 0;
+            fixStock(couponDO.getId(), dbStock);
+            log.warn("领券引擎以MySQL为准下调Redis库存: couponId={}, dbStock={}", couponDO.getId(), dbStock);
+        }
+    }
+
+    /**
+     * 以MySQL库存为准修正Redis库存，保留尚未写入的pending
+     */
+    private void fixStock(Long couponId, long dbStock) {
+        redisTemplate.execute(FIX_STOCK, Arrays.asList(couponKey(couponId), pendingCountKey()),
+                String.valueOf(dbStock), String.valueOf(couponId));
+    }
+
+    private void addUsers(Long couponId, List<Long> userIds) {
+        for (int from = 0; from < userIds.size(); from += USER_CHUNK_SIZE) {
+            String[] members = userIds.subList(from, Math.min(from + USER_CHUNK_SIZE, userIds.size())).stream()
+                    .map(String::valueOf)
+                    .toArray(String[]::new);
+            redisTemplate.opsForSet().add(usersKey(couponId), members);
+        }
+    }
+
+    /**
+     * 从待写入队列移除已处理的记录，按优惠券减少pending
+     */
+    private void ack(int count, List<CouponClaimDTO> claims) {
+        Map<Long, Integer> pendingMap = new TreeMap<>();
+        for (CouponClaimDTO claim : claims) {
+            pendingMap.merge(claim.getCouponId(), 1, Integer::sum);
+        }
+
+        Object[] args = new Object[pendingMap.size() * 2 + 1];
+        args[0] = String.valueOf(count);
+        int i = 1;
+        for (Map.Entry<Long, Integer> entry : pendingMap.entrySet()) {
+            args[i++] = String.valueOf(entry.getKey());
+            args[i++] = String.valueOf(entry.getValue());
+        }
+        redisTemplate.execute(ACK, Arrays.asList(pendingKey(), pendingCountKey()), args);
+    }
+
+    /**
+     * Key在领取结束一天后过期，没有领取结束时间时使用优惠券失效时间，都没有时不过期
+     */
+    private long expireAt(CouponDO couponDO) {
+        Date endTime = couponDO.getReceiveEndTime() != null ? couponDO.getReceiveEndTime() : couponDO.getEndTime();
+        if (endTime == null) {
+            return 0;
+        }
+        return Math.max(endTime.getTime(), System.currentTimeMillis()) + KEY_RETAIN_MS;
+    }
+
+    private CouponRecordDO toCouponRecord(CouponDO couponDO, CouponClaimDTO claim) {
+        CouponRecordDO couponRecordDO = new CouponRecordDO();
+        couponRecordDO.setId(claim.getRecordId());
+        couponRecordDO.setCouponId(couponDO.getId());
+        couponRecordDO.setCouponTitle(couponDO.getCouponTitle());
+        couponRecordDO.setPrice(couponDO.getPrice());
+        couponRecordDO.setConditionPrice(couponDO.getConditionPrice());
+        couponRecordDO.setStartTime(couponDO.getStartTime());
+        couponRecordDO.setEndTime(couponDO.getEndTime());
+        couponRecordDO.setUserId(claim.getUserId());
+        couponRecordDO.setUserName(claim.getUserName());
+        couponRecordDO.setUseState(CouponStateEnum.NEW.name());
+        couponRecordDO.setCreateTime(new Date(claim.getCreateTime()));
+        couponRecordDO.setUpdateTime(new Date());
+        couponRecordDO.setReceiveChannel("ACTIVITY");
+        // 引擎中每个用户只能领取一次
+        couponRecordDO.setClaimSeq(1);
+        return couponRecordDO;
+    }
+
+    /**
+     * 领券记录格式：记录ID,优惠券ID,用户ID,领取时间,用户昵称，昵称放在最后以允许包含逗号
+     */
+    private String encodeClaim(CouponClaimDTO claim) {
+        return claim.getRecordId() + "," + claim.getCouponId() + "," + claim.getUserId() + "," + claim.getCreateTime()
+                + "," + (claim.getUserName() != null ? claim.getUserName() : "");
+    }
+
+    private CouponClaimDTO decodeClaim(String entry) {
+        String[] parts = entry.split(",", 5);
+        if (parts.length < 5) {
+            return null;
+        }
+        try {
+            return new CouponClaimDTO(Long.valueOf(parts[0]), Long.valueOf(parts[1]), Long.valueOf(parts[2]),
+                    Long.valueOf(parts[3]), parts[4]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String couponKey(Long couponId) {
+        return couponGrabProperties.getRedis().getKeyPrefix() + "coupon:" + couponId;
+    }
+
+    private String usersKey(Long couponId) {
+        return couponGrabProperties.getRedis().getKeyPrefix() + "users:" + couponId;
+    }
+
+    private String dailyKey(Long couponId, LocalDate day) {
+        return couponGrabProperties.getRedis().getKeyPrefix() + "daily:" + couponId + ":" + day.format(DAY_FORMATTER);
+    }
+
+    private String pendingKey() {
+        return couponGrabProperties.getRedis().getKeyPrefix() + "pending";
+    }
+
+    /**
+     * 各优惠券尚未写入MySQL的记录数，field为优惠券ID
+     */
+    private String pendingCountKey() {
+        return couponGrabProperties.getRedis().getKeyPrefix() + "pending:count";
+    }
+
+    private record CachedCoupon(CouponDO couponDO, long expireAt) {
+    }
+
+    /**
+     * MySQL库存不足，条件扣减的影响行数少于优惠券数，用于回滚本次写入
+     */
+    private static class StockShortageException extends RuntimeException {
+
+        StockShortageException(int expectedRows, int rows) {
+            super("MySQL库存不足: expectedRows=" + expectedRows + ", rows=" + rows);
+        }
+    }
+}
@@ -6,21 +6,31 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import fun.timu.shop.common.enums.CouponCategoryEnum;
 import fun.timu.shop.common.enums.CouponPublishEnum;
+import fun.timu.shop.coupon.config.NewUserBenefitsProperties;
 import fun.timu.shop.coupon.manager.CouponManager;
 import fun.timu.shop.coupon.mapper.CouponMapper;
 import fun.timu.shop.coupon.model.DO.CouponDO;
 import fun.timu.shop.coupon.model.DO.CouponRecordDO;
+import fun.timu.shop.coupon.model.DTO.CouponStockDeltaDTO;
 import org.springframework.stereotype.Component;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
 @Component
 public class CouponManagerImpl extends ServiceImpl<CouponMapper, CouponDO> implements CouponManager {
     private final CouponMapper couponMapper;
+    private final NewUserBenefitsProperties newUserBenefitsProperties;
 
-    public CouponManagerImpl(CouponMapper couponMapper) {
+    /**
+     * 可发放的新用户优惠券本地缓存
+     */
+    private volatile CachedCoupons newUserCoupons;
+
+    public CouponManagerImpl(CouponMapper couponMapper, NewUserBenefitsProperties newUserBenefitsProperties) {
         this.couponMapper = couponMapper;
+        this.newUserBenefitsProperties = newUserBenefitsProperties;
     }
 
     @Override
@@ -55,6 +65,17 @@ public class CouponManagerImpl extends ServiceImpl<CouponMapper, CouponDO> imple
 
     @Override
     public List<CouponDO> getAvailableNewUserCoupons() {
+        CachedCoupons cached = newUserCoupons;
+        if (cached != null && cached.expireAt() > System.currentTimeMillis()) {
+            return cached.coupons();
+        }
+
+        List<CouponDO> coupons = List.copyOf(selectAvailableNewUserCoupons());
+        newUserCoupons = new CachedCoupons(coupons, System.currentTimeMillis() + newUserBenefitsProperties.getCouponCacheMs());
+        return coupons;
+    }
+
+    private List<CouponDO> selectAvailableNewUserCoupons() {
         Date now = new Date();
 
         return couponMapper.selectList(new QueryWrapper<CouponDO>()
@@ -87,4 +108,43 @@ public class CouponManagerImpl extends ServiceImpl<CouponMapper, CouponDO> imple
                 .orderByAsc("id")  // 按ID排序，确保发放顺序一致
         );
     }
+
+    @Override
+    public int reduceStockBatch(List<CouponStockDeltaDTO> deltas) {
+        return couponMapper.reduceStockBatch(deltas);
+    }
+
+    @Override
+    public List<CouponDO> selectStockForUpdate(Collection<Long> couponIds) {
+        return couponMapper.selectStockForUpdate(couponIds);
+    }
+
+    @Override
+    public List<CouponDO> listReceivableCoupons() {
+        Date now = new Date();
+
+        return couponMapper.selectList(new QueryWrapper<CouponDO>()
+                .eq("publish", CouponPublishEnum.PUBLISH.name())
+                .eq("del_flag", 0)
+                .and(wrapper -> wrapper
+                        .isNull("receive_start_time")
+                        .or()
+                        .le("receive_start_time", now)
+                )
+                .and(wrapper -> wrapper
+                        .isNull("receive_end_time")
+                        .or()
+                        .ge("receive_end_time", now)
+                )
+                .and(wrapper -> wrapper
+                        .isNull("end_time")
+                        .or()
+                        .ge("end_time", now)
+                )
+                .orderByAsc("id")
+        );
+    }
+
+    private record CachedCoupons(List<CouponDO> coupons, long expireAt) {
+    }
 }
@@ -15,6 +15,7 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -100,16 +101,6 @@ public class CouponRecordManagerImpl extends ServiceImpl<CouponRecordMapper, Cou
                 .eq("del_flag", 0));
     }
 
-    @Override
-    public int batchUpdateExpiredCoupons() {
-        return couponRecordMapper.update(null, new UpdateWrapper<CouponRecordDO>()
-                .eq("use_state", CouponStateEnum.NEW.name())
-                .lt("end_time", new Date())
-                .eq("del_flag", 0)
-                .set("use_state", CouponStateEnum.EXPIRED.name())
-                .set("update_time", new Date()));
-    }
-
     @Override
     public int lockUseStateBatch(Long userId, String useState, List<Long> lockCouponRecordIds) {
         return couponRecordMapper.lockUseStateBatch(userId, useState, lockCouponRecordIds);
@@ -119,4 +110,51 @@ public class CouponRecordManagerImpl extends ServiceImpl<CouponRecordMapper, Cou
     public void updateState(Long couponRecordId, String useState) {
         couponRecordMapper.updateState(couponRecordId, useState);
     }
+
+    @Override
+    public int releaseUseStateBatch(List<Long> couponRecordIds) {
+        return couponRecordMapper.releaseUseStateBatch(couponRecordIds);
+    }
+
+    @Override
+    public int insertBatch(List<CouponRecordDO> records) {
+        return couponRecordMapper.insertBatch(records);
+    }
+
+    @Override
+    public List<Long> selectExistingIds(Collection<Long> ids) {
+        return couponRecordMapper.selectExistingIds(ids);
+    }
+
+    @Override
+    public List<Long> selectUserIdsByCouponId(Long couponId) {
+        return couponRecordMapper.selectUserIdsByCouponId(couponId);
+    }
+
+    @Override
+    public int selectMaxClaimSeq(Long couponId, Long userId) {
+        Integer maxClaimSeq = couponRecordMapper.selectMaxClaimSeq(couponId, userId);
+        return maxClaimSeq == null ? 0 : maxClaimSeq;
+    }
+
+    @Override
+    public List<CouponRecordDO> selectClaimedRecords(Collection<Long> couponIds, Collection<Long> userIds) {
+        return couponRecordMapper.selectClaimedRecords(couponIds, userIds);
+    }
+
+    @Override
+    public List<CouponRecordDO> selectExpiredAfter(Date now, Date cursorEndTime, Long cursorId, int limit) {
+        return couponRecordMapper.selectExpiredAfter(now, cursorEndTime, cursorId, limit);
+    }
+
+    @Override
+    public int expireByIds(Collection<Long> ids, Date now) {
+        return couponRecordMapper.expireByIds(ids, now);
+    }
+
+    @Override
+    public long countExpired(Date now) {
+        Long count = couponRecordMapper.countExpired(now);
+        return count != null ? count : 0L;
+    }
 }
@@ -1,6 +1,7 @@
 package fun.timu.shop.coupon.manager.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import fun.timu.shop.coupon.manager.CouponTaskManager;
 import fun.timu.shop.coupon.mapper.CouponTaskMapper;
 import fun.timu.shop.coupon.model.DO.CouponTaskDO;
@@ -31,5 +32,22 @@ public class CouponTaskMapperImpl implements CouponTaskManager {
         return row > 0;
     }
 
+    @Override
+    public List<CouponTaskDO> listByOutTradeNo(String outTradeNo, String lockState) {
+        return couponTaskMapper.selectList(new QueryWrapper<CouponTaskDO>()
+                .eq("out_trade_no", outTradeNo)
+                .eq("lock_state", lockState));
+    }
+
+    @Override
+    public int updateLockStateByOutTradeNo(String outTradeNo, String oldLockState, String newLockState) {
+        return couponTaskMapper.update(null,
+                new UpdateWrapper<CouponTaskDO>()
+                        .eq("out_trade_no", outTradeNo)
+                        .eq("lock_state", oldLockState)
+                        .set("lock_state", newLockState)
+        );
+    }
+
 
 }
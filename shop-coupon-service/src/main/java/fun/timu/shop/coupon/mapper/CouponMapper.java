@@ -2,8 +2,12 @@ package fun.timu.shop.coupon.mapper;
 
 import fun.timu.shop.coupon.model.DO.CouponDO;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import fun.timu.shop.coupon.model.DTO.CouponStockDeltaDTO;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * @author zhengke
  * @description 针对表【coupon】的数据库操作Mapper
@@ -25,6 +29,20 @@ public interface CouponMapper extends BaseMapper<CouponDO> {
      * @return 影响行数
      */
     int reduceStockWithLock(@Param("couponId") long couponId);
+
+    /**
+     * 批量扣减库存（领券引擎回写使用，库存校验已在Redis中完成）
+     * @param deltas 库存扣减量，同一优惠券ID只能出现一次
+     * @return 影响行数
+     */
+    int reduceStockBatch(@Param("deltas") List<CouponStockDeltaDTO> deltas);
+
+    /**
+     * 锁定优惠券行并读取最新库存，只返回id、stock和daily_limit
+     * @param couponIds 优惠券ID
+     * @return 优惠券列表
+     */
+    List<CouponDO> selectStockForUpdate(@Param("couponIds") Collection<Long> couponIds);
 }
 
 
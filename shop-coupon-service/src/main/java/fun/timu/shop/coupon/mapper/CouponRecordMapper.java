@@ -4,6 +4,8 @@ import fun.timu.shop.coupon.model.DO.CouponRecordDO;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -18,6 +20,50 @@ public interface CouponRecordMapper extends BaseMapper<CouponRecordDO> {
 
     void updateState(@Param("couponRecordId") Long couponRecordId, @Param("useState") String useState);
 
+    int releaseUseStateBatch(@Param("couponRecordIds") List<Long> couponRecordIds);
+
+    /**
+     * 批量插入领券记录，使用记录中预先生成的ID
+     */
+    int insertBatch(@Param("records") List<CouponRecordDO> records);
+
+    /**
+     * 查询已存在的记录ID，包含逻辑删除的记录
+     */
+    List<Long> selectExistingIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * 查询领取过指定优惠券的用户ID，包含逻辑删除的记录
+     */
+    List<Long> selectUserIdsByCouponId(@Param("couponId") Long couponId);
+
+    /**
+     * 查询用户领取指定优惠券的最大序号，包含逻辑删除的记录，没有记录时返回null
+     */
+    Integer selectMaxClaimSeq(@Param("couponId") Long couponId, @Param("userId") Long userId);
+
+    /**
+     * 查询一批用户已领取的优惠券，只返回coupon_id和user_id，包含逻辑删除的记录
+     */
+    List<CouponRecordDO> selectClaimedRecords(@Param("couponIds") Collection<Long> couponIds,
+                                              @Param("userIds") Collection<Long> userIds);
+
+    /**
+     * 按(end_time, id)游标查询一批已过期仍为NEW的记录，只返回id和end_time
+     */
+    List<CouponRecordDO> selectExpiredAfter(@Param("now") Date now, @Param("cursorEndTime") Date cursorEndTime,
+                                            @Param("cursorId") Long cursorId, @Param("limit") int limit);
+
+    /**
+     * 按ID批量标记过期，只更新仍为NEW且已过期的记录，包含逻辑删除的记录
+     */
+    int expireByIds(@Param("ids") Collection<Long> ids, @Param("now") Date now);
+
+    /**
+     * 统计已过期仍为NEW的记录数，包含逻辑删除的记录
+     */
+    Long countExpired(@Param("now") Date now);
+
 }
 
 
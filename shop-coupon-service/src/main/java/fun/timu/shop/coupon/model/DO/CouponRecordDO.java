@@ -107,6 +107,11 @@ public class CouponRecordDO implements Serializable {
      */
     private Integer delFlag;
 
+    /**
+     * 同一用户领取同一优惠券的序号，从1开始，与coupon_id、user_id组成唯一索引
+     */
+    private Integer claimSeq;
+
     @TableField(exist = false)
     private static final long serialVersionUID = 1L;
 }
\ No newline at end of file
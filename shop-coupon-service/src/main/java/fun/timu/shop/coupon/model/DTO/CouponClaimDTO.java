@@ -0,0 +1,41 @@
+package fun.timu.shop.coupon.model.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 领券引擎的一次成功领取，在Redis待写入队列中等待批量写入coupon_record
+ *
+ * @author zhengke
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CouponClaimDTO {
+
+    /**
+     * 领券记录ID，领取时预先生成，重复写入时据此去重
+     */
+    private Long recordId;
+
+    /**
+     * 优惠券ID
+     */
+    private Long couponId;
+
+    /**
+     * 用户ID
+     */
+    private Long userId;
+
+    /**
+     * 领取时间（毫秒时间戳）
+     */
+    private Long createTime;
+
+    /**
+     * 用户昵称
+     */
+    private String userName;
+}
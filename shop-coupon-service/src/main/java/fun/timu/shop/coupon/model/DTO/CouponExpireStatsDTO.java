@@ -0,0 +1,42 @@
+package fun.timu.shop.coupon.model.DTO;
+
+import lombok.Data;
+
+/**
+ * 领券记录过期标记的单次执行统计
+ *
+ * @author zhengke
+ */
+@Data
+public class CouponExpireStatsDTO {
+
+    /**
+     * 从索引读取的已过期记录数
+     */
+    private long scannedRows;
+
+    /**
+     * 标记为EXPIRED的记录数
+     */
+    private long expiredRows;
+
+    /**
+     * 执行的批次数
+     */
+    private int batches;
+
+    /**
+     * 耗时（毫秒）
+     */
+    private long elapsedMs;
+
+    /**
+     * 是否已遍历到末尾；为false时因时间上限停止，游标已保存
+     */
+    private boolean finished;
+
+    /**
+     * 执行结束后仍未标记的已过期记录数
+     */
+    private long backlog;
+}
@@ -0,0 +1,26 @@
+package fun.timu.shop.coupon.model.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 优惠券库存扣减量，用于领券引擎批量回写MySQL
+ *
+ * @author zhengke
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CouponStockDeltaDTO {
+
+    /**
+     * 优惠券ID
+     */
+    private Long couponId;
+
+    /**
+     * 扣减数量
+     */
+    private Integer count;
+}
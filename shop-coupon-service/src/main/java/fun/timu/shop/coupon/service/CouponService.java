@@ -1,9 +1,12 @@
 package fun.timu.shop.coupon.service;
 
 import fun.timu.shop.common.enums.CouponCategoryEnum;
+import fun.timu.shop.common.model.UserRegisteredMessage;
 import fun.timu.shop.common.util.JsonData;
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author zhengke
@@ -38,6 +41,15 @@ public interface CouponService {
      */
     JsonData grantNewUserBenefits(Long userId);
 
+    /**
+     * 批量发放新用户注册福利
+     * 为一批注册事件中的用户一次性发放所有可用的新用户福利优惠券，已领取的跳过，库存不足时发到库存用完为止
+     *
+     * @param messages 用户注册事件
+     * @return 需要稍后重试的用户ID
+     */
+    Set<Long> grantNewUserBenefitsBatch(List<UserRegisteredMessage> messages);
+
     /**
      * 获取用户优惠券记录
      *
@@ -11,8 +11,6 @@ import fun.timu.shop.common.model.CouponRecordMessage;
 import fun.timu.shop.common.model.LoginUser;
 import fun.timu.shop.common.request.LockCouponRecordRequest;
 import fun.timu.shop.common.util.JsonData;
-import fun.timu.shop.common.util.RabbitMQUtil;
-import fun.timu.shop.coupon.config.RabbitMQConfig;
 import fun.timu.shop.coupon.feign.ProductOrderFeignService;
 import fun.timu.shop.coupon.manager.CouponRecordManager;
 import fun.timu.shop.coupon.manager.CouponTaskManager;
@@ -26,6 +24,7 @@ import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
 
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import java.util.Date;
 import java.util.HashMap;
@@ -44,8 +43,6 @@ import java.util.stream.Collectors;
 public class CouponRecordServiceImpl implements CouponRecordService {
     private final CouponRecordManager recordManager;
     private final CouponTaskManager taskManager;
-    private final RabbitMQUtil rabbitMQUtil;
-    private final RabbitMQConfig rabbitMQConfig;
     private final ProductOrderFeignService feignService;
 
     @Override
@@ -192,8 +189,7 @@ public class CouponRecordServiceImpl implements CouponRecordService {
                 throw new BizException(BizCodeEnum.COUPON_RECORD_LOCK_FAIL);
             }
 
-            // 7. 批量发送延迟消息，优化消息发送性能
-            sendDelayedReleaseMessages(couponTaskDOList, orderOutTradeNo);
+            // 7. 超时释放由订单服务按订单号注册的延迟任务统一触发，不再逐张发送延迟消息
 
             log.info("优惠券记录锁定成功: userId={}, orderOutTradeNo={}, recordCount={}",
                     userId, orderOutTradeNo, lockCouponRecordIds.size());
@@ -209,59 +205,6 @@ public class CouponRecordServiceImpl implements CouponRecordService {
         }
     }
 
-    /**
-     * 批量发送延迟释放消息
-     */
-    private void sendDelayedReleaseMessages(List<CouponTaskDO> couponTaskDOList, String orderOutTradeNo) {
-        int successCount = 0;
-        int failCount = 0;
-        
-        // 30分钟延迟时间（毫秒）
-        Long delayTime = 30 * 60 * 1000L;
-
-        for (CouponTaskDO couponTaskDO : couponTaskDOList) {
-            try {
-                CouponRecordMessage couponRecordMessage = buildCouponRecordMessage(couponTaskDO, orderOutTradeNo);
-
-                // 使用 RabbitMQUtil 发送延迟消息
-                rabbitMQUtil.sendDelayMessage(
-                        rabbitMQConfig.getEventExchange(),
-                        rabbitMQConfig.getCouponReleaseDelayRoutingKey(),
-                        couponRecordMessage,
-                        delayTime
-                );
-
-                successCount++;
-                log.debug("优惠券锁定延迟消息发送成功: taskId={}, recordId={}, delayTime={}ms",
-                        couponTaskDO.getId(), couponTaskDO.getCouponRecordId(), delayTime);
-
-            } catch (Exception e) {
-                failCount++;
-                log.error("优惠券锁定延迟消息发送失败: taskId={}, recordId={}",
-                        couponTaskDO.getId(), couponTaskDO.getCouponRecordId(), e);
-            }
-        }
-
-        log.info("延迟消息发送完成: orderOutTradeNo={}, total={}, success={}, fail={}, delayTime={}ms",
-                orderOutTradeNo, couponTaskDOList.size(), successCount, failCount, delayTime);
-
-        // 如果有消息发送失败，记录警告但不影响主流程
-        if (failCount > 0) {
-            log.warn("部分延迟消息发送失败，可能影响优惠券自动释放: orderOutTradeNo={}, failCount={}",
-                    orderOutTradeNo, failCount);
-        }
-    }
-
-    /**
-     * 构建优惠券记录消息
-     */
-    private CouponRecordMessage buildCouponRecordMessage(CouponTaskDO couponTaskDO, String orderOutTradeNo) {
-        CouponRecordMessage message = new CouponRecordMessage();
-        message.setOutTradeNo(orderOutTradeNo);
-        message.setTaskId(couponTaskDO.getId());
-        return message;
-    }
-
     @Override
     @Transactional(rollbackFor = Exception.class)
     public boolean releaseCouponRecord(CouponRecordMessage recordMessage) {
@@ -271,12 +214,17 @@ public class CouponRecordServiceImpl implements CouponRecordService {
             return true; // 消息为空直接确认，避免重复投递
         }
 
-        if (recordMessage.getTaskId() == null || recordMessage.getOutTradeNo() == null) {
+        if (recordMessage.getOutTradeNo() == null) {
             log.warn("释放优惠券记录消息参数不完整: taskId={}, outTradeNo={}",
                     recordMessage.getTaskId(), recordMessage.getOutTradeNo());
             return true; // 参数不完整直接确认
         }
 
+        // 整单维度的消息，按订单号释放全部锁定的优惠券
+        if (recordMessage.getTaskId() == null) {
+            return releaseCouponRecordByOrder(recordMessage.getOutTradeNo());
+        }
+
         Long taskId = recordMessage.getTaskId();
         String outTradeNo = recordMessage.getOutTradeNo();
 
@@ -309,6 +257,54 @@ public class CouponRecordServiceImpl implements CouponRecordService {
         }
     }
 
+    /**
+     * 按订单号释放优惠券
+     */
+    private boolean releaseCouponRecordByOrder(String outTradeNo) {
+        // 1. 只处理LOCK状态的任务
+        List<CouponTaskDO> taskDOList = taskManager.listByOutTradeNo(outTradeNo, StockTaskStateEnum.LOCK.name());
+        if (taskDOList.isEmpty()) {
+            log.info("订单不存在LOCK状态的优惠券任务，直接确认消息: outTradeNo={}", outTradeNo);
+            return true;
+        }
+
+        // 2. 查询订单状态
+        OrderStateEnum orderState = queryOrderState(outTradeNo);
+        if (orderState == OrderStateEnum.NEW) {
+            log.info("订单状态为NEW，重新投递消息: outTradeNo={}", outTradeNo);
+            return false;
+        }
+
+        if (orderState == OrderStateEnum.PAY) {
+            int rows = taskManager.updateLockStateByOutTradeNo(outTradeNo,
+                    StockTaskStateEnum.LOCK.name(), StockTaskStateEnum.FINISH.name());
+            log.info("订单已支付，优惠券任务状态更新为FINISH: outTradeNo={}, rows={}", outTradeNo, rows);
+            return true;
+        }
+
+        // 3. 订单不存在或已取消，条件更新任务状态保证并发消费时只释放一次
+        int rows = taskManager.updateLockStateByOutTradeNo(outTradeNo,
+                StockTaskStateEnum.LOCK.name(), StockTaskStateEnum.CANCEL.name());
+        if (rows == 0) {
+            log.info("优惠券任务已被其他消费者处理: outTradeNo={}", outTradeNo);
+            return true;
+        }
+        if (rows != taskDOList.size()) {
+            // 部分任务被并发修改，回滚后重新投递，避免按过期的任务列表释放优惠券
+            log.warn("优惠券任务状态已被并发修改，回滚并重新投递: outTradeNo={}, expectedRows={}, rows={}",
+                    outTradeNo, taskDOList.size(), rows);
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return false;
+        }
+
+        // 4. 批量恢复优惠券记录状态为NEW
+        List<Long> couponRecordIds = taskDOList.stream().map(CouponTaskDO::getCouponRecordId).collect(Collectors.toList());
+        int releaseRows = recordManager.releaseUseStateBatch(couponRecordIds);
+        log.info("订单取消，优惠券已释放: outTradeNo={}, taskCount={}, releaseRows={}",
+                outTradeNo, taskDOList.size(), releaseRows);
+        return true;
+    }
+
     /**
      * 查询订单状态
      */
@@ -9,30 +9,46 @@ import fun.timu.shop.common.enums.CouponStateEnum;
 import fun.timu.shop.common.exception.BizException;
 import fun.timu.shop.common.interceptor.LoginInterceptor;
 import fun.timu.shop.common.model.LoginUser;
+import fun.timu.shop.common.model.UserRegisteredMessage;
 import fun.timu.shop.common.util.JsonData;
+import fun.timu.shop.coupon.config.CouponExpireProperties;
+import fun.timu.shop.coupon.config.CouponGrabProperties;
+import fun.timu.shop.coupon.manager.CouponExpireManager;
+import fun.timu.shop.coupon.manager.CouponGrabManager;
 import fun.timu.shop.coupon.manager.CouponManager;
 import fun.timu.shop.coupon.manager.CouponRecordManager;
 import fun.timu.shop.coupon.model.DO.CouponDO;
 import fun.timu.shop.coupon.model.DO.CouponRecordDO;
+import fun.timu.shop.coupon.model.DTO.CouponExpireStatsDTO;
+import fun.timu.shop.coupon.model.DTO.CouponStockDeltaDTO;
 import fun.timu.shop.coupon.model.VO.CouponRecordVO;
 import fun.timu.shop.coupon.model.VO.CouponVO;
 import fun.timu.shop.coupon.service.CouponService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 // 分布式锁相关导入
 import fun.timu.shop.common.components.DistributedLockComponent;
+import fun.timu.shop.common.components.IdGeneratorComponent;
+import fun.timu.shop.common.util.DistributedLock;
 
 import java.util.concurrent.TimeUnit;
 
 import java.math.BigDecimal;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -43,14 +59,35 @@ import java.util.stream.Collectors;
 @Slf4j
 @Service
 public class CouponServiceImpl implements CouponService {
+
+    /**
+     * 过期标记锁的过期时间（秒），持有期间由看门狗续期，实例异常退出后由其他实例接管
+     */
+    private static final long EXPIRE_LOCK_SECONDS = 30;
+
     private final CouponManager couponManager;
     private final CouponRecordManager couponRecordManager;
     private final DistributedLockComponent distributedLockComponent;
-
-    public CouponServiceImpl(CouponManager couponManager, CouponRecordManager couponRecordManager, DistributedLockComponent distributedLockComponent) {
+    private final CouponGrabManager couponGrabManager;
+    private final CouponGrabProperties couponGrabProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final IdGeneratorComponent idGeneratorComponent;
+    private final CouponExpireManager couponExpireManager;
+    private final CouponExpireProperties couponExpireProperties;
+
+    public CouponServiceImpl(CouponManager couponManager, CouponRecordManager couponRecordManager, DistributedLockComponent distributedLockComponent,
+                             CouponGrabManager couponGrabManager, CouponGrabProperties couponGrabProperties,
+                             TransactionTemplate transactionTemplate, IdGeneratorComponent idGeneratorComponent,
+                             CouponExpireManager couponExpireManager, CouponExpireProperties couponExpireProperties) {
         this.couponManager = couponManager;
         this.couponRecordManager = couponRecordManager;
         this.distributedLockComponent = distributedLockComponent;
+        this.couponGrabManager = couponGrabManager;
+        this.couponGrabProperties = couponGrabProperties;
+        this.transactionTemplate = transactionTemplate;
+        this.idGeneratorComponent = idGeneratorComponent;
+        this.couponExpireManager = couponExpireManager;
+        this.couponExpireProperties = couponExpireProperties;
     }
 
     @Override
@@ -152,6 +189,19 @@ public class CouponServiceImpl implements CouponService {
                             userId, coupon.getId(), coupon.getCouponTitle(), error);
                 }
 
+            } catch (BizException e) {
+                // 领券引擎的记录异步写入，预检查可能查不到刚领取的记录，已领取同样视为成功
+                if (e.getCode() == BizCodeEnum.COUPON_OUT_OF_LIMIT.getCode()) {
+                    log.info("用户已经领取过该优惠券，跳过: userId={}, couponId={}", userId, coupon.getId());
+                    successCount++;
+                    continue;
+                }
+                failCount++;
+                String error = String.format("优惠券[%s]发放异常:%s; ",
+                        coupon.getCouponTitle(), e.getMessage());
+                errorDetails.append(error);
+                log.error("新用户优惠券发放异常: userId={}, couponId={}, couponTitle={}",
+                        userId, coupon.getId(), coupon.getCouponTitle(), e);
             } catch (Exception e) {
                 failCount++;
                 String error = String.format("优惠券[%s]发放异常:%s; ",
@@ -203,64 +253,304 @@ public class CouponServiceImpl implements CouponService {
         }
     }
 
+    @Override
+    public Set<Long> grantNewUserBenefitsBatch(List<UserRegisteredMessage> messages) {
+        // 同一批次内重复投递的消息只发放一次
+        Map<Long, String> users = new LinkedHashMap<>();
+        for (UserRegisteredMessage message : messages) {
+            if (message.getUserId() != null) {
+                users.putIfAbsent(message.getUserId(), message.getUserName() != null
+                        ? message.getUserName() : "NEW-USER-" + message.getUserId());
+            }
+        }
+        if (users.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        List<CouponDO> coupons = couponManager.getAvailableNewUserCoupons();
+        if (coupons.isEmpty()) {
+            log.warn("没有找到可用的新用户优惠券: users={}", users.size());
+            return Collections.emptySet();
+        }
+
+        // 领券引擎托管库存时经引擎发放，领券记录由引擎批量写入MySQL
+        if (Boolean.TRUE.equals(couponGrabProperties.getEnabled())) {
+            return grabNewUserCoupons(coupons, users);
+        }
+
+        try {
+            int granted = insertNewUserCoupons(coupons, users);
+            log.info("新用户注册福利批量发放完成: users={}, coupons={}, granted={}", users.size(), coupons.size(), granted);
+            return Collections.emptySet();
+        } catch (DuplicateKeyException e) {
+            // 批次内有用户同时通过领券接口领取，逐个用户重新发放
+            log.warn("新用户注册福利批量发放冲突，改为逐个用户发放: users={}", users.size());
+        }
+
+        Set<Long> failed = new HashSet<>();
+        for (Map.Entry<Long, String> user : users.entrySet()) {
+            try {
+                insertNewUserCoupons(coupons, Map.of(user.getKey(), user.getValue()));
+            } catch (DuplicateKeyException e) {
+                log.warn("新用户注册福利发放冲突，稍后重试: userId={}", user.getKey());
+                failed.add(user.getKey());
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 一个事务内为一批用户发放全部新用户优惠券：锁定优惠券行读取最新库存，一次查询已领取记录，
+     * 一条多行INSERT写入领券记录，一条CASE UPDATE扣减库存；库存或每日限量不足时按用户顺序发到用完为止
+     *
+     * @return 发放的领券记录数
+     */
+    private int insertNewUserCoupons(List<CouponDO> coupons, Map<Long, String> users) {
+        List<Long> couponIds = coupons.stream().map(CouponDO::getId).collect(Collectors.toList());
+
+        Integer granted = transactionTemplate.execute(status -> {
+            Map<Long, CouponDO> lockedCoupons = couponManager.selectStockForUpdate(couponIds).stream()
+                    .collect(Collectors.toMap(CouponDO::getId, coupon -> coupon));
+            Set<String> claimed = couponRecordManager.selectClaimedRecords(couponIds, users.keySet()).stream()
+                    .map(record -> record.getCouponId() + ":" + record.getUserId())
+                    .collect(Collectors.toSet());
+
+            List<CouponRecordDO> records = new ArrayList<>();
+            List<CouponStockDeltaDTO> deltas = new ArrayList<>();
+            for (CouponDO coupon : coupons) {
+                int quota = grantQuota(lockedCoupons.get(coupon.getId()));
+                int count = 0;
+                for (Map.Entry<Long, String> user : users.entrySet()) {
+                    if (claimed.contains(coupon.getId() + ":" + user.getKey())) {
+                        continue;
+                    }
+                    if (count >= quota) {
+                        log.warn("新用户优惠券库存不足，跳过发放: couponId={}, userId={}", coupon.getId(), user.getKey());
+                        continue;
+                    }
+
+                    LoginUser loginUser = new LoginUser();
+                    loginUser.setId(user.getKey());
+                    loginUser.setName(user.getValue());
+                    CouponRecordDO record = buildCouponRecord(coupon, loginUser);
+                    record.setId(idGeneratorComponent.generateId());
+                    record.setClaimSeq(1);
+                    records.add(record);
+                    count++;
+                }
+                if (count > 0) {
+                    deltas.add(new CouponStockDeltaDTO(coupon.getId(), count));
+                }
+            }
+
+            if (!records.isEmpty()) {
+                couponRecordManager.insertBatch(records);
+                // 发放数量不超过锁定时读取的库存，扣减不会失败；失败时抛出异常回滚整批
+                if (couponManager.reduceStockBatch(deltas) != deltas.size()) {
+                    throw new IllegalStateException("新用户优惠券扣减库存未全部生效: deltas=" + deltas);
+                }
+            }
+            return records.size();
+        });
+        return granted != null ? granted : 0;
+    }
+
+    /**
+     * 本批次最多可发放的数量：剩余库存，有每日限量时不超过今日剩余量
+     */
+    private int grantQuota(CouponDO lockedCoupon) {
+        if (lockedCoupon == null || lockedCoupon.getStock() == null) {
+            return 0;
+        }
+        int quota = Math.max(lockedCoupon.getStock(), 0);
+        if (lockedCoupon.getDailyLimit() != null && lockedCoupon.getDailyLimit() > 0) {
+            long todayCount = couponRecordManager.getTodayReceiveCount(lockedCoupon.getId());
+            quota = (int) Math.min(quota, Math.max(lockedCoupon.getDailyLimit() - todayCount, 0));
+        }
+        return quota;
+    }
+
+    /**
+     * 经领券引擎为一批用户发放新用户优惠券，每张券一次Lua脚本调用，已领取的返回超出限领直接跳过
+     *
+     * @return 引擎调用异常、需要稍后重试的用户ID
+     */
+    private Set<Long> grabNewUserCoupons(List<CouponDO> coupons, Map<Long, String> users) {
+        Set<Long> failed = new HashSet<>();
+        int granted = 0;
+        for (Map.Entry<Long, String> user : users.entrySet()) {
+            for (CouponDO coupon : coupons) {
+                try {
+                    int result = couponGrabManager.grab(coupon, user.getKey(), user.getValue());
+                    if (result == CouponGrabManager.GRAB_SUCCESS) {
+                        granted++;
+                    } else if (result != CouponGrabManager.GRAB_OUT_OF_LIMIT) {
+                        log.warn("新用户优惠券库存不足，跳过发放: couponId={}, userId={}, result={}",
+                                coupon.getId(), user.getKey(), result);
+                    }
+                } catch (Exception e) {
+                    log.error("领券引擎发放新用户优惠券异常: couponId={}, userId={}", coupon.getId(), user.getKey(), e);
+                    failed.add(user.getKey());
+                }
+            }
+        }
+        log.info("新用户注册福利批量发放完成: users={}, coupons={}, granted={}, failed={}",
+                users.size(), coupons.size(), granted, failed.size());
+        return failed;
+    }
+
     /**
      * 内部方法：领取优惠券的核心逻辑
      */
     @Transactional(rollbackFor = Exception.class)
     protected JsonData addCouponInternal(long couponId, CouponCategoryEnum category, LoginUser loginUser) {
-        // 使用组合锁key，锁定用户和优惠券
+        if (Boolean.TRUE.equals(couponGrabProperties.getEnabled())) {
+            return grabCoupon(couponId, category, loginUser);
+        }
+        return claimCouponWithFallback(couponId, category, loginUser);
+    }
+
+    /**
+     * 按MySQL领券，开启兜底时在用户级分布式锁内执行
+     */
+    private JsonData claimCouponWithFallback(long couponId, CouponCategoryEnum category, LoginUser loginUser) {
+        if (!Boolean.TRUE.equals(couponGrabProperties.getLockFallback())) {
+            return claimCoupon(couponId, category, loginUser);
+        }
+
+        // 兜底：使用组合锁key，串行同一用户对同一优惠券的领取
         String combinedLockKey = String.format("coupon:combined:%d:%d", couponId, loginUser.getId());
 
         try {
-            return distributedLockComponent.executeWithLock(combinedLockKey, 2, 6, TimeUnit.SECONDS, () -> {
-                        // 1. 检查用户是否已领取过该优惠券
-                        Long recordCount = couponRecordManager.selectCount(couponId, loginUser.getId());
-                        if (recordCount > 0) {
-                            throw new BizException(BizCodeEnum.COUPON_OUT_OF_LIMIT);
-                        }
-
-                        // 2. 获取优惠券信息并进行校验
-                        CouponDO couponDO = couponManager.selectOne(couponId, category.name());
-                        checkCoupon(couponDO, loginUser.getId());
-
-                        // 3. 扣减库存（使用数据库悲观锁）
-                        int rows = couponManager.reduceStockWithLock(couponId);
-                        if (rows <= 0) {
-                            log.warn("优惠券库存不足，发放失败. couponId:{}, userId:{}", couponId, loginUser.getId());
-                            throw new BizException(BizCodeEnum.COUPON_NO_STOCK);
-                        }
-
-                        // 4. 构建并保存领券记录
-                        CouponRecordDO couponRecordDO = buildCouponRecord(couponDO, loginUser);
-                        couponRecordManager.insert(couponRecordDO);
-
-                        log.info("用户领取优惠券成功. couponId:{}, userId:{}", couponId, loginUser.getId());
-                        return JsonData.buildSuccess();
-                    });
+            return distributedLockComponent.executeWithLock(combinedLockKey, 2, 6, TimeUnit.SECONDS,
+                    () -> claimCoupon(couponId, category, loginUser));
         } catch (Exception e) {
             log.error("领取优惠券异常. couponId:{}, userId:{}", couponId, loginUser.getId(), e);
             if (e instanceof BizException) {
                 throw e;
             }
+            // 锁内抛出的业务异常会被包装一层
+            if (e.getCause() instanceof BizException) {
+                throw (BizException) e.getCause();
+            }
             throw new BizException(BizCodeEnum.COUPON_GET_FAIL);
         }
     }
 
-    private void checkCoupon(CouponDO couponDO, Long userId) {
-        if (couponDO == null) {
+    /**
+     * 按MySQL领券，不加锁：已领取数量达到每人限领张数时拒绝，领取序号为包含逻辑删除记录在内的最大序号+1，
+     * 与coupon_id、user_id组成唯一索引，同一用户的并发请求读到相同序号时只有一个能插入成功；
+     * 库存使用带条件的UPDATE扣减并放在最后，缩短coupon行锁的持有时间，库存不足时回滚已插入的记录
+     */
+    private JsonData claimCoupon(long couponId, CouponCategoryEnum category, LoginUser loginUser) {
+        return transactionTemplate.execute(status -> {
+            // 1. 获取优惠券信息并进行校验
+            CouponDO couponDO = couponManager.selectOne(couponId, category.name());
+            checkCoupon(couponDO);
+
+            // 2. 检查用户已领取数量是否达到每人限领张数；唯一索引包含逻辑删除的记录，领取序号从全部记录的最大序号往后取
+            Long recordCount = couponRecordManager.selectCount(couponId, loginUser.getId());
+            if (recordCount >= userLimit(couponDO)) {
+                throw new BizException(BizCodeEnum.COUPON_OUT_OF_LIMIT);
+            }
+            int claimSeq = couponRecordManager.selectMaxClaimSeq(couponId, loginUser.getId()) + 1;
+
+            // 3. 保存领券记录，并发的重复领取在这里插入冲突
+            CouponRecordDO couponRecordDO = buildCouponRecord(couponDO, loginUser);
+            couponRecordDO.setClaimSeq(claimSeq);
+            try {
+                couponRecordManager.insert(couponRecordDO);
+            } catch (DuplicateKeyException e) {
+                log.info("重复领取优惠券被唯一索引拦截. couponId:{}, userId:{}", couponId, loginUser.getId());
+                throw new BizException(BizCodeEnum.COUPON_OUT_OF_LIMIT);
+            }
+
+            // 4. 扣减库存（带库存条件的UPDATE）
+            int rows = couponManager.reduceStockWithLock(couponId);
+            if (rows <= 0) {
+                log.warn("优惠券库存不足，发放失败. couponId:{}, userId:{}", couponId, loginUser.getId());
+                throw new BizException(BizCodeEnum.COUPON_NO_STOCK);
+            }
+
+            log.info("用户领取优惠券成功. couponId:{}, userId:{}", couponId, loginUser.getId());
+            return JsonData.buildSuccess();
+        });
+    }
+
+    /**
+     * Redis领券引擎：发布状态和时间在本地缓存的优惠券定义上校验，
+     * 已领取、每日限量和库存在一次Lua脚本中校验并扣减，领券记录异步写入MySQL；
+     * 引擎只支持每人一张，每人可领多张的优惠券仍按MySQL领取
+     */
+    private JsonData grabCoupon(long couponId, CouponCategoryEnum category, LoginUser loginUser) {
+        CouponDO couponDO = couponGrabManager.getCoupon(couponId);
+        if (couponDO == null || !category.name().equals(couponDO.getCategory())) {
             throw new BizException(BizCodeEnum.COUPON_NO_EXITS);
         }
+        if (userLimit(couponDO) > 1) {
+            return claimCouponWithFallback(couponId, category, loginUser);
+        }
+        checkCouponRule(couponDO);
 
-        // 判断是否是发布状态
-        if (!CouponPublishEnum.PUBLISH.name().equals(couponDO.getPublish())) {
+        int result;
+        try {
+            result = couponGrabManager.grab(couponDO, loginUser.getId(), loginUser.getName());
+        } catch (Exception e) {
+            log.error("领取优惠券异常. couponId:{}, userId:{}", couponId, loginUser.getId(), e);
             throw new BizException(BizCodeEnum.COUPON_GET_FAIL);
         }
 
+        switch (result) {
+            case CouponGrabManager.GRAB_SUCCESS:
+                log.info("用户领取优惠券成功. couponId:{}, userId:{}", couponId, loginUser.getId());
+                return JsonData.buildSuccess();
+            case CouponGrabManager.GRAB_OUT_OF_LIMIT:
+                throw new BizException(BizCodeEnum.COUPON_OUT_OF_LIMIT);
+            default:
+                // 库存不足与超过每日限量沿用同一错误码
+                log.warn("优惠券库存不足，发放失败. couponId:{}, userId:{}, result:{}", couponId, loginUser.getId(), result);
+                throw new BizException(BizCodeEnum.COUPON_NO_STOCK);
+        }
+    }
+
+    /**
+     * 每人限领张数，未配置时每人限领一张
+     */
+    private int userLimit(CouponDO couponDO) {
+        return couponDO.getUserLimit() != null && couponDO.getUserLimit() > 0 ? couponDO.getUserLimit() : 1;
+    }
+
+    private void checkCoupon(CouponDO couponDO) {
+        checkCouponRule(couponDO);
+
         // 库存是否足够
         if (couponDO.getStock() <= 0) {
             throw new BizException(BizCodeEnum.COUPON_NO_STOCK);
         }
 
+        // 检查每日限量
+        if (couponDO.getDailyLimit() != null && couponDO.getDailyLimit() > 0) {
+            // 需要查询今日已发放数量
+            Long todayCount = couponRecordManager.getTodayReceiveCount(couponDO.getId());
+            if (todayCount >= couponDO.getDailyLimit()) {
+                throw new BizException(BizCodeEnum.COUPON_NO_STOCK);
+            }
+        }
+    }
+
+    /**
+     * 校验优惠券是否存在、已发布以及领取和使用时间，不依赖领取记录和库存
+     */
+    private void checkCouponRule(CouponDO couponDO) {
+        if (couponDO == null) {
+            throw new BizException(BizCodeEnum.COUPON_NO_EXITS);
+        }
+
+        // 判断是否是发布状态
+        if (!CouponPublishEnum.PUBLISH.name().equals(couponDO.getPublish())) {
+            throw new BizException(BizCodeEnum.COUPON_GET_FAIL);
+        }
+
         // 检查领取时间范围（优先检查领取时间）
         Date now = new Date();
         if (couponDO.getReceiveStartTime() != null && now.before(couponDO.getReceiveStartTime())) {
@@ -277,23 +567,6 @@ public class CouponServiceImpl implements CouponService {
             }
         }
 
-        // 检查每日限量
-        if (couponDO.getDailyLimit() != null && couponDO.getDailyLimit() > 0) {
-            // 需要查询今日已发放数量
-            Long todayCount = couponRecordManager.getTodayReceiveCount(couponDO.getId());
-            if (todayCount >= couponDO.getDailyLimit()) {
-                throw new BizException(BizCodeEnum.COUPON_NO_STOCK);
-            }
-        }
-
-        // 用户是否超过限制
-        if (couponDO.getUserLimit() != null && couponDO.getUserLimit() > 0) {
-            Long recordNum = couponRecordManager.selectCount(couponDO.getId(), userId);
-            if (recordNum >= couponDO.getUserLimit()) {
-                throw new BizException(BizCodeEnum.COUPON_OUT_OF_LIMIT);
-            }
-        }
-
         // 检查是否仅限首单用户（需要查询用户订单记录）
         if (couponDO.getFirstOrderOnly() != null && couponDO.getFirstOrderOnly() == 1) {
             // 这里需要调用订单服务检查用户是否有历史订单
@@ -407,11 +680,25 @@ public class CouponServiceImpl implements CouponService {
 
     /**
      * 定时任务：批量更新过期优惠券
+     * 分批标记，每批一个短事务；多实例时只由获得锁的实例执行，锁由看门狗续期
      */
-    @Transactional(rollbackFor = Exception.class)
+    @Override
     public void batchUpdateExpiredCoupons() {
-        int count = couponRecordManager.batchUpdateExpiredCoupons();
-        log.info("批量更新过期优惠券完成，共更新{}条记录", count);
+        DistributedLock lock = distributedLockComponent.createWatchdogLock(couponExpireProperties.getLockKey(),
+                EXPIRE_LOCK_SECONDS, TimeUnit.SECONDS);
+        if (!lock.tryLock()) {
+            log.debug("其他实例正在更新过期优惠券，跳过本次执行");
+            return;
+        }
+
+        try {
+            CouponExpireStatsDTO stats = couponExpireManager.sweep();
+            log.info("批量更新过期优惠券完成: expired={}, scanned={}, batches={}, finished={}, backlog={}, 耗时={}ms",
+                    stats.getExpiredRows(), stats.getScannedRows(), stats.getBatches(), stats.isFinished(),
+                    stats.getBacklog(), stats.getElapsedMs());
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -0,0 +1,328 @@
+package fun.timu.shop.coupon.manager;
+
+import fun.timu.shop.common.components.IdGeneratorComponent;
+import fun.timu.shop.coupon.config.CouponGrabProperties;
+import fun.timu.shop.coupon.manager.impl.CouponGrabManagerImpl;
+import fun.timu.shop.coupon.model.DO.CouponDO;
+import fun.timu.shop.coupon.model.DO.CouponRecordDO;
+import fun.timu.shop.coupon.model.DTO.CouponStockDeltaDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 领券引擎防超发校验：领取成功数、coupon_record记录数都不超过MySQL库存，stock + pending 始终等于MySQL库存
+ * MySQL以内存表模拟，条件扣减和事务回滚与 CouponMapper.reduceStockBatch 一致；需要本地Redis，使用 -Dcoupon.grab.test=true 开启
+ *
+ * @author zhengke
+ */
+@EnabledIfSystemProperty(named = "coupon.grab.test", matches = "true")
+public class CouponGrabManagerTest {
+
+    private static final long COUPON_ID = 1L;
+    private static final long USER_ID_BASE = 9_000_000_000L;
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private CouponGrabProperties properties;
+    private InMemoryCouponDb db;
+    private CouponGrabManagerImpl couponGrabManager;
+
+    @BeforeEach
+    public void setUp() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                System.getProperty("coupon.grab.test.redisHost", "127.0.0.1"),
+                Integer.getInteger("coupon.grab.test.redisPort", 6379)));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+
+        properties = new CouponGrabProperties();
+        properties.getRedis().setKeyPrefix("coupon:{grabtest" + System.nanoTime() + "}:");
+        properties.getFlush().setBatchSize(20);
+
+        db = new InMemoryCouponDb();
+        couponGrabManager = new CouponGrabManagerImpl(connectionFactory, db.couponManager(), db.couponRecordManager(),
+                idGenerator(), new TransactionTemplate(db), properties);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        Set<String> keys = redisTemplate.keys(properties.getRedis().getKeyPrefix() + "*");
+        if (keys != null && !keys.isEmpty()) {
+            redisTemplate.delete(keys);
+        }
+        connectionFactory.destroy();
+    }
+
+    @Test
+    public void testConcurrentGrabNeverExceedsStock() throws InterruptedException {
+        db.createCoupon(50);
+
+        int success = grabConcurrently(0, 200);
+        flushAll();
+
+        assertEquals(50, success, "领取成功数等于库存");
+        assertEquals(50, db.records.size(), "写入的记录数等于库存");
+        assertEquals(0, db.stock(COUPON_ID));
+        assertEquals(50, db.records.values().stream().map(CouponRecordDO::getUserId).distinct().count(), "每个用户只领一张");
+        assertRedisMatchesDb();
+    }
+
+    @Test
+    public void testStaleRedisStockRejectedAtFlush() throws InterruptedException {
+        db.createCoupon(10);
+        assertEquals(1, grabConcurrently(0, 1));
+        flushAll();
+
+        // 引擎之外扣减了MySQL库存，Redis中仍为9
+        db.setStock(COUPON_ID, 3);
+        assertEquals(9, grabConcurrently(1, 10));
+        flushAll();
+
+        assertEquals(4, db.records.size(), "只写入MySQL库存允许的记录");
+        assertEquals(0, db.stock(COUPON_ID));
+        assertRedisMatchesDb();
+
+        List<Long> writtenUsers = db.records.values().stream().map(CouponRecordDO::getUserId).collect(Collectors.toList());
+        long rejectedUser = 0;
+        for (long userId = USER_ID_BASE + 1; userId < USER_ID_BASE + 10; userId++) {
+            if (!writtenUsers.contains(userId)) {
+                rejectedUser = userId;
+                assertFalse(Boolean.TRUE.equals(redisTemplate.opsForSet().isMember(usersKey(), String.valueOf(userId))),
+                        "未写入的用户从已领用户中移除");
+            }
+        }
+        assertEquals(CouponGrabManager.GRAB_NO_STOCK, couponGrabManager.grab(db.coupon(COUPON_ID), rejectedUser, "test"),
+                "Redis库存已按MySQL下调");
+    }
+
+    @Test
+    public void testSyncStockLowersStaleRedisStock() throws InterruptedException {
+        db.createCoupon(10);
+        assertEquals(1, grabConcurrently(0, 1));
+        flushAll();
+
+        db.setStock(COUPON_ID, 4);
+        assertEquals(1, couponGrabManager.syncStock());
+        assertEquals(0, couponGrabManager.syncStock(), "已一致时不再修正");
+        assertRedisMatchesDb();
+        assertEquals(4, grabConcurrently(1, 10));
+    }
+
+    @Test
+    public void testReloadAfterKeyExpiryCountsQueuedClaims() throws InterruptedException {
+        db.createCoupon(10);
+        assertEquals(3, grabConcurrently(0, 3));
+
+        // 优惠券Hash过期，队列中还有3条尚未写入的记录
+        redisTemplate.delete(couponKey());
+        assertEquals(7, grabConcurrently(3, 20));
+        flushAll();
+
+        assertEquals(10, db.records.size());
+        assertEquals(0, db.stock(COUPON_ID));
+        assertRedisMatchesDb();
+    }
+
+    private int grabConcurrently(int from, int to) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(to - from, 50));
+        CountDownLatch doneLatch = new CountDownLatch(to - from);
+        AtomicInteger success = new AtomicInteger();
+        for (int i = from; i < to; i++) {
+            long userId = USER_ID_BASE + i;
+            executor.submit(() -> {
+                try {
+                    if (couponGrabManager.grab(db.coupon(COUPON_ID), userId, "user-" + userId) == CouponGrabManager.GRAB_SUCCESS) {
+                        success.incrementAndGet();
+                    }
+                } finally {
+                    doneLatch.countDown();
+                }
+            });
+        }
+        doneLatch.await();
+        executor.shutdown();
+        return success.get();
+    }
+
+    private void flushAll() {
+        while (couponGrabManager.flush() > 0) {
+            assertTrue(db.stock(COUPON_ID) >= 0, "MySQL库存不能为负");
+        }
+    }
+
+    private void assertRedisMatchesDb() {
+        long stock = Long.parseLong((String) redisTemplate.opsForHash().get(couponKey(), "stock"));
+        Object pendingValue = redisTemplate.opsForHash().get(pendingCountKey(), String.valueOf(COUPON_ID));
+        long pending = pendingValue != null ? Long.parseLong((String) pendingValue) : 0;
+        assertEquals(db.stock(COUPON_ID), stock + pending, "stock + pending 等于MySQL库存");
+    }
+
+    private String couponKey() {
+        return properties.getRedis().getKeyPrefix() + "coupon:" + COUPON_ID;
+    }
+
+    private String pendingCountKey() {
+        return properties.getRedis().getKeyPrefix() + "pending:count";
+    }
+
+    private String usersKey() {
+        return properties.getRedis().getKeyPrefix() + "users:" + COUPON_ID;
+    }
+
+    private static IdGeneratorComponent idGenerator() {
+        AtomicLong ids = new AtomicLong(1);
+        IdGeneratorComponent idGenerator = mock(IdGeneratorComponent.class);
+        when(idGenerator.generateId()).thenAnswer(invocation -> ids.getAndIncrement());
+        return idGenerator;
+    }
+
+    /**
+     * 内存中的coupon、coupon_record，事务开始时保存快照，回滚时恢复
+     */
+    private static class InMemoryCouponDb implements PlatformTransactionManager {
+
+        private final Map<Long, Integer> stocks = new HashMap<>();
+        private final Map<Long, CouponRecordDO> records = new LinkedHashMap<>();
+        private Map<Long, Integer> stockSnapshot;
+        private Map<Long, CouponRecordDO> recordSnapshot;
+
+        synchronized void createCoupon(int stock) {
+            stocks.put(COUPON_ID, stock);
+        }
+
+        synchronized void setStock(Long couponId, int stock) {
+            stocks.put(couponId, stock);
+        }
+
+        synchronized int stock(Long couponId) {
+            return stocks.get(couponId);
+        }
+
+        synchronized CouponDO coupon(Long couponId) {
+            CouponDO couponDO = new CouponDO();
+            couponDO.setId(couponId);
+            couponDO.setCouponTitle("防超发校验");
+            couponDO.setStock(stocks.get(couponId));
+            couponDO.setDailyLimit(0);
+            return couponDO;
+        }
+
+        @SuppressWarnings("unchecked")
+        CouponManager couponManager() {
+            CouponManager couponManager = mock(CouponManager.class);
+            when(couponManager.getById(anyLong())).thenAnswer(invocation -> coupon(invocation.getArgument(0)));
+            when(couponManager.listByIds(any())).thenAnswer(invocation -> ((Collection<Long>) invocation.getArgument(0)).stream()
+                    .map(this::coupon)
+                    .collect(Collectors.toList()));
+            when(couponManager.listReceivableCoupons()).thenAnswer(invocation -> List.of(coupon(COUPON_ID)));
+            when(couponManager.reduceStockBatch(anyList())).thenAnswer(invocation -> reduceStock(invocation.getArgument(0)));
+            return couponManager;
+        }
+
+        CouponRecordManager couponRecordManager() {
+            CouponRecordManager couponRecordManager = mock(CouponRecordManager.class);
+            when(couponRecordManager.selectExistingIds(any())).thenAnswer(invocation -> existingIds(invocation.getArgument(0)));
+            when(couponRecordManager.insertBatch(anyList())).thenAnswer(invocation -> insert(invocation.getArgument(0)));
+            when(couponRecordManager.selectUserIdsByCouponId(anyLong())).thenAnswer(invocation -> userIds(invocation.getArgument(0)));
+            when(couponRecordManager.getTodayReceiveCount(anyLong())).thenReturn(0L);
+            return couponRecordManager;
+        }
+
+        /**
+         * 与 reduceStockBatch 相同：只扣减 stock >= 扣减量 的优惠券
+         */
+        private synchronized int reduceStock(List<CouponStockDeltaDTO> deltas) {
+            int rows = 0;
+            for (CouponStockDeltaDTO delta : deltas) {
+                int stock = stocks.getOrDefault(delta.getCouponId(), 0);
+                if (stock >= delta.getCount()) {
+                    stocks.put(delta.getCouponId(), stock - delta.getCount());
+                    rows++;
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * 与uk_coupon_user_seq一致，同一用户同一优惠券同一序号冲突
+         */
+        private synchronized int insert(List<CouponRecordDO> batch) {
+            for (CouponRecordDO record : batch) {
+                boolean duplicate = records.values().stream().anyMatch(existing ->
+                        existing.getCouponId().equals(record.getCouponId())
+                                && existing.getUserId().equals(record.getUserId())
+                                && existing.getClaimSeq().equals(record.getClaimSeq()));
+                if (duplicate || records.containsKey(record.getId())) {
+                    throw new DuplicateKeyException("uk_coupon_user_seq");
+                }
+                records.put(record.getId(), record);
+            }
+            return batch.size();
+        }
+
+        private synchronized List<Long> existingIds(Collection<Long> ids) {
+            return ids.stream().filter(records::containsKey).collect(Collectors.toList());
+        }
+
+        private synchronized List<Long> userIds(Long couponId) {
+            return records.values().stream()
+                    .filter(record -> record.getCouponId().equals(couponId))
+                    .map(CouponRecordDO::getUserId)
+                    .distinct()
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public synchronized TransactionStatus getTransaction(TransactionDefinition definition) {
+            stockSnapshot = new HashMap<>(stocks);
+            recordSnapshot = new LinkedHashMap<>(records);
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public synchronized void commit(TransactionStatus status) {
+            stockSnapshot = null;
+            recordSnapshot = null;
+        }
+
+        @Override
+        public synchronized void rollback(TransactionStatus status) {
+            stocks.clear();
+            stocks.putAll(stockSnapshot);
+            records.clear();
+            records.putAll(recordSnapshot);
+        }
+    }
+}
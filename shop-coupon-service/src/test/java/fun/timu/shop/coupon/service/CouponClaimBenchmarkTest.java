@@ -0,0 +1,265 @@
+package fun.timu.shop.coupon.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import fun.timu.shop.common.components.DistributedLockComponent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MySQL领券路径压测：用户级分布式锁 与 唯一索引幂等
+ * 每个用户同时发起两次领取，统计 p50/p99 延迟和吞吐量，并校验每个用户只领到一张、库存扣减数等于领取数
+ * 需要本地Redis和MySQL（coupon_record已创建uk_coupon_user_seq），使用 -Dcoupon.benchmark=true 开启
+ *
+ * @author zhengke
+ */
+@EnabledIfSystemProperty(named = "coupon.benchmark", matches = "true")
+public class CouponClaimBenchmarkTest {
+
+    private static final int CLAIMER_COUNT = Integer.getInteger("coupon.benchmark.claimers", 1000);
+    private static final int POOL_SIZE = Integer.getInteger("coupon.benchmark.poolSize", 20);
+    private static final long USER_ID_BASE = 9_000_000_000L;
+
+    private LettuceConnectionFactory connectionFactory;
+    private DistributedLockComponent distributedLockComponent;
+    private HikariDataSource dataSource;
+    private long couponId;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                System.getProperty("coupon.benchmark.redisHost", "127.0.0.1"),
+                Integer.getInteger("coupon.benchmark.redisPort", 6379)));
+        connectionFactory.afterPropertiesSet();
+        StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        distributedLockComponent = new DistributedLockComponent(redisTemplate);
+
+        // 连接池大小与服务默认配置同量级，模拟请求线程争用连接
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(System.getProperty("coupon.benchmark.jdbcUrl",
+                "jdbc:mysql://localhost:3306/shop_coupon?useSSL=false&serverTimezone=Asia/Shanghai&allowPublicKeyRetrieval=true"));
+        dataSource.setUsername(System.getProperty("coupon.benchmark.jdbcUser", "root"));
+        dataSource.setPassword(System.getProperty("coupon.benchmark.jdbcPassword", "123456"));
+        dataSource.setMaximumPoolSize(POOL_SIZE);
+        dataSource.setConnectionTimeout(30_000);
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO coupon (category, publish, coupon_title, price, user_limit, publish_count, stock, " +
+                             "condition_price, create_time, del_flag) VALUES ('PROMOTION', 'PUBLISH', '领券压测', 1.00, 1, ?, ?, 0, NOW(), 0)",
+                     Statement.RETURN_GENERATED_KEYS)) {
+            statement.setInt(1, CLAIMER_COUNT);
+            statement.setInt(2, CLAIMER_COUNT);
+            statement.executeUpdate();
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                keys.next();
+                couponId = keys.getLong(1);
+            }
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM coupon_record WHERE coupon_id = ?")) {
+                statement.setLong(1, couponId);
+                statement.executeUpdate();
+            }
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM coupon WHERE id = ?")) {
+                statement.setLong(1, couponId);
+                statement.executeUpdate();
+            }
+        }
+        dataSource.close();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    public void testLockedClaim() throws Exception {
+        AtomicInteger lockFailed = new AtomicInteger();
+        Result result = runClaimers(userId -> {
+            try {
+                return distributedLockComponent.executeWithLock(
+                        String.format("coupon:combined:%d:%d", couponId, userId), 2, 6, TimeUnit.SECONDS,
+                        () -> claim(userId));
+            } catch (RuntimeException e) {
+                lockFailed.incrementAndGet();
+                return false;
+            }
+        });
+
+        result.print("分布式锁领券");
+        System.out.println("  获取锁失败=" + lockFailed.get());
+        verify(result);
+    }
+
+    @Test
+    public void testLockFreeClaim() throws Exception {
+        Result result = runClaimers(this::claim);
+
+        result.print("唯一索引领券");
+        verify(result);
+    }
+
+    /**
+     * 与 CouponServiceImpl.claimCoupon 相同的语句：查询优惠券、查询已领取数量、插入记录、带条件扣减库存
+     */
+    private boolean claim(long userId) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                boolean claimed = claimInTransaction(connection, userId);
+                if (claimed) {
+                    connection.commit();
+                } else {
+                    connection.rollback();
+                }
+                return claimed;
+            } catch (SQLIntegrityConstraintViolationException e) {
+                connection.rollback();
+                return false;
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean claimInTransaction(Connection connection, long userId) throws Exception {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT stock FROM coupon WHERE id = ? AND category = 'PROMOTION' AND del_flag = 0")) {
+            statement.setLong(1, couponId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next() || resultSet.getInt(1) <= 0) {
+                    return false;
+                }
+            }
+        }
+
+        long recordCount;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT COUNT(*) FROM coupon_record WHERE coupon_id = ? AND user_id = ? AND del_flag = 0")) {
+            statement.setLong(1, couponId);
+            statement.setLong(2, userId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                recordCount = resultSet.getLong(1);
+            }
+        }
+        if (recordCount > 0) {
+            return false;
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO coupon_record (coupon_id, user_id, user_name, coupon_title, use_state, create_time, " +
+                        "receive_channel, del_flag, claim_seq) VALUES (?, ?, 'benchmark', '领券压测', 'NEW', NOW(), 'ACTIVITY', 0, ?)")) {
+            statement.setLong(1, couponId);
+            statement.setLong(2, userId);
+            statement.setLong(3, recordCount + 1);
+            statement.executeUpdate();
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE coupon SET stock = stock - 1 WHERE id = ? AND stock > 0")) {
+            statement.setLong(1, couponId);
+            return statement.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * 每个用户对应两个并发领取者，全部就绪后同时开始
+     */
+    private Result runClaimers(ClaimAction action) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(CLAIMER_COUNT);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch doneLatch = new CountDownLatch(CLAIMER_COUNT);
+        long[] latencies = new long[CLAIMER_COUNT];
+        AtomicInteger success = new AtomicInteger();
+
+        for (int i = 0; i < CLAIMER_COUNT; i++) {
+            int index = i;
+            long userId = USER_ID_BASE + i / 2;
+            executor.submit(() -> {
+                try {
+                    startLatch.await();
+                    long start = System.nanoTime();
+                    if (action.claim(userId)) {
+                        success.incrementAndGet();
+                    }
+                    latencies[index] = System.nanoTime() - start;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    doneLatch.countDown();
+                }
+            });
+        }
+
+        long startTime = System.nanoTime();
+        startLatch.countDown();
+        doneLatch.await();
+        long durationNanos = System.nanoTime() - startTime;
+        executor.shutdown();
+
+        Arrays.sort(latencies);
+        return new Result(success.get(), durationNanos, latencies);
+    }
+
+    private void verify(Result result) throws Exception {
+        int users = (CLAIMER_COUNT + 1) / 2;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT (SELECT COUNT(*) FROM coupon_record WHERE coupon_id = ?), " +
+                             "(SELECT COUNT(DISTINCT user_id) FROM coupon_record WHERE coupon_id = ?), " +
+                             "(SELECT stock FROM coupon WHERE id = ?)")) {
+            statement.setLong(1, couponId);
+            statement.setLong(2, couponId);
+            statement.setLong(3, couponId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                int records = resultSet.getInt(1);
+                int distinctUsers = resultSet.getInt(2);
+                int stock = resultSet.getInt(3);
+                assertEquals(result.success(), records, "领取成功数应该等于领券记录数");
+                assertEquals(records, distinctUsers, "每个用户最多只能领到一张");
+                assertEquals(CLAIMER_COUNT - records, stock, "库存扣减数应该等于领券记录数");
+                assertTrue(records <= users);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ClaimAction {
+        boolean claim(long userId);
+    }
+
+    private record Result(int success, long durationNanos, long[] sortedLatencies) {
+
+        void print(String name) {
+            long p50 = sortedLatencies[(int) (sortedLatencies.length * 0.50)];
+            long p99 = sortedLatencies[Math.min((int) (sortedLatencies.length * 0.99), sortedLatencies.length - 1)];
+            System.out.printf("%s: 领取者=%d, 成功=%d, 耗时=%dms, 吞吐量=%d 次/s, p50=%.1fms, p99=%.1fms%n",
+                    name, sortedLatencies.length, success, TimeUnit.NANOSECONDS.toMillis(durationNanos),
+                    sortedLatencies.length * TimeUnit.SECONDS.toNanos(1) / Math.max(durationNanos, 1),
+                    p50 / 1_000_000.0, p99 / 1_000_000.0);
+        }
+    }
+}
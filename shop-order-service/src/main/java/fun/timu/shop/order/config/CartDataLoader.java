@@ -1,29 +1,41 @@
 package fun.timu.shop.order.config;
 
-import com.alibaba.fastjson2.JSON;
 import fun.timu.shop.order.manager.CartManager;
+import fun.timu.shop.order.manager.CartRedisManager;
+import fun.timu.shop.order.manager.CartWriteBehindManager;
 import fun.timu.shop.order.model.DO.CartDO;
 import fun.timu.shop.order.model.DTO.CartItemDTO;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
-import org.springframework.data.redis.core.RedisCallback;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
  * 购物车数据加载器
- * 在应用启动时将MySQL中的购物车数据加载到Redis中
- * 
+ * 在应用启动后于后台将MySQL中的购物车数据加载到Redis中，不阻塞启动，未加载到的用户访问购物车时按需加载
+ * <p>
+ * 1. 分区：按用户ID范围划分为 parallelThreads 个分区并行加载
+ * 2. 读取：每个分区按 (user_id, product_id) 键集分页，走唯一索引，不使用 LIMIT offset；
+ * 一页的最后一个用户可能不完整，留到下一页读取，保证每个用户的购物车一次写入完整
+ * 3. 写入：跳过仍有待回写变更的购物项，一次Pipeline写入一页，只写入Redis中不存在的购物项，不覆盖加载期间用户的修改
+ * 4. 限流：单批写入耗时超过阈值时暂停，连续超过时暂停时间翻倍
+ *
  * @author zhengke
  */
 @Slf4j
@@ -32,11 +44,24 @@ import java.util.stream.Collectors;
 public class CartDataLoader implements ApplicationRunner {
 
     private final CartManager cartManager;
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final CartRedisManager cartRedisManager;
     private final CartProperties cartProperties;
+    private final CartWriteBehindManager cartWriteBehindManager;
+    private final MeterRegistry meterRegistry;
 
-    private final AtomicInteger loadedCount = new AtomicInteger(0);
-    private final AtomicInteger totalCount = new AtomicInteger(0);
+    private final AtomicLong loadedCount = new AtomicLong(0);
+
+    /**
+     * 已扫描完的用户ID跨度，用于估算进度
+     */
+    private final AtomicLong scannedSpan = new AtomicLong(0);
+
+    /**
+     * 当前限流暂停时间，各分区共享
+     */
+    private final AtomicLong pauseMs = new AtomicLong(0);
+    private final AtomicLong throttledCount = new AtomicLong(0);
+    private final AtomicLong lastProgressLogTime = new AtomicLong(0);
 
     @Override
     public void run(ApplicationArguments args) {
@@ -45,172 +70,192 @@ public class CartDataLoader implements ApplicationRunner {
             return;
         }
 
-        log.info("开始加载购物车数据到Redis...");
+        meterRegistry.gauge("shop.cart.warmup.loaded", loadedCount);
+        Thread thread = new Thread(this::warmUp, "cart-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void warmUp() {
+        log.info("开始在后台加载购物车数据到Redis...");
         long startTime = System.currentTimeMillis();
 
         try {
-            String loadStrategy = cartProperties.getStartup().getLoadStrategy();
-            
-            switch (loadStrategy.toLowerCase()) {
-                case "all":
-                    loadAllCartData();
-                    break;
-                case "hot":
-                    loadHotCartData();
-                    break;
-                default:
-                    log.warn("未知的加载策略: {}, 使用默认策略: hot", loadStrategy);
-                    loadHotCartData();
-                    break;
+            // 先把遗留的待回写购物项写回MySQL，避免用旧数据填充Redis
+            if (cartWriteBehindManager.isEnabled()) {
+                int flushed;
+                while ((flushed = cartWriteBehindManager.flush()) > 0) {
+                    log.info("加载前回写遗留的购物项: count={}", flushed);
+                }
             }
 
-            long endTime = System.currentTimeMillis();
-            log.info("购物车数据加载完成! 总数: {}, 耗时: {}ms", 
-                    loadedCount.get(), (endTime - startTime));
+            Date since = resolveSince();
+            Long minUserId = cartManager.selectMinUserId();
+            Long maxUserId = cartManager.selectMaxUserId();
+            if (minUserId == null || maxUserId == null) {
+                log.info("没有购物车数据需要加载");
+                return;
+            }
 
+            loadPartitions(minUserId, maxUserId, since);
+
+            log.info("购物车数据加载完成! 总数: {}, 限流次数: {}, 耗时: {}ms",
+                    loadedCount.get(), throttledCount.get(), System.currentTimeMillis() - startTime);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("购物车数据加载被中断，已加载: {}", loadedCount.get());
         } catch (Exception e) {
-            log.error("购物车数据加载失败", e);
-            // 加载失败不影响应用启动
+            // 加载失败不影响服务，未加载的用户访问时按需加载
+            log.error("购物车数据加载失败，已加载: {}", loadedCount.get(), e);
         }
     }
 
     /**
-     * 加载所有购物车数据
+     * 热点策略返回活跃时间下限，全量策略返回null
      */
-    private void loadAllCartData() {
-        log.info("使用全量加载策略");
-        
-        try {
-            // 获取总数
-            Long total = cartManager.countAllCartData();
-            totalCount.set(total.intValue());
-            
-            if (total == 0) {
-                log.info("没有购物车数据需要加载");
-                return;
-            }
+    private Date resolveSince() {
+        String loadStrategy = cartProperties.getStartup().getLoadStrategy();
+        switch (loadStrategy.toLowerCase()) {
+            case "all":
+                log.info("使用全量加载策略");
+                return null;
+            case "hot":
+                break;
+            default:
+                log.warn("未知的加载策略: {}, 使用默认策略: hot", loadStrategy);
+                break;
+        }
+        Integer hotUserDays = cartProperties.getStartup().getHotUserDays();
+        log.info("使用热点数据加载策略，加载最近 {} 天有活动的用户的购物车", hotUserDays);
+        return new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(hotUserDays));
+    }
 
-            log.info("需要加载的购物车数据总数: {}", total);
-
-            int batchSize = cartProperties.getStartup().getBatchSize();
-            int totalBatches = (int) Math.ceil((double) total / batchSize);
-
-            // 分批加载
-            for (int i = 0; i < totalBatches; i++) {
-                int offset = i * batchSize;
-                List<CartDO> cartList = cartManager.selectAllCartData(offset, batchSize);
-                
-                if (!cartList.isEmpty()) {
-                    batchLoadToRedis(cartList);
-                    loadedCount.addAndGet(cartList.size());
-                    
-                    // 记录进度
-                    if ((i + 1) % 10 == 0 || i == totalBatches - 1) {
-                        log.info("购物车数据加载进度: {}/{} ({:.1f}%)", 
-                                loadedCount.get(), total, 
-                                (double) loadedCount.get() / total * 100);
-                    }
-                }
-            }
+    /**
+     * 按用户ID范围划分分区并行加载，等待全部分区完成
+     */
+    private void loadPartitions(long minUserId, long maxUserId, Date since) throws InterruptedException, ExecutionException {
+        int threads = Math.max(1, cartProperties.getStartup().getParallelThreads());
+        long span = maxUserId - minUserId + 1;
+        long step = (span + threads - 1) / threads;
 
-        } catch (Exception e) {
-            log.error("全量加载购物车数据失败", e);
-            throw e;
+        List<Callable<Void>> partitions = new ArrayList<>(threads);
+        for (long after = minUserId - 1; after < maxUserId; after += step) {
+            long partitionAfter = after;
+            long partitionEnd = Math.min(after + step, maxUserId);
+            partitions.add(() -> {
+                loadPartition(partitionAfter, partitionEnd, since, span);
+                return null;
+            });
+        }
+        log.info("购物车数据分区加载: userId=[{}, {}], partitions={}", minUserId, maxUserId, partitions.size());
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(partitions.size(), runnable -> {
+            Thread thread = new Thread(runnable, "cart-warmup-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (Future<Void> future : executor.invokeAll(partitions)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
         }
     }
 
     /**
-     * 加载热点购物车数据（最近N天有更新的）
+     * 键集分页加载 (afterUserId, endUserId] 范围内的购物车
      */
-    private void loadHotCartData() {
-        Integer hotUserDays = cartProperties.getStartup().getHotUserDays();
-        log.info("使用热点数据加载策略，加载最近 {} 天的购物车数据", hotUserDays);
-        
-        try {
-            List<CartDO> hotCartList = cartManager.selectHotUserCartData(hotUserDays);
-            totalCount.set(hotCartList.size());
-            
-            if (hotCartList.isEmpty()) {
-                log.info("没有热点购物车数据需要加载");
-                return;
+    private void loadPartition(long afterUserId, long endUserId, Date since, long totalSpan) throws InterruptedException {
+        int batchSize = cartProperties.getStartup().getBatchSize();
+        long cursor = afterUserId;
+
+        while (cursor < endUserId) {
+            List<CartDO> rows = cartManager.selectByUserRange(cursor, endUserId, since, batchSize);
+            if (rows.isEmpty()) {
+                break;
             }
 
-            log.info("需要加载的热点购物车数据总数: {}", hotCartList.size());
-
-            // 分批加载
-            int batchSize = cartProperties.getStartup().getBatchSize();
-            for (int i = 0; i < hotCartList.size(); i += batchSize) {
-                int endIndex = Math.min(i + batchSize, hotCartList.size());
-                List<CartDO> batch = hotCartList.subList(i, endIndex);
-                
-                batchLoadToRedis(batch);
-                loadedCount.addAndGet(batch.size());
-                
-                // 记录进度
-                if ((i / batchSize + 1) % 10 == 0 || endIndex == hotCartList.size()) {
-                    log.info("热点购物车数据加载进度: {}/{} ({:.1f}%)", 
-                            loadedCount.get(), hotCartList.size(), 
-                            (double) loadedCount.get() / hotCartList.size() * 100);
+            long nextCursor;
+            List<CartDO> batch = rows;
+            if (rows.size() < batchSize) {
+                nextCursor = endUserId;
+            } else {
+                // 最后一个用户的购物项可能被截断，留到下一页
+                Long lastUserId = rows.get(rows.size() - 1).getUserId();
+                int cut = rows.size();
+                while (cut > 0 && rows.get(cut - 1).getUserId().equals(lastUserId)) {
+                    cut--;
+                }
+                if (cut > 0) {
+                    batch = rows.subList(0, cut);
+                    nextCursor = rows.get(cut - 1).getUserId();
+                } else {
+                    // 单个用户的购物项就超过一页，单独读取该用户
+                    batch = cartManager.selectByUserId(lastUserId);
+                    nextCursor = lastUserId;
                 }
             }
 
-        } catch (Exception e) {
-            log.error("热点数据加载购物车数据失败", e);
-            throw e;
+            loadBatch(batch);
+            scannedSpan.addAndGet(nextCursor - cursor);
+            cursor = nextCursor;
+            logProgress(totalSpan);
         }
     }
 
     /**
-     * 批量加载购物车数据到Redis
+     * 一批购物项写入Redis，并根据写入耗时限流
      */
-    private void batchLoadToRedis(List<CartDO> cartList) {
-        if (cartList.isEmpty()) {
-            return;
-        }
+    private void loadBatch(List<CartDO> rows) throws InterruptedException {
+        long start = System.nanoTime();
 
-        try {
-            // 按用户分组
-            Map<Long, List<CartDO>> userCartMap = cartList.stream()
-                    .collect(Collectors.groupingBy(CartDO::getUserId));
-
-            // 使用Pipeline批量操作
-            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
-                userCartMap.forEach(this::loadUserCartToRedis);
-                return null;
-            });
-
-        } catch (Exception e) {
-            log.error("批量加载购物车数据到Redis失败", e);
-            throw e;
+        // 加载期间用户删除的购物项在回写前仍留在MySQL中，跳过有待回写标记的购物项，避免写回Redis
+        List<CartDO> cartList = cartWriteBehindManager.filterNotPending(rows);
+        if (!cartList.isEmpty()) {
+            Map<Long, List<CartItemDTO>> userItemMap = cartList.stream()
+                    .collect(Collectors.groupingBy(CartDO::getUserId,
+                            Collectors.mapping(this::toCartItem, Collectors.toList())));
+            cartRedisManager.putItems(userItemMap);
+            loadedCount.addAndGet(cartList.size());
         }
+
+        throttle(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
     }
 
     /**
-     * 加载单个用户的购物车数据到Redis
+     * 写入耗时超过阈值时暂停，连续超过时暂停时间翻倍直到上限；恢复正常后逐次减半
      */
-    private void loadUserCartToRedis(Long userId, List<CartDO> userCartList) {
-        try {
-            String redisKey = cartProperties.getRedis().getKeyPrefix() + userId;
-            Map<String, String> cartMap = new HashMap<>();
-
-            for (CartDO cart : userCartList) {
-                CartItemDTO cartItem = new CartItemDTO();
-                cartItem.setProductId(cart.getProductId());
-                cartItem.setQuantity(cart.getQuantity());
-                cartItem.setAddTime(cart.getCreateTime().getTime());
-                cartItem.setUpdateTime(cart.getUpdateTime().getTime());
-
-                String productField = "product:" + cart.getProductId();
-                cartMap.put(productField, JSON.toJSONString(cartItem));
-            }
-
-            if (!cartMap.isEmpty()) {
-                redisTemplate.opsForHash().putAll(redisKey, cartMap);
-                redisTemplate.expire(redisKey, cartProperties.getRedis().getExpireDays(), TimeUnit.DAYS);
-            }
+    private void throttle(long latencyMs) throws InterruptedException {
+        CartProperties.Startup startup = cartProperties.getStartup();
+        if (latencyMs <= startup.getThrottleLatencyMs()) {
+            pauseMs.updateAndGet(pause -> pause / 2);
+            return;
+        }
+        long pause = pauseMs.updateAndGet(p -> Math.min(Math.max(p * 2, startup.getThrottleLatencyMs()), startup.getMaxPauseMs()));
+        throttledCount.incrementAndGet();
+        log.debug("购物车加载写入Redis耗时{}ms，暂停{}ms", latencyMs, pause);
+        Thread.sleep(pause);
+    }
 
-        } catch (Exception e) {
-            log.error("加载用户购物车数据到Redis失败: userId={}", userId, e);
+    private void logProgress(long totalSpan) {
+        long now = System.currentTimeMillis();
+        long last = lastProgressLogTime.get();
+        if (now - last < cartProperties.getStartup().getProgressIntervalMs() || !lastProgressLogTime.compareAndSet(last, now)) {
+            return;
         }
+        log.info("购物车数据加载进度: loaded={}, progress={}%, throttled={}",
+                loadedCount.get(), String.format("%.1f", (double) scannedSpan.get() / totalSpan * 100), throttledCount.get());
+    }
+
+    private CartItemDTO toCartItem(CartDO cart) {
+        CartItemDTO cartItem = new CartItemDTO();
+        cartItem.setProductId(cart.getProductId());
+        cartItem.setQuantity(cart.getQuantity());
+        cartItem.setAddTime(cart.getCreateTime().getTime());
+        cartItem.setUpdateTime(cart.getUpdateTime().getTime());
+        return cartItem;
     }
 }
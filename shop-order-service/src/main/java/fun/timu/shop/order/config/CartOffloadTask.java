@@ -0,0 +1,57 @@
+package fun.timu.shop.order.config;
+
+import fun.timu.shop.common.components.DistributedLockComponent;
+import fun.timu.shop.common.util.DistributedLock;
+import fun.timu.shop.order.manager.CartOffloadManager;
+import fun.timu.shop.order.model.DTO.CartResidentStatsDTO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 冷购物车下沉定时任务
+ * 定时扫描Redis中的购物车，删除长期未访问的购物车并上报驻留规模，多实例时只由获得锁的实例执行
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CartOffloadTask {
+
+    private final CartOffloadManager cartOffloadManager;
+    private final CartProperties cartProperties;
+    private final DistributedLockComponent distributedLockComponent;
+
+    @Scheduled(fixedDelayString = "${cart.offload.interval-ms:3600000}",
+            initialDelayString = "${cart.offload.interval-ms:3600000}")
+    public void sweepCart() {
+        CartProperties.Offload offload = cartProperties.getOffload();
+        // 锁的过期时间覆盖一个扫描周期，实例异常退出后下个周期可由其他实例接管
+        DistributedLock lock = distributedLockComponent.createLock(offload.getLockKey(),
+                offload.getIntervalMs(), TimeUnit.MILLISECONDS);
+        if (!lock.tryLock()) {
+            log.debug("其他实例正在扫描冷购物车，跳过本次执行");
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        try {
+            CartResidentStatsDTO stats = cartOffloadManager.sweep();
+            log.info("冷购物车扫描完成: scanned={}, offloaded={}(items={}), pending={}, resident={}(items={}, bytes={}), " +
+                            "idle[1d={}, 7d={}, 30d={}, 30d+={}], 耗时={}ms",
+                    stats.getScannedCarts(), stats.getOffloadedCarts(), stats.getOffloadedItems(), stats.getPendingCarts(),
+                    stats.getResidentCarts(), stats.getResidentItems(), stats.getResidentBytes(),
+                    stats.getIdleWithinDay(), stats.getIdleWithinWeek(), stats.getIdleWithinMonth(), stats.getIdleOverMonth(),
+                    System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            // LFU淘汰策略下 OBJECT IDLETIME 不可用
+            log.error("定时任务执行失败：扫描冷购物车，需确认Redis的maxmemory-policy不是LFU类策略", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -4,6 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * 购物车配置属性
  * 
@@ -16,6 +19,10 @@ public class CartProperties {
 
     private Redis redis = new Redis();
     private Startup startup = new Startup();
+    private WriteBehind writeBehind = new WriteBehind();
+    private View view = new View();
+    private Offload offload = new Offload();
+    private Guest guest = new Guest();
 
     @Data
     public static class Redis {
@@ -23,9 +30,14 @@ public class CartProperties {
          * Redis Key前缀
          */
         private String keyPrefix = "cart:user:";
+
+        /**
+         * 购物车摘要Key前缀，摘要为小Hash：n 商品种类数，q 商品总数量，t 最后更新时间
+         */
+        private String summaryKeyPrefix = "cart:summary:";
         
         /**
-         * 过期时间（天）
+         * 过期时间（天），兜底清理；长期不访问的购物车由冷数据下沉任务提前移出Redis
          */
         private Integer expireDays = 30;
     }
@@ -33,12 +45,12 @@ public class CartProperties {
     @Data
     public static class Startup {
         /**
-         * 启动时是否从数据库加载数据到Redis
+         * 启动时是否从数据库加载数据到Redis，在后台执行，不阻塞启动；未加载到的用户在访问时按需加载
          */
         private Boolean loadFromDb = true;
         
         /**
-         * 加载策略：all(全量) / hot(热点数据)
+         * 加载策略：all(全量) / hot(热点用户的完整购物车)
          */
         private String loadStrategy = "hot";
         
@@ -48,13 +60,147 @@ public class CartProperties {
         private Integer hotUserDays = 7;
         
         /**
-         * 批量处理大小
+         * 批量处理大小：每次键集查询的行数，也是每次Pipeline写入的行数
          */
         private Integer batchSize = 1000;
         
         /**
-         * 并行加载线程数
+         * 并行加载线程数，按用户ID范围划分为同样数量的分区
          */
         private Integer parallelThreads = 4;
+
+        /**
+         * 每批Pipeline写入耗时超过该值（毫秒）时暂停加载，避免预热拖慢线上请求
+         */
+        private Long throttleLatencyMs = 50L;
+
+        /**
+         * 限流暂停时间上限（毫秒），连续超过耗时阈值时暂停时间逐次翻倍直到该上限
+         */
+        private Long maxPauseMs = 1000L;
+
+        /**
+         * 进度日志间隔（毫秒）
+         */
+        private Long progressIntervalMs = 5000L;
+    }
+
+    @Data
+    public static class WriteBehind {
+        /**
+         * 是否启用异步回写：购物车以Redis为准，变更只记录待回写标记，由定时任务批量写入MySQL
+         * 关闭时每次变更同步写MySQL
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 待回写标记ZSet，成员为 userId:productId，分数为首次变更时间
+         */
+        private String dirtyKey = "cart:dirty";
+
+        /**
+         * 回写MySQL的间隔（毫秒）
+         */
+        private Long intervalMs = 1000L;
+
+        /**
+         * 每批回写的购物项数量
+         */
+        private Integer batchSize = 500;
+
+        /**
+         * 多实例只由一个实例回写，分布式锁Key，避免同一购物项的新旧版本由不同实例乱序提交
+         */
+        private String lockKey = "cart:write-behind:lock";
+    }
+
+    @Data
+    public static class View {
+        /**
+         * 是否缓存购物车详情（购物项+商品信息），购物车变更或商品价格、状态、库存变更时失效
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 购物车详情缓存Key前缀，值为CartVO的JSON
+         */
+        private String keyPrefix = "cart:view:";
+
+        /**
+         * 购物车版本号Key前缀，每次购物车变更自增，写入详情缓存时校验版本避免并发写回旧数据
+         */
+        private String versionKeyPrefix = "cart:view:ver:";
+
+        /**
+         * 商品反向索引Key前缀，Set成员为缓存了包含该商品的购物车详情的用户ID
+         */
+        private String productIndexPrefix = "cart:view:product:";
+
+        /**
+         * 购物车详情缓存过期时间（秒），兜底失效消息丢失
+         */
+        private Long ttlSeconds = 300L;
+
+        /**
+         * 订阅的商品变更频道：商品信息失效频道、库存变更频道
+         */
+        private List<String> productChannels = new ArrayList<>(List.of("product:cache:invalidate", "product:stock:change"));
+    }
+
+    @Data
+    public static class Offload {
+        /**
+         * 是否启用冷购物车下沉：长期未访问的购物车只保留在MySQL，从Redis删除，再次访问时按需加载
+         * 关闭时仍定时统计Redis中的购物车规模
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 未访问超过该天数（OBJECT IDLETIME）的购物车视为冷数据
+         */
+        private Integer idleDays = 7;
+
+        /**
+         * 扫描间隔（毫秒）
+         */
+        private Long intervalMs = 3600000L;
+
+        /**
+         * 每次SCAN返回的Key数量，也是每次脚本处理的购物车数量
+         */
+        private Integer scanCount = 500;
+
+        /**
+         * 每批之间的暂停时间（毫秒），避免扫描占用Redis
+         */
+        private Long batchPauseMs = 10L;
+
+        /**
+         * 多实例只由一个实例扫描，分布式锁Key
+         */
+        private String lockKey = "cart:offload:lock";
+    }
+
+    @Data
+    public static class Guest {
+        /**
+         * 是否启用游客购物车：未登录时按设备标识保存在Redis，登录后合并到用户购物车；不写MySQL
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 游客购物车Key前缀，Hash结构与用户购物车相同
+         */
+        private String keyPrefix = "cart:guest:";
+
+        /**
+         * 过期时间（天），每次修改时刷新
+         */
+        private Integer expireDays = 7;
+
+        /**
+         * 游客购物车最多的商品种类数
+         */
+        private Integer maxItems = 50;
     }
 }
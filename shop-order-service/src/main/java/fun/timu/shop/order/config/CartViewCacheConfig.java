@@ -0,0 +1,32 @@
+package fun.timu.shop.order.config;
+
+import fun.timu.shop.order.manager.impl.CartViewCacheManagerImpl;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 购物车详情缓存配置
+ * 订阅商品服务的失效频道和库存变更频道，收到消息后删除包含这些商品的购物车详情缓存
+ *
+ * @author zhengke
+ */
+@Configuration
+public class CartViewCacheConfig {
+
+    @Bean
+    public RedisMessageListenerContainer cartViewListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                   CartViewCacheManagerImpl cartViewCacheManager,
+                                                                   CartProperties cartProperties) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        if (Boolean.TRUE.equals(cartProperties.getView().getEnabled())) {
+            for (String channel : cartProperties.getView().getProductChannels()) {
+                container.addMessageListener(cartViewCacheManager, new ChannelTopic(channel));
+            }
+        }
+        return container;
+    }
+}
@@ -0,0 +1,67 @@
+package fun.timu.shop.order.config;
+
+import fun.timu.shop.common.components.DistributedLockComponent;
+import fun.timu.shop.common.util.DistributedLock;
+import fun.timu.shop.order.manager.CartWriteBehindManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 购物车异步回写定时任务
+ * 定时把待回写的购物项批量写回MySQL，并刷新回写延迟指标；
+ * 取出待回写标记时即删除标记，多实例时只由获得锁的实例回写，避免同一购物项的新旧版本乱序提交
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CartWriteBehindTask {
+
+    /**
+     * 回写锁的过期时间（秒），持有期间由看门狗续期，实例异常退出后由其他实例接管
+     */
+    private static final long FLUSH_LOCK_SECONDS = 30;
+
+    private final CartWriteBehindManager cartWriteBehindManager;
+    private final CartProperties cartProperties;
+    private final DistributedLockComponent distributedLockComponent;
+
+    /**
+     * 定时回写购物项，一次回写不完时继续下一批
+     */
+    @Scheduled(fixedDelayString = "${cart.write-behind.interval-ms:1000}")
+    public void flushCart() {
+        if (!cartWriteBehindManager.isEnabled()) {
+            return;
+        }
+
+        DistributedLock lock = distributedLockComponent.createWatchdogLock(cartProperties.getWriteBehind().getLockKey(),
+                FLUSH_LOCK_SECONDS, TimeUnit.SECONDS);
+        if (!lock.tryLock()) {
+            return;
+        }
+
+        try {
+            int batchSize = cartProperties.getWriteBehind().getBatchSize();
+            int flushed;
+            do {
+                flushed = cartWriteBehindManager.flush();
+            } while (flushed >= batchSize);
+        } catch (Exception e) {
+            log.error("定时任务执行失败：回写购物车到MySQL", e);
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            cartWriteBehindManager.refreshMetrics();
+        } catch (Exception e) {
+            log.warn("刷新购物车回写指标失败", e);
+        }
+    }
+}
@@ -31,7 +31,9 @@ public class InterceptorConfig implements WebMvcConfigurer {
                 // 排除不需要拦截的路径（精确匹配具体接口）
                 .excludePathPatterns(
                         // RPC接口 - 微服务间调用，已通过RPC安全拦截器验证
-                        "/api/order/v1/rpc/**"
+                        "/api/order/v1/rpc/**",
+                        // 游客购物车 - 按设备标识访问，不需要登录
+                        "/api/order/v1/cart/guest/**"
                 )
                 .order(2); // 较低优先级
 
@@ -0,0 +1,40 @@
+package fun.timu.shop.order.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 下单确认配置类
+ *
+ * @author zhengke
+ */
+@Configuration
+public class OrderConfirmConfig {
+
+    /**
+     * 下单读阶段（收货地址、购物车、优惠券）并行查询线程池
+     * 有界队列 + AbortPolicy，过载时快速失败而不是无限堆积请求
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService orderConfirmExecutor(OrderConfirmProperties properties) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                properties.getCorePoolSize(), properties.getMaxPoolSize(),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                r -> {
+                    Thread thread = new Thread(r, "order-confirm-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
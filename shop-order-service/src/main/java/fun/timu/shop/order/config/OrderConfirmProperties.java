@@ -0,0 +1,46 @@
+package fun.timu.shop.order.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 下单确认配置属性
+ *
+ * @author zhengke
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "order.confirm")
+public class OrderConfirmProperties {
+
+    /**
+     * 并行查询线程池核心线程数
+     */
+    private Integer corePoolSize = 16;
+
+    /**
+     * 并行查询线程池最大线程数
+     */
+    private Integer maxPoolSize = 64;
+
+    /**
+     * 并行查询线程池队列容量，队列满且线程数达到上限时直接拒绝下单
+     */
+    private Integer queueCapacity = 256;
+
+    /**
+     * 查询收货地址截止时间（毫秒）
+     */
+    private Long addressTimeoutMs = 1500L;
+
+    /**
+     * 确认购物车商品截止时间（毫秒）
+     */
+    private Long cartTimeoutMs = 3000L;
+
+    /**
+     * 查询优惠券截止时间（毫秒）
+     */
+    private Long couponTimeoutMs = 1500L;
+}
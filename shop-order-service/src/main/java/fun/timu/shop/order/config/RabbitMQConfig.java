@@ -20,30 +20,6 @@ public class RabbitMQConfig extends BaseRabbitMQConfig {
     @Value("${mqconfig.order_event_exchange}")
     private String eventExchange;
 
-    /**
-     * 订单关闭延迟队列
-     */
-    @Value("${mqconfig.order_close_delay_queue}")
-    private String orderCloseDelayQueue;
-
-    /**
-     * 订单关闭延迟路由key
-     */
-    @Value("${mqconfig.order_close_delay_routing_key}")
-    private String orderCloseDelayRoutingKey;
-
-    /**
-     * 订单关闭队列
-     */
-    @Value("${mqconfig.order_close_queue}")
-    private String orderCloseQueue;
-
-    /**
-     * 订单关闭路由key
-     */
-    @Value("${mqconfig.order_close_routing_key}")
-    private String orderCloseRoutingKey;
-
     /**
      * 第一个队列  延迟队列，
      */
@@ -71,6 +47,18 @@ public class RabbitMQConfig extends BaseRabbitMQConfig {
     @Value("${mqconfig.stock_release_routing_key}")
     private String stockReleaseRoutingKey;
 
+    /**
+     * 优惠券释放队列，由优惠券服务监听
+     */
+    @Value("${mqconfig.coupon_release_queue}")
+    private String couponReleaseQueue;
+
+    /**
+     * 优惠券释放路由key
+     */
+    @Value("${mqconfig.coupon_release_routing_key}")
+    private String couponReleaseRoutingKey;
+
     /**
      * 过期时间
      */
@@ -99,17 +87,17 @@ public class RabbitMQConfig extends BaseRabbitMQConfig {
     }
 
     /**
-     * 订单关闭延迟队列
+     * 延迟队列 - 用于库存释放延迟处理
      *
      * @return Queue
      */
     @Bean
-    public Queue orderCloseDelayQueue() {
+    public Queue stockReleaseDelayQueue() {
         return createDelayQueue(
-                orderCloseDelayQueue,
+                stockReleaseDelayQueue,
                 ttl,
                 eventExchange,
-                orderCloseRoutingKey,
+                stockReleaseRoutingKey,
                 true,
                 false,
                 false
@@ -117,80 +105,52 @@ public class RabbitMQConfig extends BaseRabbitMQConfig {
     }
 
     /**
-     * 订单关闭队列
+     * 死信队列，普通队列，用于被监听
      *
      * @return Queue
      */
     @Bean
-    public Queue orderCloseQueue() {
-        return createQueue(orderCloseQueue, true, false, false);
+    public Queue stockReleaseQueue() {
+        return createQueue(stockReleaseQueue, true, false, false);
     }
 
     /**
-     * 订单关闭延迟队列绑定
+     * 延迟队列的绑定关系建立
      *
      * @return Binding
      */
     @Bean
-    public Binding orderCloseDelayBinding() {
-        return createBinding(orderCloseDelayQueue, eventExchange, orderCloseDelayRoutingKey);
+    public Binding stockReleaseDelayBinding() {
+        return createBinding(stockReleaseDelayQueue, eventExchange, stockReleaseDelayRoutingKey);
     }
 
     /**
-     * 订单关闭队列绑定
+     * 死信队列绑定关系建立
      *
      * @return Binding
      */
     @Bean
-    public Binding orderCloseBinding() {
-        return createBinding(orderCloseQueue, eventExchange, orderCloseRoutingKey);
-    }
-
-    /**
-     * 延迟队列 - 用于库存释放延迟处理
-     *
-     * @return Queue
-     */
-    @Bean
-    public Queue stockReleaseDelayQueue() {
-        return createDelayQueue(
-                stockReleaseDelayQueue,
-                ttl,
-                eventExchange,
-                stockReleaseRoutingKey,
-                true,
-                false,
-                false
-        );
+    public Binding stockReleaseBinding() {
+        return createBinding(stockReleaseQueue, eventExchange, stockReleaseRoutingKey);
     }
 
     /**
-     * 死信队列，普通队列，用于被监听
+     * 优惠券释放队列，订单超时后直接投递，由优惠券服务监听
      *
      * @return Queue
      */
     @Bean
-    public Queue stockReleaseQueue() {
-        return createQueue(stockReleaseQueue, true, false, false);
-    }
-
-    /**
-     * 延迟队列的绑定关系建立
-     *
-     * @return Binding
-     */
-    @Bean
-    public Binding stockReleaseDelayBinding() {
-        return createBinding(stockReleaseDelayQueue, eventExchange, stockReleaseDelayRoutingKey);
+    public Queue couponReleaseQueue() {
+        return createQueue(couponReleaseQueue, true, false, false);
     }
 
     /**
-     * 死信队列绑定关系建立
+     * 优惠券释放队列绑定关系建立
      *
      * @return Binding
      */
     @Bean
-    public Binding stockReleaseBinding() {
-        return createBinding(stockReleaseQueue, eventExchange, stockReleaseRoutingKey);
+    public Binding couponReleaseBinding() {
+        return createBinding(couponReleaseQueue, eventExchange, couponReleaseRoutingKey);
     }
 }
@@ -2,6 +2,7 @@ package fun.timu.shop.order.controller;
 
 import fun.timu.shop.common.util.JsonData;
 import fun.timu.shop.order.controller.request.AddToCartRequest;
+import fun.timu.shop.order.controller.request.BatchAddToCartRequest;
 import fun.timu.shop.order.controller.request.BatchCartRequest;
 import fun.timu.shop.order.controller.request.UpdateCartRequest;
 import fun.timu.shop.order.service.CartService;
@@ -37,6 +38,17 @@ public class CartController {
         return cartService.addToCart(request);
     }
 
+    /**
+     * 批量添加商品到购物车
+     *
+     * @param request 批量添加请求
+     * @return 操作结果
+     */
+    @PostMapping("/batch/add")
+    public JsonData batchAddToCart(@Valid @RequestBody BatchAddToCartRequest request) {
+        return cartService.batchAddToCart(request);
+    }
+
     /**
      * 更新购物车商品数量
      *
@@ -80,6 +92,17 @@ public class CartController {
         return cartService.clearCart();
     }
 
+    /**
+     * 登录后合并游客购物车
+     *
+     * @param deviceToken 登录前使用的设备标识
+     * @return 合并结果
+     */
+    @PostMapping("/merge")
+    public JsonData mergeGuestCart(@RequestHeader(GuestCartController.DEVICE_TOKEN_HEADER) String deviceToken) {
+        return cartService.mergeGuestCart(deviceToken);
+    }
+
     /**
      * 获取购物车商品列表（简单列表）
      *
@@ -100,6 +123,16 @@ public class CartController {
         return cartService.getCartCount();
     }
 
+    /**
+     * 获取购物车摘要（种类数、总数量、最后更新时间），用于购物车角标
+     *
+     * @return 购物车摘要
+     */
+    @GetMapping("/summary")
+    public JsonData getCartSummary() {
+        return cartService.getCartSummary();
+    }
+
     /**
      * 获取购物车详情（包含商品信息）
      *
@@ -0,0 +1,65 @@
+package fun.timu.shop.order.controller;
+
+import fun.timu.shop.common.util.JsonData;
+import fun.timu.shop.order.controller.request.AddToCartRequest;
+import fun.timu.shop.order.service.CartService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * 游客购物车控制器
+ * 未登录用户按设备标识（请求头 X-Device-Token）使用购物车，登录后调用 /api/order/v1/cart/merge 合并
+ *
+ * @author zhengke
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/order/v1/cart/guest")
+@RequiredArgsConstructor
+@Validated
+public class GuestCartController {
+
+    public static final String DEVICE_TOKEN_HEADER = "X-Device-Token";
+
+    private final CartService cartService;
+
+    /**
+     * 游客添加商品到购物车
+     *
+     * @param deviceToken 设备标识
+     * @param request     添加请求
+     * @return 操作结果
+     */
+    @PostMapping("/add")
+    public JsonData addToGuestCart(@RequestHeader(DEVICE_TOKEN_HEADER) String deviceToken,
+                                   @Valid @RequestBody AddToCartRequest request) {
+        return cartService.addToGuestCart(deviceToken, request);
+    }
+
+    /**
+     * 游客从购物车删除商品
+     *
+     * @param deviceToken 设备标识
+     * @param productId   商品ID
+     * @return 操作结果
+     */
+    @DeleteMapping("/remove/{productId}")
+    public JsonData removeFromGuestCart(@RequestHeader(DEVICE_TOKEN_HEADER) String deviceToken,
+                                        @PathVariable Long productId) {
+        return cartService.removeFromGuestCart(deviceToken, productId);
+    }
+
+    /**
+     * 获取游客购物车商品列表
+     *
+     * @param deviceToken 设备标识
+     * @return 购物车商品列表
+     */
+    @GetMapping("/list")
+    public JsonData getGuestCartList(@RequestHeader(DEVICE_TOKEN_HEADER) String deviceToken) {
+        return cartService.getGuestCartList(deviceToken);
+    }
+}
@@ -0,0 +1,28 @@
+package fun.timu.shop.order.controller.request;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量添加到购物车请求
+ * 用于再次购买、收藏夹批量加购等场景，同一商品出现多次时数量累加
+ *
+ * @author zhengke
+ */
+@Data
+public class BatchAddToCartRequest {
+
+    /**
+     * 加购的商品列表
+     */
+    @Valid
+    @NotEmpty(message = "商品列表不能为空")
+    @Size(max = 100, message = "一次最多只能添加100个商品")
+    @JsonProperty("items")
+    private List<AddToCartRequest> items;
+}
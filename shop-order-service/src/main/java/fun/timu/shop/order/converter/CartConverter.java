@@ -1,8 +1,10 @@
 package fun.timu.shop.order.converter;
 
+import fun.timu.shop.common.model.ProductSnapshotDTO;
 import fun.timu.shop.order.model.DTO.CartItemDTO;
 import fun.timu.shop.order.model.VO.CartItemVO;
 import fun.timu.shop.order.model.VO.CartVO;
+import fun.timu.shop.order.model.VO.ProductOrderItemVO;
 import lombok.Builder;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
@@ -13,6 +15,7 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -26,6 +29,8 @@ import java.util.Map;
 @Component
 public class CartConverter {
 
+    private static final ZoneOffset ZONE_OFFSET = ZoneOffset.of("+8");
+
     /**
      * 构建空购物车
      */
@@ -42,15 +47,21 @@ public class CartConverter {
 
     /**
      * 构建包含商品详情的购物车
+     *
+     * @param products 商品服务返回的商品快照，不存在的商品不在列表中
      */
-    public CartVO toCartWithDetails(Long userId, List<CartItemDTO> cartItems, Object productData) {
+    public CartVO toCartWithDetails(Long userId, List<CartItemDTO> cartItems, List<ProductSnapshotDTO> products) {
         if (cartItems == null || cartItems.isEmpty()) {
             return toEmptyCart(userId);
         }
 
-        // 解析商品数据
-        @SuppressWarnings("unchecked")
-        Map<String, Object> productMap = (Map<String, Object>) productData;
+        // 按商品ID索引，容量按商品数预分配
+        Map<Long, ProductSnapshotDTO> productMap = new HashMap<>((int) (cartItems.size() / 0.75f) + 1);
+        if (products != null) {
+            for (ProductSnapshotDTO product : products) {
+                productMap.put(product.getId(), product);
+            }
+        }
 
         // 转换商品项
         List<CartItemVO> itemVOs = convertToItemVOs(cartItems, productMap);
@@ -68,14 +79,36 @@ public class CartConverter {
                 .build();
     }
 
+    /**
+     * 确认的购物项转换为订单项，单价和原价均取购物车中的商品价格
+     */
+    public List<ProductOrderItemVO> toOrderItems(List<CartItemVO> cartItems) {
+        if (cartItems == null || cartItems.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<ProductOrderItemVO> orderItems = new ArrayList<>(cartItems.size());
+        for (CartItemVO cartItem : cartItems) {
+            ProductOrderItemVO orderItem = new ProductOrderItemVO();
+            orderItem.setProductId(cartItem.getProductId());
+            orderItem.setProductName(cartItem.getTitle());
+            orderItem.setProductImg(cartItem.getCoverImg());
+            orderItem.setOldPrice(cartItem.getPrice());
+            orderItem.setAmount(cartItem.getPrice());
+            orderItem.setBuyNum(cartItem.getQuantity());
+            orderItem.setTotalAmount(cartItem.getSubtotal());
+            orderItems.add(orderItem);
+        }
+        return orderItems;
+    }
+
     /**
      * 转换购物车商品项列表
      */
-    private List<CartItemVO> convertToItemVOs(List<CartItemDTO> cartItems, Map<String, Object> productMap) {
-        List<CartItemVO> itemVOs = new ArrayList<>();
+    private List<CartItemVO> convertToItemVOs(List<CartItemDTO> cartItems, Map<Long, ProductSnapshotDTO> productMap) {
+        List<CartItemVO> itemVOs = new ArrayList<>(cartItems.size());
 
         for (CartItemDTO cartItem : cartItems) {
-            CartItemVO itemVO = convertToItemVO(cartItem, productMap);
+            CartItemVO itemVO = convertToItemVO(cartItem, productMap.get(cartItem.getProductId()));
             itemVOs.add(itemVO);
         }
 
@@ -85,53 +118,35 @@ public class CartConverter {
     /**
      * 转换单个购物车商品项
      */
-    private CartItemVO convertToItemVO(CartItemDTO cartItem, Map<String, Object> productMap) {
+    private CartItemVO convertToItemVO(CartItemDTO cartItem, ProductSnapshotDTO product) {
         CartItemVO.CartItemVOBuilder builder = CartItemVO.builder()
                 .productId(cartItem.getProductId())
                 .quantity(cartItem.getQuantity())
-                .addTime(LocalDateTime.ofEpochSecond(cartItem.getAddTime() / 1000, 0, ZoneOffset.of("+8")))
-                .updateTime(LocalDateTime.ofEpochSecond(cartItem.getUpdateTime() / 1000, 0, ZoneOffset.of("+8")));
-
-                // 根据商品数据设置商品信息
-        Object productInfo = productMap.get(cartItem.getProductId().toString());
-        if (productInfo != null) {
-            try {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> product = (Map<String, Object>) productInfo;
-                
-                // 检查商品状态：1-上架，0-下架
-                Integer status = extractInteger(product, "status");
-                boolean isAvailable = status != null && status == 1;
-                
-                if (!isAvailable) {
-                    log.info("购物车中的商品已下架: productId={}, status={}", cartItem.getProductId(), status);
-                }
-                
-                builder.available(isAvailable);
-                
-                // 设置商品基本信息
-                builder.title(extractString(product, "title"));
-                builder.coverImg(extractString(product, "coverImg"));
-                
-                // 设置价格信息
-                BigDecimal price = extractBigDecimal(product, "price");
-                if (price != null) {
-                    builder.price(price);
-                    builder.subtotal(price.multiply(BigDecimal.valueOf(cartItem.getQuantity())));
-                }
-                
-                // 设置库存信息
-                Integer stock = extractInteger(product, "stock");
-                builder.stock(stock);
-                
-            } catch (Exception e) {
-                log.error("解析商品数据失败: productId={}", cartItem.getProductId(), e);
-                builder.available(false);
-            }
-        } else {
+                .addTime(LocalDateTime.ofEpochSecond(cartItem.getAddTime() / 1000, 0, ZONE_OFFSET))
+                .updateTime(LocalDateTime.ofEpochSecond(cartItem.getUpdateTime() / 1000, 0, ZONE_OFFSET));
+
+        if (product == null) {
             // 商品不存在或已删除
             log.warn("购物车中的商品不存在: productId={}", cartItem.getProductId());
-            builder.available(false);
+            return builder.available(false).build();
+        }
+
+        // 检查商品状态：1-上架，0-下架
+        Integer status = product.getStatus();
+        boolean isAvailable = status != null && status == 1;
+        if (!isAvailable) {
+            log.info("购物车中的商品已下架: productId={}, status={}", cartItem.getProductId(), status);
+        }
+
+        builder.available(isAvailable)
+                .title(product.getTitle())
+                .coverImg(product.getCoverImg())
+                .stock(product.getStock());
+
+        BigDecimal price = product.getPrice();
+        if (price != null) {
+            builder.price(price);
+            builder.subtotal(price.multiply(BigDecimal.valueOf(cartItem.getQuantity())));
         }
 
         return builder.build();
@@ -178,44 +193,4 @@ public class CartConverter {
         private int validCount;
         private int invalidCount;
     }
-
-    /**
-     * 安全地从Map中提取String值
-     */
-    private String extractString(Map<String, Object> map, String key) {
-        Object value = map.get(key);
-        return value != null ? value.toString() : null;
-    }
-
-    /**
-     * 安全地从Map中提取Integer值
-     */
-    private Integer extractInteger(Map<String, Object> map, String key) {
-        Object value = map.get(key);
-        if (value == null) {
-            return null;
-        }
-        try {
-            return value instanceof Integer ? (Integer) value : Integer.valueOf(value.toString());
-        } catch (NumberFormatException e) {
-            log.warn("无法解析Integer值: key={}, value={}", key, value);
-            return null;
-        }
-    }
-
-    /**
-     * 安全地从Map中提取BigDecimal值
-     */
-    private BigDecimal extractBigDecimal(Map<String, Object> map, String key) {
-        Object value = map.get(key);
-        if (value == null) {
-            return null;
-        }
-        try {
-            return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
-        } catch (NumberFormatException e) {
-            log.warn("无法解析BigDecimal值: key={}, value={}", key, value);
-            return null;
-        }
-    }
 }
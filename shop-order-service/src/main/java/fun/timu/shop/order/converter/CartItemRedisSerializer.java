@@ -0,0 +1,106 @@
+package fun.timu.shop.order.converter;
+
+import com.alibaba.fastjson2.JSON;
+import fun.timu.shop.order.model.DTO.CartItemDTO;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 购物项Redis序列化器
+ * <p>
+ * 购物车Hash的字段为商品ID，值为紧凑二进制：
+ * [版本号 0x01][varint 数量][varint 添加时间毫秒][varint 更新时间-添加时间]
+ * 商品ID已在字段中，不重复存储，反序列化结果需由调用方补上productId。
+ * <p>
+ * 兼容旧格式：旧值为 JSON.toJSONString(CartItemDTO) 再经 GenericJackson2JsonRedisSerializer 序列化的字符串，
+ * 以双引号开头，读取时按JSON解析，由调用方改写为新格式。
+ *
+ * @author zhengke
+ */
+public class CartItemRedisSerializer implements RedisSerializer<CartItemDTO> {
+
+    /**
+     * 二进制格式版本号，旧格式首字节为 '"' 或 '{'，不会与之冲突
+     */
+    public static final byte VERSION = 0x01;
+
+    public static final CartItemRedisSerializer INSTANCE = new CartItemRedisSerializer();
+
+    @Override
+    public byte[] serialize(CartItemDTO cartItem) throws SerializationException {
+        if (cartItem == null) {
+            return null;
+        }
+        long addTime = cartItem.getAddTime() != null ? cartItem.getAddTime() : System.currentTimeMillis();
+        long updateTime = cartItem.getUpdateTime() != null ? cartItem.getUpdateTime() : addTime;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16);
+        out.write(VERSION);
+        writeVarint(out, cartItem.getQuantity() != null ? cartItem.getQuantity() : 0);
+        writeVarint(out, addTime);
+        // 更新时间一般晚于添加时间，存差值更短；时钟回拨导致差值为负时按0处理
+        writeVarint(out, Math.max(updateTime - addTime, 0));
+        return out.toByteArray();
+    }
+
+    @Override
+    public CartItemDTO deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != VERSION) {
+            return deserializeLegacy(bytes);
+        }
+
+        int[] pos = {1};
+        CartItemDTO cartItem = new CartItemDTO();
+        cartItem.setQuantity((int) readVarint(bytes, pos));
+        long addTime = readVarint(bytes, pos);
+        cartItem.setAddTime(addTime);
+        cartItem.setUpdateTime(addTime + readVarint(bytes, pos));
+        return cartItem;
+    }
+
+    /**
+     * 是否为旧的JSON格式
+     */
+    public static boolean isLegacy(byte[] bytes) {
+        return bytes != null && bytes.length > 0 && bytes[0] != VERSION;
+    }
+
+    private CartItemDTO deserializeLegacy(byte[] bytes) {
+        try {
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            String json = value.startsWith("\"") ? JSON.parseObject(value, String.class) : value;
+            return JSON.parseObject(json, CartItemDTO.class);
+        } catch (Exception e) {
+            throw new SerializationException("无法解析旧格式购物项: " + new String(bytes, StandardCharsets.UTF_8), e);
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] bytes, int[] pos) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos[0] >= bytes.length) {
+                throw new SerializationException("购物项数据不完整");
+            }
+            byte b = bytes[pos[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SerializationException("购物项varint过长");
+    }
+}
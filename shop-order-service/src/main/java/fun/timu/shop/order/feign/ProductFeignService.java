@@ -1,8 +1,10 @@
 package fun.timu.shop.order.feign;
 
+import fun.timu.shop.common.model.ProductSnapshotResult;
 import fun.timu.shop.common.util.JsonData;
 import fun.timu.shop.common.request.BatchProductRequest;
 import fun.timu.shop.common.request.LockProductRequest;
+import fun.timu.shop.common.request.ValidateStockBatchRequest;
 import fun.timu.shop.common.request.ValidateStockRequest;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -29,13 +31,13 @@ public interface ProductFeignService {
     JsonData getProductById(@PathVariable("productId") Long productId);
 
     /**
-     * 批量获取商品详情
+     * 批量获取商品快照
      *
      * @param request 批量获取商品详情请求
-     * @return 商品详情列表
+     * @return 商品快照列表，按类型直接反序列化
      */
     @PostMapping("/rpc/batch")
-    JsonData getBatchProductDetails(@RequestBody BatchProductRequest request);
+    ProductSnapshotResult getBatchProductDetails(@RequestBody BatchProductRequest request);
 
     /**
      * RPC - 验证商品库存
@@ -46,6 +48,15 @@ public interface ProductFeignService {
     @PostMapping("/rpc/stock/validate")
     JsonData validateStock(@RequestBody ValidateStockRequest request);
 
+    /**
+     * RPC - 批量验证商品库存，一次调用返回每个商品的可用情况
+     *
+     * @param request 批量验证库存请求
+     * @return 每个商品的验证结果
+     */
+    @PostMapping("/rpc/stock/validate-batch")
+    JsonData validateStockBatch(@RequestBody ValidateStockBatchRequest request);
+
     /**
      * RPC - 锁定商品库存
      *
@@ -0,0 +1,64 @@
+package fun.timu.shop.order.listener;
+
+import fun.timu.shop.common.components.DelayTaskHandler;
+import fun.timu.shop.common.model.CouponRecordMessage;
+import fun.timu.shop.common.model.OrderMessage;
+import fun.timu.shop.common.model.ProductMessage;
+import fun.timu.shop.common.util.RabbitMQUtil;
+import fun.timu.shop.order.config.RabbitMQConfig;
+import fun.timu.shop.order.service.ProductOrderService;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * 订单超时任务处理器
+ * 每个订单只有一个定时器，到期后先关单，再按订单号向库存、优惠券释放队列各投递一条即时消息
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+@AllArgsConstructor
+public class OrderTimeoutHandler implements DelayTaskHandler {
+
+    /**
+     * 订单超时任务主题
+     */
+    public static final String TOPIC = "order.timeout";
+
+    private final ProductOrderService productOrderService;
+
+    private final RabbitMQUtil rabbitMQUtil;
+
+    private final RabbitMQConfig rabbitMQConfig;
+
+    @Override
+    public String topic() {
+        return TOPIC;
+    }
+
+    @Override
+    public boolean handle(String outTradeNo) {
+        // 1. 先关单，释放消费者据此判断订单已取消，无需再等待重试
+        OrderMessage orderMessage = new OrderMessage();
+        orderMessage.setOutTradeNo(outTradeNo);
+        if (!productOrderService.closeProductOrder(orderMessage)) {
+            log.warn("订单超时关单失败，等待重试: outTradeNo={}", outTradeNo);
+            return false;
+        }
+
+        // 2. 按订单号释放库存，taskId为空表示整单释放
+        ProductMessage productMessage = new ProductMessage();
+        productMessage.setOutTradeNo(outTradeNo);
+        rabbitMQUtil.sendMessage(rabbitMQConfig.getEventExchange(), rabbitMQConfig.getStockReleaseRoutingKey(), productMessage);
+
+        // 3. 按订单号释放优惠券
+        CouponRecordMessage couponRecordMessage = new CouponRecordMessage();
+        couponRecordMessage.setOutTradeNo(outTradeNo);
+        rabbitMQUtil.sendMessage(rabbitMQConfig.getEventExchange(), rabbitMQConfig.getCouponReleaseRoutingKey(), couponRecordMessage);
+
+        log.info("订单超时处理完成，已投递库存和优惠券释放消息: outTradeNo={}", outTradeNo);
+        return true;
+    }
+}
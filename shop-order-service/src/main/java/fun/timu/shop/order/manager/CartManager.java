@@ -2,7 +2,9 @@ package fun.timu.shop.order.manager;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import fun.timu.shop.order.model.DO.CartDO;
+import fun.timu.shop.order.model.DTO.CartSummaryDTO;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -40,6 +42,22 @@ public interface CartManager extends IService<CartDO> {
      */
     int insertOrUpdate(Long userId, Long productId, Integer quantity);
 
+    /**
+     * 批量插入或更新购物车项，updateTime早于库中记录的不覆盖
+     *
+     * @param cartList 购物车项，createTime/updateTime 为购物项自身的时间
+     * @return 影响行数
+     */
+    int upsertBatch(List<CartDO> cartList);
+
+    /**
+     * 按 (用户ID, 商品ID) 批量删除购物车项
+     *
+     * @param cartList 购物车项，只使用 userId/productId
+     * @return 影响行数
+     */
+    int deleteBatchByKeys(List<CartDO> cartList);
+
     /**
      * 批量删除购物车项
      *
@@ -58,26 +76,35 @@ public interface CartManager extends IService<CartDO> {
     int deleteByUserId(Long userId);
 
     /**
-     * 获取热点用户的购物车数据（最近N天有更新的）
+     * 用户购物车摘要，聚合查询，不读取购物项
      *
-     * @param days 天数
-     * @return 购物车列表
+     * @param userId 用户ID
+     * @return 购物车摘要，购物车为空时种类数和总数量为0
      */
-    List<CartDO> selectHotUserCartData(Integer days);
+    CartSummaryDTO selectSummaryByUserId(Long userId);
 
     /**
-     * 获取所有购物车数据（分页）
+     * 购物车中的最小用户ID
      *
-     * @param offset 偏移量
-     * @param limit  限制数量
-     * @return 购物车列表
+     * @return 没有数据时返回null
      */
-    List<CartDO> selectAllCartData(Integer offset, Integer limit);
+    Long selectMinUserId();
 
     /**
-     * 获取购物车数据总数
+     * 购物车中的最大用户ID
      *
-     * @return 总数
+     * @return 没有数据时返回null
+     */
+    Long selectMaxUserId();
+
+    /**
+     * 按 (user_id, product_id) 键集分页读取用户ID范围内的购物车，按用户ID、商品ID升序
+     *
+     * @param afterUserId 上一页最后一个用户ID（不含）
+     * @param endUserId   范围上界（含）
+     * @param since       不为null时只读取该时间后有更新的用户，读取这些用户的完整购物车
+     * @param limit       每页行数
+     * @return 购物车列表
      */
-    Long countAllCartData();
+    List<CartDO> selectByUserRange(Long afterUserId, Long endUserId, Date since, Integer limit);
 }
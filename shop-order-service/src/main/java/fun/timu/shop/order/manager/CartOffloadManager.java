@@ -0,0 +1,20 @@
+package fun.timu.shop.order.manager;
+
+import fun.timu.shop.order.model.DTO.CartResidentStatsDTO;
+
+/**
+ * 冷购物车下沉
+ * Redis中的购物车以MySQL为持久层，长期未访问的购物车从Redis删除，只保留在MySQL，
+ * 用户再次访问时由购物车服务从MySQL按需加载
+ *
+ * @author zhengke
+ */
+public interface CartOffloadManager {
+
+    /**
+     * 扫描Redis中的全部购物车，统计驻留规模；启用下沉时删除空闲超过阈值且没有待回写变更的购物车
+     *
+     * @return 本次扫描的统计结果，同时更新驻留指标
+     */
+    CartResidentStatsDTO sweep();
+}
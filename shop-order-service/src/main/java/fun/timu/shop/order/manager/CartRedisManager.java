@@ -0,0 +1,151 @@
+package fun.timu.shop.order.manager;
+
+import fun.timu.shop.order.model.DTO.CartItemDTO;
+import fun.timu.shop.order.model.DTO.CartSummaryDTO;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 购物车Redis存储
+ * 每个用户一个Hash，字段为商品ID，值为 CartItemRedisSerializer 编码的紧凑二进制；
+ * 读到旧格式（字段 product:商品ID、值为JSON）时顺带改写为新格式。
+ * 启用异步回写时，加购、改数量、删除、清空在同一个脚本中记录待回写标记；
+ * 所有写入都会自增购物车版本号并删除购物车详情缓存，并维护购物车摘要。
+ * 游客购物车按设备标识存储，结构相同，不记录待回写标记，登录后合并到用户购物车
+ *
+ * @author zhengke
+ */
+public interface CartRedisManager {
+
+    /**
+     * 读取用户购物车全部购物项
+     */
+    List<CartItemDTO> listItems(Long userId);
+
+    /**
+     * 读取单个购物项，不存在时返回null
+     */
+    CartItemDTO getItem(Long userId, Long productId);
+
+    /**
+     * 加购，购物项不存在时新增，存在时累加数量，并刷新购物车过期时间
+     *
+     * @return 加购后的数量
+     */
+    long addItem(Long userId, Long productId, int quantity);
+
+    /**
+     * 批量加购，一次脚本调用完成，语义同 addItem
+     *
+     * @param quantities 商品ID -> 增加的数量
+     * @return 商品ID -> 加购后的数量，顺序同参数
+     */
+    Map<Long, Long> addItems(Long userId, Map<Long, Integer> quantities);
+
+    /**
+     * 游客加购，语义同 addItem，刷新游客购物车过期时间
+     * 商品种类数达到上限时只能增加已有商品的数量
+     *
+     * @return 加购后的数量，购物车已满且商品不在购物车中时返回-1
+     */
+    long addGuestItem(String deviceToken, Long productId, int quantity);
+
+    /**
+     * 读取游客购物车全部购物项
+     */
+    List<CartItemDTO> listGuestItems(String deviceToken);
+
+    /**
+     * 删除游客购物项
+     *
+     * @return 剩余的商品种类数
+     */
+    long removeGuestItems(String deviceToken, Collection<Long> productIds);
+
+    /**
+     * 游客购物车中的商品种类数
+     */
+    long countGuest(String deviceToken);
+
+    /**
+     * 把游客购物车合并到用户购物车，一次脚本调用完成：数量相加并按上限截断，处理过的商品从游客购物车删除
+     *
+     * @param limits 商品ID -> 合并后的数量上限（库存），商品不可购买时为0
+     * @return 商品ID -> 合并后的数量，只包含用户购物车发生变化的商品
+     */
+    Map<Long, Long> mergeGuestItems(String deviceToken, Long userId, Map<Long, Integer> limits);
+
+    /**
+     * 修改购物项数量并刷新购物车过期时间
+     *
+     * @return 购物项不存在时返回false
+     */
+    boolean updateQuantity(Long userId, Long productId, int quantity);
+
+    /**
+     * 批量写入多个用户的购物项并刷新过期时间，一次Pipeline完成
+     * 用于从MySQL回填：只写入Redis中不存在的购物项（HSETNX），不覆盖回填期间的并发修改；
+     * 不记录待回写标记，同样使购物车详情缓存失效
+     */
+    void putItems(Map<Long, ? extends Collection<CartItemDTO>> userItems);
+
+    /**
+     * 删除购物项
+     *
+     * @return 剩余的商品种类数
+     */
+    long removeItems(Long userId, Collection<Long> productIds);
+
+    /**
+     * 清空购物车
+     *
+     * @return 被删除的商品ID
+     */
+    List<Long> clear(Long userId);
+
+    /**
+     * 购物车中的商品种类数
+     */
+    long count(Long userId);
+
+    /**
+     * 批量读取购物车摘要，一次脚本调用完成；摘要不存在但购物车存在时从购物车重建
+     *
+     * @return 用户ID -> 摘要，Redis中既没有摘要也没有购物车的用户不在结果中
+     */
+    Map<Long, CartSummaryDTO> getSummaries(Collection<Long> userIds);
+
+    /**
+     * 写入从MySQL聚合得到的摘要，Redis中已有购物车或摘要时不写入
+     *
+     * @return 是否写入
+     */
+    boolean putSummary(Long userId, CartSummaryDTO summary);
+
+    /**
+     * 用户购物车的Redis Key
+     */
+    String cartKey(Long userId);
+
+    /**
+     * 游客购物车的Redis Key
+     */
+    String guestCartKey(String deviceToken);
+
+    /**
+     * 用户购物车摘要的Redis Key
+     */
+    String summaryKey(Long userId);
+
+    /**
+     * 用户购物车版本号的Redis Key
+     */
+    String versionKey(Long userId);
+
+    /**
+     * 用户购物车详情缓存的Redis Key
+     */
+    String viewKey(Long userId);
+}
@@ -0,0 +1,46 @@
+package fun.timu.shop.order.manager;
+
+import fun.timu.shop.order.model.VO.CartVO;
+
+import java.util.Collection;
+
+/**
+ * 购物车详情缓存
+ * 缓存组装好的CartVO，避免每次查看购物车都调用商品服务；
+ * 购物车变更时由购物车脚本删除缓存并自增版本号，商品价格、状态、库存变更时按商品反向索引删除缓存
+ *
+ * @author zhengke
+ */
+public interface CartViewCacheManager {
+
+    /**
+     * 读取购物车详情缓存，同时返回当前购物车版本号
+     * 未命中时调用方组装购物车详情后使用该版本号写回
+     */
+    Lookup lookup(Long userId);
+
+    /**
+     * 写入购物车详情缓存并登记商品反向索引
+     * 读取后购物车版本号已变化（期间有加购、删除等变更）时放弃写入，避免写回旧数据
+     *
+     * @param version lookup返回的版本号
+     * @return 是否写入
+     */
+    boolean put(Long userId, String version, CartVO cartVO);
+
+    /**
+     * 删除包含指定商品的购物车详情缓存
+     *
+     * @return 删除的缓存数
+     */
+    long evictByProducts(Collection<Long> productIds);
+
+    /**
+     * 读取结果
+     *
+     * @param cart    命中时的购物车详情，未命中时为null
+     * @param version 读取时的购物车版本号，缓存不可用时为null
+     */
+    record Lookup(CartVO cart, String version) {
+    }
+}
@@ -0,0 +1,44 @@
+package fun.timu.shop.order.manager;
+
+import fun.timu.shop.order.model.DO.CartDO;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 购物车异步回写
+ * 购物车以Redis为准，变更只在待回写ZSet中记录 userId:productId（由 CartRedisManager 的脚本与购物车修改原子写入），
+ * 由定时任务按批取出并合并为多行 INSERT ... ON DUPLICATE KEY UPDATE / DELETE 写回MySQL
+ *
+ * @author zhengke
+ */
+public interface CartWriteBehindManager {
+
+    /**
+     * 是否启用异步回写
+     */
+    boolean isEnabled();
+
+    /**
+     * 返回其中仍有待回写变更的商品ID，从MySQL回填Redis时需跳过这些商品
+     */
+    Set<Long> pendingProductIds(Long userId, Collection<Long> productIds);
+
+    /**
+     * 过滤掉仍有待回写变更的购物项，批量从MySQL回填Redis时使用，一次Pipeline查询
+     */
+    List<CartDO> filterNotPending(List<CartDO> cartList);
+
+    /**
+     * 取出一批待回写的购物项写回MySQL
+     *
+     * @return 本次回写的购物项数
+     */
+    int flush();
+
+    /**
+     * 刷新待回写数量和回写延迟指标
+     */
+    void refreshMetrics();
+}
@@ -7,4 +7,11 @@ public interface ProductOrderManager extends IService<ProductOrderDO> {
     ProductOrderDO selectOne(String outTradeNo);
 
     boolean insert(ProductOrderDO productOrderDO);
+
+    /**
+     * 按订单号做状态的条件更新，只有当前状态为oldState时才更新
+     *
+     * @return 影响行数
+     */
+    int updateOrderState(String outTradeNo, String newState, String oldState);
 }
@@ -4,10 +4,12 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import fun.timu.shop.order.manager.CartManager;
 import fun.timu.shop.order.mapper.CartMapper;
 import fun.timu.shop.order.model.DO.CartDO;
+import fun.timu.shop.order.model.DTO.CartSummaryDTO;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -38,6 +40,16 @@ public class CartManagerImpl extends ServiceImpl<CartMapper, CartDO> implements
         return cartMapper.insertOrUpdate(userId, productId, quantity);
     }
 
+    @Override
+    public int upsertBatch(List<CartDO> cartList) {
+        return cartMapper.upsertBatch(cartList);
+    }
+
+    @Override
+    public int deleteBatchByKeys(List<CartDO> cartList) {
+        return cartMapper.deleteBatchByKeys(cartList);
+    }
+
     @Override
     public int deleteBatchByUserIdAndProductIds(Long userId, List<Long> productIds) {
         return cartMapper.deleteBatchByUserIdAndProductIds(userId, productIds);
@@ -49,17 +61,22 @@ public class CartManagerImpl extends ServiceImpl<CartMapper, CartDO> implements
     }
 
     @Override
-    public List<CartDO> selectHotUserCartData(Integer days) {
-        return cartMapper.selectHotUserCartData(days);
+    public CartSummaryDTO selectSummaryByUserId(Long userId) {
+        return cartMapper.selectSummaryByUserId(userId);
+    }
+
+    @Override
+    public Long selectMinUserId() {
+        return cartMapper.selectMinUserId();
     }
 
     @Override
-    public List<CartDO> selectAllCartData(Integer offset, Integer limit) {
-        return cartMapper.selectAllCartData(offset, limit);
+    public Long selectMaxUserId() {
+        return cartMapper.selectMaxUserId();
     }
 
     @Override
-    public Long countAllCartData() {
-        return cartMapper.countAllCartData();
+    public List<CartDO> selectByUserRange(Long afterUserId, Long endUserId, Date since, Integer limit) {
+        return cartMapper.selectByUserRange(afterUserId, endUserId, since, limit);
     }
 }
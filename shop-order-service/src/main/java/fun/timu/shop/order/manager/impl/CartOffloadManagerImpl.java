@@ -0,0 +1,210 @@
+package fun.timu.shop.order.manager.impl;
+
+import fun.timu.shop.order.config.CartProperties;
+import fun.timu.shop.order.manager.CartOffloadManager;
+import fun.timu.shop.order.model.DTO.CartResidentStatsDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 冷购物车下沉实现
+ * <p>
+ * SCAN 遍历购物车Key，每批Key执行一次脚本：读取 OBJECT IDLETIME、HLEN、MEMORY USAGE 用于统计，
+ * 空闲超过阈值的购物车在同一脚本中检查待回写ZSet，没有未回写的变更才删除购物车和购物车详情缓存，
+ * 检查与删除之间不会插入用户的修改。下沉后的购物车由 CartServiceImpl 在查看或修改时从MySQL加载。
+ * <p>
+ * OBJECT IDLETIME 要求 maxmemory-policy 不是LFU类策略；脚本按参数拼接待回写ZSet和详情缓存Key，要求Redis为单机或哨兵部署。
+ * <p>
+ * 指标：shop.cart.resident.carts / items / bytes，shop.cart.resident.idle{idle=1d|7d|30d|30d+}，shop.cart.offload.carts
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+public class CartOffloadManagerImpl implements CartOffloadManager {
+
+    /**
+     * KEYS为一批购物车Key；ARGV[1]空闲秒数阈值，ARGV[2]待回写ZSet，ARGV[3]购物车Key前缀，
+     * ARGV[4]详情缓存Key前缀，ARGV[5]旧格式字段前缀，ARGV[6]是否下沉
+     * 每个Key返回 空闲秒数, 购物项数, 内存字节数, 状态（-1不存在，0保留，1已下沉，2有待回写变更）
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> SWEEP = new DefaultRedisScript<>(
+            "local result = {} " +
+                    "for _, key in ipairs(KEYS) do " +
+                    "    local idle = redis.call('object', 'idletime', key) " +
+                    "    if not idle then " +
+                    "        result[#result + 1] = 0; result[#result + 1] = 0; result[#result + 1] = 0; result[#result + 1] = -1 " +
+                    "    else " +
+                    "        local len = redis.call('hlen', key) " +
+                    "        local bytes = redis.call('memory', 'usage', key) or 0 " +
+                    "        local status = 0 " +
+                    "        if ARGV[6] == '1' and idle >= tonumber(ARGV[1]) then " +
+                    "            local userId = string.sub(key, #ARGV[3] + 1) " +
+                    "            status = 1 " +
+                    "            for _, field in ipairs(redis.call('hkeys', key)) do " +
+                    "                local productId = field " +
+                    "                if string.sub(field, 1, #ARGV[5]) == ARGV[5] then productId = string.sub(field, #ARGV[5] + 1) end " +
+                    "                if redis.call('zscore', ARGV[2], userId .. ':' .. productId) then " +
+                    "                    status = 2 " +
+                    "                    break " +
+                    "                end " +
+                    "            end " +
+                    "            if status == 1 then " +
+                    "                redis.call('del', key, ARGV[4] .. userId) " +
+                    "            end " +
+                    "        end " +
+                    "        result[#result + 1] = idle; result[#result + 1] = len; result[#result + 1] = bytes; result[#result + 1] = status " +
+                    "    end " +
+                    "end " +
+                    "return result", List.class);
+
+    private static final long DAY_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+    private final StringRedisTemplate redisTemplate;
+    private final CartProperties cartProperties;
+
+    private final AtomicLong residentCarts = new AtomicLong();
+    private final AtomicLong residentItems = new AtomicLong();
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final AtomicLong idleWithinDay = new AtomicLong();
+    private final AtomicLong idleWithinWeek = new AtomicLong();
+    private final AtomicLong idleWithinMonth = new AtomicLong();
+    private final AtomicLong idleOverMonth = new AtomicLong();
+    private final Counter offloadedCounter;
+
+    public CartOffloadManagerImpl(RedisConnectionFactory connectionFactory, CartProperties cartProperties,
+                                  MeterRegistry meterRegistry) {
+        // SCAN和脚本需要立即执行，使用不开启事务支持的独立模板
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.redisTemplate.afterPropertiesSet();
+        this.cartProperties = cartProperties;
+
+        Gauge.builder("shop.cart.resident.carts", residentCarts, AtomicLong::get)
+                .description("驻留在Redis中的购物车数量")
+                .register(meterRegistry);
+        Gauge.builder("shop.cart.resident.items", residentItems, AtomicLong::get)
+                .description("驻留在Redis中的购物项数量")
+                .register(meterRegistry);
+        Gauge.builder("shop.cart.resident.bytes", residentBytes, AtomicLong::get)
+                .description("驻留购物车占用的Redis内存")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        registerIdleGauge(meterRegistry, "1d", idleWithinDay);
+        registerIdleGauge(meterRegistry, "7d", idleWithinWeek);
+        registerIdleGauge(meterRegistry, "30d", idleWithinMonth);
+        registerIdleGauge(meterRegistry, "30d+", idleOverMonth);
+        this.offloadedCounter = Counter.builder("shop.cart.offload.carts")
+                .description("下沉到MySQL并从Redis删除的购物车数量")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public CartResidentStatsDTO sweep() {
+        CartProperties.Offload offload = cartProperties.getOffload();
+        CartResidentStatsDTO stats = new CartResidentStatsDTO();
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(cartProperties.getRedis().getKeyPrefix() + "*")
+                .count(offload.getScanCount())
+                .build();
+
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            List<String> batch = new ArrayList<>(offload.getScanCount());
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= offload.getScanCount()) {
+                    sweepBatch(batch, stats);
+                    batch.clear();
+                    TimeUnit.MILLISECONDS.sleep(offload.getBatchPauseMs());
+                }
+            }
+            if (!batch.isEmpty()) {
+                sweepBatch(batch, stats);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("冷购物车扫描被中断，本次统计不完整");
+            return stats;
+        }
+
+        updateMetrics(stats);
+        return stats;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void sweepBatch(List<String> keys, CartResidentStatsDTO stats) {
+        CartProperties.Offload offload = cartProperties.getOffload();
+        List<Long> result = redisTemplate.execute(SWEEP, keys,
+                String.valueOf(TimeUnit.DAYS.toSeconds(offload.getIdleDays())),
+                cartProperties.getWriteBehind().getDirtyKey(),
+                cartProperties.getRedis().getKeyPrefix(),
+                cartProperties.getView().getKeyPrefix(),
+                CartRedisManagerImpl.LEGACY_FIELD_PREFIX,
+                Boolean.TRUE.equals(offload.getEnabled()) ? "1" : "0");
+        if (result == null) {
+            return;
+        }
+
+        for (int i = 0; i + 3 < result.size(); i += 4) {
+            long idle = result.get(i);
+            long items = result.get(i + 1);
+            long bytes = result.get(i + 2);
+            long status = result.get(i + 3);
+            if (status < 0) {
+                continue;
+            }
+            stats.setScannedCarts(stats.getScannedCarts() + 1);
+            if (status == 1) {
+                stats.setOffloadedCarts(stats.getOffloadedCarts() + 1);
+                stats.setOffloadedItems(stats.getOffloadedItems() + items);
+                continue;
+            }
+            if (status == 2) {
+                stats.setPendingCarts(stats.getPendingCarts() + 1);
+            }
+            stats.setResidentCarts(stats.getResidentCarts() + 1);
+            stats.setResidentItems(stats.getResidentItems() + items);
+            stats.setResidentBytes(stats.getResidentBytes() + bytes);
+            if (idle <= DAY_SECONDS) {
+                stats.setIdleWithinDay(stats.getIdleWithinDay() + 1);
+            } else if (idle <= 7 * DAY_SECONDS) {
+                stats.setIdleWithinWeek(stats.getIdleWithinWeek() + 1);
+            } else if (idle <= 30 * DAY_SECONDS) {
+                stats.setIdleWithinMonth(stats.getIdleWithinMonth() + 1);
+            } else {
+                stats.setIdleOverMonth(stats.getIdleOverMonth() + 1);
+            }
+        }
+    }
+
+    private void updateMetrics(CartResidentStatsDTO stats) {
+        residentCarts.set(stats.getResidentCarts());
+        residentItems.set(stats.getResidentItems());
+        residentBytes.set(stats.getResidentBytes());
+        idleWithinDay.set(stats.getIdleWithinDay());
+        idleWithinWeek.set(stats.getIdleWithinWeek());
+        idleWithinMonth.set(stats.getIdleWithinMonth());
+        idleOverMonth.set(stats.getIdleOverMonth());
+        offloadedCounter.increment(stats.getOffloadedCarts());
+    }
+
+    private void registerIdleGauge(MeterRegistry meterRegistry, String idle, AtomicLong value) {
+        Gauge.builder("shop.cart.resident.idle", value, AtomicLong::get)
+                .description("驻留购物车按空闲时间的分布")
+                .tag("idle", idle)
+                .register(meterRegistry);
+    }
+}
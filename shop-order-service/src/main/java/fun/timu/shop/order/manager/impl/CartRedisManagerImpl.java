@@ -0,0 +1,706 @@
+package fun.timu.shop.order.manager.impl;
+
+import fun.timu.shop.order.config.CartProperties;
+import fun.timu.shop.order.converter.CartItemRedisSerializer;
+import fun.timu.shop.order.manager.CartRedisManager;
+import fun.timu.shop.order.model.DTO.CartItemDTO;
+import fun.timu.shop.order.model.DTO.CartSummaryDTO;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 购物车Redis存储实现
+ * <p>
+ * 直接在连接上读写字节，字段为商品ID的十进制字符串（小Hash中按整数编码存储），值为紧凑二进制。
+ * 旧格式的购物车在读取时由脚本迁移：字段值仍与读取时一致才改写，HSETNX 写入新字段后删除旧字段，
+ * 读取之后被并发改写的字段留到下次读取再迁移，迁移期间的并发写入以新字段为准。
+ * 写入和删除时同时删除对应的旧字段，避免同一商品新旧字段并存。
+ * <p>
+ * 加购、改数量、删除、清空通过启动时预加载的Lua脚本执行，一次EVALSHA完成读取、修改、刷新过期时间，
+ * 并在启用异步回写时原子记录待回写标记，消除先读后写的并发覆盖。
+ * 每次变更同时自增购物车版本号并删除购物车详情缓存，见 CartViewCacheManager。
+ * <p>
+ * 购物车摘要（种类数、总数量、最后更新时间）存在时由同一个脚本按增量维护；摘要不存在时不维护，
+ * 读取时由脚本从购物车Hash原子重建，重建与变更不会交错，摘要不会漏算并发的变更。
+ * 从MySQL回填购物项时删除摘要，下次读取时重建。
+ * <p>
+ * 游客购物车按设备标识存储，Hash结构相同，使用同样的脚本读写，但不记录待回写标记；
+ * 登录后由合并脚本一次并入用户购物车。
+ * 脚本同时访问购物车Key、待回写ZSet、详情缓存Key和摘要Key，要求Redis为单机或哨兵部署。
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+public class CartRedisManagerImpl implements CartRedisManager {
+
+    /**
+     * 旧格式字段前缀
+     */
+    public static final String LEGACY_FIELD_PREFIX = "product:";
+
+    /**
+     * 二进制购物项的变长整数编解码
+     */
+    private static final String LUA_VARINT =
+            "local function readVarint(v, pos) " +
+                    "    local result, mul = 0, 1 " +
+                    "    while true do " +
+                    "        local b = string.byte(v, pos) " +
+                    "        pos = pos + 1 " +
+                    "        result = result + (b % 128) * mul " +
+                    "        if b < 128 then return result, pos end " +
+                    "        mul = mul * 128 " +
+                    "    end " +
+                    "end " +
+                    "local function writeVarint(parts, x) " +
+                    "    while x >= 128 do " +
+                    "        parts[#parts + 1] = string.char(x % 128 + 128) " +
+                    "        x = math.floor(x / 128) " +
+                    "    end " +
+                    "    parts[#parts + 1] = string.char(x) " +
+                    "end ";
+
+    /**
+     * 各脚本共用的函数
+     * KEYS[1]为购物车Key，KEYS[2]为待回写ZSet，KEYS[3]为购物车版本号，KEYS[4]为购物车详情缓存，KEYS[5]为购物车摘要
+     * ARGV[1]用户ID，ARGV[2]当前时间毫秒，ARGV[3]过期秒数，ARGV[4]旧格式字段前缀，ARGV[5]是否记录待回写标记，其后为各脚本参数
+     */
+    private static final String LUA_PRELUDE = LUA_VARINT +
+                    "local function markDirty(productId) " +
+                    "    if ARGV[5] == '1' then redis.call('zadd', KEYS[2], 'NX', ARGV[2], ARGV[1] .. ':' .. productId) end " +
+                    "end " +
+                    // 购物车变更后版本号自增并删除详情缓存，变更前读取购物车的请求无法再写入详情缓存
+                    "local function touchView() " +
+                    "    redis.call('incr', KEYS[3]) " +
+                    "    redis.call('expire', KEYS[3], ARGV[3]) " +
+                    "    redis.call('del', KEYS[4]) " +
+                    "end " +
+                    // 摘要不存在时不维护，读取时重建
+                    "local function adjustSummary(items, quantity) " +
+                    "    if redis.call('exists', KEYS[5]) == 1 then " +
+                    "        redis.call('hincrby', KEYS[5], 'n', items) " +
+                    "        redis.call('hincrby', KEYS[5], 'q', quantity) " +
+                    "        redis.call('hset', KEYS[5], 't', ARGV[2]) " +
+                    "        redis.call('expire', KEYS[5], ARGV[3]) " +
+                    "    end " +
+                    "end " +
+                    // 返回 数量, 添加时间；购物项不存在时返回nil，兼容旧的JSON格式
+                    "local function load(productId) " +
+                    "    local v = redis.call('hget', KEYS[1], productId) " +
+                    "    if v and string.byte(v, 1) == 1 then " +
+                    "        local quantity, pos = readVarint(v, 2) " +
+                    "        return quantity, readVarint(v, pos) " +
+                    "    end " +
+                    "    v = v or redis.call('hget', KEYS[1], ARGV[4] .. productId) " +
+                    "    if not v then return nil end " +
+                    "    local item = cjson.decode(v) " +
+                    "    if type(item) == 'string' then item = cjson.decode(item) end " +
+                    "    return tonumber(item.quantity), tonumber(item.addTime) " +
+                    "end " +
+                    // previous为修改前的数量，新增购物项时为nil
+                    "local function save(productId, quantity, addTime, previous) " +
+                    "    local now = tonumber(ARGV[2]) " +
+                    "    local parts = {string.char(1)} " +
+                    "    writeVarint(parts, quantity) " +
+                    "    writeVarint(parts, addTime) " +
+                    "    writeVarint(parts, math.max(now - addTime, 0)) " +
+                    "    redis.call('hset', KEYS[1], productId, table.concat(parts)) " +
+                    "    redis.call('hdel', KEYS[1], ARGV[4] .. productId) " +
+                    "    redis.call('expire', KEYS[1], ARGV[3]) " +
+                    "    markDirty(productId) " +
+                    "    touchView() " +
+                    "    adjustSummary(previous and 0 or 1, quantity - (previous or 0)) " +
+                    "end ";
+
+    /**
+     * 加购：ARGV[6]商品ID，ARGV[7]增加的数量；返回加购后的数量
+     */
+    private static final DefaultRedisScript<Long> ADD = new DefaultRedisScript<>(LUA_PRELUDE +
+            "local previous, addTime = load(ARGV[6]) " +
+            "local quantity = (previous or 0) + tonumber(ARGV[7]) " +
+            "save(ARGV[6], quantity, addTime or tonumber(ARGV[2]), previous) " +
+            "return quantity", Long.class);
+
+    /**
+     * 游客加购：ARGV[6]商品ID，ARGV[7]增加的数量，ARGV[8]最多的商品种类数；返回加购后的数量
+     * 购物车已满且商品不在购物车中时返回-1，种类数判断与写入在同一脚本中完成
+     */
+    private static final DefaultRedisScript<Long> ADD_GUEST = new DefaultRedisScript<>(LUA_PRELUDE +
+            "local previous, addTime = load(ARGV[6]) " +
+            "if not previous and redis.call('hlen', KEYS[1]) >= tonumber(ARGV[8]) then return -1 end " +
+            "local quantity = (previous or 0) + tonumber(ARGV[7]) " +
+            "save(ARGV[6], quantity, addTime or tonumber(ARGV[2]), previous) " +
+            "return quantity", Long.class);
+
+    /**
+     * 批量加购：ARGV[6..]依次为商品ID、增加的数量；按参数顺序返回每个商品加购后的数量
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> ADD_BATCH = new DefaultRedisScript<>(LUA_PRELUDE +
+            "local result = {} " +
+            "for i = 6, #ARGV, 2 do " +
+            "    local previous, addTime = load(ARGV[i]) " +
+            "    local quantity = (previous or 0) + tonumber(ARGV[i + 1]) " +
+            "    save(ARGV[i], quantity, addTime or tonumber(ARGV[2]), previous) " +
+            "    result[#result + 1] = quantity " +
+            "end " +
+            "return result", List.class);
+
+    /**
+     * 修改数量：ARGV[6]商品ID，ARGV[7]新数量；返回新数量，购物项不存在时返回-1
+     */
+    private static final DefaultRedisScript<Long> UPDATE = new DefaultRedisScript<>(LUA_PRELUDE +
+            "local previous, addTime = load(ARGV[6]) " +
+            "if not previous then return -1 end " +
+            "save(ARGV[6], tonumber(ARGV[7]), addTime, previous) " +
+            "return tonumber(ARGV[7])", Long.class);
+
+    /**
+     * 删除：ARGV[6..]商品ID；返回剩余的商品种类数
+     * 不论Redis中是否存在都记录待回写标记，Redis中已过期的购物项也要从MySQL删除
+     */
+    private static final DefaultRedisScript<Long> REMOVE = new DefaultRedisScript<>(LUA_PRELUDE +
+            "for i = 6, #ARGV do " +
+            "    local previous = load(ARGV[i]) " +
+            "    if previous then adjustSummary(-1, -previous) end " +
+            "    redis.call('hdel', KEYS[1], ARGV[i], ARGV[4] .. ARGV[i]) " +
+            "    markDirty(ARGV[i]) " +
+            "end " +
+            "local remaining = redis.call('hlen', KEYS[1]) " +
+            "if remaining > 0 then redis.call('expire', KEYS[1], ARGV[3]) end " +
+            "touchView() " +
+            "return remaining", Long.class);
+
+    /**
+     * 清空：返回被删除的商品ID
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> CLEAR = new DefaultRedisScript<>(LUA_PRELUDE +
+            "local fields = redis.call('hkeys', KEYS[1]) " +
+            "redis.call('del', KEYS[1]) " +
+            "local ids = {} " +
+            "for _, field in ipairs(fields) do " +
+            "    local productId = field " +
+            "    if string.sub(field, 1, #ARGV[4]) == ARGV[4] then productId = string.sub(field, #ARGV[4] + 1) end " +
+            "    markDirty(productId) " +
+            "    ids[#ids + 1] = productId " +
+            "end " +
+            "redis.call('hset', KEYS[5], 'n', 0, 'q', 0, 't', ARGV[2]) " +
+            "redis.call('expire', KEYS[5], ARGV[3]) " +
+            "touchView() " +
+            "return ids", List.class);
+
+    /**
+     * 合并游客购物车：KEYS[6]为游客购物车；ARGV[6..]依次为商品ID、合并后数量上限（库存，不可购买时为0）
+     * 数量相加后不超过上限，上限低于用户购物车已有数量时保留已有数量；处理过的商品从游客购物车删除
+     * 按参数顺序返回每个商品合并后的数量，未改变用户购物车时返回0
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> MERGE = new DefaultRedisScript<>(LUA_PRELUDE +
+            "local result = {} " +
+            "for i = 6, #ARGV, 2 do " +
+            "    local merged = 0 " +
+            "    local v = redis.call('hget', KEYS[6], ARGV[i]) " +
+            "    if v and string.byte(v, 1) == 1 then " +
+            "        local guestQuantity = readVarint(v, 2) " +
+            "        local previous, addTime = load(ARGV[i]) " +
+            "        local quantity = math.min((previous or 0) + guestQuantity, math.max(tonumber(ARGV[i + 1]), previous or 0)) " +
+            "        if quantity > (previous or 0) then " +
+            "            save(ARGV[i], quantity, addTime or tonumber(ARGV[2]), previous) " +
+            "            merged = quantity " +
+            "        end " +
+            "    end " +
+            "    redis.call('hdel', KEYS[6], ARGV[i]) " +
+            "    result[#result + 1] = merged " +
+            "end " +
+            "return result", List.class);
+
+    /**
+     * 读取摘要：KEYS依次为每个用户的购物车Key、摘要Key；ARGV[1]过期秒数，ARGV[2]旧格式字段前缀
+     * 每个用户返回 种类数, 总数量, 最后更新时间；摘要不存在但购物车存在时从购物车重建，都不存在时种类数为-1
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> SUMMARY = new DefaultRedisScript<>(LUA_VARINT +
+            "local result = {} " +
+            "for i = 1, #KEYS, 2 do " +
+            "    local summary = redis.call('hmget', KEYS[i + 1], 'n', 'q', 't') " +
+            "    local n, q, t = tonumber(summary[1]), tonumber(summary[2]), tonumber(summary[3]) " +
+            "    if not n then " +
+            "        if redis.call('exists', KEYS[i]) == 1 then " +
+            "            n, q, t = 0, 0, 0 " +
+            "            local entries = redis.call('hgetall', KEYS[i]) " +
+            "            for j = 1, #entries, 2 do " +
+            "                local field, v = entries[j], entries[j + 1] " +
+            "                local legacy = string.sub(field, 1, #ARGV[2]) == ARGV[2] " +
+            // 同一商品新旧字段并存时只计新字段
+            "                if not (legacy and redis.call('hexists', KEYS[i], string.sub(field, #ARGV[2] + 1)) == 1) then " +
+            "                    local quantity, updateTime " +
+            "                    if string.byte(v, 1) == 1 then " +
+            "                        local addTime, delta, pos " +
+            "                        quantity, pos = readVarint(v, 2) " +
+            "                        addTime, pos = readVarint(v, pos) " +
+            "                        delta = readVarint(v, pos) " +
+            "                        updateTime = addTime + delta " +
+            "                    else " +
+            "                        local item = cjson.decode(v) " +
+            "                        if type(item) == 'string' then item = cjson.decode(item) end " +
+            "                        quantity, updateTime = tonumber(item.quantity), tonumber(item.updateTime) " +
+            "                    end " +
+            "                    n = n + 1 " +
+            "                    q = q + (quantity or 0) " +
+            "                    t = math.max(t, updateTime or 0) " +
+            "                end " +
+            "            end " +
+            "            redis.call('hset', KEYS[i + 1], 'n', n, 'q', q, 't', t) " +
+            "            redis.call('expire', KEYS[i + 1], ARGV[1]) " +
+            "        else " +
+            "            n, q, t = -1, 0, 0 " +
+            "        end " +
+            "    end " +
+            "    result[#result + 1] = n " +
+            "    result[#result + 1] = q " +
+            "    result[#result + 1] = t or 0 " +
+            "end " +
+            "return result", List.class);
+
+    /**
+     * 写入从MySQL聚合得到的摘要：KEYS[1]购物车Key，KEYS[2]摘要Key；ARGV依次为种类数、总数量、最后更新时间、过期秒数
+     * 购物车或摘要已存在时不写入，以Redis中的数据为准
+     */
+    private static final DefaultRedisScript<Long> PUT_SUMMARY = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 1 or redis.call('exists', KEYS[2]) == 1 then return 0 end " +
+                    "redis.call('hset', KEYS[2], 'n', ARGV[1], 'q', ARGV[2], 't', ARGV[3]) " +
+                    "redis.call('expire', KEYS[2], ARGV[4]) " +
+                    "return 1", Long.class);
+
+    /**
+     * 迁移旧格式购物项：KEYS[1]购物车Key；ARGV依次为旧字段、读取时的旧值、新字段、新值
+     * 旧字段的值已被并发改写或删除时不迁移，返回0；新旧字段相同时直接覆盖，否则HSETNX新字段后删除旧字段
+     */
+    private static final DefaultRedisScript<Long> MIGRATE = new DefaultRedisScript<>(
+            "if redis.call('hget', KEYS[1], ARGV[1]) ~= ARGV[2] then return 0 end " +
+                    "if ARGV[1] == ARGV[3] then " +
+                    "    redis.call('hset', KEYS[1], ARGV[3], ARGV[4]) " +
+                    "else " +
+                    "    redis.call('hsetnx', KEYS[1], ARGV[3], ARGV[4]) " +
+                    "    redis.call('hdel', KEYS[1], ARGV[1]) " +
+                    "end " +
+                    "return 1", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final CartProperties cartProperties;
+
+    public CartRedisManagerImpl(RedisConnectionFactory connectionFactory, CartProperties cartProperties) {
+        // 购物车读写需要立即拿到结果，使用不开启事务支持的独立模板
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.redisTemplate.afterPropertiesSet();
+        this.cartProperties = cartProperties;
+    }
+
+    /**
+     * 预加载脚本，之后的调用直接EVALSHA；Redis重启丢失脚本时DefaultRedisScript会自动回退到EVAL
+     */
+    @PostConstruct
+    public void loadScripts() {
+        try {
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                for (DefaultRedisScript<?> script : List.of(ADD, ADD_BATCH, UPDATE, REMOVE, CLEAR, MERGE, SUMMARY, PUT_SUMMARY)) {
+                    connection.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("预加载购物车脚本失败，首次调用时再加载", e);
+        }
+    }
+
+    @Override
+    public List<CartItemDTO> listItems(Long userId) {
+        byte[] key = rawKey(userId);
+        Map<byte[], byte[]> entries = redisTemplate.execute(
+                (RedisCallback<Map<byte[], byte[]>>) connection -> connection.hashCommands().hGetAll(key));
+        if (entries == null || entries.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, CartItemDTO> items = new LinkedHashMap<>(entries.size() * 2);
+        Map<String, LegacyItem> legacyItems = new HashMap<>();
+        for (Map.Entry<byte[], byte[]> entry : entries.entrySet()) {
+            String field = new String(entry.getKey(), StandardCharsets.UTF_8);
+            CartItemDTO cartItem;
+            try {
+                cartItem = CartItemRedisSerializer.INSTANCE.deserialize(entry.getValue());
+            } catch (Exception e) {
+                log.warn("跳过无法解析的购物项: userId={}, field={}", userId, field, e);
+                continue;
+            }
+            cartItem.setProductId(parseProductId(field));
+            if (field.startsWith(LEGACY_FIELD_PREFIX)) {
+                // 同一商品新旧字段并存时以新字段为准
+                items.putIfAbsent(cartItem.getProductId(), cartItem);
+                legacyItems.put(field, new LegacyItem(cartItem, entry.getValue()));
+            } else {
+                items.put(cartItem.getProductId(), cartItem);
+                if (CartItemRedisSerializer.isLegacy(entry.getValue())) {
+                    legacyItems.put(field, new LegacyItem(cartItem, entry.getValue()));
+                }
+            }
+        }
+
+        if (!legacyItems.isEmpty()) {
+            migrate(userId, key, legacyItems);
+        }
+        return new ArrayList<>(items.values());
+    }
+
+    @Override
+    public List<CartItemDTO> listGuestItems(String deviceToken) {
+        byte[] key = rawString(guestCartKey(deviceToken));
+        Map<byte[], byte[]> entries = redisTemplate.execute(
+                (RedisCallback<Map<byte[], byte[]>>) connection -> connection.hashCommands().hGetAll(key));
+        if (entries == null || entries.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // 游客购物车只由脚本写入，没有旧格式字段
+        List<CartItemDTO> items = new ArrayList<>(entries.size());
+        for (Map.Entry<byte[], byte[]> entry : entries.entrySet()) {
+            CartItemDTO cartItem = CartItemRedisSerializer.INSTANCE.deserialize(entry.getValue());
+            cartItem.setProductId(Long.valueOf(new String(entry.getKey(), StandardCharsets.UTF_8)));
+            items.add(cartItem);
+        }
+        return items;
+    }
+
+    @Override
+    public CartItemDTO getItem(Long userId, Long productId) {
+        byte[] key = rawKey(userId);
+        List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.hashCommands().hMGet(key, rawField(productId), rawLegacyField(productId)));
+        if (values == null) {
+            return null;
+        }
+        byte[] value = values.get(0) != null ? values.get(0) : values.get(1);
+        CartItemDTO cartItem = CartItemRedisSerializer.INSTANCE.deserialize(value);
+        if (cartItem != null) {
+            cartItem.setProductId(productId);
+        }
+        return cartItem;
+    }
+
+    @Override
+    public long addItem(Long userId, Long productId, int quantity) {
+        Long result = redisTemplate.execute(ADD, keys(userId), args(userId, String.valueOf(productId), String.valueOf(quantity)));
+        return result != null ? result : 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<Long, Long> addItems(Long userId, Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+        List<Long> productIds = new ArrayList<>(quantities.keySet());
+        String[] extra = new String[productIds.size() * 2];
+        for (int i = 0; i < productIds.size(); i++) {
+            extra[i * 2] = String.valueOf(productIds.get(i));
+            extra[i * 2 + 1] = String.valueOf(quantities.get(productIds.get(i)));
+        }
+        List<Long> result = redisTemplate.execute(ADD_BATCH, keys(userId), args(userId, extra));
+
+        Map<Long, Long> newQuantities = new LinkedHashMap<>(productIds.size() * 2);
+        for (int i = 0; i < productIds.size(); i++) {
+            newQuantities.put(productIds.get(i), result != null && i < result.size() ? result.get(i) : 0L);
+        }
+        return newQuantities;
+    }
+
+    @Override
+    public long addGuestItem(String deviceToken, Long productId, int quantity) {
+        Long result = redisTemplate.execute(ADD_GUEST, guestKeys(deviceToken),
+                guestArgs(deviceToken, String.valueOf(productId), String.valueOf(quantity),
+                        String.valueOf(cartProperties.getGuest().getMaxItems())));
+        return result != null ? result : 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<Long, Long> mergeGuestItems(String deviceToken, Long userId, Map<Long, Integer> limits) {
+        Map<Long, Long> merged = new LinkedHashMap<>(limits.size() * 2);
+        if (limits.isEmpty()) {
+            return merged;
+        }
+        List<Long> productIds = new ArrayList<>(limits.keySet());
+        String[] extra = new String[productIds.size() * 2];
+        for (int i = 0; i < productIds.size(); i++) {
+            extra[i * 2] = String.valueOf(productIds.get(i));
+            extra[i * 2 + 1] = String.valueOf(limits.get(productIds.get(i)));
+        }
+        List<String> keys = new ArrayList<>(keys(userId));
+        keys.add(guestCartKey(deviceToken));
+        List<Long> result = redisTemplate.execute(MERGE, keys, args(userId, extra));
+        if (result == null) {
+            return merged;
+        }
+        for (int i = 0; i < productIds.size() && i < result.size(); i++) {
+            if (result.get(i) > 0) {
+                merged.put(productIds.get(i), result.get(i));
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public boolean updateQuantity(Long userId, Long productId, int quantity) {
+        Long result = redisTemplate.execute(UPDATE, keys(userId), args(userId, String.valueOf(productId), String.valueOf(quantity)));
+        return result != null && result >= 0;
+    }
+
+    @Override
+    public void putItems(Map<Long, ? extends Collection<CartItemDTO>> userItems) {
+        if (userItems.isEmpty()) {
+            return;
+        }
+        long expireSeconds = TimeUnit.DAYS.toSeconds(cartProperties.getRedis().getExpireDays());
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            userItems.forEach((userId, items) -> {
+                if (items.isEmpty()) {
+                    return;
+                }
+                byte[] key = rawKey(userId);
+                byte[][] legacyFields = new byte[items.size()][];
+                int i = 0;
+                for (CartItemDTO cartItem : items) {
+                    // 回填期间用户可能已经修改了购物车，只写入不存在的购物项，以Redis中的新数据为准
+                    connection.hashCommands().hSetNX(key, rawField(cartItem.getProductId()),
+                            CartItemRedisSerializer.INSTANCE.serialize(cartItem));
+                    legacyFields[i++] = rawLegacyField(cartItem.getProductId());
+                }
+                connection.hashCommands().hDel(key, legacyFields);
+                connection.keyCommands().expire(key, expireSeconds);
+                byte[] versionKey = rawString(versionKey(userId));
+                connection.stringCommands().incr(versionKey);
+                connection.keyCommands().expire(versionKey, expireSeconds);
+                connection.keyCommands().del(rawString(viewKey(userId)));
+                // 回填的购物项不经过脚本，删除摘要，读取时从购物车重建
+                connection.keyCommands().del(rawString(summaryKey(userId)));
+            });
+            return null;
+        });
+    }
+
+    @Override
+    public long removeItems(Long userId, Collection<Long> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return count(userId);
+        }
+        String[] ids = productIds.stream().map(String::valueOf).toArray(String[]::new);
+        Long remaining = redisTemplate.execute(REMOVE, keys(userId), args(userId, ids));
+        return remaining != null ? remaining : 0;
+    }
+
+    @Override
+    public long removeGuestItems(String deviceToken, Collection<Long> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return countGuest(deviceToken);
+        }
+        String[] ids = productIds.stream().map(String::valueOf).toArray(String[]::new);
+        Long remaining = redisTemplate.execute(REMOVE, guestKeys(deviceToken), guestArgs(deviceToken, ids));
+        return remaining != null ? remaining : 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Long> clear(Long userId) {
+        List<String> ids = redisTemplate.execute(CLEAR, keys(userId), args(userId));
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return ids.stream().map(Long::valueOf).distinct().collect(Collectors.toList());
+    }
+
+    @Override
+    public long count(Long userId) {
+        Long size = redisTemplate.execute((RedisCallback<Long>) connection -> connection.hashCommands().hLen(rawKey(userId)));
+        return size != null ? size : 0;
+    }
+
+    @Override
+    public long countGuest(String deviceToken) {
+        Long size = redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.hashCommands().hLen(rawString(guestCartKey(deviceToken))));
+        return size != null ? size : 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<Long, CartSummaryDTO> getSummaries(Collection<Long> userIds) {
+        Map<Long, CartSummaryDTO> summaries = new LinkedHashMap<>(userIds.size() * 2);
+        if (userIds.isEmpty()) {
+            return summaries;
+        }
+        List<Long> users = new ArrayList<>(userIds);
+        List<String> keys = new ArrayList<>(users.size() * 2);
+        for (Long userId : users) {
+            keys.add(cartKey(userId));
+            keys.add(summaryKey(userId));
+        }
+        List<Long> result = redisTemplate.execute(SUMMARY, keys,
+                String.valueOf(TimeUnit.DAYS.toSeconds(cartProperties.getRedis().getExpireDays())), LEGACY_FIELD_PREFIX);
+        if (result == null) {
+            return summaries;
+        }
+        for (int i = 0; i < users.size() && i * 3 + 2 < result.size(); i++) {
+            long itemCount = result.get(i * 3);
+            if (itemCount < 0) {
+                continue;
+            }
+            long updateTime = result.get(i * 3 + 2);
+            summaries.put(users.get(i), new CartSummaryDTO((int) itemCount, result.get(i * 3 + 1).intValue(),
+                    updateTime > 0 ? updateTime : null));
+        }
+        return summaries;
+    }
+
+    @Override
+    public boolean putSummary(Long userId, CartSummaryDTO summary) {
+        Long result = redisTemplate.execute(PUT_SUMMARY, Arrays.asList(cartKey(userId), summaryKey(userId)),
+                String.valueOf(summary.getItemCount()),
+                String.valueOf(summary.getTotalQuantity()),
+                String.valueOf(summary.getUpdateTime() != null ? summary.getUpdateTime() : 0),
+                String.valueOf(TimeUnit.DAYS.toSeconds(cartProperties.getRedis().getExpireDays())));
+        return result != null && result > 0;
+    }
+
+    @Override
+    public String cartKey(Long userId) {
+        return cartProperties.getRedis().getKeyPrefix() + userId;
+    }
+
+    @Override
+    public String guestCartKey(String deviceToken) {
+        return cartProperties.getGuest().getKeyPrefix() + deviceToken;
+    }
+
+    @Override
+    public String summaryKey(Long userId) {
+        return cartProperties.getRedis().getSummaryKeyPrefix() + userId;
+    }
+
+    @Override
+    public String versionKey(Long userId) {
+        return cartProperties.getView().getVersionKeyPrefix() + userId;
+    }
+
+    @Override
+    public String viewKey(Long userId) {
+        return cartProperties.getView().getKeyPrefix() + userId;
+    }
+
+    /**
+     * 把旧格式购物项改写为新格式
+     */
+    private void migrate(Long userId, byte[] key, Map<String, LegacyItem> legacyItems) {
+        try {
+            byte[] script = rawString(MIGRATE.getScriptAsString());
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                legacyItems.forEach((field, legacyItem) -> migrateItem(connection, script, key, field, legacyItem));
+                return null;
+            });
+            log.debug("购物车迁移为二进制格式: userId={}, count={}", userId, legacyItems.size());
+        } catch (Exception e) {
+            // 迁移失败不影响读取，下次读取时重试
+            log.warn("购物车迁移为二进制格式失败: userId={}", userId, e);
+        }
+    }
+
+    /**
+     * 只在字段值仍与读取时一致时改写，避免用读取时的旧值覆盖读取之后的并发写入
+     */
+    private void migrateItem(RedisConnection connection, byte[] script, byte[] key, String field, LegacyItem legacyItem) {
+        CartItemDTO cartItem = legacyItem.cartItem();
+        connection.scriptingCommands().eval(script, ReturnType.INTEGER, 1, key,
+                rawString(field), legacyItem.value(), rawField(cartItem.getProductId()),
+                CartItemRedisSerializer.INSTANCE.serialize(cartItem));
+    }
+
+    private List<String> keys(Long userId) {
+        return Arrays.asList(cartKey(userId), cartProperties.getWriteBehind().getDirtyKey(),
+                versionKey(userId), viewKey(userId), summaryKey(userId));
+    }
+
+    /**
+     * 游客购物车的脚本Key，版本号、详情缓存、摘要Key与用户购物车区分；游客没有详情缓存和摘要，只留下版本号
+     */
+    private List<String> guestKeys(String deviceToken) {
+        String cartKey = guestCartKey(deviceToken);
+        String prefix = cartProperties.getGuest().getKeyPrefix();
+        return Arrays.asList(cartKey, cartProperties.getWriteBehind().getDirtyKey(),
+                prefix + "ver:" + deviceToken, prefix + "view:" + deviceToken, prefix + "summary:" + deviceToken);
+    }
+
+    /**
+     * 拼接脚本公共参数和各脚本参数
+     */
+    private Object[] args(Long userId, String... extra) {
+        return scriptArgs(String.valueOf(userId), cartProperties.getRedis().getExpireDays(),
+                Boolean.TRUE.equals(cartProperties.getWriteBehind().getEnabled()), extra);
+    }
+
+    /**
+     * 游客购物车的脚本参数，不写MySQL，不记录待回写标记
+     */
+    private Object[] guestArgs(String deviceToken, String... extra) {
+        return scriptArgs(deviceToken, cartProperties.getGuest().getExpireDays(), false, extra);
+    }
+
+    private Object[] scriptArgs(String owner, int expireDays, boolean markDirty, String... extra) {
+        Object[] args = new Object[5 + extra.length];
+        args[0] = owner;
+        args[1] = String.valueOf(System.currentTimeMillis());
+        args[2] = String.valueOf(TimeUnit.DAYS.toSeconds(expireDays));
+        args[3] = LEGACY_FIELD_PREFIX;
+        args[4] = markDirty ? "1" : "0";
+        System.arraycopy(extra, 0, args, 5, extra.length);
+        return args;
+    }
+
+    private byte[] rawKey(Long userId) {
+        return rawString(cartKey(userId));
+    }
+
+    private static byte[] rawString(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] rawField(Long productId) {
+        return String.valueOf(productId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] rawLegacyField(Long productId) {
+        return (LEGACY_FIELD_PREFIX + productId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Long parseProductId(String field) {
+        return Long.valueOf(field.startsWith(LEGACY_FIELD_PREFIX) ? field.substring(LEGACY_FIELD_PREFIX.length()) : field);
+    }
+
+    /**
+     * 待迁移的购物项及读取时的原始字节
+     */
+    private record LegacyItem(CartItemDTO cartItem, byte[] value) {
+    }
+}
@@ -0,0 +1,187 @@
+package fun.timu.shop.order.manager.impl;
+
+import com.alibaba.fastjson2.JSON;
+import fun.timu.shop.order.config.CartProperties;
+import fun.timu.shop.order.manager.CartRedisManager;
+import fun.timu.shop.order.manager.CartViewCacheManager;
+import fun.timu.shop.order.model.VO.CartItemVO;
+import fun.timu.shop.order.model.VO.CartVO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 购物车详情缓存实现
+ * <p>
+ * 1. 存储：cart:view:{userId} 为CartVO的JSON；cart:view:ver:{userId} 为购物车版本号，由购物车脚本在每次变更时自增；
+ * cart:view:product:{productId} 为Set，成员为缓存了包含该商品的购物车详情的用户ID
+ * 2. 写入：按读取时的版本号条件写入，读取后购物车有变更则放弃，加购等操作不会被并发的查看请求覆盖成旧数据
+ * 3. 失效：订阅商品服务的失效频道和库存变更频道，按反向索引删除对应用户的缓存；
+ * 商品变更与正在组装的请求并发时可能写回旧商品信息，由过期时间兜底，下单前的库存校验始终查询商品服务
+ * <p>
+ * 指标：cache.gets{cache=cart.view} 和 cache.evictions{cache=cart.view}
+ * 脚本按参数拼接反向索引Key，要求Redis为单机或哨兵部署
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+public class CartViewCacheManagerImpl implements CartViewCacheManager, MessageListener {
+
+    private static final String CACHE_NAME = "cart.view";
+
+    /**
+     * 条件写入：KEYS[1]详情缓存，KEYS[2]版本号；ARGV[1]期望版本号，ARGV[2]JSON，ARGV[3]过期秒数，
+     * ARGV[4]反向索引前缀，ARGV[5]用户ID，ARGV[6..]商品ID
+     */
+    private static final DefaultRedisScript<Long> PUT = new DefaultRedisScript<>(
+            "if (redis.call('get', KEYS[2]) or '0') ~= ARGV[1] then return 0 end " +
+                    "redis.call('set', KEYS[1], ARGV[2], 'EX', ARGV[3]) " +
+                    "for i = 6, #ARGV do " +
+                    "    local index = ARGV[4] .. ARGV[i] " +
+                    "    redis.call('sadd', index, ARGV[5]) " +
+                    "    redis.call('expire', index, ARGV[3]) " +
+                    "end " +
+                    "return 1", Long.class);
+
+    /**
+     * 按商品失效：ARGV[1]反向索引前缀，ARGV[2]详情缓存前缀，ARGV[3..]商品ID；返回删除的缓存数
+     */
+    private static final DefaultRedisScript<Long> EVICT = new DefaultRedisScript<>(
+            "local evicted = 0 " +
+                    "for i = 3, #ARGV do " +
+                    "    local index = ARGV[1] .. ARGV[i] " +
+                    "    for _, userId in ipairs(redis.call('smembers', index)) do " +
+                    "        evicted = evicted + redis.call('del', ARGV[2] .. userId) " +
+                    "    end " +
+                    "    redis.call('del', index) " +
+                    "end " +
+                    "return evicted", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final CartRedisManager cartRedisManager;
+    private final CartProperties cartProperties;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictCounter;
+
+    public CartViewCacheManagerImpl(RedisConnectionFactory connectionFactory, CartRedisManager cartRedisManager,
+                                    CartProperties cartProperties, MeterRegistry meterRegistry) {
+        // 不使用开启了事务支持的RedisTemplate，读取需要立即拿到结果
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.redisTemplate.afterPropertiesSet();
+        this.cartRedisManager = cartRedisManager;
+        this.cartProperties = cartProperties;
+
+        this.hitCounter = meterRegistry.counter("cache.gets", "cache", CACHE_NAME, "result", "hit");
+        this.missCounter = meterRegistry.counter("cache.gets", "cache", CACHE_NAME, "result", "miss");
+        this.evictCounter = meterRegistry.counter("cache.evictions", "cache", CACHE_NAME);
+    }
+
+    @Override
+    public Lookup lookup(Long userId) {
+        if (!Boolean.TRUE.equals(cartProperties.getView().getEnabled())) {
+            return new Lookup(null, null);
+        }
+        try {
+            List<String> values = redisTemplate.opsForValue()
+                    .multiGet(List.of(cartRedisManager.viewKey(userId), cartRedisManager.versionKey(userId)));
+            String view = values == null ? null : values.get(0);
+            String version = values == null || values.get(1) == null ? "0" : values.get(1);
+            if (view != null) {
+                hitCounter.increment();
+                return new Lookup(JSON.parseObject(view, CartVO.class), version);
+            }
+            missCounter.increment();
+            return new Lookup(null, version);
+        } catch (Exception e) {
+            log.warn("读取购物车详情缓存失败，直接组装: userId={}", userId, e);
+            return new Lookup(null, null);
+        }
+    }
+
+    @Override
+    public boolean put(Long userId, String version, CartVO cartVO) {
+        if (version == null || cartVO == null || !Boolean.TRUE.equals(cartProperties.getView().getEnabled())) {
+            return false;
+        }
+        CartProperties.View view = cartProperties.getView();
+        List<Long> productIds = cartVO.getItems() == null ? List.of() : cartVO.getItems().stream()
+                .map(CartItemVO::getProductId)
+                .distinct()
+                .collect(Collectors.toList());
+
+        Object[] args = new Object[5 + productIds.size()];
+        args[0] = version;
+        args[1] = JSON.toJSONString(cartVO);
+        args[2] = String.valueOf(view.getTtlSeconds());
+        args[3] = view.getProductIndexPrefix();
+        args[4] = String.valueOf(userId);
+        for (int i = 0; i < productIds.size(); i++) {
+            args[5 + i] = String.valueOf(productIds.get(i));
+        }
+        try {
+            Long result = redisTemplate.execute(PUT,
+                    List.of(cartRedisManager.viewKey(userId), cartRedisManager.versionKey(userId)), args);
+            return result != null && result == 1;
+        } catch (Exception e) {
+            log.warn("写入购物车详情缓存失败: userId={}", userId, e);
+            return false;
+        }
+    }
+
+    @Override
+    public long evictByProducts(Collection<Long> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return 0;
+        }
+        CartProperties.View view = cartProperties.getView();
+        Object[] args = new Object[2 + productIds.size()];
+        args[0] = view.getProductIndexPrefix();
+        args[1] = view.getKeyPrefix();
+        int i = 2;
+        for (Long productId : productIds) {
+            args[i++] = String.valueOf(productId);
+        }
+        Long evicted = redisTemplate.execute(EVICT, Collections.emptyList(), args);
+        long count = evicted != null ? evicted : 0;
+        evictCounter.increment(count);
+        return count;
+    }
+
+    /**
+     * 接收商品服务发布的失效消息和库存变更消息，内容为逗号分隔的商品ID
+     * 消息广播到所有实例，重复删除没有副作用
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        Set<Long> productIds;
+        try {
+            productIds = Arrays.stream(body.split(","))
+                    .filter(s -> !s.isEmpty())
+                    .map(Long::valueOf)
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+        } catch (NumberFormatException e) {
+            log.warn("商品变更消息格式错误: {}", body);
+            return;
+        }
+        try {
+            long evicted = evictByProducts(productIds);
+            log.debug("商品变更，删除购物车详情缓存: productIds={}, evicted={}", productIds, evicted);
+        } catch (Exception e) {
+            log.warn("删除购物车详情缓存失败，等待缓存过期: productIds={}", productIds, e);
+        }
+    }
+}
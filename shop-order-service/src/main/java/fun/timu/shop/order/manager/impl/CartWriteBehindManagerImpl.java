@@ -0,0 +1,233 @@
+package fun.timu.shop.order.manager.impl;
+
+import fun.timu.shop.order.config.CartProperties;
+import fun.timu.shop.order.converter.CartItemRedisSerializer;
+import fun.timu.shop.order.manager.CartManager;
+import fun.timu.shop.order.manager.CartWriteBehindManager;
+import fun.timu.shop.order.model.DO.CartDO;
+import fun.timu.shop.order.model.DTO.CartItemDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 购物车异步回写实现
+ * <p>
+ * 待回写ZSet的成员为 userId:productId，分数为首次变更时间，由购物车脚本 ZADD NX 写入，多次变更只保留最早的时间用于计算回写延迟。
+ * 取出脚本在一次原子操作中移除标记并读取购物项当前值，之后的变更会重新打标记，不会丢失；
+ * 回写失败时把标记加回，等待下一轮重试。
+ * 脚本会访问ARGV中拼出的购物车Key，要求Redis为单机或哨兵部署。
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+public class CartWriteBehindManagerImpl implements CartWriteBehindManager {
+
+    /**
+     * Lua脚本：取出最早的一批待回写购物项并移除标记
+     * KEYS[1]为待回写ZSet；ARGV[1]为批量大小，ARGV[2]为购物车Key前缀，ARGV[3]为旧格式商品字段前缀
+     * 返回按(成员, 首次变更时间, 购物项当前值)平铺的列表，购物项已删除时值为空字符串
+     */
+    private static final String DRAIN_SCRIPT =
+            "local entries = redis.call('zrange', KEYS[1], 0, tonumber(ARGV[1]) - 1, 'WITHSCORES') " +
+                    "local result = {} " +
+                    "for i = 1, #entries, 2 do " +
+                    "    local member = entries[i] " +
+                    "    local sep = string.find(member, ':', 1, true) " +
+                    "    local key = ARGV[2] .. string.sub(member, 1, sep - 1) " +
+                    "    local productId = string.sub(member, sep + 1) " +
+                    "    local value = redis.call('hget', key, productId) or redis.call('hget', key, ARGV[3] .. productId) " +
+                    "    redis.call('zrem', KEYS[1], member) " +
+                    "    table.insert(result, member) " +
+                    "    table.insert(result, entries[i + 1]) " +
+                    "    table.insert(result, value or '') " +
+                    "end " +
+                    "return result";
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> DRAIN = new DefaultRedisScript<>(DRAIN_SCRIPT, List.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final CartManager cartManager;
+    private final CartProperties cartProperties;
+
+    private final AtomicLong dirtySize = new AtomicLong();
+    private final AtomicLong flushLagMillis = new AtomicLong();
+    private final Counter flushedCounter;
+    private final Counter failedCounter;
+
+    public CartWriteBehindManagerImpl(RedisConnectionFactory connectionFactory, CartManager cartManager,
+                                      CartProperties cartProperties, MeterRegistry meterRegistry) {
+        // 标记和取出脚本需要立即执行，使用不开启事务支持的独立模板
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.redisTemplate.afterPropertiesSet();
+        this.cartManager = cartManager;
+        this.cartProperties = cartProperties;
+
+        Gauge.builder("shop.cart.writebehind.dirty", dirtySize, AtomicLong::get)
+                .description("待回写MySQL的购物项数量")
+                .register(meterRegistry);
+        Gauge.builder("shop.cart.writebehind.lag", flushLagMillis, lag -> lag.get() / 1000.0)
+                .description("最早一条待回写购物项距今的时间（秒）")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        this.flushedCounter = Counter.builder("shop.cart.writebehind.flushed")
+                .description("已回写MySQL的购物项数量")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("shop.cart.writebehind.failed")
+                .description("回写MySQL失败的批次数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(cartProperties.getWriteBehind().getEnabled());
+    }
+
+    @Override
+    public Set<Long> pendingProductIds(Long userId, Collection<Long> productIds) {
+        if (!isEnabled() || productIds == null || productIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        List<Long> idList = new ArrayList<>(productIds);
+        byte[] dirtyKey = dirtyKey().getBytes(StandardCharsets.UTF_8);
+        List<Object> scores = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long productId : idList) {
+                connection.zSetCommands().zScore(dirtyKey, member(userId, productId).getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        Set<Long> pending = new HashSet<>();
+        for (int i = 0; i < idList.size(); i++) {
+            if (scores.get(i) != null) {
+                pending.add(idList.get(i));
+            }
+        }
+        return pending;
+    }
+
+    @Override
+    public List<CartDO> filterNotPending(List<CartDO> cartList) {
+        if (!isEnabled() || cartList == null || cartList.isEmpty()) {
+            return cartList;
+        }
+        byte[] dirtyKey = dirtyKey().getBytes(StandardCharsets.UTF_8);
+        List<Object> scores = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (CartDO cart : cartList) {
+                connection.zSetCommands().zScore(dirtyKey,
+                        member(cart.getUserId(), cart.getProductId()).getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        List<CartDO> result = new ArrayList<>(cartList.size());
+        for (int i = 0; i < cartList.size(); i++) {
+            if (scores.get(i) == null) {
+                result.add(cartList.get(i));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public int flush() {
+        // 购物项值为二进制，结果按字节数组返回
+        List<byte[]> result = redisTemplate.execute(DRAIN, redisTemplate.getStringSerializer(), (RedisSerializer) RedisSerializer.byteArray(),
+                Collections.singletonList(dirtyKey()),
+                String.valueOf(cartProperties.getWriteBehind().getBatchSize()),
+                cartProperties.getRedis().getKeyPrefix(), CartRedisManagerImpl.LEGACY_FIELD_PREFIX);
+        if (result == null || result.isEmpty()) {
+            return 0;
+        }
+
+        List<CartDO> upsertList = new ArrayList<>();
+        List<CartDO> deleteList = new ArrayList<>();
+        Map<String, Double> drained = new LinkedHashMap<>();
+        for (int i = 0; i + 2 < result.size(); i += 3) {
+            String member = new String(result.get(i), StandardCharsets.UTF_8);
+            drained.put(member, Double.valueOf(new String(result.get(i + 1), StandardCharsets.UTF_8)));
+
+            int sep = member.indexOf(':');
+            CartDO cartDO = new CartDO();
+            cartDO.setUserId(Long.valueOf(member.substring(0, sep)));
+            cartDO.setProductId(Long.valueOf(member.substring(sep + 1)));
+            byte[] value = result.get(i + 2);
+            if (value == null || value.length == 0) {
+                deleteList.add(cartDO);
+                continue;
+            }
+            CartItemDTO cartItem = CartItemRedisSerializer.INSTANCE.deserialize(value);
+            cartDO.setQuantity(cartItem.getQuantity());
+            long updateTime = cartItem.getUpdateTime() != null ? cartItem.getUpdateTime() : System.currentTimeMillis();
+            cartDO.setCreateTime(new Date(cartItem.getAddTime() != null ? cartItem.getAddTime() : updateTime));
+            cartDO.setUpdateTime(new Date(updateTime));
+            upsertList.add(cartDO);
+        }
+
+        try {
+            if (!upsertList.isEmpty()) {
+                cartManager.upsertBatch(upsertList);
+            }
+            if (!deleteList.isEmpty()) {
+                cartManager.deleteBatchByKeys(deleteList);
+            }
+            flushedCounter.increment(drained.size());
+            log.debug("购物车回写MySQL完成: upsert={}, delete={}", upsertList.size(), deleteList.size());
+            return drained.size();
+        } catch (Exception e) {
+            failedCounter.increment();
+            log.error("购物车回写MySQL失败，恢复待回写标记: count={}", drained.size(), e);
+            restore(drained);
+            return 0;
+        }
+    }
+
+    @Override
+    public void refreshMetrics() {
+        String dirtyKey = dirtyKey();
+        Long size = redisTemplate.opsForZSet().zCard(dirtyKey);
+        dirtySize.set(size != null ? size : 0);
+
+        Set<ZSetOperations.TypedTuple<String>> oldest = redisTemplate.opsForZSet().rangeWithScores(dirtyKey, 0, 0);
+        if (oldest == null || oldest.isEmpty()) {
+            flushLagMillis.set(0);
+            return;
+        }
+        Double score = oldest.iterator().next().getScore();
+        flushLagMillis.set(score == null ? 0 : Math.max(System.currentTimeMillis() - score.longValue(), 0));
+    }
+
+    /**
+     * 把回写失败的购物项标记加回，保留原始的首次变更时间
+     */
+    private void restore(Map<String, Double> drained) {
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+        drained.forEach((member, score) -> tuples.add(ZSetOperations.TypedTuple.of(member, score)));
+        try {
+            redisTemplate.opsForZSet().addIfAbsent(dirtyKey(), tuples);
+        } catch (Exception e) {
+            log.error("恢复购物车待回写标记失败，需人工对账: members={}", drained.keySet(), e);
+        }
+    }
+
+    private String dirtyKey() {
+        return cartProperties.getWriteBehind().getDirtyKey();
+    }
+
+    private static String member(Long userId, Long productId) {
+        return userId + ":" + productId;
+    }
+}
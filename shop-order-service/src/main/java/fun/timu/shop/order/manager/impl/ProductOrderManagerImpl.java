@@ -1,6 +1,7 @@
 package fun.timu.shop.order.manager.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import fun.timu.shop.order.manager.ProductOrderManager;
 import fun.timu.shop.order.mapper.ProductOrderMapper;
@@ -22,4 +23,14 @@ public class ProductOrderManagerImpl extends ServiceImpl<ProductOrderMapper, Pro
     public boolean insert(ProductOrderDO productOrderDO) {
         return productOrderMapper.insert(productOrderDO) > 0;
     }
+
+    @Override
+    public int updateOrderState(String outTradeNo, String newState, String oldState) {
+        return productOrderMapper.update(null,
+                new UpdateWrapper<ProductOrderDO>()
+                        .eq("out_trade_no", outTradeNo)
+                        .eq("state", oldState)
+                        .set("state", newState)
+        );
+    }
 }
@@ -2,9 +2,11 @@ package fun.timu.shop.order.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import fun.timu.shop.order.model.DO.CartDO;
+import fun.timu.shop.order.model.DTO.CartSummaryDTO;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -30,6 +32,16 @@ public interface CartMapper extends BaseMapper<CartDO> {
      */
     int insertOrUpdate(@Param("userId") Long userId, @Param("productId") Long productId, @Param("quantity") Integer quantity);
 
+    /**
+     * 批量插入或更新购物车项，时间取购物项自身的添加/更新时间，更新时间早于库中记录的不覆盖
+     */
+    int upsertBatch(@Param("list") List<CartDO> list);
+
+    /**
+     * 按 (用户ID, 商品ID) 批量删除购物车项
+     */
+    int deleteBatchByKeys(@Param("list") List<CartDO> list);
+
     /**
      * 批量删除购物车项
      */
@@ -41,17 +53,23 @@ public interface CartMapper extends BaseMapper<CartDO> {
     int deleteByUserId(@Param("userId") Long userId);
 
     /**
-     * 获取热点用户的购物车数据（最近N天有更新的）
+     * 用户购物车摘要，聚合查询，不读取购物项
+     */
+    CartSummaryDTO selectSummaryByUserId(@Param("userId") Long userId);
+
+    /**
+     * 最小用户ID，没有数据时返回null
      */
-    List<CartDO> selectHotUserCartData(@Param("days") Integer days);
+    Long selectMinUserId();
 
     /**
-     * 获取所有购物车数据（分页）
+     * 最大用户ID，没有数据时返回null
      */
-    List<CartDO> selectAllCartData(@Param("offset") Integer offset, @Param("limit") Integer limit);
+    Long selectMaxUserId();
 
     /**
-     * 获取购物车数据总数
+     * 按 (user_id, product_id) 键集分页读取 (afterUserId, endUserId] 范围内的购物车
      */
-    Long countAllCartData();
+    List<CartDO> selectByUserRange(@Param("afterUserId") Long afterUserId, @Param("endUserId") Long endUserId,
+                                   @Param("since") Date since, @Param("limit") Integer limit);
 }
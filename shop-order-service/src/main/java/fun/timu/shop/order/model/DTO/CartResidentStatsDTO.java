@@ -0,0 +1,56 @@
+package fun.timu.shop.order.model.DTO;
+
+import lombok.Data;
+
+/**
+ * Redis中购物车的驻留统计
+ * 由冷购物车扫描得到，SCAN可能重复返回同一个Key，数值为近似值
+ *
+ * @author zhengke
+ */
+@Data
+public class CartResidentStatsDTO {
+
+    /**
+     * 扫描到的购物车数
+     */
+    private long scannedCarts;
+
+    /**
+     * 扫描后仍驻留在Redis的购物车数
+     */
+    private long residentCarts;
+
+    /**
+     * 驻留购物车的购物项总数
+     */
+    private long residentItems;
+
+    /**
+     * 驻留购物车占用的内存（MEMORY USAGE，字节）
+     */
+    private long residentBytes;
+
+    /**
+     * 本次下沉到MySQL的购物车数
+     */
+    private long offloadedCarts;
+
+    /**
+     * 本次下沉到MySQL的购物项数
+     */
+    private long offloadedItems;
+
+    /**
+     * 已超过空闲时间但仍有待回写变更、本次跳过的购物车数
+     */
+    private long pendingCarts;
+
+    /**
+     * 驻留购物车按空闲时间分布：1天内、7天内、30天内、30天以上
+     */
+    private long idleWithinDay;
+    private long idleWithinWeek;
+    private long idleWithinMonth;
+    private long idleOverMonth;
+}
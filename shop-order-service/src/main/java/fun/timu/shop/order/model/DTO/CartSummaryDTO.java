@@ -0,0 +1,32 @@
+package fun.timu.shop.order.model.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 购物车摘要
+ * 随购物车变更在同一个脚本中维护，购物车角标直接读取摘要，不读取购物项
+ *
+ * @author zhengke
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartSummaryDTO {
+
+    /**
+     * 商品种类数
+     */
+    private Integer itemCount;
+
+    /**
+     * 商品总数量
+     */
+    private Integer totalQuantity;
+
+    /**
+     * 最后更新时间戳，购物车为空时可能为null
+     */
+    private Long updateTime;
+}
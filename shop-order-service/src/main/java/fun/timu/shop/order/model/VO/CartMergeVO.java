@@ -0,0 +1,33 @@
+package fun.timu.shop.order.model.VO;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 游客购物车合并结果
+ *
+ * @author zhengke
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartMergeVO {
+
+    /**
+     * 已合并到用户购物车的商品ID，数量可能因库存被截断
+     */
+    @JsonProperty("merged_product_ids")
+    private List<Long> mergedProductIds;
+
+    /**
+     * 未合并的商品ID：商品不存在、已下架、无库存，或用户购物车中已有足够数量
+     */
+    @JsonProperty("skipped_product_ids")
+    private List<Long> skippedProductIds;
+}
@@ -2,6 +2,7 @@ package fun.timu.shop.order.service;
 
 import fun.timu.shop.common.util.JsonData;
 import fun.timu.shop.order.controller.request.AddToCartRequest;
+import fun.timu.shop.order.controller.request.BatchAddToCartRequest;
 import fun.timu.shop.order.controller.request.BatchCartRequest;
 import fun.timu.shop.order.controller.request.UpdateCartRequest;
 
@@ -22,6 +23,15 @@ public interface CartService {
      */
     JsonData addToCart(AddToCartRequest request);
 
+    /**
+     * 批量添加商品到购物车
+     * 一次RPC验证全部商品，有商品不可购买时全部不加购并返回不可购买的商品
+     * 
+     * @param request 批量添加请求
+     * @return 操作结果
+     */
+    JsonData batchAddToCart(BatchAddToCartRequest request);
+
     /**
      * 更新购物车商品数量
      * 
@@ -67,6 +77,13 @@ public interface CartService {
      */
     JsonData getCartCount();
 
+    /**
+     * 获取购物车摘要：商品种类数、总数量、最后更新时间
+     * 
+     * @return 购物车摘要
+     */
+    JsonData getCartSummary();
+
     /**
      * 获取购物车详情（包含商品信息）
      * 
@@ -81,12 +98,55 @@ public interface CartService {
      */
     JsonData validateCartItems();
 
+    /**
+     * 游客添加商品到购物车
+     * 
+     * @param deviceToken 设备标识
+     * @param request     添加请求
+     * @return 操作结果
+     */
+    JsonData addToGuestCart(String deviceToken, AddToCartRequest request);
+
+    /**
+     * 游客从购物车删除商品
+     * 
+     * @param deviceToken 设备标识
+     * @param productId   商品ID
+     * @return 操作结果
+     */
+    JsonData removeFromGuestCart(String deviceToken, Long productId);
+
+    /**
+     * 获取游客购物车列表
+     * 
+     * @param deviceToken 设备标识
+     * @return 购物车数据
+     */
+    JsonData getGuestCartList(String deviceToken);
+
+    /**
+     * 把游客购物车合并到当前登录用户的购物车
+     * 一次RPC获取商品库存，一次脚本完成合并，一次批量写入持久化
+     * 
+     * @param deviceToken 登录前使用的设备标识
+     * @return 合并结果
+     */
+    JsonData mergeGuestCart(String deviceToken);
+
     /**
      * 确认购物车商品信息
-     * 根据指定的商品ID列表过滤购物车商品，并清空对应的购物项
+     * 根据指定的商品ID列表过滤购物车商品并验证库存，只读，不修改购物车；下单成功后由 removeConfirmedCartItems 清空
      * 
      * @param productIds 需要确认的商品ID列表
      * @return 确认的商品列表
      */
     JsonData confirmCartItems(List<Long> productIds);
+
+    /**
+     * 订单创建成功后清空已下单的购物项
+     * 
+     * @param userId     用户ID
+     * @param productIds 已下单的商品ID列表
+     */
+    void removeConfirmedCartItems(Long userId, List<Long> productIds);
 }
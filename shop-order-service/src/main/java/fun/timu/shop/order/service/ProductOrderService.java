@@ -30,7 +30,7 @@ public interface ProductOrderService {
     String queryProductOrderState(String outTradeNo);
 
     /**
-     * 队列监听，定时关单
+     * 订单超时关单，由延迟任务调度触发
      * @param orderMessage
      * @return
      */
@@ -4,30 +4,39 @@ import com.alibaba.fastjson2.JSON;
 import fun.timu.shop.common.enums.BizCodeEnum;
 import fun.timu.shop.common.interceptor.LoginInterceptor;
 import fun.timu.shop.common.model.LoginUser;
+import fun.timu.shop.common.model.ProductSnapshotDTO;
+import fun.timu.shop.common.model.ProductSnapshotResult;
+import fun.timu.shop.common.model.StockAvailabilityVO;
 import fun.timu.shop.common.request.BatchProductRequest;
+import fun.timu.shop.common.request.ValidateStockBatchRequest;
 import fun.timu.shop.common.request.ValidateStockRequest;
 import fun.timu.shop.common.util.JsonData;
 import fun.timu.shop.order.feign.ProductFeignService;
-import fun.timu.shop.order.config.CartProperties;
 import fun.timu.shop.order.controller.request.AddToCartRequest;
+import fun.timu.shop.order.controller.request.BatchAddToCartRequest;
 import fun.timu.shop.order.controller.request.BatchCartRequest;
 import fun.timu.shop.order.controller.request.UpdateCartRequest;
+import fun.timu.shop.order.config.CartProperties;
 import fun.timu.shop.order.converter.CartConverter;
 import fun.timu.shop.order.manager.CartManager;
+import fun.timu.shop.order.manager.CartRedisManager;
+import fun.timu.shop.order.manager.CartViewCacheManager;
+import fun.timu.shop.order.manager.CartWriteBehindManager;
 import fun.timu.shop.order.model.DO.CartDO;
 import fun.timu.shop.order.model.DTO.CartItemDTO;
+import fun.timu.shop.order.model.DTO.CartSummaryDTO;
 import fun.timu.shop.order.model.VO.CartItemVO;
+import fun.timu.shop.order.model.VO.CartMergeVO;
 import fun.timu.shop.order.model.VO.CartVO;
 import fun.timu.shop.order.service.CartService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -40,14 +49,20 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class CartServiceImpl implements CartService {
 
+    /**
+     * 游客设备标识格式
+     */
+    private static final Pattern DEVICE_TOKEN_PATTERN = Pattern.compile("[A-Za-z0-9_-]{16,64}");
+
     private final CartManager cartManager;
-    private final RedisTemplate<String, Object> redisTemplate;
-    private final CartProperties cartProperties;
+    private final CartRedisManager cartRedisManager;
     private final ProductFeignService productFeignService;
     private final CartConverter cartConverter;
+    private final CartWriteBehindManager cartWriteBehindManager;
+    private final CartViewCacheManager cartViewCacheManager;
+    private final CartProperties cartProperties;
 
     @Override
-    @Transactional
     public JsonData addToCart(AddToCartRequest request) {
         LoginUser loginUser = LoginInterceptor.getCurrentUser();
         if (loginUser == null) {
@@ -61,57 +76,76 @@ public class CartServiceImpl implements CartService {
         log.info("用户添加商品到购物车: userId={}, productId={}, quantity={}", userId, productId, quantity);
 
         try {
-            // 1. 验证商品是否存在和有效
-            JsonData productResult = productFeignService.getProductById(productId);
-            if (productResult.getCode() != 0) {
-                return JsonData.buildError("商品不存在或已下架");
+            // 1. 一次RPC验证商品是否存在、是否上架以及库存
+            JsonData stockError = checkStock(productId, quantity);
+            if (stockError != null) {
+                return stockError;
             }
 
-                        // 2. 验证库存
-            ValidateStockRequest stockRequest = new ValidateStockRequest();
-            stockRequest.setProductId(productId);
-            stockRequest.setQuantity(quantity);
-            JsonData stockResult = productFeignService.validateStock(stockRequest);
-            if (stockResult.getCode() != 0) {
-                return JsonData.buildError("商品库存不足");
-            }
+            // 2. 更新Redis购物车，已存在时累加数量，一次脚本调用完成
+            ensureCartLoaded(userId);
+            int newQuantity = (int) cartRedisManager.addItem(userId, productId, quantity);
+
+            // 3. 持久化到MySQL
+            persist(() -> cartManager.insertOrUpdate(userId, productId, newQuantity));
+
+            log.info("添加商品到购物车成功: userId={}, productId={}, quantity={}", userId, productId, quantity);
+            return JsonData.buildSuccess("添加成功");
+
+        } catch (Exception e) {
+            log.error("添加商品到购物车失败", e);
+            return JsonData.buildError("添加失败，请重试");
+        }
+    }
+
+    @Override
+    public JsonData batchAddToCart(BatchAddToCartRequest request) {
+        LoginUser loginUser = LoginInterceptor.getCurrentUser();
+        if (loginUser == null) {
+            return JsonData.buildResult(BizCodeEnum.ACCOUNT_UNLOGIN);
+        }
 
-            // 3. 更新Redis购物车
-            String redisKey = getCartRedisKey(userId);
-            String productField = getProductField(productId);
-
-            // 检查是否已存在该商品
-            Object existingItem = redisTemplate.opsForHash().get(redisKey, productField);
-            CartItemDTO cartItem;
-
-            if (existingItem != null) {
-                // 已存在，更新数量
-                cartItem = JSON.parseObject(existingItem.toString(), CartItemDTO.class);
-                cartItem.setQuantity(cartItem.getQuantity() + quantity);
-                cartItem.setUpdateTime(System.currentTimeMillis());
-            } else {
-                // 不存在，新增
-                cartItem = new CartItemDTO(productId, quantity);
+        Long userId = loginUser.getId();
+        // 同一商品出现多次时合并数量
+        Map<Long, Integer> quantityMap = new LinkedHashMap<>();
+        for (AddToCartRequest item : request.getItems()) {
+            quantityMap.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+
+        log.info("用户批量添加商品到购物车: userId={}, productIds={}", userId, quantityMap.keySet());
+
+        try {
+            // 1. 一次RPC验证全部商品是否存在、是否上架以及库存
+            Map<Long, StockAvailabilityVO> stockMap = validateStockBatch(quantityMap);
+            if (stockMap == null) {
+                return JsonData.buildError("验证库存失败，请重试");
+            }
+            List<StockAvailabilityVO> unavailableList = quantityMap.keySet().stream()
+                    .map(productId -> stockMap.getOrDefault(productId,
+                            new StockAvailabilityVO(productId, quantityMap.get(productId), 0, false, "商品不存在或已下架")))
+                    .filter(availability -> !Boolean.TRUE.equals(availability.getAvailable()))
+                    .collect(Collectors.toList());
+            if (!unavailableList.isEmpty()) {
+                return new JsonData(-1, unavailableList, "部分商品库存不足或已下架");
             }
 
-            // 写入Redis
-            redisTemplate.opsForHash().put(redisKey, productField, JSON.toJSONString(cartItem));
-            redisTemplate.expire(redisKey, cartProperties.getRedis().getExpireDays(), TimeUnit.DAYS);
+            // 2. 一次脚本调用累加全部购物项
+            ensureCartLoaded(userId);
+            Map<Long, Long> newQuantities = cartRedisManager.addItems(userId, quantityMap);
 
-            // 4. 同步到MySQL
-            cartManager.insertOrUpdate(userId, productId, cartItem.getQuantity());
+            // 3. 一条多行upsert持久化到MySQL
+            persist(() -> cartManager.upsertBatch(toCartList(userId, newQuantities)));
 
-            log.info("添加商品到购物车成功: userId={}, productId={}, quantity={}", userId, productId, quantity);
+            log.info("批量添加商品到购物车成功: userId={}, count={}", userId, newQuantities.size());
             return JsonData.buildSuccess("添加成功");
 
         } catch (Exception e) {
-            log.error("添加商品到购物车失败", e);
+            log.error("批量添加商品到购物车失败", e);
             return JsonData.buildError("添加失败，请重试");
         }
     }
 
     @Override
-    @Transactional
     public JsonData updateCart(UpdateCartRequest request) {
         LoginUser loginUser = LoginInterceptor.getCurrentUser();
         if (loginUser == null) {
@@ -126,31 +160,19 @@ public class CartServiceImpl implements CartService {
 
         try {
             // 1. 验证库存
-            ValidateStockRequest stockRequest = new ValidateStockRequest();
-            stockRequest.setProductId(productId);
-            stockRequest.setQuantity(quantity);
-            JsonData stockResult = productFeignService.validateStock(stockRequest);
-            if (stockResult.getCode() != 0) {
-                return JsonData.buildError("商品库存不足");
+            JsonData stockError = checkStock(productId, quantity);
+            if (stockError != null) {
+                return stockError;
             }
 
             // 2. 更新Redis
-            String redisKey = getCartRedisKey(userId);
-            String productField = getProductField(productId);
-
-            Object existingItem = redisTemplate.opsForHash().get(redisKey, productField);
-            if (existingItem == null) {
+            ensureCartLoaded(userId);
+            if (!cartRedisManager.updateQuantity(userId, productId, quantity)) {
                 return JsonData.buildError("购物车中不存在该商品");
             }
 
-            CartItemDTO cartItem = JSON.parseObject(existingItem.toString(), CartItemDTO.class);
-            cartItem.setQuantity(quantity);
-            cartItem.setUpdateTime(System.currentTimeMillis());
-
-            redisTemplate.opsForHash().put(redisKey, productField, JSON.toJSONString(cartItem));
-
-            // 3. 同步到MySQL
-            cartManager.insertOrUpdate(userId, productId, quantity);
+            // 3. 持久化到MySQL
+            persist(() -> cartManager.insertOrUpdate(userId, productId, quantity));
 
             log.info("更新购物车商品数量成功: userId={}, productId={}, quantity={}", userId, productId, quantity);
             return JsonData.buildSuccess("更新成功");
@@ -162,7 +184,6 @@ public class CartServiceImpl implements CartService {
     }
 
     @Override
-    @Transactional
     public JsonData removeFromCart(Long productId) {
         LoginUser loginUser = LoginInterceptor.getCurrentUser();
         if (loginUser == null) {
@@ -175,12 +196,10 @@ public class CartServiceImpl implements CartService {
 
         try {
             // 1. 从Redis删除
-            String redisKey = getCartRedisKey(userId);
-            String productField = getProductField(productId);
-            redisTemplate.opsForHash().delete(redisKey, productField);
+            cartRedisManager.removeItems(userId, List.of(productId));
 
             // 2. 从MySQL删除
-            cartManager.deleteBatchByUserIdAndProductIds(userId, Arrays.asList(productId));
+            persist(() -> cartManager.deleteBatchByUserIdAndProductIds(userId, List.of(productId)));
 
             log.info("从购物车删除商品成功: userId={}, productId={}", userId, productId);
             return JsonData.buildSuccess("删除成功");
@@ -192,7 +211,6 @@ public class CartServiceImpl implements CartService {
     }
 
     @Override
-    @Transactional
     public JsonData batchRemove(BatchCartRequest request) {
         LoginUser loginUser = LoginInterceptor.getCurrentUser();
         if (loginUser == null) {
@@ -206,14 +224,10 @@ public class CartServiceImpl implements CartService {
 
         try {
             // 1. 从Redis批量删除
-            String redisKey = getCartRedisKey(userId);
-            String[] productFields = productIds.stream()
-                    .map(this::getProductField)
-                    .toArray(String[]::new);
-            redisTemplate.opsForHash().delete(redisKey, (Object[]) productFields);
+            cartRedisManager.removeItems(userId, productIds);
 
             // 2. 从MySQL批量删除
-            cartManager.deleteBatchByUserIdAndProductIds(userId, productIds);
+            persist(() -> cartManager.deleteBatchByUserIdAndProductIds(userId, productIds));
 
             log.info("批量删除购物车商品成功: userId={}, count={}", userId, productIds.size());
             return JsonData.buildSuccess("删除成功");
@@ -225,7 +239,6 @@ public class CartServiceImpl implements CartService {
     }
 
     @Override
-    @Transactional
     public JsonData clearCart() {
         LoginUser loginUser = LoginInterceptor.getCurrentUser();
         if (loginUser == null) {
@@ -238,10 +251,9 @@ public class CartServiceImpl implements CartService {
 
         try {
             // 1. 清空Redis
-            String redisKey = getCartRedisKey(userId);
-            redisTemplate.delete(redisKey);
+            cartRedisManager.clear(userId);
 
-            // 2. 清空MySQL
+            // 2. 清空MySQL，Redis中已过期的购物项不会被打上待回写标记，清空操作较少，始终同步删除
             cartManager.deleteByUserId(userId);
 
             log.info("清空购物车成功: userId={}", userId);
@@ -263,22 +275,7 @@ public class CartServiceImpl implements CartService {
         Long userId = loginUser.getId();
 
         try {
-            // 从Redis获取购物车数据
-            String redisKey = getCartRedisKey(userId);
-            Map<Object, Object> cartMap = redisTemplate.opsForHash().entries(redisKey);
-
-            if (cartMap.isEmpty()) {
-                // Redis没有数据，尝试从MySQL加载
-                loadUserCartFromDB(userId);
-                cartMap = redisTemplate.opsForHash().entries(redisKey);
-            }
-
-            List<CartItemDTO> cartItems = cartMap.values().stream()
-                    .map(item -> JSON.parseObject(item.toString(), CartItemDTO.class))
-                    .sorted(Comparator.comparing(CartItemDTO::getUpdateTime).reversed())
-                    .collect(Collectors.toList());
-
-            return JsonData.buildSuccess(cartItems);
+            return JsonData.buildSuccess(listCartItems(userId));
 
         } catch (Exception e) {
             log.error("获取购物车列表失败", e);
@@ -296,9 +293,7 @@ public class CartServiceImpl implements CartService {
         Long userId = loginUser.getId();
 
         try {
-            String redisKey = getCartRedisKey(userId);
-            Long count = redisTemplate.opsForHash().size(redisKey);
-            return JsonData.buildSuccess(count);
+            return JsonData.buildSuccess(loadCartSummary(userId).getItemCount());
 
         } catch (Exception e) {
             log.error("获取购物车商品数量失败", e);
@@ -307,7 +302,7 @@ public class CartServiceImpl implements CartService {
     }
 
     @Override
-    public JsonData getCartDetails() {
+    public JsonData getCartSummary() {
         LoginUser loginUser = LoginInterceptor.getCurrentUser();
         if (loginUser == null) {
             return JsonData.buildResult(BizCodeEnum.ACCOUNT_UNLOGIN);
@@ -316,34 +311,28 @@ public class CartServiceImpl implements CartService {
         Long userId = loginUser.getId();
 
         try {
-            // 1. 获取购物车商品列表
-            JsonData cartListResult = getCartList();
-            if (cartListResult.getCode() != 0) {
-                return cartListResult;
-            }
+            return JsonData.buildSuccess(loadCartSummary(userId));
 
-            @SuppressWarnings("unchecked")
-            List<CartItemDTO> cartItems = (List<CartItemDTO>) cartListResult.getData();
+        } catch (Exception e) {
+            log.error("获取购物车摘要失败", e);
+            return JsonData.buildError("获取失败，请重试");
+        }
+    }
 
-            if (cartItems.isEmpty()) {
-                return JsonData.buildSuccess(cartConverter.toEmptyCart(userId));
-            }
+    @Override
+    public JsonData getCartDetails() {
+        LoginUser loginUser = LoginInterceptor.getCurrentUser();
+        if (loginUser == null) {
+            return JsonData.buildResult(BizCodeEnum.ACCOUNT_UNLOGIN);
+        }
 
-            // 2. 获取商品详情
-            List<Long> productIds = cartItems.stream()
-                    .map(CartItemDTO::getProductId)
-                    .collect(Collectors.toList());
+        Long userId = loginUser.getId();
 
-            BatchProductRequest batchRequest = new BatchProductRequest();
-            batchRequest.setProductIds(productIds);
-            JsonData productResult = productFeignService.getBatchProductDetails(batchRequest);
-            if (productResult.getCode() != 0) {
+        try {
+            CartVO cartVO = loadCartDetails(userId);
+            if (cartVO == null) {
                 return JsonData.buildError("获取商品信息失败");
             }
-
-            // 3. 组装购物车详情
-            CartVO cartVO = cartConverter.toCartWithDetails(userId, cartItems, productResult.getData());
-
             return JsonData.buildSuccess(cartVO);
 
         } catch (Exception e) {
@@ -364,7 +353,137 @@ public class CartServiceImpl implements CartService {
     }
 
     @Override
-    @Transactional
+    public JsonData addToGuestCart(String deviceToken, AddToCartRequest request) {
+        JsonData tokenError = checkGuestToken(deviceToken);
+        if (tokenError != null) {
+            return tokenError;
+        }
+
+        Long productId = request.getProductId();
+        Integer quantity = request.getQuantity();
+
+        try {
+            JsonData stockError = checkStock(productId, quantity);
+            if (stockError != null) {
+                return stockError;
+            }
+
+            if (cartRedisManager.addGuestItem(deviceToken, productId, quantity) < 0) {
+                return JsonData.buildError("购物车已满，请登录后继续添加");
+            }
+            return JsonData.buildSuccess("添加成功");
+
+        } catch (Exception e) {
+            log.error("游客添加商品到购物车失败: productId={}", productId, e);
+            return JsonData.buildError("添加失败，请重试");
+        }
+    }
+
+    @Override
+    public JsonData removeFromGuestCart(String deviceToken, Long productId) {
+        JsonData tokenError = checkGuestToken(deviceToken);
+        if (tokenError != null) {
+            return tokenError;
+        }
+
+        try {
+            cartRedisManager.removeGuestItems(deviceToken, List.of(productId));
+            return JsonData.buildSuccess("删除成功");
+
+        } catch (Exception e) {
+            log.error("游客从购物车删除商品失败: productId={}", productId, e);
+            return JsonData.buildError("删除失败，请重试");
+        }
+    }
+
+    @Override
+    public JsonData getGuestCartList(String deviceToken) {
+        JsonData tokenError = checkGuestToken(deviceToken);
+        if (tokenError != null) {
+            return tokenError;
+        }
+
+        try {
+            return JsonData.buildSuccess(cartRedisManager.listGuestItems(deviceToken).stream()
+                    .sorted(Comparator.comparing(CartItemDTO::getUpdateTime).reversed())
+                    .collect(Collectors.toList()));
+
+        } catch (Exception e) {
+            log.error("获取游客购物车列表失败", e);
+            return JsonData.buildError("获取失败，请重试");
+        }
+    }
+
+    @Override
+    public JsonData mergeGuestCart(String deviceToken) {
+        LoginUser loginUser = LoginInterceptor.getCurrentUser();
+        if (loginUser == null) {
+            return JsonData.buildResult(BizCodeEnum.ACCOUNT_UNLOGIN);
+        }
+        JsonData tokenError = checkGuestToken(deviceToken);
+        if (tokenError != null) {
+            return tokenError;
+        }
+
+        Long userId = loginUser.getId();
+
+        try {
+            List<CartItemDTO> guestItems = cartRedisManager.listGuestItems(deviceToken);
+            if (guestItems.isEmpty()) {
+                return JsonData.buildSuccess(CartMergeVO.builder()
+                        .mergedProductIds(List.of())
+                        .skippedProductIds(List.of())
+                        .build());
+            }
+
+            // 1. 一次RPC获取全部商品的状态和库存，作为合并后的数量上限
+            List<Long> productIds = guestItems.stream()
+                    .map(CartItemDTO::getProductId)
+                    .collect(Collectors.toList());
+            BatchProductRequest batchRequest = new BatchProductRequest();
+            batchRequest.setProductIds(productIds);
+            ProductSnapshotResult productResult = productFeignService.getBatchProductDetails(batchRequest);
+            if (productResult == null || productResult.getCode() == null || productResult.getCode() != 0) {
+                // 保留游客购物车，稍后可以重试
+                log.warn("合并游客购物车时获取商品信息失败: userId={}", userId);
+                return JsonData.buildError("获取商品信息失败，请重试");
+            }
+            Map<Long, Integer> limits = new LinkedHashMap<>();
+            productIds.forEach(productId -> limits.put(productId, 0));
+            if (productResult.getData() != null) {
+                for (ProductSnapshotDTO product : productResult.getData()) {
+                    if (limits.containsKey(product.getId()) && Integer.valueOf(1).equals(product.getStatus())
+                            && product.getStock() != null) {
+                        limits.put(product.getId(), Math.max(product.getStock(), 0));
+                    }
+                }
+            }
+
+            // 2. 一次脚本把游客购物项累加到用户购物车并从游客购物车删除
+            ensureCartLoaded(userId);
+            Map<Long, Long> merged = cartRedisManager.mergeGuestItems(deviceToken, userId, limits);
+
+            // 3. 一条多行upsert持久化到MySQL
+            if (!merged.isEmpty()) {
+                persist(() -> cartManager.upsertBatch(toCartList(userId, merged)));
+            }
+
+            List<Long> skipped = productIds.stream()
+                    .filter(productId -> !merged.containsKey(productId))
+                    .collect(Collectors.toList());
+            log.info("合并游客购物车成功: userId={}, merged={}, skipped={}", userId, merged.keySet(), skipped);
+            return JsonData.buildSuccess(CartMergeVO.builder()
+                    .mergedProductIds(new ArrayList<>(merged.keySet()))
+                    .skippedProductIds(skipped)
+                    .build());
+
+        } catch (Exception e) {
+            log.error("合并游客购物车失败: userId={}", userId, e);
+            return JsonData.buildError("合并失败，请重试");
+        }
+    }
+
+    @Override
     public JsonData confirmCartItems(List<Long> productIds) {
         LoginUser loginUser = LoginInterceptor.getCurrentUser();
         if (loginUser == null) {
@@ -380,19 +499,13 @@ public class CartServiceImpl implements CartService {
         log.info("用户确认购物车商品信息: userId={}, productIds={}", userId, productIds);
 
         try {
-            // 1. 获取购物车详情
-            JsonData cartDetailsResult = getCartDetails();
-            if (cartDetailsResult.getCode() != 0) {
-                return cartDetailsResult;
+            // 1. 获取购物车详情，直接使用缓存或组装得到的对象
+            CartVO cartVO = loadCartDetails(userId);
+            if (cartVO == null) {
+                return JsonData.buildError("获取商品信息失败");
             }
 
-            // 解析购物车数据
-            CartVO cartVO = JSON.parseObject(
-                    JSON.toJSONString(cartDetailsResult.getData()),
-                    CartVO.class
-            );
-
-            // 2. 根据指定的商品ID进行过滤，并准备清空对应的购物项
+            // 2. 根据指定的商品ID进行过滤
             List<CartItemVO> confirmedItems = cartVO.getItems().stream()
                     .filter(item -> productIds.contains(item.getProductId()))
                     .collect(Collectors.toList());
@@ -401,32 +514,34 @@ public class CartServiceImpl implements CartService {
                 return JsonData.buildError("购物车中没有找到指定的商品");
             }
 
-            // 3. 验证库存（确认前最后一次检查）
+            // 3. 验证库存（确认前最后一次检查），一次RPC批量验证全部商品
+            Map<Long, Integer> quantityMap = new LinkedHashMap<>();
             for (CartItemVO item : confirmedItems) {
-                ValidateStockRequest stockRequest = new ValidateStockRequest();
-                stockRequest.setProductId(item.getProductId());
-                stockRequest.setQuantity(item.getQuantity());
-                JsonData stockResult = productFeignService.validateStock(stockRequest);
-                if (stockResult.getCode() != 0) {
-                    return JsonData.buildError("商品 " + item.getTitle() + " 库存不足");
-                }
+                quantityMap.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+            }
+            Map<Long, StockAvailabilityVO> stockMap = validateStockBatch(quantityMap);
+            if (stockMap == null) {
+                return JsonData.buildError("验证库存失败，请重试");
             }
 
-            // 4. 清空对应的购物项
-            List<Long> confirmedProductIds = confirmedItems.stream()
-                    .map(CartItemVO::getProductId)
+            List<StockAvailabilityVO> unavailableList = quantityMap.keySet().stream()
+                    .map(productId -> stockMap.getOrDefault(productId,
+                            new StockAvailabilityVO(productId, quantityMap.get(productId), 0, false, "商品不存在")))
+                    .filter(availability -> !Boolean.TRUE.equals(availability.getAvailable()))
                     .collect(Collectors.toList());
+            if (!unavailableList.isEmpty()) {
+                // 返回每个不可购买商品的原因，购物车据此展示部分失败
+                Set<Long> unavailableIds = unavailableList.stream()
+                        .map(StockAvailabilityVO::getProductId)
+                        .collect(Collectors.toSet());
+                String titles = confirmedItems.stream()
+                        .filter(item -> unavailableIds.contains(item.getProductId()))
+                        .map(CartItemVO::getTitle)
+                        .collect(Collectors.joining("、"));
+                return new JsonData(-1, unavailableList, "商品 " + titles + " 库存不足或已下架");
+            }
 
-            // 从Redis批量删除
-            String redisKey = getCartRedisKey(userId);
-            String[] productFields = confirmedProductIds.stream()
-                    .map(this::getProductField)
-                    .toArray(String[]::new);
-            redisTemplate.opsForHash().delete(redisKey, (Object[]) productFields);
-
-            // 从MySQL批量删除
-            cartManager.deleteBatchByUserIdAndProductIds(userId, confirmedProductIds);
-
+            // 购物项在订单创建成功后才清空，确认阶段失败或被取消时购物车保持不变
             log.info("确认购物车商品信息成功: userId={}, confirmedCount={}", userId, confirmedItems.size());
 
             return JsonData.buildSuccess(confirmedItems);
@@ -437,51 +552,227 @@ public class CartServiceImpl implements CartService {
         }
     }
 
+    @Override
+    public void removeConfirmedCartItems(Long userId, List<Long> productIds) {
+        if (userId == null || productIds == null || productIds.isEmpty()) {
+            return;
+        }
+
+        // 从Redis批量删除
+        cartRedisManager.removeItems(userId, productIds);
+
+        // 从MySQL批量删除
+        persist(() -> cartManager.deleteBatchByUserIdAndProductIds(userId, productIds));
+
+        log.info("清空已下单的购物项: userId={}, productIds={}", userId, productIds);
+    }
+
+    /**
+     * 校验游客购物车的设备标识：由客户端生成的随机串，只允许字母、数字、下划线和短横线
+     *
+     * @return 不可用时返回错误结果，可用时返回null
+     */
+    private JsonData checkGuestToken(String deviceToken) {
+        if (!Boolean.TRUE.equals(cartProperties.getGuest().getEnabled())) {
+            return JsonData.buildError("游客购物车未开启，请登录后使用");
+        }
+        if (deviceToken == null || !DEVICE_TOKEN_PATTERN.matcher(deviceToken).matches()) {
+            return JsonData.buildError("设备标识无效");
+        }
+        return null;
+    }
+
+    /**
+     * 读取购物项，按更新时间倒序；Redis中没有时从MySQL加载
+     */
+    private List<CartItemDTO> listCartItems(Long userId) {
+        List<CartItemDTO> cartItems = cartRedisManager.listItems(userId);
+
+        if (cartItems.isEmpty()) {
+            // Redis没有数据，尝试从MySQL加载
+            cartItems = loadUserCartFromDB(userId);
+        }
+
+        return cartItems.stream()
+                .sorted(Comparator.comparing(CartItemDTO::getUpdateTime).reversed())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 读取购物车摘要；Redis中既没有摘要也没有购物车时（未加载、已下沉或已过期）用聚合查询从MySQL得到摘要并写回Redis，
+     * 不加载购物项
+     */
+    private CartSummaryDTO loadCartSummary(Long userId) {
+        CartSummaryDTO summary = cartRedisManager.getSummaries(List.of(userId)).get(userId);
+        if (summary != null) {
+            return summary;
+        }
+
+        summary = cartManager.selectSummaryByUserId(userId);
+        cartRedisManager.putSummary(userId, summary);
+        return summary;
+    }
+
+    /**
+     * 获取购物车详情：优先读取详情缓存，未命中时查询商品服务组装，并按读取时的购物车版本号写回缓存
+     * 展示的库存可能不是最新的，确认下单前会重新校验库存
+     *
+     * @return 获取商品信息失败时返回null
+     */
+    private CartVO loadCartDetails(Long userId) {
+        CartViewCacheManager.Lookup lookup = cartViewCacheManager.lookup(userId);
+        if (lookup.cart() != null) {
+            return lookup.cart();
+        }
+
+        // 1. 获取购物车商品列表
+        List<CartItemDTO> cartItems = listCartItems(userId);
+        if (cartItems.isEmpty()) {
+            return cartConverter.toEmptyCart(userId);
+        }
+
+        // 2. 获取商品详情
+        List<Long> productIds = cartItems.stream()
+                .map(CartItemDTO::getProductId)
+                .collect(Collectors.toList());
+
+        BatchProductRequest batchRequest = new BatchProductRequest();
+        batchRequest.setProductIds(productIds);
+        ProductSnapshotResult productResult = productFeignService.getBatchProductDetails(batchRequest);
+        if (productResult == null || productResult.getCode() == null || productResult.getCode() != 0) {
+            log.warn("获取商品信息失败: userId={}, msg={}", userId, productResult != null ? productResult.getMsg() : null);
+            return null;
+        }
+
+        // 3. 组装购物车详情并写入缓存，商品全部不存在时商品服务返回空列表
+        CartVO cartVO = cartConverter.toCartWithDetails(userId, cartItems, productResult.getData());
+        cartViewCacheManager.put(userId, lookup.version(), cartVO);
+        return cartVO;
+    }
+
+    /**
+     * 验证单个商品是否可以加入购物车
+     *
+     * @return 不可购买时返回错误结果，可购买时返回null
+     */
+    private JsonData checkStock(Long productId, Integer quantity) {
+        Map<Long, StockAvailabilityVO> stockMap = validateStockBatch(Map.of(productId, quantity));
+        if (stockMap == null) {
+            return JsonData.buildError("验证库存失败，请重试");
+        }
+        StockAvailabilityVO availability = stockMap.get(productId);
+        if (availability == null) {
+            return JsonData.buildError("商品不存在或已下架");
+        }
+        if (!Boolean.TRUE.equals(availability.getAvailable())) {
+            return JsonData.buildError(availability.getReason());
+        }
+        return null;
+    }
+
+    /**
+     * 批量验证库存，一次RPC返回每个商品的可用情况
+     *
+     * @param quantityMap 商品ID -> 数量
+     * @return 商品ID -> 验证结果，调用失败时返回null
+     */
+    private Map<Long, StockAvailabilityVO> validateStockBatch(Map<Long, Integer> quantityMap) {
+        ValidateStockBatchRequest batchRequest = new ValidateStockBatchRequest();
+        batchRequest.setItems(quantityMap.entrySet().stream().map(entry -> {
+            ValidateStockRequest stockRequest = new ValidateStockRequest();
+            stockRequest.setProductId(entry.getKey());
+            stockRequest.setQuantity(entry.getValue());
+            return stockRequest;
+        }).collect(Collectors.toList()));
+
+        JsonData stockResult = productFeignService.validateStockBatch(batchRequest);
+        if (stockResult.getCode() != 0 || stockResult.getData() == null) {
+            log.warn("批量验证库存失败: productIds={}, msg={}", quantityMap.keySet(), stockResult.getMsg());
+            return null;
+        }
+        List<StockAvailabilityVO> availabilityList = JSON.parseArray(
+                JSON.toJSONString(stockResult.getData()), StockAvailabilityVO.class);
+        return availabilityList.stream()
+                .collect(Collectors.toMap(StockAvailabilityVO::getProductId, Function.identity(), (a, b) -> a));
+    }
+
+    /**
+     * Redis中没有该用户的购物车时（启动预热未覆盖、尚未加载到或已过期）先从MySQL加载，
+     * 否则只写入本次变更后购物车非空，其余购物项不会再按需加载
+     */
+    private void ensureCartLoaded(Long userId) {
+        if (cartRedisManager.count(userId) == 0) {
+            loadUserCartFromDB(userId);
+        }
+    }
+
     /**
      * 从数据库加载用户购物车数据到Redis
+     *
+     * @return 加载的购物项，失败或没有数据时返回空列表
      */
-    private void loadUserCartFromDB(Long userId) {
+    private List<CartItemDTO> loadUserCartFromDB(Long userId) {
         try {
             List<CartDO> cartList = cartManager.selectByUserId(userId);
             if (cartList.isEmpty()) {
-                return;
+                return new ArrayList<>();
             }
 
-            String redisKey = getCartRedisKey(userId);
-            Map<String, String> cartMap = new HashMap<>();
+            // 仍有待回写变更的购物项以Redis为准，MySQL中是旧数据（如已删除但尚未回写）
+            Set<Long> pendingProductIds = cartWriteBehindManager.pendingProductIds(userId,
+                    cartList.stream().map(CartDO::getProductId).collect(Collectors.toList()));
 
+            List<CartItemDTO> cartItems = new ArrayList<>(cartList.size());
             for (CartDO cart : cartList) {
+                if (pendingProductIds.contains(cart.getProductId())) {
+                    continue;
+                }
                 CartItemDTO cartItem = new CartItemDTO();
                 cartItem.setProductId(cart.getProductId());
                 cartItem.setQuantity(cart.getQuantity());
                 cartItem.setAddTime(cart.getCreateTime().getTime());
                 cartItem.setUpdateTime(cart.getUpdateTime().getTime());
-
-                String productField = getProductField(cart.getProductId());
-                cartMap.put(productField, JSON.toJSONString(cartItem));
+                cartItems.add(cartItem);
+            }
+            if (cartItems.isEmpty()) {
+                return cartItems;
             }
 
-            redisTemplate.opsForHash().putAll(redisKey, cartMap);
-            redisTemplate.expire(redisKey, cartProperties.getRedis().getExpireDays(), TimeUnit.DAYS);
+            cartRedisManager.putItems(Map.of(userId, cartItems));
 
-            log.info("从数据库加载用户购物车数据到Redis: userId={}, count={}", userId, cartList.size());
+            log.info("从数据库加载用户购物车数据到Redis: userId={}, count={}", userId, cartItems.size());
+            return cartItems;
 
         } catch (Exception e) {
             log.error("从数据库加载用户购物车数据失败: userId={}", userId, e);
+            return new ArrayList<>();
         }
     }
 
     /**
-     * 获取购物车Redis Key
+     * 把加购后的数量转换为待upsert的购物车行，新增行的创建时间取当前时间，已有行只更新数量和更新时间
      */
-    private String getCartRedisKey(Long userId) {
-        return cartProperties.getRedis().getKeyPrefix() + userId;
+    private List<CartDO> toCartList(Long userId, Map<Long, Long> quantities) {
+        Date now = new Date();
+        List<CartDO> cartList = new ArrayList<>(quantities.size());
+        quantities.forEach((productId, quantity) -> {
+            CartDO cart = new CartDO();
+            cart.setUserId(userId);
+            cart.setProductId(productId);
+            cart.setQuantity(quantity.intValue());
+            cart.setCreateTime(now);
+            cart.setUpdateTime(now);
+            cartList.add(cart);
+        });
+        return cartList;
     }
 
     /**
-     * 获取商品字段名
+     * 持久化购物项变更：启用异步回写时待回写标记已由购物车脚本原子记录，由定时任务批量写MySQL；否则同步写MySQL
      */
-    private String getProductField(Long productId) {
-        return "product:" + productId;
+    private void persist(Runnable syncWrite) {
+        if (!cartWriteBehindManager.isEnabled()) {
+            syncWrite.run();
+        }
     }
 }
@@ -1,40 +1,54 @@
 package fun.timu.shop.order.service.impl;
 
 import com.alibaba.fastjson2.JSON;
-import com.alibaba.fastjson2.TypeReference;
+import fun.timu.shop.common.components.DelayTaskScheduler;
 import fun.timu.shop.common.enums.*;
 import fun.timu.shop.common.exception.BizException;
 import fun.timu.shop.common.interceptor.LoginInterceptor;
 import fun.timu.shop.common.model.LoginUser;
 import fun.timu.shop.common.model.OrderMessage;
+import fun.timu.shop.common.model.StockAvailabilityVO;
 import fun.timu.shop.common.util.CommonUtil;
+import fun.timu.shop.common.util.FanOutScope;
 import fun.timu.shop.common.util.JsonData;
-import fun.timu.shop.common.util.RabbitMQUtil;
 import fun.timu.shop.common.request.LockCouponRecordRequest;
 import fun.timu.shop.coupon.model.VO.CouponRecordVO;
-import fun.timu.shop.order.config.RabbitMQConfig;
+import fun.timu.shop.order.config.OrderConfirmProperties;
 import fun.timu.shop.order.controller.request.ConfirmOrderRequest;
+import fun.timu.shop.order.converter.CartConverter;
 import fun.timu.shop.common.request.LockProductRequest;
 import fun.timu.shop.common.request.OrderItemRequest;
 import fun.timu.shop.order.feign.CouponFeignService;
 import fun.timu.shop.order.feign.ProductFeignService;
 import fun.timu.shop.order.feign.UserFeignService;
+import fun.timu.shop.order.listener.OrderTimeoutHandler;
 import fun.timu.shop.order.manager.ProductOrderItemManager;
 import fun.timu.shop.order.manager.ProductOrderManager;
 import fun.timu.shop.order.model.DO.ProductOrderDO;
 import fun.timu.shop.order.model.DO.ProductOrderItemDO;
+import fun.timu.shop.order.model.VO.CartItemVO;
 import fun.timu.shop.order.model.VO.ProductOrderAddressVO;
 import fun.timu.shop.order.model.VO.ProductOrderItemVO;
 import fun.timu.shop.order.service.CartService;
 import fun.timu.shop.order.service.ProductOrderService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 /**
@@ -52,8 +66,16 @@ public class ProductOrderServiceImpl implements ProductOrderService {
     private final ProductFeignService productFeignService;
     private final UserFeignService userFeignService;
     private final CartService cartService;
-    private final RabbitMQUtil rabbitMQUtil;
-    private final RabbitMQConfig rabbitMQConfig;
+    private final CartConverter cartConverter;
+    private final DelayTaskScheduler delayTaskScheduler;
+    private final OrderConfirmProperties confirmProperties;
+    private final ExecutorService orderConfirmExecutor;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 订单超时未支付自动关单时间（毫秒）
+     */
+    private static final long ORDER_TIMEOUT_MILLIS = 30 * 60 * 1000L;
 
 
     @Override
@@ -63,67 +85,76 @@ public class ProductOrderServiceImpl implements ProductOrderService {
 
         String orderOutTradeNo = CommonUtil.getStringNumRandom(32);
 
+        Map<String, Long> stageTimings = new LinkedHashMap<>();
+        long confirmStart = System.nanoTime();
+        try {
+            //并行获取收货地址、购物车商品和优惠券，三者都是只读查询，任一失败或超时立即取消其余查询
+            ProductOrderAddressVO addressVO;
+            List<ProductOrderItemVO> orderItemList;
+            CouponRecordVO couponRecordVO;
+            try (FanOutScope scope = new FanOutScope(orderConfirmExecutor, LoginInterceptor.threadLocal)) {
+                FanOutScope.Subtask<ProductOrderAddressVO> addressTask = scope.fork("address",
+                        confirmProperties.getAddressTimeoutMs(), () -> this.getUserAddress(orderRequest.getAddressId()));
+                FanOutScope.Subtask<List<ProductOrderItemVO>> cartTask = scope.fork("cart",
+                        confirmProperties.getCartTimeoutMs(), () -> this.getCartItems(orderRequest.getProductIdList()));
+                FanOutScope.Subtask<CouponRecordVO> couponTask = scope.fork("coupon",
+                        confirmProperties.getCouponTimeoutMs(), () -> this.getCartCouponRecord(orderRequest.getCouponRecordId()));
+                try {
+                    scope.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new BizException(BizCodeEnum.SYSTEM_ERROR);
+                } finally {
+                    scope.timings().forEach((stage, millis) -> {
+                        stageTimings.put(stage, millis);
+                        stageTimer(stage).record(millis, TimeUnit.MILLISECONDS);
+                    });
+                }
+                throwIfFailed(scope);
+                addressVO = addressTask.get();
+                orderItemList = cartTask.get();
+                couponRecordVO = couponTask.get();
+            }
 
-        //获取收货地址详情
-        ProductOrderAddressVO addressVO = this.getUserAddress(orderRequest.getAddressId());
-
-
-        log.info("收货地址信息:{}", addressVO);
-
-        //获取用户加入购物车的商品
-        List<Long> productIdList = orderRequest.getProductIdList();
-
-        JsonData cartItemDate = cartService.confirmCartItems(productIdList);
-
-        // 使用FastJSON进行类型转换
-        List<ProductOrderItemVO> orderItemList = null;
-        if (cartItemDate.getData() != null) {
-            orderItemList = JSON.parseObject(JSON.toJSONString(cartItemDate.getData()), new TypeReference<List<ProductOrderItemVO>>() {
-            });
-        }
-
-        log.info("获取的商品:{}", orderItemList);
-        if (orderItemList == null || orderItemList.isEmpty()) {
-            //购物车商品不存在
-            throw new BizException(BizCodeEnum.ORDER_CONFIRM_CART_ITEM_NOT_EXIST);
-        }
-
-        //验证价格，减去商品优惠券
-        this.checkPrice(orderItemList, orderRequest);
+            log.info("收货地址信息:{}", addressVO);
+            log.info("获取的商品:{}", orderItemList);
 
-        //锁定优惠券
-        this.lockCouponRecords(orderRequest, orderOutTradeNo);
+            //验证价格，减去商品优惠券
+            long stageStart = System.nanoTime();
+            this.checkPrice(orderItemList, orderRequest, couponRecordVO);
+            stageStart = recordStage(stageTimings, "check_price", stageStart);
 
-        //锁定库存
-        this.lockProductStocks(orderItemList, orderOutTradeNo);
+            //锁定资源前先注册整单维度的超时任务，到期后统一关单并释放优惠券和库存，锁定中途失败时也能兜底释放
+            delayTaskScheduler.schedule(OrderTimeoutHandler.TOPIC, orderOutTradeNo, ORDER_TIMEOUT_MILLIS);
+            stageStart = recordStage(stageTimings, "schedule_timeout", stageStart);
 
+            //锁定优惠券
+            this.lockCouponRecords(orderRequest, orderOutTradeNo);
+            stageStart = recordStage(stageTimings, "lock_coupon", stageStart);
 
-        //创建订单
-        ProductOrderDO productOrderDO = this.saveProductOrder(orderRequest, loginUser, orderOutTradeNo, addressVO);
+            //锁定库存
+            this.lockProductStocks(orderItemList, orderOutTradeNo);
+            stageStart = recordStage(stageTimings, "lock_stock", stageStart);
 
-        //创建订单项
-        this.saveProductOrderItems(orderOutTradeNo, productOrderDO.getId(), orderItemList);
+            //创建订单
+            ProductOrderDO productOrderDO = this.saveProductOrder(orderRequest, loginUser, orderOutTradeNo, addressVO);
 
-        //发送延迟消息，用于自动关单（30分钟后）
-        OrderMessage orderMessage = new OrderMessage();
-        orderMessage.setOutTradeNo(orderOutTradeNo);
-        
-        // 使用 RabbitMQUtil 发送延迟消息，30分钟后自动关闭未支付订单
-        Long delayTime = 30 * 60 * 1000L; // 30分钟延迟时间（毫秒）
-        rabbitMQUtil.sendDelayMessage(
-                rabbitMQConfig.getEventExchange(), 
-                rabbitMQConfig.getOrderCloseDelayRoutingKey(), 
-                orderMessage, 
-                delayTime
-        );
-        
-        log.info("订单关闭延迟消息发送成功: outTradeNo={}, delayTime={}ms", orderOutTradeNo, delayTime);
+            //创建订单项
+            this.saveProductOrderItems(orderOutTradeNo, productOrderDO.getId(), orderItemList);
+            stageStart = recordStage(stageTimings, "save_order", stageStart);
 
-        //创建支付  TODO
-        log.info("创建订单成功，outTradeNo:{}", orderOutTradeNo);
+            //订单创建成功后清空已下单的购物项，清空失败不影响下单
+            this.removeOrderedCartItems(loginUser.getId(), orderItemList);
+            recordStage(stageTimings, "clear_cart", stageStart);
 
+            //创建支付  TODO
+            log.info("创建订单成功，outTradeNo:{}", orderOutTradeNo);
 
-        return null;
+            return null;
+        } finally {
+            recordStage(stageTimings, "total", confirmStart);
+            log.info("下单各阶段耗时(ms)，outTradeNo:{}, {}", orderOutTradeNo, stageTimings);
+        }
     }
 
     @Override
@@ -136,9 +167,36 @@ public class ProductOrderServiceImpl implements ProductOrderService {
         }
     }
 
+    /**
+     * 超时关单：订单仍为NEW时按状态条件更新为CANCEL
+     * <p>
+     * 当前尚未接入第三方支付，关单只以本地订单状态为准，不向支付渠道查询交易状态；
+     * 与支付回调的并发由 NEW -> CANCEL 的条件更新保证，回调先把状态改为PAY时关单不生效。
+     * 用户在支付渠道已付款但回调尚未到达时订单仍会被关闭，接入支付时需在更新前先查询渠道确认未支付。
+     */
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public boolean closeProductOrder(OrderMessage orderMessage) {
-        return false;
+        String outTradeNo = orderMessage.getOutTradeNo();
+        ProductOrderDO productOrderDO = orderManager.selectOne(outTradeNo);
+        if (productOrderDO == null) {
+            log.warn("订单不存在，直接确认消息: outTradeNo={}", outTradeNo);
+            return true;
+        }
+
+        if (!OrderStateEnum.NEW.name().equalsIgnoreCase(productOrderDO.getState())) {
+            log.info("订单状态非NEW，无需关单: outTradeNo={}, state={}", outTradeNo, productOrderDO.getState());
+            return true;
+        }
+
+        int rows = orderManager.updateOrderState(outTradeNo, OrderStateEnum.CANCEL.name(), OrderStateEnum.NEW.name());
+        if (rows == 0) {
+            // 并发下状态已被其他流程修改（如支付回调），以最新状态为准
+            log.info("订单状态已变更，关单跳过: outTradeNo={}", outTradeNo);
+        } else {
+            log.info("订单超时未支付，关单成功: outTradeNo={}", outTradeNo);
+        }
+        return true;
     }
 
     private ProductOrderAddressVO getUserAddress(long addressId) {
@@ -156,7 +214,100 @@ public class ProductOrderServiceImpl implements ProductOrderService {
         return addressVO;
     }
 
-    private void checkPrice(List<ProductOrderItemVO> orderItemList, ConfirmOrderRequest orderRequest) {
+    /**
+     * 订单保存后从购物车删除已下单的商品，删除失败只记录日志
+     */
+    private void removeOrderedCartItems(Long userId, List<ProductOrderItemVO> orderItemList) {
+        List<Long> productIds = orderItemList.stream()
+                .map(ProductOrderItemVO::getProductId)
+                .distinct()
+                .collect(Collectors.toList());
+        try {
+            cartService.removeConfirmedCartItems(userId, productIds);
+        } catch (Exception e) {
+            log.error("清空已下单的购物项失败: userId={}, productIds={}", userId, productIds, e);
+        }
+    }
+
+    /**
+     * 确认购物车商品并转换为订单项
+     */
+    private List<ProductOrderItemVO> getCartItems(List<Long> productIdList) {
+
+        JsonData cartItemData = cartService.confirmCartItems(productIdList);
+        if (cartItemData.getCode() != 0) {
+            log.warn("确认购物车商品失败: productIds={}, msg={}", productIdList, cartItemData.getMsg());
+            // 库存不足或已下架时data为每个不可购买商品的原因，随异常返回，客户端据此展示部分失败
+            List<StockAvailabilityVO> unavailableList = typedList(cartItemData.getData(), StockAvailabilityVO.class);
+            if (!unavailableList.isEmpty()) {
+                throw new BizException(BizCodeEnum.ORDER_CONFIRM_CART_ITEM_UNAVAILABLE, cartItemData.getMsg(), unavailableList);
+            }
+            throw new BizException(BizCodeEnum.ORDER_CONFIRM_CART_ITEM_NOT_EXIST);
+        }
+
+        // 成功时data为同一进程内的CartItemVO列表，直接转换，不再经过JSON
+        List<CartItemVO> cartItems = typedList(cartItemData.getData(), CartItemVO.class);
+        List<ProductOrderItemVO> orderItemList = cartConverter.toOrderItems(cartItems);
+
+        if (orderItemList.isEmpty()) {
+            //购物车商品不存在
+            throw new BizException(BizCodeEnum.ORDER_CONFIRM_CART_ITEM_NOT_EXIST);
+        }
+        return orderItemList;
+    }
+
+    /**
+     * 按元素类型逐个转换同一进程内返回的列表，data不是列表时返回空列表，元素类型不符时立即抛出ClassCastException
+     */
+    private static <T> List<T> typedList(Object data, Class<T> type) {
+        if (!(data instanceof List<?> list)) {
+            return List.of();
+        }
+        List<T> result = new ArrayList<>(list.size());
+        for (Object element : list) {
+            result.add(type.cast(element));
+        }
+        return result;
+    }
+
+    /**
+     * 并行查询失败时抛出对应的业务异常：业务异常原样抛出，超时或线程池满按系统繁忙处理
+     */
+    private void throwIfFailed(FanOutScope scope) {
+        try {
+            scope.throwIfFailed();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BizException bizException) {
+                throw bizException;
+            }
+            if (cause instanceof TimeoutException || cause instanceof RejectedExecutionException) {
+                log.error("下单查询超时或线程池已满: {}", cause.getMessage());
+                throw new BizException(BizCodeEnum.SYSTEM_TIMEOUT_ERROR);
+            }
+            log.error("下单查询失败", cause);
+            throw new BizException(BizCodeEnum.SYSTEM_ERROR);
+        }
+    }
+
+    /**
+     * 记录阶段耗时到本次下单的耗时明细和指标，返回当前时间作为下一阶段的开始时间
+     */
+    private long recordStage(Map<String, Long> stageTimings, String stage, long stageStart) {
+        long now = System.nanoTime();
+        stageTimings.put(stage, TimeUnit.NANOSECONDS.toMillis(now - stageStart));
+        stageTimer(stage).record(now - stageStart, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    private Timer stageTimer(String stage) {
+        return Timer.builder("shop.order.confirm.stage")
+                .description("下单各阶段耗时")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    private void checkPrice(List<ProductOrderItemVO> orderItemList, ConfirmOrderRequest orderRequest, CouponRecordVO couponRecordVO) {
 
         //统计商品总价格
         BigDecimal realPayAmount = new BigDecimal("0");
@@ -167,9 +318,6 @@ public class ProductOrderServiceImpl implements ProductOrderService {
             }
         }
 
-        //获取优惠券，判断是否可以使用
-        CouponRecordVO couponRecordVO = getCartCouponRecord(orderRequest.getCouponRecordId());
-
         //计算购物车价格，是否满足优惠券满减条件
         if (couponRecordVO != null) {
 
@@ -0,0 +1,149 @@
+package fun.timu.shop.order.converter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fun.timu.shop.common.model.ProductSnapshotDTO;
+import fun.timu.shop.common.model.ProductSnapshotResult;
+import fun.timu.shop.common.util.JsonData;
+import fun.timu.shop.order.model.DTO.CartItemDTO;
+import fun.timu.shop.order.model.VO.CartItemVO;
+import fun.timu.shop.order.model.VO.CartVO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 购物车详情组装的内存分配对比：Map 载荷 与 类型化商品快照
+ * 每轮包含响应反序列化和组装购物车，按当前线程的分配字节数统计，使用 -Dcart.benchmark=true 开启
+ *
+ * @author zhengke
+ */
+@EnabledIfSystemProperty(named = "cart.benchmark", matches = "true")
+public class CartConverterAllocationBenchmarkTest {
+
+    private static final int ITEM_COUNT = Integer.getInteger("cart.benchmark.items", 20);
+    private static final int WARMUP_ROUNDS = 20_000;
+    private static final int ROUNDS = Integer.getInteger("cart.benchmark.rounds", 50_000);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CartConverter cartConverter = new CartConverter();
+    private final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private List<CartItemDTO> cartItems;
+    private byte[] mapPayload;
+    private byte[] snapshotPayload;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        cartItems = new ArrayList<>(ITEM_COUNT);
+        Map<String, Object> productMap = new HashMap<>();
+        List<ProductSnapshotDTO> snapshots = new ArrayList<>(ITEM_COUNT);
+        for (long productId = 1; productId <= ITEM_COUNT; productId++) {
+            CartItemDTO cartItem = new CartItemDTO(productId, 2);
+            cartItems.add(cartItem);
+
+            ProductSnapshotDTO snapshot = new ProductSnapshotDTO(productId, "商品" + productId,
+                    "https://img.example.com/" + productId + ".jpg", new BigDecimal("99.90"), 100, 1);
+            snapshots.add(snapshot);
+
+            // 改造前商品服务返回的格式
+            Map<String, Object> productInfo = new HashMap<>();
+            productInfo.put("id", snapshot.getId());
+            productInfo.put("title", snapshot.getTitle());
+            productInfo.put("coverImg", snapshot.getCoverImg());
+            productInfo.put("price", snapshot.getPrice());
+            productInfo.put("stock", snapshot.getStock());
+            productInfo.put("status", snapshot.getStatus());
+            productMap.put(String.valueOf(productId), productInfo);
+        }
+        mapPayload = objectMapper.writeValueAsBytes(JsonData.buildSuccess(productMap));
+        snapshotPayload = objectMapper.writeValueAsBytes(JsonData.buildSuccess(snapshots));
+    }
+
+    @Test
+    public void testAllocationPerRender() throws Exception {
+        Callable<CartVO> mapRender = () -> {
+            JsonData result = objectMapper.readValue(mapPayload, JsonData.class);
+            return renderFromMap(cartItems, result.getData());
+        };
+        Callable<CartVO> snapshotRender = () -> {
+            ProductSnapshotResult result = objectMapper.readValue(snapshotPayload, ProductSnapshotResult.class);
+            return cartConverter.toCartWithDetails(1L, cartItems, result.getData());
+        };
+
+        CartVO expected = mapRender.call();
+        CartVO actual = snapshotRender.call();
+        // Map载荷中的价格经JSON反序列化为Double，比较数值不比较精度
+        assertEquals(0, expected.getTotalAmount().compareTo(actual.getTotalAmount()));
+        assertEquals(expected.getValidCount(), actual.getValidCount());
+
+        long mapBytes = measure(mapRender);
+        long snapshotBytes = measure(snapshotRender);
+        System.out.printf("购物车详情组装 items=%d: Map载荷 %d B/次, 商品快照 %d B/次, 减少 %.1f%%%n",
+                ITEM_COUNT, mapBytes, snapshotBytes, (1 - (double) snapshotBytes / mapBytes) * 100);
+        assertTrue(snapshotBytes < mapBytes, "类型化商品快照的分配应少于Map载荷");
+    }
+
+    private long measure(Callable<CartVO> render) throws Exception {
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            render.call();
+        }
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUNDS; i++) {
+            render.call();
+        }
+        return (threadMXBean.getThreadAllocatedBytes(threadId) - before) / ROUNDS;
+    }
+
+    /**
+     * 改造前的组装方式：按字符串ID取出商品Map，逐字段按字符串解析
+     */
+    @SuppressWarnings("unchecked")
+    private CartVO renderFromMap(List<CartItemDTO> cartItems, Object productData) {
+        Map<String, Object> productMap = (Map<String, Object>) productData;
+        List<CartItemVO> itemVOs = new ArrayList<>();
+        BigDecimal totalAmount = BigDecimal.ZERO;
+        int validCount = 0;
+        for (CartItemDTO cartItem : cartItems) {
+            Map<String, Object> product = (Map<String, Object>) productMap.get(cartItem.getProductId().toString());
+            Integer status = Integer.valueOf(product.get("status").toString());
+            BigDecimal price = new BigDecimal(product.get("price").toString());
+            BigDecimal subtotal = price.multiply(BigDecimal.valueOf(cartItem.getQuantity()));
+            itemVOs.add(CartItemVO.builder()
+                    .productId(cartItem.getProductId())
+                    .quantity(cartItem.getQuantity())
+                    .addTime(LocalDateTime.ofEpochSecond(cartItem.getAddTime() / 1000, 0, ZoneOffset.of("+8")))
+                    .updateTime(LocalDateTime.ofEpochSecond(cartItem.getUpdateTime() / 1000, 0, ZoneOffset.of("+8")))
+                    .title(product.get("title").toString())
+                    .coverImg(product.get("coverImg").toString())
+                    .price(price)
+                    .subtotal(subtotal)
+                    .stock(Integer.valueOf(product.get("stock").toString()))
+                    .available(status == 1)
+                    .build());
+            if (status == 1) {
+                validCount++;
+                totalAmount = totalAmount.add(subtotal);
+            }
+        }
+        return CartVO.builder()
+                .userId(1L)
+                .items(itemVOs)
+                .totalAmount(totalAmount)
+                .validCount(validCount)
+                .build();
+    }
+}
@@ -0,0 +1,69 @@
+package fun.timu.shop.order.converter;
+
+import com.alibaba.fastjson2.JSON;
+import fun.timu.shop.order.model.DTO.CartItemDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CartItemRedisSerializer 测试类
+ *
+ * @author zhengke
+ */
+public class CartItemRedisSerializerTest {
+
+    private final CartItemRedisSerializer serializer = CartItemRedisSerializer.INSTANCE;
+
+    @Test
+    public void testRoundTrip() {
+        CartItemDTO cartItem = new CartItemDTO(1001L, 3);
+        cartItem.setAddTime(1_700_000_000_123L);
+        cartItem.setUpdateTime(1_700_000_360_456L);
+
+        byte[] bytes = serializer.serialize(cartItem);
+        CartItemDTO decoded = serializer.deserialize(bytes);
+
+        assertEquals(CartItemRedisSerializer.VERSION, bytes[0]);
+        assertFalse(CartItemRedisSerializer.isLegacy(bytes));
+        assertNull(decoded.getProductId(), "商品ID存储在Hash字段中，不在值里");
+        assertEquals(3, decoded.getQuantity());
+        assertEquals(cartItem.getAddTime(), decoded.getAddTime());
+        assertEquals(cartItem.getUpdateTime(), decoded.getUpdateTime());
+    }
+
+    @Test
+    public void testCompactSize() {
+        CartItemDTO cartItem = new CartItemDTO(1001L, 2);
+        cartItem.setUpdateTime(cartItem.getAddTime() + 60_000);
+
+        byte[] binary = serializer.serialize(cartItem);
+        byte[] legacy = new GenericJackson2JsonRedisSerializer().serialize(JSON.toJSONString(cartItem));
+
+        System.out.println("二进制: " + binary.length + " 字节, 旧格式: " + legacy.length + " 字节");
+        assertTrue(binary.length <= 12, "二进制编码应不超过12字节: " + binary.length);
+        assertTrue(binary.length * 5 < legacy.length, "二进制编码应显著小于旧格式");
+    }
+
+    @Test
+    public void testReadLegacyFormat() {
+        CartItemDTO cartItem = new CartItemDTO(1001L, 5);
+        byte[] legacy = new GenericJackson2JsonRedisSerializer().serialize(JSON.toJSONString(cartItem));
+
+        assertTrue(CartItemRedisSerializer.isLegacy(legacy));
+        CartItemDTO decoded = serializer.deserialize(legacy);
+        assertEquals(1001L, decoded.getProductId());
+        assertEquals(5, decoded.getQuantity());
+        assertEquals(cartItem.getAddTime(), decoded.getAddTime());
+    }
+
+    @Test
+    public void testClockSkewClampsUpdateTime() {
+        CartItemDTO cartItem = new CartItemDTO(1L, 1);
+        cartItem.setUpdateTime(cartItem.getAddTime() - 1000);
+
+        CartItemDTO decoded = serializer.deserialize(serializer.serialize(cartItem));
+        assertEquals(cartItem.getAddTime(), decoded.getUpdateTime());
+    }
+}
@@ -0,0 +1,170 @@
+package fun.timu.shop.order.manager;
+
+import fun.timu.shop.order.config.CartProperties;
+import fun.timu.shop.order.converter.CartItemRedisSerializer;
+import fun.timu.shop.order.manager.impl.CartRedisManagerImpl;
+import fun.timu.shop.order.model.DTO.CartItemDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 购物车Lua脚本加购与先读后写加购的并发对比
+ * 需要本地Redis，使用 -Dcart.benchmark=true 开启
+ *
+ * @author zhengke
+ */
+@EnabledIfSystemProperty(named = "cart.benchmark", matches = "true")
+public class CartRedisManagerBenchmarkTest {
+
+    private static final int THREAD_COUNT = Integer.getInteger("cart.benchmark.threads", 32);
+    private static final int OPS_PER_THREAD = Integer.getInteger("cart.benchmark.ops", 500);
+    private static final long USER_ID = 1L;
+    private static final long PRODUCT_ID = 1001L;
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private CartProperties cartProperties;
+    private CartRedisManager cartRedisManager;
+
+    @BeforeEach
+    public void setUp() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                System.getProperty("cart.benchmark.redisHost", "127.0.0.1"),
+                Integer.getInteger("cart.benchmark.redisPort", 6379)));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+
+        cartProperties = new CartProperties();
+        cartProperties.getRedis().setKeyPrefix("cart:benchmark:");
+        cartProperties.getRedis().setSummaryKeyPrefix("cart:benchmark:summary:");
+        cartProperties.getWriteBehind().setDirtyKey("cart:benchmark:dirty");
+
+        CartRedisManagerImpl manager = new CartRedisManagerImpl(connectionFactory, cartProperties);
+        manager.loadScripts();
+        cartRedisManager = manager;
+        cleanUp();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cleanUp();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    public void testLuaAddNoLostUpdate() throws InterruptedException {
+        long[] latencies = runConcurrently(() -> cartRedisManager.addItem(USER_ID, PRODUCT_ID, 1));
+
+        CartItemDTO cartItem = cartRedisManager.getItem(USER_ID, PRODUCT_ID);
+        print("Lua脚本加购", latencies, cartItem.getQuantity());
+        assertEquals(THREAD_COUNT * OPS_PER_THREAD, cartItem.getQuantity(), "并发加购不能丢失累加");
+        assertEquals(1, redisTemplate.opsForZSet().size(cartProperties.getWriteBehind().getDirtyKey()),
+                "同一购物项多次变更只保留一个待回写标记");
+        assertEquals(THREAD_COUNT * OPS_PER_THREAD,
+                cartRedisManager.getSummaries(List.of(USER_ID)).get(USER_ID).getTotalQuantity(), "摘要的总数量与购物车一致");
+    }
+
+    @Test
+    public void testLuaFasterThanReadModifyWrite() throws InterruptedException {
+        long[] readModifyWrite = runConcurrently(this::readModifyWriteAdd);
+        int rmwQuantity = cartRedisManager.getItem(USER_ID, PRODUCT_ID).getQuantity();
+        print("先读后写加购", readModifyWrite, rmwQuantity);
+
+        cleanUp();
+        long[] lua = runConcurrently(() -> cartRedisManager.addItem(USER_ID, PRODUCT_ID, 1));
+        int luaQuantity = cartRedisManager.getItem(USER_ID, PRODUCT_ID).getQuantity();
+        print("Lua脚本加购", lua, luaQuantity);
+
+        assertEquals(THREAD_COUNT * OPS_PER_THREAD, luaQuantity);
+        assertTrue(percentile(lua, 0.99) < percentile(readModifyWrite, 0.99), "Lua脚本加购的p99应低于先读后写");
+    }
+
+    /**
+     * 改造前的加购方式：HGET、在Java中累加、HSET、EXPIRE 三次往返
+     */
+    private void readModifyWriteAdd() {
+        byte[] key = (cartProperties.getRedis().getKeyPrefix() + USER_ID).getBytes(StandardCharsets.UTF_8);
+        byte[] field = String.valueOf(PRODUCT_ID).getBytes(StandardCharsets.UTF_8);
+        byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.hashCommands().hGet(key, field));
+        CartItemDTO cartItem = CartItemRedisSerializer.INSTANCE.deserialize(value);
+        if (cartItem == null) {
+            cartItem = new CartItemDTO(PRODUCT_ID, 1);
+        } else {
+            cartItem.setQuantity(cartItem.getQuantity() + 1);
+            cartItem.setUpdateTime(System.currentTimeMillis());
+        }
+        byte[] newValue = CartItemRedisSerializer.INSTANCE.serialize(cartItem);
+        redisTemplate.execute((RedisCallback<Object>) connection -> connection.hashCommands().hSet(key, field, newValue));
+        redisTemplate.execute((RedisCallback<Object>) connection -> connection.keyCommands().expire(key, 86400));
+    }
+
+    /**
+     * 多线程执行操作，返回每次操作的耗时（纳秒）
+     */
+    private long[] runConcurrently(Runnable operation) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch doneLatch = new CountDownLatch(THREAD_COUNT);
+        long[] latencies = new long[THREAD_COUNT * OPS_PER_THREAD];
+
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            int offset = i * OPS_PER_THREAD;
+            executor.submit(() -> {
+                try {
+                    startLatch.await();
+                    for (int j = 0; j < OPS_PER_THREAD; j++) {
+                        long start = System.nanoTime();
+                        operation.run();
+                        latencies[offset + j] = System.nanoTime() - start;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    doneLatch.countDown();
+                }
+            });
+        }
+
+        startLatch.countDown();
+        doneLatch.await();
+        executor.shutdown();
+        return latencies;
+    }
+
+    private void print(String name, long[] latencies, int quantity) {
+        int expected = THREAD_COUNT * OPS_PER_THREAD;
+        System.out.println(name + ": 线程数=" + THREAD_COUNT + ", 期望数量=" + expected + ", 实际数量=" + quantity
+                + ", 丢失=" + (expected - quantity)
+                + ", p50=" + TimeUnit.NANOSECONDS.toMicros(percentile(latencies, 0.5)) + "us"
+                + ", p99=" + TimeUnit.NANOSECONDS.toMicros(percentile(latencies, 0.99)) + "us");
+    }
+
+    private static long percentile(long[] latencies, double percentile) {
+        long[] sorted = Arrays.copyOf(latencies, latencies.length);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private void cleanUp() {
+        redisTemplate.delete(List.of(cartProperties.getRedis().getKeyPrefix() + USER_ID,
+                cartProperties.getRedis().getSummaryKeyPrefix() + USER_ID,
+                cartProperties.getWriteBehind().getDirtyKey()));
+    }
+}
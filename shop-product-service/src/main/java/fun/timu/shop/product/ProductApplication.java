@@ -5,11 +5,13 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.openfeign.EnableFeignClients;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @MapperScan(basePackages = "fun.timu.shop.product.mapper")
 @ComponentScan(basePackages = {"fun.timu.shop.product", "fun.timu.shop.common"})
 @EnableFeignClients(basePackages = "fun.timu.shop.product.feign")
+@EnableScheduling
 public class ProductApplication {
     public static void main(String[] args) {
         SpringApplication.run(ProductApplication.class, args);
@@ -40,6 +40,7 @@ public class InterceptorConfig implements WebMvcConfigurer {
                         // 商品查询接口 - 普通用户可以访问
                         "/api/product/v1/product/list",
                         "/api/product/v1/product/list/**",
+                        "/api/product/v1/product/page",
                         "/api/product/v1/product/hot",
                         "/api/product/v1/product/recommend",
                         "/api/product/v1/product/search",
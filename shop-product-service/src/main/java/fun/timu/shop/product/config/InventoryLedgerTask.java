@@ -0,0 +1,96 @@
+package fun.timu.shop.product.config;
+
+import fun.timu.shop.common.components.DistributedLockComponent;
+import fun.timu.shop.common.util.DistributedLock;
+import fun.timu.shop.product.manager.InventoryLedgerManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis库存引擎定时任务
+ * 启动时与product_task对账，运行期间定时把库存变更量批量回写MySQL，并从MySQL重新加载新加入热点集合的商品；
+ * 多实例时只由获得锁的实例回写，重新加载与回写使用同一把锁，保证读取MySQL时没有已取出但尚未回写的变更量
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InventoryLedgerTask implements ApplicationRunner {
+
+    /**
+     * 回写锁的过期时间（秒），持有期间由看门狗续期，实例异常退出后由其他实例接管
+     */
+    private static final long FLUSH_LOCK_SECONDS = 30;
+
+    private final InventoryLedgerManager inventoryLedgerManager;
+    private final InventoryProperties inventoryProperties;
+    private final DistributedLockComponent distributedLockComponent;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!Boolean.TRUE.equals(inventoryProperties.getEnabled())
+                || !Boolean.TRUE.equals(inventoryProperties.getReconcile().getOnStartup())) {
+            return;
+        }
+
+        DistributedLock lock = distributedLockComponent.createWatchdogLock(inventoryProperties.getFlush().getLockKey(),
+                FLUSH_LOCK_SECONDS, TimeUnit.SECONDS);
+        // 其他实例的回写很快完成，等待其释放锁
+        if (!lock.tryLock(FLUSH_LOCK_SECONDS, 100, TimeUnit.SECONDS)) {
+            log.warn("未获取到库存引擎回写锁，跳过启动对账");
+            return;
+        }
+
+        log.info("开始Redis库存引擎启动对账，热点商品: {}", inventoryProperties.getHotProductIds());
+        try {
+            inventoryLedgerManager.reconcile();
+        } catch (Exception e) {
+            // 对账失败不影响应用启动，热点商品会在定时任务中从MySQL重新加载
+            log.error("Redis库存引擎启动对账失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 定时重新加载新加入的热点商品并回写库存变更量，一次回写不完时继续下一批
+     */
+    @Scheduled(fixedDelayString = "${inventory.flush.interval-ms:1000}")
+    public void flushStockDelta() {
+        if (!Boolean.TRUE.equals(inventoryProperties.getEnabled())) {
+            // 关闭期间清空已加载记录，重新开启时全部热点商品从MySQL重新加载
+            inventoryLedgerManager.syncHotProducts();
+            return;
+        }
+
+        DistributedLock lock = distributedLockComponent.createWatchdogLock(inventoryProperties.getFlush().getLockKey(),
+                FLUSH_LOCK_SECONDS, TimeUnit.SECONDS);
+        // 本实例有未加载的热点商品时等待其他实例释放锁，否则这些商品会一直走SQL锁库存
+        boolean locked = inventoryLedgerManager.isHotProductsLoaded()
+                ? lock.tryLock()
+                : lock.tryLock(FLUSH_LOCK_SECONDS, 100, TimeUnit.SECONDS);
+        if (!locked) {
+            return;
+        }
+
+        try {
+            inventoryLedgerManager.syncHotProducts();
+            int batchSize = inventoryProperties.getFlush().getBatchSize();
+            int flushed;
+            do {
+                flushed = inventoryLedgerManager.flush();
+            } while (flushed >= batchSize);
+        } catch (Exception e) {
+            log.error("定时任务执行失败：回写Redis库存变更量", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
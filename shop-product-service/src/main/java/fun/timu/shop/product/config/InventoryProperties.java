@@ -0,0 +1,85 @@
+package fun.timu.shop.product.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 库存引擎配置属性
+ * 热点商品的库存托管在Redis中，通过Lua脚本原子锁定/释放，再异步批量回写MySQL
+ *
+ * @author zhengke
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "inventory")
+public class InventoryProperties {
+
+    /**
+     * 是否启用Redis库存引擎
+     */
+    private Boolean enabled = false;
+
+    /**
+     * 托管在Redis中的热点商品ID，其余商品仍走SQL锁库存
+     */
+    private Set<Long> hotProductIds = new HashSet<>();
+
+    private Redis redis = new Redis();
+    private Flush flush = new Flush();
+    private Reconcile reconcile = new Reconcile();
+
+    @Data
+    public static class Redis {
+        /**
+         * 商品库存Hash的Key前缀，使用同一个hash tag保证多商品Lua脚本在集群模式下落在同一个slot
+         */
+        private String keyPrefix = "inventory:{stock}:product:";
+
+        /**
+         * 待回写商品ID集合
+         */
+        private String dirtyKey = "inventory:{stock}:dirty";
+    }
+
+    @Data
+    public static class Flush {
+        /**
+         * 回写MySQL的间隔（毫秒）
+         */
+        private Long intervalMs = 1000L;
+
+        /**
+         * 每批回写的商品数量
+         */
+        private Integer batchSize = 200;
+
+        /**
+         * 多实例只由一个实例回写，分布式锁Key；重新加载热点商品与回写共用此锁
+         */
+        private String lockKey = "inventory:{stock}:flush:lock";
+    }
+
+    @Data
+    public static class Reconcile {
+        /**
+         * 启动时是否与product_task锁定记录对账
+         */
+        private Boolean onStartup = true;
+
+        /**
+         * 对账不一致时是否自动以product_task为准修正锁定库存
+         */
+        private Boolean autoFix = false;
+    }
+
+    /**
+     * 判断商品是否由Redis库存引擎托管
+     */
+    public boolean isHot(Long productId) {
+        return Boolean.TRUE.equals(enabled) && productId != null && hotProductIds.contains(productId);
+    }
+}
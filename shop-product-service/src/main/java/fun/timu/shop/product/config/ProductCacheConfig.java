@@ -0,0 +1,28 @@
+package fun.timu.shop.product.config;
+
+import fun.timu.shop.product.manager.impl.ProductCacheManagerImpl;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 商品缓存配置
+ * 订阅商品缓存失效频道，收到消息后清除本实例的本地缓存
+ *
+ * @author zhengke
+ */
+@Configuration
+public class ProductCacheConfig {
+
+    @Bean
+    public RedisMessageListenerContainer productCacheListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       ProductCacheManagerImpl productCacheManager,
+                                                                       ProductCacheProperties cacheProperties) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(productCacheManager, new ChannelTopic(cacheProperties.getInvalidateChannel()));
+        return container;
+    }
+}
@@ -0,0 +1,63 @@
+package fun.timu.shop.product.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 商品缓存配置属性
+ * 商品静态信息使用 本地缓存(Caffeine) -> Redis -> MySQL 两级缓存，库存字段单独短期缓存，
+ * 商品写入后通过Redis发布失效消息，各实例清除本地缓存
+ *
+ * @author zhengke
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "product.cache")
+public class ProductCacheProperties {
+
+    /**
+     * 是否启用商品缓存
+     */
+    private Boolean enabled = true;
+
+    /**
+     * 本地缓存最大商品数，超出后按 W-TinyLFU 淘汰
+     */
+    private Long localMaxSize = 10000L;
+
+    /**
+     * 本地缓存过期时间（秒），兜底失效消息丢失的情况
+     */
+    private Long localTtlSeconds = 300L;
+
+    /**
+     * Redis缓存过期时间（秒）
+     */
+    private Long redisTtlSeconds = 1800L;
+
+    /**
+     * 本地库存缓存过期时间（毫秒），0表示不缓存库存
+     */
+    private Long stockTtlMs = 1000L;
+
+    /**
+     * Redis缓存Key前缀
+     */
+    private String keyPrefix = "product:cache:info:";
+
+    /**
+     * 延迟双删的间隔（毫秒），需大于一次数据库加载的耗时，0表示不做二次删除
+     */
+    private Long evictDelayMs = 1000L;
+
+    /**
+     * 失效消息发布的频道
+     */
+    private String invalidateChannel = "product:cache:invalidate";
+
+    /**
+     * 库存变更消息发布的频道，本服务不订阅，供购物车等下游服务刷新展示的库存
+     */
+    private String stockChangeChannel = "product:stock:change";
+}
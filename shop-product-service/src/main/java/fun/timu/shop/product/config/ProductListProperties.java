@@ -0,0 +1,42 @@
+package fun.timu.shop.product.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 商品列表分页配置属性
+ * 浅分页使用 LIMIT offset，深度翻页使用 (排序字段, id) 游标；总数按过滤条件缓存在Redis中，商品写入时失效
+ *
+ * @author zhengke
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "product.list")
+public class ProductListProperties {
+
+    /**
+     * 默认每页大小
+     */
+    private Integer defaultPageSize = 10;
+
+    /**
+     * 最大每页大小
+     */
+    private Integer maxPageSize = 100;
+
+    /**
+     * 偏移分页允许的最大偏移量，超过后需使用游标翻页
+     */
+    private Integer maxOffset = 2000;
+
+    /**
+     * 总数缓存Hash的Key，field为过滤条件摘要
+     */
+    private String countCacheKey = "product:list:count";
+
+    /**
+     * 总数缓存过期时间（秒），库存变化导致的"只看有货"总数偏差依赖过期修正
+     */
+    private Long countCacheTtlSeconds = 300L;
+}
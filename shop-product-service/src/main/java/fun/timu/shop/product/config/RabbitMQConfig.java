@@ -44,6 +44,18 @@ public class RabbitMQConfig extends BaseRabbitMQConfig {
     @Value("${mqconfig.stock_release_routing_key}")
     private String stockReleaseRoutingKey;
 
+    /**
+     * 库存释放停放队列，超过重试次数或无法解析的消息转入此队列等待人工排查
+     */
+    @Value("${mqconfig.stock_release_parking_queue}")
+    private String stockReleaseParkingQueue;
+
+    /**
+     * 库存释放停放队列路由key
+     */
+    @Value("${mqconfig.stock_release_parking_routing_key}")
+    private String stockReleaseParkingRoutingKey;
+
     /**
      * 消息过期时间
      */
@@ -118,4 +130,24 @@ public class RabbitMQConfig extends BaseRabbitMQConfig {
     public Binding stockReleaseBinding() {
         return createBinding(stockReleaseQueue, eventExchange, stockReleaseRoutingKey);
     }
+
+    /**
+     * 停放队列，普通队列，不被自动消费
+     *
+     * @return Queue
+     */
+    @Bean
+    public Queue stockReleaseParkingQueue() {
+        return createQueue(stockReleaseParkingQueue, true, false, false);
+    }
+
+    /**
+     * 停放队列绑定关系建立
+     *
+     * @return Binding
+     */
+    @Bean
+    public Binding stockReleaseParkingBinding() {
+        return createBinding(stockReleaseParkingQueue, eventExchange, stockReleaseParkingRoutingKey);
+    }
 }
@@ -43,6 +43,18 @@ public class ProductAdminController {
         return productService.list(queryRequest);
     }
 
+    /**
+     * 管理员分页查询商品列表，返回总数和下一页游标
+     */
+    @PostMapping("/page")
+    public JsonData adminPage(@RequestBody(required = false) ProductQueryRequest queryRequest) {
+        if (queryRequest == null) {
+            queryRequest = new ProductQueryRequest();
+        }
+
+        return productService.page(queryRequest);
+    }
+
     /**
      * 创建商品
      */
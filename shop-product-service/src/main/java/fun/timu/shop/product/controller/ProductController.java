@@ -38,6 +38,18 @@ public class ProductController {
         return productService.list(queryRequest);
     }
 
+    /**
+     * 分页查询商品列表，返回总数和下一页游标
+     */
+    @PostMapping("/page")
+    public JsonData page(@RequestBody(required = false) ProductQueryRequest queryRequest) {
+        if (queryRequest == null) {
+            queryRequest = new ProductQueryRequest();
+        }
+
+        return productService.page(queryRequest);
+    }
+
     /**
      * 根据分类ID查询商品列表
      */
@@ -3,6 +3,7 @@ package fun.timu.shop.product.controller;
 import fun.timu.shop.common.util.JsonData;
 import fun.timu.shop.common.request.BatchProductRequest;
 import fun.timu.shop.common.request.LockProductRequest;
+import fun.timu.shop.common.request.ValidateStockBatchRequest;
 import fun.timu.shop.common.request.ValidateStockRequest;
 import fun.timu.shop.product.service.ProductService;
 import jakarta.servlet.http.HttpServletRequest;
@@ -22,6 +23,11 @@ import java.util.List;
 @RequiredArgsConstructor
 public class RpcController {
 
+    /**
+     * 批量验证库存单次最大商品数
+     */
+    private static final int MAX_BATCH_SIZE = 200;
+
     private final ProductService productService;
 
     /**
@@ -98,6 +104,36 @@ public class RpcController {
         }
     }
 
+    /**
+     * RPC - 批量验证商品库存
+     * 一次请求验证多个商品，返回每个商品的可用情况，调用方据此展示部分失败
+     *
+     * @param validateRequest 批量验证库存请求
+     * @param request         HTTP请求对象，用于获取调用方信息
+     * @return 每个商品的验证结果
+     */
+    @PostMapping("/stock/validate-batch")
+    public JsonData validateStockBatchForRpc(@RequestBody ValidateStockBatchRequest validateRequest, HttpServletRequest request) {
+        // RPC安全校验由拦截器处理，这里直接处理业务逻辑
+        String rpcSource = request.getHeader("RPC-Source");
+        log.info("RPC接口被调用 - 批量验证商品库存: rpcSource={}", rpcSource);
+
+        if (validateRequest == null || validateRequest.getItems() == null || validateRequest.getItems().isEmpty()) {
+            return JsonData.buildError("商品列表不能为空");
+        }
+
+        if (validateRequest.getItems().size() > MAX_BATCH_SIZE) {
+            return JsonData.buildError("单次最多验证" + MAX_BATCH_SIZE + "个商品");
+        }
+
+        try {
+            return productService.validateStockBatch(validateRequest.getItems());
+        } catch (Exception e) {
+            log.error("批量验证商品库存失败: items={}", validateRequest.getItems(), e);
+            return JsonData.buildError("验证库存失败: " + e.getMessage());
+        }
+    }
+
     /**
      * RPC - 锁定商品库存
      * 该接口用于其他微服务锁定商品库存
@@ -53,7 +53,7 @@ public class ProductQueryRequest {
     private String orderDirection = "DESC";
 
     /**
-     * 页码（从1开始）
+     * 页码（从1开始），传入cursor时忽略
      */
     private Integer pageNum;
 
@@ -61,4 +61,9 @@ public class ProductQueryRequest {
      * 每页大小
      */
     private Integer pageSize;
+
+    /**
+     * 翻页游标，取上一页返回的next_cursor；传入时按 (排序字段, id) 向后翻页，适合深度翻页
+     */
+    private String cursor;
 }
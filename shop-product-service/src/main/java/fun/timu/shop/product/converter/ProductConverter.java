@@ -1,5 +1,6 @@
 package fun.timu.shop.product.converter;
 
+import fun.timu.shop.common.model.ProductSnapshotDTO;
 import fun.timu.shop.product.controller.request.ProductCreateRequest;
 import fun.timu.shop.product.controller.request.ProductUpdateRequest;
 import fun.timu.shop.product.model.DO.ProductDO;
@@ -45,6 +46,14 @@ public class ProductConverter {
                 .orElse(null);
     }
 
+    /**
+     * 转换DO为商品快照，用于批量查询商品的RPC
+     */
+    public ProductSnapshotDTO convertToSnapshot(ProductDO productDO) {
+        return new ProductSnapshotDTO(productDO.getId(), productDO.getTitle(), productDO.getCoverImg(),
+                productDO.getPrice(), productDO.getStock(), productDO.getStatus());
+    }
+
     /**
      * 批量转换DO为VO
      */
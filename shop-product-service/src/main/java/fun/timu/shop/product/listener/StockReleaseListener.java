@@ -0,0 +1,52 @@
+package fun.timu.shop.product.listener;
+
+import com.rabbitmq.client.Channel;
+import fun.timu.shop.common.components.BatchMessageConsumer;
+import fun.timu.shop.common.components.MQConsumerMetrics;
+import fun.timu.shop.common.config.BatchConsumerConfig;
+import fun.timu.shop.common.model.ProductMessage;
+import fun.timu.shop.product.config.RabbitMQConfig;
+import fun.timu.shop.product.service.ProductService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 库存释放消息监听
+ * 订单未支付时返回false，消息重新进入延迟队列等待下一轮检查，超过重试次数转入停放队列
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+public class StockReleaseListener extends BatchMessageConsumer<ProductMessage> {
+
+    private final ProductService productService;
+
+    public StockReleaseListener(RabbitTemplate rabbitTemplate, MQConsumerMetrics metrics, BatchConsumerConfig consumerConfig,
+                                ProductService productService, RabbitMQConfig rabbitMQConfig) {
+        super(ProductMessage.class, rabbitTemplate, metrics, consumerConfig, new Route(
+                rabbitMQConfig.getStockReleaseQueue(),
+                rabbitMQConfig.getEventExchange(),
+                rabbitMQConfig.getStockReleaseDelayRoutingKey(),
+                rabbitMQConfig.getStockReleaseParkingRoutingKey(),
+                rabbitMQConfig.getTtl()));
+        this.productService = productService;
+    }
+
+    @RabbitListener(queues = "${mqconfig.stock_release_queue}", containerFactory = "batchListenerContainerFactory")
+    public void onMessage(List<Message> messages, Channel channel) throws IOException {
+        consume(messages, channel);
+    }
+
+    @Override
+    protected boolean handle(ProductMessage message) {
+        log.info("监听到库存释放消息: {}", message);
+        return productService.releaseProductStock(message);
+    }
+}
@@ -0,0 +1,69 @@
+package fun.timu.shop.product.manager;
+
+import fun.timu.shop.common.request.OrderItemRequest;
+import fun.timu.shop.product.model.DO.ProductDO;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Redis库存引擎
+ * 热点商品的stock/lock_stock托管在Redis Hash中，所有变更通过Lua脚本原子执行，
+ * 并记录待回写的变更量，由定时任务批量回写product表
+ *
+ * @author zhengke
+ */
+public interface InventoryLedgerManager {
+
+    /**
+     * 判断商品是否由库存引擎托管，热点商品从MySQL重新加载完成前仍返回false
+     */
+    boolean isHot(Long productId);
+
+    /**
+     * 批量锁定库存，全部成功或全部失败
+     */
+    boolean lockStock(List<OrderItemRequest> items);
+
+    /**
+     * 批量释放锁定库存，全部成功或全部失败
+     */
+    boolean releaseLockStock(List<OrderItemRequest> items);
+
+    /**
+     * 调整可用库存，delta为负数时校验库存充足
+     */
+    boolean changeStock(Long productId, int delta);
+
+    /**
+     * 将可用库存设置为指定值，商品未加载到Redis时返回false
+     */
+    boolean setStock(Long productId, int stock);
+
+    /**
+     * 使用Redis中的实时库存覆盖商品的stock/lockStock字段
+     */
+    void overlayStock(Collection<ProductDO> productDOList);
+
+    /**
+     * 将待回写的库存变更量批量写回MySQL
+     *
+     * @return 本次回写的商品数
+     */
+    int flush();
+
+    /**
+     * 热点商品是否均已从MySQL重新加载
+     */
+    boolean isHotProductsLoaded();
+
+    /**
+     * 热点商品集合变化时，从MySQL重新加载新加入的商品，需在回写锁内调用
+     */
+    void syncHotProducts();
+
+    /**
+     * 回写全部变更量后以MySQL为准重新加载热点商品，并与product_task中LOCK状态的记录对账，需在回写锁内调用
+     */
+    void reconcile();
+}
@@ -0,0 +1,39 @@
+package fun.timu.shop.product.manager;
+
+import fun.timu.shop.product.model.DO.ProductDO;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 商品缓存接口
+ * 静态信息走两级缓存，库存字段单独加载后合并到返回的副本中，调用方可以修改返回对象
+ *
+ * @author zhengke
+ */
+public interface ProductCacheManager {
+
+    /**
+     * 根据ID获取商品（包含已删除的）
+     *
+     * @param freshStock true 表示库存直接查询数据库/库存引擎，不使用库存缓存
+     */
+    ProductDO getById(Long id, boolean freshStock);
+
+    /**
+     * 根据ID列表批量获取未删除的商品
+     *
+     * @param freshStock true 表示库存直接查询数据库/库存引擎，不使用库存缓存
+     */
+    List<ProductDO> listByIds(List<Long> ids, boolean freshStock);
+
+    /**
+     * 清除商品缓存，并广播失效消息通知其他实例
+     */
+    void evict(Collection<Long> ids);
+
+    /**
+     * 发布库存变更消息，不清除本地缓存（库存缓存按短过期时间刷新）
+     */
+    void publishStockChanged(Collection<Long> ids);
+}
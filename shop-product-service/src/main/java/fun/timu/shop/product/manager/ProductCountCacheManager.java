@@ -0,0 +1,32 @@
+package fun.timu.shop.product.manager;
+
+/**
+ * 商品列表总数缓存接口
+ * 按过滤条件缓存商品总数，避免每次翻页都执行 COUNT
+ *
+ * @author zhengke
+ */
+public interface ProductCountCacheManager {
+
+    /**
+     * 获取缓存的总数，未命中返回null
+     */
+    Long getCount(String filterKey);
+
+    /**
+     * 获取缓存版本号，每次失效时递增，Redis异常时返回null
+     */
+    Long getVersion();
+
+    /**
+     * 缓存总数，版本号与统计前读取的不一致时说明统计期间缓存已失效，不写入
+     *
+     * @param version 统计总数前通过 {@link #getVersion()} 读取的版本号
+     */
+    void putCount(String filterKey, long count, long version);
+
+    /**
+     * 使全部过滤条件的总数缓存失效，并递增版本号
+     */
+    void invalidate();
+}
@@ -1,7 +1,9 @@
 package fun.timu.shop.product.manager;
 
+import fun.timu.shop.common.request.OrderItemRequest;
 import fun.timu.shop.product.controller.request.ProductQueryRequest;
 import fun.timu.shop.product.model.DO.ProductDO;
+import fun.timu.shop.product.model.DTO.ProductCursorDTO;
 
 import java.util.List;
 
@@ -13,9 +15,30 @@ import java.util.List;
 public interface ProductManager {
 
     /**
-     * 根据查询条件获取商品列表
+     * 根据查询条件偏移分页查询商品
+     *
+     * @param offset 偏移量
+     * @param limit  返回条数
      */
-    List<ProductDO> listByQuery(ProductQueryRequest queryRequest);
+    List<ProductDO> pageByQuery(ProductQueryRequest queryRequest, long offset, int limit);
+
+    /**
+     * 根据查询条件从游标位置开始查询商品（keyset翻页）
+     *
+     * @param cursor 上一页最后一行的游标，排序字段和方向需与查询条件一致
+     * @param limit  返回条数
+     */
+    List<ProductDO> listByCursor(ProductQueryRequest queryRequest, ProductCursorDTO cursor, int limit);
+
+    /**
+     * 根据查询条件统计商品总数，按过滤条件缓存
+     */
+    long countByQuery(ProductQueryRequest queryRequest);
+
+    /**
+     * 根据一页的最后一行生成下一页游标
+     */
+    ProductCursorDTO buildCursor(ProductQueryRequest queryRequest, ProductDO last);
 
     /**
      * 根据ID获取未删除的商品
@@ -82,6 +105,16 @@ public interface ProductManager {
      */
     boolean releaseLockStock(Long id, Integer quantity);
 
+    /**
+     * 批量锁定库存，返回实际锁定成功的商品数
+     */
+    int lockStockBatch(List<OrderItemRequest> items);
+
+    /**
+     * 批量释放锁定库存，返回实际释放成功的商品数
+     */
+    int releaseLockStockBatch(List<OrderItemRequest> items);
+
     /**
      * 更新销售数量
      */
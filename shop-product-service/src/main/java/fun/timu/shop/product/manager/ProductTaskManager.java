@@ -2,10 +2,18 @@ package fun.timu.shop.product.manager;
 
 import fun.timu.shop.product.model.DO.ProductTaskDO;
 
+import java.util.List;
+
 public interface ProductTaskManager {
     boolean insert(ProductTaskDO productTaskDO);
 
+    int insertBatch(List<ProductTaskDO> productTaskDOList);
+
     ProductTaskDO selectById(Long id);
 
+    List<ProductTaskDO> listByOutTradeNo(String outTradeNo, String lockState);
+
     boolean updateEntity(ProductTaskDO productTaskDO, Long taskId);
+
+    int updateLockStateByOutTradeNo(String outTradeNo, String oldLockState, String newLockState);
 }
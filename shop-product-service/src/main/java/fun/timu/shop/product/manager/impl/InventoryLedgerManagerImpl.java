@@ -0,0 +1,474 @@
+package fun.timu.shop.product.manager.impl;
+
+import fun.timu.shop.common.enums.DelFlagEnum;
+import fun.timu.shop.common.request.OrderItemRequest;
+import fun.timu.shop.product.config.InventoryProperties;
+import fun.timu.shop.product.manager.InventoryLedgerManager;
+import fun.timu.shop.product.mapper.ProductMapper;
+import fun.timu.shop.product.mapper.ProductTaskMapper;
+import fun.timu.shop.product.model.DO.ProductDO;
+import fun.timu.shop.product.model.DO.ProductTaskDO;
+import fun.timu.shop.product.model.DTO.StockDeltaDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Redis库存引擎实现
+ * <p>
+ * 每个热点商品对应一个Hash：stock、lock_stock为实时库存，pending_stock、pending_lock_stock为尚未回写MySQL的变更量。
+ * 所有Key共用同一个hash tag，多商品订单可以在一次Lua脚本中完成校验和扣减。
+ * Redis需配置为noeviction，否则被淘汰的Hash会丢失未回写的变更量。
+ * <p>
+ * 商品移出热点集合期间直接在MySQL中修改库存，Redis中的Hash随之过时，
+ * 因此商品（重新）加入热点集合时先以MySQL为准重新加载，加载完成前仍走SQL锁库存。
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+public class InventoryLedgerManagerImpl implements InventoryLedgerManager {
+
+    private static final String FIELD_STOCK = "stock";
+    private static final String FIELD_LOCK_STOCK = "lock_stock";
+
+    /**
+     * Lua脚本：批量调整库存
+     * KEYS[1]为待回写集合，KEYS[i+1]为商品库存Hash；ARGV按(可用库存变更量, 锁定库存变更量, 商品ID)三元组排列
+     * 先校验全部商品再统一修改，保证多商品订单全部成功或全部失败
+     * 返回1成功，0库存不足，-i表示第i个商品尚未加载到Redis
+     */
+    private static final String APPLY_SCRIPT =
+            "local n = #KEYS - 1 " +
+                    "for i = 1, n do " +
+                    "    local values = redis.call('hmget', KEYS[i + 1], 'stock', 'lock_stock') " +
+                    "    if not values[1] then return -i end " +
+                    "    if tonumber(values[1]) + tonumber(ARGV[3 * i - 2]) < 0 " +
+                    "        or tonumber(values[2]) + tonumber(ARGV[3 * i - 1]) < 0 then return 0 end " +
+                    "end " +
+                    "for i = 1, n do " +
+                    "    local stockDelta = tonumber(ARGV[3 * i - 2]) " +
+                    "    local lockDelta = tonumber(ARGV[3 * i - 1]) " +
+                    "    redis.call('hincrby', KEYS[i + 1], 'stock', stockDelta) " +
+                    "    redis.call('hincrby', KEYS[i + 1], 'lock_stock', lockDelta) " +
+                    "    redis.call('hincrby', KEYS[i + 1], 'pending_stock', stockDelta) " +
+                    "    redis.call('hincrby', KEYS[i + 1], 'pending_lock_stock', lockDelta) " +
+                    "    redis.call('sadd', KEYS[1], ARGV[3 * i]) " +
+                    "end " +
+                    "return 1";
+
+    /**
+     * Lua脚本：设置可用库存，差值记入待回写变更量
+     */
+    private static final String SET_STOCK_SCRIPT =
+            "local current = redis.call('hget', KEYS[2], 'stock') " +
+                    "if not current then return 0 end " +
+                    "local delta = tonumber(ARGV[1]) - tonumber(current) " +
+                    "redis.call('hincrby', KEYS[2], 'stock', delta) " +
+                    "redis.call('hincrby', KEYS[2], 'pending_stock', delta) " +
+                    "redis.call('sadd', KEYS[1], ARGV[2]) " +
+                    "return 1";
+
+    /**
+     * Lua脚本：商品库存Hash不存在时初始化
+     */
+    private static final String INIT_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end " +
+                    "redis.call('hset', KEYS[1], 'stock', ARGV[1], 'lock_stock', ARGV[2], " +
+                    "    'pending_stock', 0, 'pending_lock_stock', 0) " +
+                    "return 1";
+
+    /**
+     * Lua脚本：以MySQL库存重新加载商品库存Hash，尚未回写的变更量保留并叠加到实时库存上
+     * 调用方需持有回写锁，保证读取MySQL时没有已取出但尚未回写的变更量
+     * 返回(原可用库存, 原锁定库存, 新可用库存, 新锁定库存)，Hash原本不存在时原库存为空串
+     */
+    private static final String RELOAD_SCRIPT =
+            "local values = redis.call('hmget', KEYS[1], 'stock', 'lock_stock', 'pending_stock', 'pending_lock_stock') " +
+                    "local pendingStock = tonumber(values[3] or '0') " +
+                    "local pendingLock = tonumber(values[4] or '0') " +
+                    "local stock = tonumber(ARGV[1]) + pendingStock " +
+                    "local lockStock = tonumber(ARGV[2]) + pendingLock " +
+                    "redis.call('hset', KEYS[1], 'stock', stock, 'lock_stock', lockStock, " +
+                    "    'pending_stock', pendingStock, 'pending_lock_stock', pendingLock) " +
+                    "return {values[1] or '', values[2] or '', tostring(stock), tostring(lockStock)}";
+
+    /**
+     * Lua脚本：从待回写集合中取出一批商品，读取并清零其待回写变更量
+     * 返回按(商品ID, 可用库存变更量, 锁定库存变更量)平铺的字符串列表
+     */
+    private static final String DRAIN_SCRIPT =
+            "local ids = redis.call('spop', KEYS[1], ARGV[1]) " +
+                    "local result = {} " +
+                    "for _, id in ipairs(ids) do " +
+                    "    local key = ARGV[2] .. id " +
+                    "    local values = redis.call('hmget', key, 'pending_stock', 'pending_lock_stock') " +
+                    "    local stockDelta = tonumber(values[1] or '0') " +
+                    "    local lockDelta = tonumber(values[2] or '0') " +
+                    "    if stockDelta ~= 0 or lockDelta ~= 0 then " +
+                    "        redis.call('hincrby', key, 'pending_stock', -stockDelta) " +
+                    "        redis.call('hincrby', key, 'pending_lock_stock', -lockDelta) " +
+                    "        table.insert(result, id) " +
+                    "        table.insert(result, tostring(stockDelta)) " +
+                    "        table.insert(result, tostring(lockDelta)) " +
+                    "    end " +
+                    "end " +
+                    "return result";
+
+    /**
+     * Lua脚本：回写失败时把变更量加回待回写记录
+     * ARGV最后一个参数为1时重新加入待回写集合，为0时只保留在Hash中，等待商品下次变更或人工对账时再回写
+     */
+    private static final String RESTORE_SCRIPT =
+            "local n = #KEYS - 1 " +
+                    "for i = 1, n do " +
+                    "    redis.call('hincrby', KEYS[i + 1], 'pending_stock', ARGV[3 * i - 2]) " +
+                    "    redis.call('hincrby', KEYS[i + 1], 'pending_lock_stock', ARGV[3 * i - 1]) " +
+                    "    if ARGV[3 * n + 1] == '1' then redis.call('sadd', KEYS[1], ARGV[3 * i]) end " +
+                    "end " +
+                    "return 1";
+
+    private static final DefaultRedisScript<Long> APPLY = new DefaultRedisScript<>(APPLY_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> SET_STOCK = new DefaultRedisScript<>(SET_STOCK_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> INIT = new DefaultRedisScript<>(INIT_SCRIPT, Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> RELOAD = new DefaultRedisScript<>(RELOAD_SCRIPT, List.class);
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> DRAIN = new DefaultRedisScript<>(DRAIN_SCRIPT, List.class);
+    private static final DefaultRedisScript<Long> RESTORE = new DefaultRedisScript<>(RESTORE_SCRIPT, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ProductMapper productMapper;
+    private final ProductTaskMapper productTaskMapper;
+    private final InventoryProperties inventoryProperties;
+
+    /**
+     * 已从MySQL重新加载的热点商品，只有其中的商品才由库存引擎托管
+     */
+    private volatile Set<Long> loadedHotProductIds = Collections.emptySet();
+
+    public InventoryLedgerManagerImpl(RedisConnectionFactory connectionFactory, ProductMapper productMapper,
+                                      ProductTaskMapper productTaskMapper, InventoryProperties inventoryProperties) {
+        // 库存脚本必须立即拿到执行结果，使用不开启事务支持的独立模板，避免在@Transactional中被MULTI排队而返回null
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.productMapper = productMapper;
+        this.productTaskMapper = productTaskMapper;
+        this.inventoryProperties = inventoryProperties;
+    }
+
+    @Override
+    public boolean isHot(Long productId) {
+        return inventoryProperties.isHot(productId) && loadedHotProductIds.contains(productId);
+    }
+
+    @Override
+    public boolean lockStock(List<OrderItemRequest> items) {
+        return apply(items.stream()
+                .map(item -> new StockDeltaDTO(item.getProductId(), -item.getBuyNum(), item.getBuyNum()))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public boolean releaseLockStock(List<OrderItemRequest> items) {
+        return apply(items.stream()
+                .map(item -> new StockDeltaDTO(item.getProductId(), item.getBuyNum(), -item.getBuyNum()))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public boolean changeStock(Long productId, int delta) {
+        return apply(List.of(new StockDeltaDTO(productId, delta, 0)));
+    }
+
+    @Override
+    public boolean setStock(Long productId, int stock) {
+        Long result = redisTemplate.execute(SET_STOCK,
+                Arrays.asList(inventoryProperties.getRedis().getDirtyKey(), productKey(productId)),
+                String.valueOf(stock), String.valueOf(productId));
+        return Long.valueOf(1).equals(result);
+    }
+
+    @Override
+    public void overlayStock(Collection<ProductDO> productDOList) {
+        if (productDOList == null || productDOList.isEmpty()) {
+            return;
+        }
+        List<ProductDO> hotList = productDOList.stream()
+                .filter(productDO -> productDO != null && isHot(productDO.getId()))
+                .collect(Collectors.toList());
+        if (hotList.isEmpty()) {
+            return;
+        }
+
+        byte[] stockField = FIELD_STOCK.getBytes(StandardCharsets.UTF_8);
+        byte[] lockStockField = FIELD_LOCK_STOCK.getBytes(StandardCharsets.UTF_8);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ProductDO productDO : hotList) {
+                connection.hashCommands().hMGet(productKey(productDO.getId()).getBytes(StandardCharsets.UTF_8),
+                        stockField, lockStockField);
+            }
+            return null;
+        });
+
+        for (int i = 0; i < hotList.size(); i++) {
+            List<?> values = (List<?>) results.get(i);
+            // 尚未加载到Redis的商品以MySQL为准
+            if (values == null || values.get(0) == null) {
+                continue;
+            }
+            hotList.get(i).setStock(Integer.valueOf(values.get(0).toString()));
+            hotList.get(i).setLockStock(Integer.valueOf(values.get(1).toString()));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int flush() {
+        if (!Boolean.TRUE.equals(inventoryProperties.getEnabled())) {
+            return 0;
+        }
+
+        List<String> result = redisTemplate.execute(DRAIN,
+                Collections.singletonList(inventoryProperties.getRedis().getDirtyKey()),
+                String.valueOf(inventoryProperties.getFlush().getBatchSize()),
+                inventoryProperties.getRedis().getKeyPrefix());
+        if (result == null || result.isEmpty()) {
+            return 0;
+        }
+
+        List<StockDeltaDTO> deltas = new ArrayList<>(result.size() / 3);
+        for (int i = 0; i + 2 < result.size(); i += 3) {
+            deltas.add(new StockDeltaDTO(Long.valueOf(result.get(i)),
+                    Integer.valueOf(result.get(i + 1)), Integer.valueOf(result.get(i + 2))));
+        }
+
+        int rows;
+        try {
+            rows = productMapper.applyStockDeltaBatch(deltas);
+        } catch (Exception e) {
+            log.error("库存变更量回写MySQL失败，恢复待回写记录: deltas={}", deltas, e);
+            restore(deltas, true);
+            return 0;
+        }
+
+        if (rows != deltas.size()) {
+            // 回写语句不过滤del_flag，影响行数不足说明商品行已被物理删除，找出这些商品把变更量加回Hash，
+            // 不重新加入待回写集合，避免每次回写都重复失败
+            Set<Long> existingIds = new HashSet<>(productMapper.selectIdsByIds(deltas.stream()
+                    .map(StockDeltaDTO::getProductId).collect(Collectors.toList())));
+            List<StockDeltaDTO> unapplied = deltas.stream()
+                    .filter(delta -> !existingIds.contains(delta.getProductId()))
+                    .collect(Collectors.toList());
+            log.error("库存变更量回写MySQL部分未生效，商品不存在，需人工对账: expectedRows={}, rows={}, unapplied={}",
+                    deltas.size(), rows, unapplied);
+            restore(unapplied, false);
+        }
+        log.debug("库存变更量回写MySQL完成: count={}, rows={}", deltas.size(), rows);
+        return deltas.size();
+    }
+
+    @Override
+    public boolean isHotProductsLoaded() {
+        return loadedHotProductIds.containsAll(inventoryProperties.getHotProductIds());
+    }
+
+    @Override
+    public void syncHotProducts() {
+        if (!Boolean.TRUE.equals(inventoryProperties.getEnabled())) {
+            loadedHotProductIds = Collections.emptySet();
+            return;
+        }
+
+        Set<Long> hotProductIds = new HashSet<>(inventoryProperties.getHotProductIds());
+        Set<Long> loaded = loadedHotProductIds;
+        List<Long> enteredIds = hotProductIds.stream()
+                .filter(productId -> !loaded.contains(productId))
+                .collect(Collectors.toList());
+        if (!enteredIds.isEmpty()) {
+            for (ProductDO productDO : productMapper.selectBatchIds(enteredIds)) {
+                reloadProduct(productDO);
+            }
+            log.info("库存引擎热点商品变更，已从MySQL重新加载新加入的商品: productIds={}", enteredIds);
+        }
+        loadedHotProductIds = hotProductIds;
+    }
+
+    @Override
+    public void reconcile() {
+        if (!Boolean.TRUE.equals(inventoryProperties.getEnabled())) {
+            return;
+        }
+
+        // 先把遗留的变更量全部回写，使MySQL与Redis对齐
+        Long dirtyCount;
+        while ((dirtyCount = redisTemplate.opsForSet().size(inventoryProperties.getRedis().getDirtyKey())) != null
+                && dirtyCount > 0) {
+            if (flush() == 0) {
+                break;
+            }
+        }
+
+        List<Long> hotProductIds = new ArrayList<>(inventoryProperties.getHotProductIds());
+        if (hotProductIds.isEmpty()) {
+            loadedHotProductIds = Collections.emptySet();
+            return;
+        }
+
+        Map<Long, Integer> lockedMap = productTaskMapper.sumLockedBuyNumByProductIds(hotProductIds).stream()
+                .collect(Collectors.toMap(ProductTaskDO::getProductId, ProductTaskDO::getBuyNum));
+        Map<Long, ProductDO> dbMap = productMapper.selectBatchIds(hotProductIds).stream()
+                .collect(Collectors.toMap(ProductDO::getId, Function.identity()));
+
+        int loaded = 0;
+        int stockMismatched = 0;
+        int mismatched = 0;
+        for (Long productId : hotProductIds) {
+            ProductDO productDO = dbMap.get(productId);
+            if (productDO == null) {
+                log.warn("库存引擎对账-热点商品不存在: productId={}", productId);
+                continue;
+            }
+
+            // 变更量已全部回写，以MySQL为准重新加载，Redis中偏离MySQL的库存在此一并修正
+            List<String> values = reloadProduct(productDO);
+            int ledgerLockStock = Integer.parseInt(values.get(3));
+            int taskLockStock = lockedMap.getOrDefault(productId, 0);
+            if (values.get(0).isEmpty()) {
+                loaded++;
+            } else if (!values.get(0).equals(values.get(2)) || !values.get(1).equals(values.get(3))) {
+                stockMismatched++;
+                log.warn("库存引擎对账-Redis与MySQL不一致，已以MySQL为准修正: productId={}, redisStock={}, redisLockStock={}, stock={}, lockStock={}",
+                        productId, values.get(0), values.get(1), values.get(2), values.get(3));
+            }
+
+            if (ledgerLockStock != taskLockStock) {
+                mismatched++;
+                log.warn("库存引擎对账-锁定库存与product_task不一致: productId={}, redisLockStock={}, taskLockStock={}",
+                        productId, ledgerLockStock, taskLockStock);
+                if (Boolean.TRUE.equals(inventoryProperties.getReconcile().getAutoFix())) {
+                    int diff = ledgerLockStock - taskLockStock;
+                    boolean fixed = apply(List.of(new StockDeltaDTO(productId, diff, -diff)));
+                    log.info("库存引擎对账-以product_task为准修正锁定库存: productId={}, diff={}, result={}", productId, diff, fixed);
+                }
+            }
+        }
+
+        loadedHotProductIds = new HashSet<>(hotProductIds);
+        log.info("库存引擎对账完成: hotProducts={}, loaded={}, stockMismatched={}, lockMismatched={}",
+                hotProductIds.size(), loaded, stockMismatched, mismatched);
+    }
+
+    /**
+     * 执行库存调整脚本，遇到未加载的商品时从MySQL加载后重试
+     */
+    private boolean apply(List<StockDeltaDTO> deltas) {
+        if (deltas.isEmpty()) {
+            return true;
+        }
+
+        // 合并同一商品的变更量，脚本中每个Key只能出现一次
+        Map<Long, StockDeltaDTO> mergedMap = new TreeMap<>();
+        for (StockDeltaDTO delta : deltas) {
+            mergedMap.merge(delta.getProductId(), delta, (a, b) -> new StockDeltaDTO(a.getProductId(),
+                    a.getStockDelta() + b.getStockDelta(), a.getLockStockDelta() + b.getLockStockDelta()));
+        }
+        List<StockDeltaDTO> merged = new ArrayList<>(mergedMap.values());
+
+        List<String> keys = new ArrayList<>(merged.size() + 1);
+        keys.add(inventoryProperties.getRedis().getDirtyKey());
+        Object[] args = new Object[merged.size() * 3];
+        for (int i = 0; i < merged.size(); i++) {
+            StockDeltaDTO delta = merged.get(i);
+            keys.add(productKey(delta.getProductId()));
+            args[3 * i] = String.valueOf(delta.getStockDelta());
+            args[3 * i + 1] = String.valueOf(delta.getLockStockDelta());
+            args[3 * i + 2] = String.valueOf(delta.getProductId());
+        }
+
+        // 每次重试最多加载一个缺失的商品
+        for (int attempt = 0; attempt <= merged.size(); attempt++) {
+            Long result = redisTemplate.execute(APPLY, keys, args);
+            if (result == null || result == 0) {
+                return false;
+            }
+            if (result == 1) {
+                return true;
+            }
+
+            Long missingProductId = merged.get((int) (-result) - 1).getProductId();
+            ProductDO productDO = productMapper.selectById(missingProductId);
+            if (productDO == null || DelFlagEnum.DELETED.getFlag() == productDO.getDelFlag()) {
+                log.warn("库存引擎加载商品失败，商品不存在: productId={}", missingProductId);
+                return false;
+            }
+            initProduct(productDO);
+        }
+        return false;
+    }
+
+    /**
+     * 使用MySQL中的库存初始化商品库存Hash，已存在时不覆盖
+     */
+    private boolean initProduct(ProductDO productDO) {
+        Long result = redisTemplate.execute(INIT, Collections.singletonList(productKey(productDO.getId())),
+                String.valueOf(productDO.getStock()),
+                String.valueOf(productDO.getLockStock() != null ? productDO.getLockStock() : 0));
+        boolean loaded = Long.valueOf(1).equals(result);
+        if (loaded) {
+            log.info("库存引擎加载商品库存: productId={}, stock={}, lockStock={}",
+                    productDO.getId(), productDO.getStock(), productDO.getLockStock());
+        }
+        return loaded;
+    }
+
+    /**
+     * 以MySQL中的库存重新加载商品库存Hash，保留尚未回写的变更量
+     *
+     * @return 原可用库存、原锁定库存、新可用库存、新锁定库存，Hash原本不存在时原库存为空串
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> reloadProduct(ProductDO productDO) {
+        return redisTemplate.execute(RELOAD, Collections.singletonList(productKey(productDO.getId())),
+                String.valueOf(productDO.getStock()),
+                String.valueOf(productDO.getLockStock() != null ? productDO.getLockStock() : 0));
+    }
+
+    /**
+     * 把回写失败的变更量加回待回写记录
+     *
+     * @param requeue 是否重新加入待回写集合
+     */
+    private void restore(List<StockDeltaDTO> deltas, boolean requeue) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(deltas.size() + 1);
+        keys.add(inventoryProperties.getRedis().getDirtyKey());
+        Object[] args = new Object[deltas.size() * 3 + 1];
+        for (int i = 0; i < deltas.size(); i++) {
+            StockDeltaDTO delta = deltas.get(i);
+            keys.add(productKey(delta.getProductId()));
+            args[3 * i] = String.valueOf(delta.getStockDelta());
+            args[3 * i + 1] = String.valueOf(delta.getLockStockDelta());
+            args[3 * i + 2] = String.valueOf(delta.getProductId());
+        }
+        args[deltas.size() * 3] = requeue ? "1" : "0";
+        try {
+            redisTemplate.execute(RESTORE, keys, args);
+        } catch (Exception e) {
+            log.error("恢复待回写库存变更量失败，需人工对账: deltas={}", deltas, e);
+        }
+    }
+
+    private String productKey(Long productId) {
+        return inventoryProperties.getRedis().getKeyPrefix() + productId;
+    }
+}
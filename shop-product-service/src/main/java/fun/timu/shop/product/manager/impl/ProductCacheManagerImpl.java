@@ -0,0 +1,376 @@
+package fun.timu.shop.product.manager.impl;
+
+import com.alibaba.fastjson2.JSON;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fun.timu.shop.common.enums.DelFlagEnum;
+import fun.timu.shop.product.config.ProductCacheProperties;
+import fun.timu.shop.product.manager.InventoryLedgerManager;
+import fun.timu.shop.product.manager.ProductCacheManager;
+import fun.timu.shop.product.mapper.ProductMapper;
+import fun.timu.shop.product.model.DO.ProductDO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 商品两级缓存实现
+ * <p>
+ * 1. 静态信息：本地Caffeine缓存(W-TinyLFU淘汰) -> Redis(JSON) -> MySQL，缓存中的库存字段置空
+ * 2. 库存字段：单独的本地短期缓存，按主键只查询 id/stock/lock_stock 并叠加Redis库存引擎，库存频繁变化不会淘汰静态信息
+ * 3. 失效：商品写入提交后删除Redis缓存并发布失效消息，各实例收到后清除本地缓存；本地缓存过期时间兜底消息丢失。
+ * 提交前读到旧数据的查询可能在删除之后才回填，因此回填使用SET NX，本实例加载期间发生过失效时不回填，
+ * 并在evictDelayMs后再删除一次Redis缓存、再广播一次失效消息（延迟双删），清除其他实例回填的旧数据
+ * 4. 库存变更提交后发布到单独的频道，失效消息和库存变更消息的内容均为逗号分隔的商品ID，购物车服务据此刷新购物车详情缓存
+ * <p>
+ * 指标：本地缓存通过 cache.gets/cache.evictions{cache=product.local|product.stock} 暴露，
+ * Redis层通过 cache.gets{cache=product.redis} 和 cache.evictions{cache=product.redis} 暴露
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+public class ProductCacheManagerImpl implements ProductCacheManager, MessageListener {
+
+    private static final String LOCAL_CACHE_NAME = "product.local";
+    private static final String STOCK_CACHE_NAME = "product.stock";
+    private static final String REDIS_CACHE_NAME = "product.redis";
+
+    private final ProductMapper productMapper;
+    private final InventoryLedgerManager inventoryLedgerManager;
+    private final ProductCacheProperties cacheProperties;
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * 商品静态信息本地缓存
+     */
+    private final Cache<Long, ProductDO> localCache;
+
+    /**
+     * 商品库存本地缓存，stockTtlMs为0时不缓存
+     */
+    private final Cache<Long, StockSnapshot> stockCache;
+
+    private final Counter redisHitCounter;
+    private final Counter redisMissCounter;
+    private final Counter redisEvictCounter;
+
+    /**
+     * 本实例清除本地缓存的次数，加载前后不一致说明加载期间发生过失效，读到的数据可能已过时
+     */
+    private final AtomicLong evictEpoch = new AtomicLong();
+
+    /**
+     * 延迟双删的执行线程
+     */
+    private final ScheduledExecutorService evictExecutor;
+
+    public ProductCacheManagerImpl(ProductMapper productMapper, InventoryLedgerManager inventoryLedgerManager,
+                                   ProductCacheProperties cacheProperties, RedisConnectionFactory connectionFactory,
+                                   MeterRegistry meterRegistry) {
+        this.productMapper = productMapper;
+        this.inventoryLedgerManager = inventoryLedgerManager;
+        this.cacheProperties = cacheProperties;
+        // 不使用开启了事务支持的RedisTemplate，事务方法内读取缓存也能立即拿到结果
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.redisTemplate.afterPropertiesSet();
+
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(cacheProperties.getLocalMaxSize())
+                .expireAfterWrite(Duration.ofSeconds(cacheProperties.getLocalTtlSeconds()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache, LOCAL_CACHE_NAME);
+
+        if (cacheProperties.getStockTtlMs() > 0) {
+            this.stockCache = Caffeine.newBuilder()
+                    .maximumSize(cacheProperties.getLocalMaxSize())
+                    .expireAfterWrite(Duration.ofMillis(cacheProperties.getStockTtlMs()))
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, stockCache, STOCK_CACHE_NAME);
+        } else {
+            this.stockCache = null;
+        }
+
+        this.redisHitCounter = meterRegistry.counter("cache.gets", "cache", REDIS_CACHE_NAME, "result", "hit");
+        this.redisMissCounter = meterRegistry.counter("cache.gets", "cache", REDIS_CACHE_NAME, "result", "miss");
+        this.redisEvictCounter = meterRegistry.counter("cache.evictions", "cache", REDIS_CACHE_NAME);
+
+        this.evictExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "product-cache-evict");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        evictExecutor.shutdownNow();
+    }
+
+    @Override
+    public ProductDO getById(Long id, boolean freshStock) {
+        if (id == null) {
+            return null;
+        }
+        List<ProductDO> productDOList = load(List.of(id), freshStock, false);
+        return productDOList.isEmpty() ? null : productDOList.get(0);
+    }
+
+    @Override
+    public List<ProductDO> listByIds(List<Long> ids, boolean freshStock) {
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        return load(ids, freshStock, true);
+    }
+
+    @Override
+    public void evict(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        evictLocal(ids);
+        evictRedis(ids);
+
+        // 延迟双删：清除在第一次删除之后、由提交前读到的旧数据回填的缓存
+        long delayMs = cacheProperties.getEvictDelayMs();
+        if (delayMs > 0) {
+            List<Long> delayedIds = new ArrayList<>(ids);
+            try {
+                evictExecutor.schedule(() -> evictRedis(delayedIds), delayMs, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                log.warn("商品缓存延迟删除提交失败，ids={}", delayedIds, e);
+            }
+        }
+    }
+
+    @Override
+    public void publishStockChanged(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(cacheProperties.getStockChangeChannel(),
+                    ids.stream().distinct().map(String::valueOf).collect(Collectors.joining(",")));
+        } catch (Exception e) {
+            log.warn("发布库存变更消息失败，ids={}", ids, e);
+        }
+    }
+
+    /**
+     * 接收其他实例发布的失效消息，清除本地缓存
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            List<Long> ids = Arrays.stream(body.split(","))
+                    .filter(s -> !s.isEmpty())
+                    .map(Long::valueOf)
+                    .collect(Collectors.toList());
+            evictLocal(ids);
+            log.debug("收到商品缓存失效消息，ids={}", ids);
+        } catch (NumberFormatException e) {
+            log.warn("商品缓存失效消息格式错误: {}", body);
+        }
+    }
+
+    /**
+     * 加载商品：静态信息走两级缓存，库存单独加载，返回互不共享的副本
+     *
+     * @param excludeDeleted 是否过滤已删除的商品
+     */
+    private List<ProductDO> load(List<Long> ids, boolean freshStock, boolean excludeDeleted) {
+        List<Long> distinctIds = ids.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        Map<Long, ProductDO> staticMap = Boolean.TRUE.equals(cacheProperties.getEnabled())
+                ? loadStatic(distinctIds)
+                : loadStaticFromDb(distinctIds);
+
+        List<ProductDO> result = new ArrayList<>(distinctIds.size());
+        for (Long id : distinctIds) {
+            ProductDO cached = staticMap.get(id);
+            if (cached == null || (excludeDeleted && DelFlagEnum.isDeleted(cached.getDelFlag()))) {
+                continue;
+            }
+            ProductDO productDO = new ProductDO();
+            BeanUtils.copyProperties(cached, productDO);
+            result.add(productDO);
+        }
+        fillStock(result, freshStock || !Boolean.TRUE.equals(cacheProperties.getEnabled()));
+        return result;
+    }
+
+    private Map<Long, ProductDO> loadStatic(List<Long> ids) {
+        long epoch = evictEpoch.get();
+        Map<Long, ProductDO> found = new HashMap<>(localCache.getAllPresent(ids));
+        List<Long> missing = ids.stream().filter(id -> !found.containsKey(id)).collect(Collectors.toList());
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        // 1. 本地未命中的一次MGET查询Redis
+        try {
+            List<String> values = redisTemplate.opsForValue()
+                    .multiGet(missing.stream().map(this::cacheKey).collect(Collectors.toList()));
+            List<Long> stillMissing = new ArrayList<>();
+            for (int i = 0; i < missing.size(); i++) {
+                String value = values == null ? null : values.get(i);
+                if (value == null) {
+                    stillMissing.add(missing.get(i));
+                    continue;
+                }
+                ProductDO productDO = JSON.parseObject(value, ProductDO.class);
+                found.put(productDO.getId(), productDO);
+                if (evictEpoch.get() == epoch) {
+                    localCache.put(productDO.getId(), productDO);
+                }
+            }
+            redisHitCounter.increment(missing.size() - stillMissing.size());
+            redisMissCounter.increment(stillMissing.size());
+            missing = stillMissing;
+        } catch (Exception e) {
+            log.warn("读取商品Redis缓存失败，降级查询数据库，ids={}", missing, e);
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        // 2. Redis未命中的查询数据库并回填两级缓存，加载期间发生过失效时读到的可能是旧数据，不回填
+        Map<Long, ProductDO> loaded = loadStaticFromDb(missing);
+        found.putAll(loaded);
+        if (evictEpoch.get() != epoch) {
+            log.debug("商品加载期间缓存已失效，跳过回填，ids={}", missing);
+            return found;
+        }
+        localCache.putAll(loaded);
+        writeRedis(loaded.values());
+        return found;
+    }
+
+    private Map<Long, ProductDO> loadStaticFromDb(List<Long> ids) {
+        Map<Long, ProductDO> result = new HashMap<>(ids.size() * 2);
+        for (ProductDO productDO : productMapper.selectBatchIds(ids)) {
+            // 库存字段单独加载，不进入静态信息缓存
+            productDO.setStock(null);
+            productDO.setLockStock(null);
+            result.put(productDO.getId(), productDO);
+        }
+        return result;
+    }
+
+    /**
+     * 回填Redis缓存，Key已存在时不覆盖
+     */
+    private void writeRedis(Collection<ProductDO> productDOList) {
+        if (productDOList.isEmpty()) {
+            return;
+        }
+        long ttl = cacheProperties.getRedisTtlSeconds();
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (ProductDO productDO : productDOList) {
+                    connection.stringCommands().set(cacheKey(productDO.getId()).getBytes(StandardCharsets.UTF_8),
+                            JSON.toJSONBytes(productDO), Expiration.seconds(ttl),
+                            RedisStringCommands.SetOption.SET_IF_ABSENT);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("写入商品Redis缓存失败，count={}", productDOList.size(), e);
+        }
+    }
+
+    /**
+     * 填充库存字段：库存缓存未命中的商品按主键只查询库存列，再叠加Redis库存引擎中的实时库存
+     */
+    private void fillStock(List<ProductDO> productDOList, boolean freshStock) {
+        if (productDOList.isEmpty()) {
+            return;
+        }
+        List<Long> ids = productDOList.stream().map(ProductDO::getId).collect(Collectors.toList());
+        Map<Long, StockSnapshot> stockMap = new HashMap<>();
+        if (!freshStock && stockCache != null) {
+            stockMap.putAll(stockCache.getAllPresent(ids));
+        }
+
+        List<Long> missing = ids.stream().filter(id -> !stockMap.containsKey(id)).collect(Collectors.toList());
+        if (!missing.isEmpty()) {
+            LambdaQueryWrapper<ProductDO> wrapper = new LambdaQueryWrapper<>();
+            wrapper.select(ProductDO::getId, ProductDO::getStock, ProductDO::getLockStock)
+                    .in(ProductDO::getId, missing);
+            List<ProductDO> stockList = productMapper.selectList(wrapper);
+            inventoryLedgerManager.overlayStock(stockList);
+            for (ProductDO stock : stockList) {
+                StockSnapshot snapshot = new StockSnapshot(stock.getStock(), stock.getLockStock());
+                stockMap.put(stock.getId(), snapshot);
+                if (stockCache != null) {
+                    stockCache.put(stock.getId(), snapshot);
+                }
+            }
+        }
+
+        for (ProductDO productDO : productDOList) {
+            StockSnapshot snapshot = stockMap.get(productDO.getId());
+            if (snapshot != null) {
+                productDO.setStock(snapshot.stock());
+                productDO.setLockStock(snapshot.lockStock());
+            }
+        }
+    }
+
+    /**
+     * 删除Redis缓存并广播失效消息
+     */
+    private void evictRedis(Collection<Long> ids) {
+        try {
+            List<String> keys = ids.stream().map(this::cacheKey).collect(Collectors.toList());
+            Long deleted = redisTemplate.delete(keys);
+            redisEvictCounter.increment(deleted == null ? 0 : deleted);
+            redisTemplate.convertAndSend(cacheProperties.getInvalidateChannel(),
+                    ids.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        } catch (Exception e) {
+            log.error("商品缓存失效失败，等待缓存过期，ids={}", ids, e);
+        }
+    }
+
+    private void evictLocal(Collection<Long> ids) {
+        evictEpoch.incrementAndGet();
+        localCache.invalidateAll(ids);
+        if (stockCache != null) {
+            stockCache.invalidateAll(ids);
+        }
+    }
+
+    private String cacheKey(Long id) {
+        return cacheProperties.getKeyPrefix() + id;
+    }
+
+    /**
+     * 库存快照
+     */
+    private record StockSnapshot(Integer stock, Integer lockStock) {
+    }
+}
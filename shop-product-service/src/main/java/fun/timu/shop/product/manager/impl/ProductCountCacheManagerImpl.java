@@ -0,0 +1,97 @@
+package fun.timu.shop.product.manager.impl;
+
+import fun.timu.shop.product.config.ProductListProperties;
+import fun.timu.shop.product.manager.ProductCountCacheManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * 商品列表总数缓存实现
+ * 所有过滤条件的总数存放在同一个Hash中，商品写入时整体删除并递增版本号；
+ * 写入总数时校验版本号，避免把失效前统计的旧总数写回缓存。Redis异常时降级为直接COUNT
+ *
+ * @author zhengke
+ */
+@Slf4j
+@Component
+public class ProductCountCacheManagerImpl implements ProductCountCacheManager {
+
+    /**
+     * Lua脚本：版本号未变时写入总数，只在Hash首次写入时设置过期时间，保证整个Hash按固定周期刷新
+     * KEYS[1]总数Hash，KEYS[2]版本号；ARGV[1]过滤条件摘要，ARGV[2]总数，ARGV[3]统计前的版本号，ARGV[4]过期时间(秒)
+     */
+    private static final String PUT_COUNT_SCRIPT =
+            "if (redis.call('get', KEYS[2]) or '0') ~= ARGV[3] then return 0 end " +
+                    "redis.call('hset', KEYS[1], ARGV[1], ARGV[2]) " +
+                    "if redis.call('ttl', KEYS[1]) < 0 then redis.call('expire', KEYS[1], ARGV[4]) end " +
+                    "return 1";
+
+    private static final DefaultRedisScript<Long> PUT_COUNT = new DefaultRedisScript<>(PUT_COUNT_SCRIPT, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ProductListProperties listProperties;
+
+    public ProductCountCacheManagerImpl(RedisConnectionFactory connectionFactory, ProductListProperties listProperties) {
+        // 不使用开启了事务支持的RedisTemplate，保证读取立即返回结果
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.redisTemplate.afterPropertiesSet();
+        this.listProperties = listProperties;
+    }
+
+    @Override
+    public Long getCount(String filterKey) {
+        try {
+            Object value = redisTemplate.opsForHash().get(listProperties.getCountCacheKey(), filterKey);
+            return value == null ? null : Long.valueOf(value.toString());
+        } catch (Exception e) {
+            log.warn("读取商品总数缓存失败，filterKey={}", filterKey, e);
+            return null;
+        }
+    }
+
+    @Override
+    public Long getVersion() {
+        try {
+            String value = redisTemplate.opsForValue().get(versionKey());
+            return value == null ? 0L : Long.valueOf(value);
+        } catch (Exception e) {
+            log.warn("读取商品总数缓存版本号失败", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void putCount(String filterKey, long count, long version) {
+        try {
+            Long result = redisTemplate.execute(PUT_COUNT,
+                    Arrays.asList(listProperties.getCountCacheKey(), versionKey()),
+                    filterKey, String.valueOf(count), String.valueOf(version),
+                    String.valueOf(listProperties.getCountCacheTtlSeconds()));
+            if (!Long.valueOf(1).equals(result)) {
+                log.debug("商品总数缓存已在统计期间失效，不写入: filterKey={}, version={}", filterKey, version);
+            }
+        } catch (Exception e) {
+            log.warn("写入商品总数缓存失败，filterKey={}", filterKey, e);
+        }
+    }
+
+    @Override
+    public void invalidate() {
+        try {
+            // 先递增版本号再删除，删除后写回的只能是新版本下统计的总数
+            redisTemplate.opsForValue().increment(versionKey());
+            redisTemplate.delete(listProperties.getCountCacheKey());
+        } catch (Exception e) {
+            log.error("商品总数缓存失效失败，等待缓存过期，key={}", listProperties.getCountCacheKey(), e);
+        }
+    }
+
+    private String versionKey() {
+        return listProperties.getCountCacheKey() + ":version";
+    }
+}
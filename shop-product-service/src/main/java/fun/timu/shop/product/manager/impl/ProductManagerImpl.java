@@ -2,17 +2,32 @@ package fun.timu.shop.product.manager.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
+import fun.timu.shop.common.enums.BizCodeEnum;
+import fun.timu.shop.common.exception.BizException;
 import fun.timu.shop.product.controller.request.ProductQueryRequest;
 import fun.timu.shop.common.enums.DelFlagEnum;
+import fun.timu.shop.common.request.OrderItemRequest;
 import fun.timu.shop.common.enums.ProductStatusEnum;
+import fun.timu.shop.product.manager.InventoryLedgerManager;
+import fun.timu.shop.product.manager.ProductCacheManager;
+import fun.timu.shop.product.manager.ProductCountCacheManager;
 import fun.timu.shop.product.manager.ProductManager;
 import fun.timu.shop.product.mapper.ProductMapper;
 import fun.timu.shop.product.model.DO.ProductDO;
+import fun.timu.shop.product.model.DTO.ProductCursorDTO;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
 import org.springframework.util.StringUtils;
 
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -26,72 +41,97 @@ import java.util.List;
 public class ProductManagerImpl implements ProductManager {
 
     private final ProductMapper productMapper;
+    private final InventoryLedgerManager inventoryLedgerManager;
+    private final ProductCountCacheManager countCacheManager;
+    private final ProductCacheManager productCacheManager;
 
-    @Override
-    public List<ProductDO> listByQuery(ProductQueryRequest queryRequest) {
-        LambdaQueryWrapper<ProductDO> wrapper = new LambdaQueryWrapper<>();
+    private static final String ORDER_BY_SORT = "sort";
+    private static final String ORDER_BY_PRICE = "price";
+    private static final String ORDER_BY_SALES_COUNT = "sales_count";
+    private static final String ORDER_BY_CREATE_TIME = "create_time";
 
-        // 基础过滤条件
-        wrapper.eq(ProductDO::getDelFlag, DelFlagEnum.NOT_DELETED.getFlag());
+    @Override
+    public List<ProductDO> pageByQuery(ProductQueryRequest queryRequest, long offset, int limit) {
+        LambdaQueryWrapper<ProductDO> wrapper = buildFilter(queryRequest);
+        String orderBy = resolveOrderBy(queryRequest);
+        boolean isAsc = isAsc(queryRequest);
+        // id作为次级排序，保证相同排序值的商品在各页之间顺序稳定
+        wrapper.orderBy(true, isAsc, orderColumn(orderBy))
+                .orderBy(true, isAsc, ProductDO::getId)
+                .last("LIMIT " + offset + "," + limit);
+        return productMapper.selectList(wrapper);
+    }
 
-        // 根据查询条件构建where条件
-        if (queryRequest != null) {
-            // 标题模糊查询
-            if (StringUtils.hasText(queryRequest.getTitle())) {
-                wrapper.like(ProductDO::getTitle, queryRequest.getTitle());
-            }
+    @Override
+    public List<ProductDO> listByCursor(ProductQueryRequest queryRequest, ProductCursorDTO cursor, int limit) {
+        String orderBy = resolveOrderBy(queryRequest);
+        boolean isAsc = isAsc(queryRequest);
+        if (!orderBy.equals(cursor.getOrderBy()) || isAsc != cursor.isAsc() || cursor.getId() == null) {
+            throw new BizException(BizCodeEnum.PRODUCT_CURSOR_INVALID);
+        }
 
-            // 分类过滤
-            if (queryRequest.getCategoryId() != null) {
-                wrapper.eq(ProductDO::getCategoryId, queryRequest.getCategoryId());
-            }
+        LambdaQueryWrapper<ProductDO> wrapper = buildFilter(queryRequest);
+        SFunction<ProductDO, ?> column = orderColumn(orderBy);
+        Object value = parseCursorValue(orderBy, cursor.getValue());
+        Long lastId = cursor.getId();
 
-            // 状态过滤
-            if (queryRequest.getStatus() != null) {
-                wrapper.eq(ProductDO::getStatus, queryRequest.getStatus().getCode());
+        // (column, id) 行比较展开为普通条件；MySQL升序时NULL在最前，降序时NULL在最后
+        if (value == null) {
+            if (isAsc) {
+                wrapper.and(w -> w.isNull(column).gt(ProductDO::getId, lastId).or().isNotNull(column));
             } else {
-                // 默认只查询上架商品
-                wrapper.eq(ProductDO::getStatus, ProductStatusEnum.ONLINE.getCode());
-            }
-
-            // 价格范围过滤
-            if (queryRequest.getMinPrice() != null) {
-                wrapper.ge(ProductDO::getPrice, queryRequest.getMinPrice());
-            }
-            if (queryRequest.getMaxPrice() != null) {
-                wrapper.le(ProductDO::getPrice, queryRequest.getMaxPrice());
+                wrapper.and(w -> w.isNull(column).lt(ProductDO::getId, lastId));
             }
+        } else if (isAsc) {
+            wrapper.and(w -> w.gt(column, value)
+                    .or(o -> o.eq(column, value).gt(ProductDO::getId, lastId)));
+        } else {
+            wrapper.and(w -> w.lt(column, value)
+                    .or(o -> o.eq(column, value).lt(ProductDO::getId, lastId))
+                    .or().isNull(column));
+        }
 
-            // 只查询有库存商品
-            if (Boolean.TRUE.equals(queryRequest.getOnlyInStock())) {
-                wrapper.gt(ProductDO::getStock, 0);
-            }
+        wrapper.orderBy(true, isAsc, column)
+                .orderBy(true, isAsc, ProductDO::getId)
+                .last("LIMIT " + limit);
+        return productMapper.selectList(wrapper);
+    }
 
-            // 排序处理
-            String orderBy = queryRequest.getOrderBy();
-            String orderDirection = queryRequest.getOrderDirection();
-            boolean isAsc = "ASC".equalsIgnoreCase(orderDirection);
-
-            if (StringUtils.hasText(orderBy)) {
-                switch (orderBy.toLowerCase()) {
-                    case "price":
-                        wrapper.orderBy(true, isAsc, ProductDO::getPrice);
-                        break;
-                    case "sales_count":
-                        wrapper.orderBy(true, isAsc, ProductDO::getSalesCount);
-                        break;
-                    case "create_time":
-                        wrapper.orderBy(true, isAsc, ProductDO::getCreateTime);
-                        break;
-                    case "sort":
-                    default:
-                        wrapper.orderBy(true, isAsc, ProductDO::getSort);
-                        break;
-                }
-            }
+    @Override
+    public long countByQuery(ProductQueryRequest queryRequest) {
+        String filterKey = buildFilterKey(queryRequest);
+        Long cached = countCacheManager.getCount(filterKey);
+        if (cached != null) {
+            return cached;
+        }
+        // 统计前读取版本号，统计期间商品写入使缓存失效时不把旧总数写回
+        Long version = countCacheManager.getVersion();
+        long count = productMapper.selectCount(buildFilter(queryRequest));
+        if (version != null) {
+            countCacheManager.putCount(filterKey, count, version);
         }
+        return count;
+    }
 
-        return productMapper.selectList(wrapper);
+    @Override
+    public ProductCursorDTO buildCursor(ProductQueryRequest queryRequest, ProductDO last) {
+        String orderBy = resolveOrderBy(queryRequest);
+        Object value;
+        switch (orderBy) {
+            case ORDER_BY_PRICE:
+                value = last.getPrice() == null ? null : last.getPrice().toPlainString();
+                break;
+            case ORDER_BY_SALES_COUNT:
+                value = last.getSalesCount();
+                break;
+            case ORDER_BY_CREATE_TIME:
+                value = last.getCreateTime() == null ? null : last.getCreateTime().getTime();
+                break;
+            default:
+                value = last.getSort();
+                break;
+        }
+        return new ProductCursorDTO(orderBy, isAsc(queryRequest), value == null ? null : value.toString(), last.getId());
     }
 
     @Override
@@ -99,12 +139,20 @@ public class ProductManagerImpl implements ProductManager {
         LambdaQueryWrapper<ProductDO> wrapper = new LambdaQueryWrapper<>();
         wrapper.eq(ProductDO::getId, id)
                 .eq(ProductDO::getDelFlag, DelFlagEnum.NOT_DELETED.getFlag());
-        return productMapper.selectOne(wrapper);
+        ProductDO productDO = productMapper.selectOne(wrapper);
+        if (productDO != null) {
+            inventoryLedgerManager.overlayStock(List.of(productDO));
+        }
+        return productDO;
     }
 
     @Override
     public ProductDO selectById(Long id) {
-        return productMapper.selectById(id);
+        ProductDO productDO = productMapper.selectById(id);
+        if (productDO != null) {
+            inventoryLedgerManager.overlayStock(List.of(productDO));
+        }
+        return productDO;
     }
 
     @Override
@@ -115,17 +163,24 @@ public class ProductManagerImpl implements ProductManager {
         LambdaQueryWrapper<ProductDO> wrapper = new LambdaQueryWrapper<>();
         wrapper.in(ProductDO::getId, ids)
                 .eq(ProductDO::getDelFlag, DelFlagEnum.NOT_DELETED.getFlag());
-        return productMapper.selectList(wrapper);
+        List<ProductDO> productDOList = productMapper.selectList(wrapper);
+        inventoryLedgerManager.overlayStock(productDOList);
+        return productDOList;
     }
 
     @Override
     public boolean save(ProductDO productDO) {
-        return productMapper.insert(productDO) > 0;
+        return afterProductChanged(productMapper.insert(productDO) > 0, List.of());
     }
 
     @Override
     public boolean updateById(ProductDO productDO) {
-        return productMapper.updateById(productDO) > 0;
+        // 热点商品的库存以Redis为准，修改库存转为Redis中的变更量，由回写任务同步到MySQL
+        if (productDO.getStock() != null && inventoryLedgerManager.isHot(productDO.getId())
+                && inventoryLedgerManager.setStock(productDO.getId(), productDO.getStock())) {
+            productDO.setStock(null);
+        }
+        return afterProductChanged(productMapper.updateById(productDO) > 0, List.of(productDO.getId()));
     }
 
     @Override
@@ -133,7 +188,7 @@ public class ProductManagerImpl implements ProductManager {
         LambdaUpdateWrapper<ProductDO> wrapper = new LambdaUpdateWrapper<>();
         wrapper.eq(ProductDO::getId, id)
                 .set(ProductDO::getDelFlag, DelFlagEnum.DELETED.getFlag());
-        return productMapper.update(null, wrapper) > 0;
+        return afterProductChanged(productMapper.update(null, wrapper) > 0, List.of(id));
     }
 
     @Override
@@ -144,7 +199,7 @@ public class ProductManagerImpl implements ProductManager {
         LambdaUpdateWrapper<ProductDO> wrapper = new LambdaUpdateWrapper<>();
         wrapper.in(ProductDO::getId, ids)
                 .set(ProductDO::getDelFlag, DelFlagEnum.DELETED.getFlag());
-        return productMapper.update(null, wrapper) > 0;
+        return afterProductChanged(productMapper.update(null, wrapper) > 0, ids);
     }
 
     @Override
@@ -153,7 +208,7 @@ public class ProductManagerImpl implements ProductManager {
         wrapper.eq(ProductDO::getId, id)
                 .eq(ProductDO::getDelFlag, DelFlagEnum.NOT_DELETED.getFlag())
                 .set(ProductDO::getStatus, status);
-        return productMapper.update(null, wrapper) > 0;
+        return afterProductChanged(productMapper.update(null, wrapper) > 0, List.of(id));
     }
 
     @Override
@@ -165,27 +220,86 @@ public class ProductManagerImpl implements ProductManager {
         wrapper.in(ProductDO::getId, ids)
                 .eq(ProductDO::getDelFlag, DelFlagEnum.NOT_DELETED.getFlag())
                 .set(ProductDO::getStatus, status);
-        return productMapper.update(null, wrapper) > 0;
+        return afterProductChanged(productMapper.update(null, wrapper) > 0, ids);
     }
 
     @Override
     public boolean decreaseStock(Long id, Integer quantity) {
-        return productMapper.decreaseStock(id, quantity) > 0;
+        if (inventoryLedgerManager.isHot(id)) {
+            boolean success = inventoryLedgerManager.changeStock(id, -quantity);
+            if (success) {
+                compensateOnRollback(() -> inventoryLedgerManager.changeStock(id, quantity));
+            }
+            return afterStockChanged(success, List.of(id));
+        }
+        return afterStockChanged(productMapper.decreaseStock(id, quantity) > 0, List.of(id));
     }
 
     @Override
     public boolean increaseStock(Long id, Integer quantity) {
-        return productMapper.increaseStock(id, quantity) > 0;
+        if (inventoryLedgerManager.isHot(id)) {
+            boolean success = inventoryLedgerManager.changeStock(id, quantity);
+            if (success) {
+                compensateOnRollback(() -> inventoryLedgerManager.changeStock(id, -quantity));
+            }
+            return afterStockChanged(success, List.of(id));
+        }
+        return afterStockChanged(productMapper.increaseStock(id, quantity) > 0, List.of(id));
     }
 
     @Override
     public boolean lockStock(Long id, Integer quantity) {
-        return productMapper.lockStock(id, quantity) > 0;
+        if (inventoryLedgerManager.isHot(id)) {
+            return lockStockBatch(List.of(buildItem(id, quantity))) == 1;
+        }
+        return afterStockChanged(productMapper.lockStock(id, quantity) > 0, List.of(id));
     }
 
     @Override
     public boolean releaseLockStock(Long id, Integer quantity) {
-        return productMapper.releaseLockStock(id, quantity) > 0;
+        if (inventoryLedgerManager.isHot(id)) {
+            return releaseLockStockBatch(List.of(buildItem(id, quantity))) == 1;
+        }
+        return afterStockChanged(productMapper.releaseLockStock(id, quantity) > 0, List.of(id));
+    }
+
+    @Override
+    public int lockStockBatch(List<OrderItemRequest> items) {
+        if (items == null || items.isEmpty()) {
+            return 0;
+        }
+
+        List<OrderItemRequest> hotItems = new ArrayList<>();
+        List<OrderItemRequest> coldItems = new ArrayList<>();
+        splitByLedger(items, hotItems, coldItems);
+
+        int rows = coldItems.isEmpty() ? 0 : productMapper.lockStockBatch(coldItems);
+        // SQL部分已锁定失败时无需再锁定Redis，调用方会整体回滚
+        if (!hotItems.isEmpty() && rows == coldItems.size() && inventoryLedgerManager.lockStock(hotItems)) {
+            rows += hotItems.size();
+            compensateOnRollback(() -> inventoryLedgerManager.releaseLockStock(hotItems));
+        }
+        afterStockChanged(rows > 0, productIds(items));
+        return rows;
+    }
+
+    @Override
+    public int releaseLockStockBatch(List<OrderItemRequest> items) {
+        if (items == null || items.isEmpty()) {
+            return 0;
+        }
+
+        List<OrderItemRequest> hotItems = new ArrayList<>();
+        List<OrderItemRequest> coldItems = new ArrayList<>();
+        splitByLedger(items, hotItems, coldItems);
+
+        int rows = coldItems.isEmpty() ? 0 : productMapper.releaseLockStockBatch(coldItems);
+        if (!hotItems.isEmpty() && inventoryLedgerManager.releaseLockStock(hotItems)) {
+            rows += hotItems.size();
+            compensateOnRollback(() -> inventoryLedgerManager.lockStock(hotItems));
+        }
+        afterStockChanged(rows > 0, productIds(items));
+        return rows;
     }
 
     @Override
@@ -196,4 +310,199 @@ public class ProductManagerImpl implements ProductManager {
                 .set(ProductDO::getSalesCount, salesCount);
         return productMapper.update(null, wrapper) > 0;
     }
+
+    /**
+     * 构建过滤条件（不含排序）
+     */
+    private LambdaQueryWrapper<ProductDO> buildFilter(ProductQueryRequest queryRequest) {
+        LambdaQueryWrapper<ProductDO> wrapper = new LambdaQueryWrapper<>();
+
+        // 基础过滤条件
+        wrapper.eq(ProductDO::getDelFlag, DelFlagEnum.NOT_DELETED.getFlag());
+
+        // 标题模糊查询
+        if (StringUtils.hasText(queryRequest.getTitle())) {
+            wrapper.like(ProductDO::getTitle, queryRequest.getTitle());
+        }
+
+        // 分类过滤
+        if (queryRequest.getCategoryId() != null) {
+            wrapper.eq(ProductDO::getCategoryId, queryRequest.getCategoryId());
+        }
+
+        // 状态过滤，默认只查询上架商品
+        wrapper.eq(ProductDO::getStatus, resolveStatus(queryRequest));
+
+        // 价格范围过滤
+        if (queryRequest.getMinPrice() != null) {
+            wrapper.ge(ProductDO::getPrice, queryRequest.getMinPrice());
+        }
+        if (queryRequest.getMaxPrice() != null) {
+            wrapper.le(ProductDO::getPrice, queryRequest.getMaxPrice());
+        }
+
+        // 只查询有库存商品
+        if (Boolean.TRUE.equals(queryRequest.getOnlyInStock())) {
+            wrapper.gt(ProductDO::getStock, 0);
+        }
+        return wrapper;
+    }
+
+    /**
+     * 过滤条件摘要，作为总数缓存的field
+     */
+    private String buildFilterKey(ProductQueryRequest queryRequest) {
+        String raw = queryRequest.getTitle() + "|" + queryRequest.getCategoryId() + "|" + resolveStatus(queryRequest)
+                + "|" + queryRequest.getMinPrice() + "|" + queryRequest.getMaxPrice()
+                + "|" + Boolean.TRUE.equals(queryRequest.getOnlyInStock());
+        return DigestUtils.md5DigestAsHex(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Integer resolveStatus(ProductQueryRequest queryRequest) {
+        return queryRequest.getStatus() != null ? queryRequest.getStatus().getCode() : ProductStatusEnum.ONLINE.getCode();
+    }
+
+    /**
+     * 规范化排序字段，未知字段按权重排序
+     */
+    private String resolveOrderBy(ProductQueryRequest queryRequest) {
+        String orderBy = queryRequest.getOrderBy();
+        if (!StringUtils.hasText(orderBy)) {
+            return ORDER_BY_SORT;
+        }
+        switch (orderBy.toLowerCase()) {
+            case ORDER_BY_PRICE:
+            case ORDER_BY_SALES_COUNT:
+            case ORDER_BY_CREATE_TIME:
+                return orderBy.toLowerCase();
+            default:
+                return ORDER_BY_SORT;
+        }
+    }
+
+    private boolean isAsc(ProductQueryRequest queryRequest) {
+        return "ASC".equalsIgnoreCase(queryRequest.getOrderDirection());
+    }
+
+    private SFunction<ProductDO, ?> orderColumn(String orderBy) {
+        switch (orderBy) {
+            case ORDER_BY_PRICE:
+                return ProductDO::getPrice;
+            case ORDER_BY_SALES_COUNT:
+                return ProductDO::getSalesCount;
+            case ORDER_BY_CREATE_TIME:
+                return ProductDO::getCreateTime;
+            default:
+                return ProductDO::getSort;
+        }
+    }
+
+    private Object parseCursorValue(String orderBy, String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            switch (orderBy) {
+                case ORDER_BY_PRICE:
+                    return new BigDecimal(value);
+                case ORDER_BY_CREATE_TIME:
+                    return new Date(Long.parseLong(value));
+                default:
+                    return Integer.valueOf(value);
+            }
+        } catch (NumberFormatException e) {
+            throw new BizException(BizCodeEnum.PRODUCT_CURSOR_INVALID);
+        }
+    }
+
+    /**
+     * 按是否由Redis库存引擎托管拆分商品
+     */
+    private void splitByLedger(List<OrderItemRequest> items, List<OrderItemRequest> hotItems, List<OrderItemRequest> coldItems) {
+        for (OrderItemRequest item : items) {
+            if (inventoryLedgerManager.isHot(item.getProductId())) {
+                hotItems.add(item);
+            } else {
+                coldItems.add(item);
+            }
+        }
+    }
+
+    private OrderItemRequest buildItem(Long productId, Integer quantity) {
+        OrderItemRequest item = new OrderItemRequest();
+        item.setProductId(productId);
+        item.setBuyNum(quantity);
+        return item;
+    }
+
+    /**
+     * 商品写入成功后使总数缓存和商品缓存失效，存在事务时在提交后执行，避免并发查询把旧数据重新写回缓存
+     */
+    private boolean afterProductChanged(boolean changed, List<Long> ids) {
+        if (!changed) {
+            return false;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            countCacheManager.invalidate();
+            productCacheManager.evict(ids);
+            return true;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                countCacheManager.invalidate();
+                productCacheManager.evict(ids);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 库存变更成功后发布库存变更消息，存在事务时在提交后发布，回滚时不发布
+     */
+    private boolean afterStockChanged(boolean changed, List<Long> ids) {
+        if (!changed) {
+            return false;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            productCacheManager.publishStockChanged(ids);
+            return true;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                productCacheManager.publishStockChanged(ids);
+            }
+        });
+        return true;
+    }
+
+    private List<Long> productIds(List<OrderItemRequest> items) {
+        List<Long> ids = new ArrayList<>(items.size());
+        for (OrderItemRequest item : items) {
+            ids.add(item.getProductId());
+        }
+        return ids;
+    }
+
+    /**
+     * Redis中的库存变更不受数据库事务控制，事务回滚时执行补偿操作
+     */
+    private void compensateOnRollback(Runnable compensation) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    try {
+                        compensation.run();
+                    } catch (Exception e) {
+                        log.error("Redis库存补偿失败，需人工对账", e);
+                    }
+                }
+            }
+        });
+    }
 }
@@ -9,6 +9,8 @@ import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Slf4j
 @Component
 @AllArgsConstructor
@@ -20,6 +22,11 @@ public class ProductTaskManagerImpl implements ProductTaskManager {
         return taskMapper.insert(productTaskDO) > 0;
     }
 
+    @Override
+    public int insertBatch(List<ProductTaskDO> productTaskDOList) {
+        return taskMapper.insertBatch(productTaskDOList);
+    }
+
     @Override
     public ProductTaskDO selectById(Long id) {
         return taskMapper.selectOne(
@@ -27,10 +34,29 @@ public class ProductTaskManagerImpl implements ProductTaskManager {
         );
     }
 
+    @Override
+    public List<ProductTaskDO> listByOutTradeNo(String outTradeNo, String lockState) {
+        return taskMapper.selectList(
+                new QueryWrapper<ProductTaskDO>()
+                        .eq("out_trade_no", outTradeNo)
+                        .eq(lockState != null, "lock_state", lockState)
+        );
+    }
+
     @Override
     public boolean updateEntity(ProductTaskDO productTaskDO, Long taskId) {
         return taskMapper.update(productTaskDO,
                 new UpdateWrapper<ProductTaskDO>().eq("id", taskId)
         ) > 0;
     }
+
+    @Override
+    public int updateLockStateByOutTradeNo(String outTradeNo, String oldLockState, String newLockState) {
+        return taskMapper.update(null,
+                new UpdateWrapper<ProductTaskDO>()
+                        .eq("out_trade_no", outTradeNo)
+                        .eq("lock_state", oldLockState)
+                        .set("lock_state", newLockState)
+        );
+    }
 }
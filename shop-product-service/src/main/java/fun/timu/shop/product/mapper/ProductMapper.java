@@ -1,9 +1,13 @@
 package fun.timu.shop.product.mapper;
 
+import fun.timu.shop.common.request.OrderItemRequest;
 import fun.timu.shop.product.model.DO.ProductDO;
+import fun.timu.shop.product.model.DTO.StockDeltaDTO;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.List;
+
 /**
  * @author zhengke
  * @description 针对表【product(商品表)】的数据库操作Mapper
@@ -47,8 +51,37 @@ public interface ProductMapper extends BaseMapper<ProductDO> {
      * @return 影响行数
      */
     int releaseLockStock(@Param("id") Long id, @Param("quantity") Integer quantity);
-}
 
+    /**
+     * 批量锁定库存（单条UPDATE语句）
+     * 仅库存充足的商品行会被更新，调用方需比对影响行数判断是否全部锁定成功
+     *
+     * @param items 锁定明细，同一商品ID只能出现一次
+     * @return 影响行数
+     */
+    int lockStockBatch(@Param("items") List<OrderItemRequest> items);
 
+    /**
+     * 批量释放锁定库存（单条UPDATE语句）
+     *
+     * @param items 释放明细，同一商品ID只能出现一次
+     * @return 影响行数
+     */
+    int releaseLockStockBatch(@Param("items") List<OrderItemRequest> items);
 
+    /**
+     * 批量累加库存变更量（Redis库存引擎回写使用，库存校验已在Redis中完成）
+     *
+     * @param deltas 库存变更量，同一商品ID只能出现一次
+     * @return 影响行数
+     */
+    int applyStockDeltaBatch(@Param("deltas") List<StockDeltaDTO> deltas);
 
+    /**
+     * 查询仍存在的商品ID（不过滤del_flag，与applyStockDeltaBatch的更新范围一致）
+     *
+     * @param ids 商品ID
+     * @return 存在的商品ID
+     */
+    List<Long> selectIdsByIds(@Param("ids") List<Long> ids);
+}
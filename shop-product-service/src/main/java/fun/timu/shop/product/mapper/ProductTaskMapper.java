@@ -2,6 +2,9 @@ package fun.timu.shop.product.mapper;
 
 import fun.timu.shop.product.model.DO.ProductTaskDO;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * @author zhengke
@@ -10,7 +13,11 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  * @Entity fun.timu.shop.product.model.DO.ProductTask
  */
 public interface ProductTaskMapper extends BaseMapper<ProductTaskDO> {
+    // 批量插入
+    int insertBatch(@Param("productTaskList") List<ProductTaskDO> productTaskDOList);
 
+    // 按商品汇总LOCK状态的锁定数量，buyNum为汇总值
+    List<ProductTaskDO> sumLockedBuyNumByProductIds(@Param("productIds") List<Long> productIds);
 }
 
 
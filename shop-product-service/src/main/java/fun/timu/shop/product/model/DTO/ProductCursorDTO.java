@@ -0,0 +1,71 @@
+package fun.timu.shop.product.model.DTO;
+
+import fun.timu.shop.common.enums.BizCodeEnum;
+import fun.timu.shop.common.exception.BizException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 商品列表翻页游标
+ * 记录上一页最后一行的 (排序字段值, id)，编码为 URL 安全的 Base64 字符串返回给客户端
+ *
+ * @author zhengke
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductCursorDTO {
+
+    private static final String SEPARATOR = "|";
+
+    /**
+     * 排序字段：sort、price、sales_count、create_time
+     */
+    private String orderBy;
+
+    /**
+     * 是否升序
+     */
+    private boolean asc;
+
+    /**
+     * 上一页最后一行的排序字段值，create_time 为毫秒时间戳，为null表示该字段为空
+     */
+    private String value;
+
+    /**
+     * 上一页最后一行的商品ID
+     */
+    private Long id;
+
+    /**
+     * 编码为游标字符串
+     */
+    public String encode() {
+        String raw = orderBy + SEPARATOR + (asc ? "A" : "D") + SEPARATOR + id + SEPARATOR + (value == null ? "" : value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标字符串
+     *
+     * @throws BizException 游标格式不正确
+     */
+    public static ProductCursorDTO decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 4);
+            if (parts.length != 4 || !("A".equals(parts[1]) || "D".equals(parts[1]))) {
+                throw new BizException(BizCodeEnum.PRODUCT_CURSOR_INVALID);
+            }
+            String value = parts[3].isEmpty() ? null : parts[3];
+            return new ProductCursorDTO(parts[0], "A".equals(parts[1]), value, Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException e) {
+            throw new BizException(BizCodeEnum.PRODUCT_CURSOR_INVALID);
+        }
+    }
+}
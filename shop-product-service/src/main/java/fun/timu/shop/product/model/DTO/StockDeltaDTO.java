@@ -0,0 +1,31 @@
+package fun.timu.shop.product.model.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 商品库存变更量，用于Redis库存引擎批量回写MySQL
+ *
+ * @author zhengke
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockDeltaDTO {
+
+    /**
+     * 商品ID
+     */
+    private Long productId;
+
+    /**
+     * 可用库存变更量
+     */
+    private Integer stockDelta;
+
+    /**
+     * 锁定库存变更量
+     */
+    private Integer lockStockDelta;
+}
@@ -3,6 +3,7 @@ package fun.timu.shop.product.service;
 import fun.timu.shop.common.model.ProductMessage;
 import fun.timu.shop.common.util.JsonData;
 import fun.timu.shop.common.request.LockProductRequest;
+import fun.timu.shop.common.request.ValidateStockRequest;
 import fun.timu.shop.product.controller.request.ProductCreateRequest;
 import fun.timu.shop.product.controller.request.ProductQueryRequest;
 import fun.timu.shop.product.controller.request.ProductUpdateRequest;
@@ -18,10 +19,15 @@ import java.util.List;
 public interface ProductService {
 
     /**
-     * 查询商品列表
+     * 查询商品列表，只返回当前页的商品，不统计总数
      */
     JsonData list(ProductQueryRequest queryRequest);
 
+    /**
+     * 分页查询商品列表，返回总数、总页数、当前页商品和下一页游标
+     */
+    JsonData page(ProductQueryRequest queryRequest);
+
     /**
      * 根据ID获取商品详情
      */
@@ -89,6 +95,11 @@ public interface ProductService {
      */
     JsonData validateStock(Long productId, Integer quantity);
 
+    /**
+     * 批量验证商品库存（RPC接口用），返回每个商品的可用情况
+     */
+    JsonData validateStockBatch(List<ValidateStockRequest> items);
+
     /**
      * 锁定商品库存（批量）
      */
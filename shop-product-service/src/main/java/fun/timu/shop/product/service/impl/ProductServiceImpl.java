@@ -5,33 +5,44 @@ import fun.timu.shop.common.exception.BizException;
 import fun.timu.shop.common.interceptor.LoginInterceptor;
 import fun.timu.shop.common.model.LoginUser;
 import fun.timu.shop.common.model.ProductMessage;
+import fun.timu.shop.common.model.ProductSnapshotDTO;
+import fun.timu.shop.common.model.StockAvailabilityVO;
 import fun.timu.shop.common.util.JsonData;
-import fun.timu.shop.common.util.RabbitMQUtil;
 import fun.timu.shop.common.request.LockProductRequest;
 import fun.timu.shop.common.request.OrderItemRequest;
 import fun.timu.shop.common.request.QueryOrderStateRequest;
-import fun.timu.shop.product.config.RabbitMQConfig;
+import fun.timu.shop.common.request.ValidateStockRequest;
+import fun.timu.shop.product.config.ProductListProperties;
 import fun.timu.shop.product.controller.request.ProductCreateRequest;
 import fun.timu.shop.product.controller.request.ProductQueryRequest;
 import fun.timu.shop.product.controller.request.ProductUpdateRequest;
 import fun.timu.shop.product.converter.ProductConverter;
 import fun.timu.shop.product.feign.OrderFeignService;
+import fun.timu.shop.product.manager.ProductCacheManager;
 import fun.timu.shop.product.manager.ProductManager;
 import fun.timu.shop.product.manager.ProductTaskManager;
 import fun.timu.shop.product.mapper.ProductMapper;
 import fun.timu.shop.product.model.DO.ProductDO;
 import fun.timu.shop.product.model.DO.ProductTaskDO;
+import fun.timu.shop.product.model.DTO.ProductCursorDTO;
 import fun.timu.shop.product.model.VO.ProductVO;
 import fun.timu.shop.product.service.ProductService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.util.StringUtils;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -46,18 +57,17 @@ import java.util.stream.Collectors;
 public class ProductServiceImpl implements ProductService {
 
     private final ProductManager productManager;
+    private final ProductCacheManager productCacheManager;
     private final ProductConverter productConverter;
     private final ProductTaskManager productTaskManager;
-    private final RabbitMQUtil rabbitMQUtil;
-    private final RabbitMQConfig rabbitMQConfig;
     private final OrderFeignService orderFeignService;
+    private final ProductListProperties listProperties;
 
     @Override
     public JsonData list(ProductQueryRequest queryRequest) {
         try {
-            List<ProductDO> productDOList = productManager.listByQuery(queryRequest);
-            List<ProductVO> productVOList = productConverter.convertToVOList(productDOList);
-            return JsonData.buildSuccess(productVOList);
+            List<ProductDO> productDOList = queryPage(queryRequest, resolvePageSize(queryRequest));
+            return JsonData.buildSuccess(productConverter.convertToVOList(productDOList));
         } catch (BizException e) {
             log.error("查询商品列表失败: {}", e.getMessage());
             return JsonData.buildError(e.getMessage());
@@ -67,6 +77,33 @@ public class ProductServiceImpl implements ProductService {
         }
     }
 
+    @Override
+    public JsonData page(ProductQueryRequest queryRequest) {
+        try {
+            int pageSize = resolvePageSize(queryRequest);
+            List<ProductDO> productDOList = queryPage(queryRequest, pageSize);
+
+            long total = productManager.countByQuery(queryRequest);
+            // 满页时返回下一页游标，客户端可随时从偏移分页切换为游标翻页
+            String nextCursor = productDOList.size() == pageSize
+                    ? productManager.buildCursor(queryRequest, productDOList.get(productDOList.size() - 1)).encode()
+                    : null;
+
+            Map<String, Object> pageMap = new HashMap<>(4);
+            pageMap.put("total_record", total);
+            pageMap.put("total_page", (total + pageSize - 1) / pageSize);
+            pageMap.put("current_data", productConverter.convertToVOList(productDOList));
+            pageMap.put("next_cursor", nextCursor);
+            return JsonData.buildSuccess(pageMap);
+        } catch (BizException e) {
+            log.error("分页查询商品列表失败: {}", e.getMessage());
+            return JsonData.buildError(e.getMessage());
+        } catch (Exception e) {
+            log.error("分页查询商品列表异常", e);
+            return JsonData.buildError("分页查询商品列表失败");
+        }
+    }
+
     @Override
     public JsonData getById(Long id) {
         try {
@@ -74,8 +111,8 @@ public class ProductServiceImpl implements ProductService {
                 return JsonData.buildError("商品ID不能为空或无效");
             }
 
-            ProductDO productDO = productManager.getByIdNotDeleted(id);
-            if (productDO == null) {
+            ProductDO productDO = productCacheManager.getById(id, false);
+            if (productDO == null || DelFlagEnum.isDeleted(productDO.getDelFlag())) {
                 return JsonData.buildError("商品不存在");
             }
 
@@ -377,63 +414,71 @@ public class ProductServiceImpl implements ProductService {
     /**
      * 锁定商品库存
      * <p>
-     * 1)遍历商品，锁定每个商品购买数量
-     * 2)每一次锁定的时候，都要发送延迟消息
+     * 1)合并同一商品的购买数量，一条UPDATE语句批量锁定全部商品
+     * 2)任一商品库存不足则整单回滚
+     * 3)批量插入product_task记录，超时释放由订单维度的延迟任务触发
      *
      * @param lockProductRequest
      * @return
      */
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public JsonData lockProductStock(LockProductRequest lockProductRequest) {
         String outTradeNo = lockProductRequest.getOrderOutTradeNo();
         List<OrderItemRequest> itemList = lockProductRequest.getOrderItemList();
 
-        // 一行代码，提取对象里面的id并加入到集合里面
-        List<Long> productIdList = itemList.stream().map(OrderItemRequest::getProductId).collect(Collectors.toList());
+        // 合并同一商品的购买数量，按商品ID排序保证加锁顺序一致，避免死锁
+        Map<Long, Integer> buyNumMap = new TreeMap<>();
+        for (OrderItemRequest item : itemList) {
+            if (item.getProductId() == null || item.getBuyNum() == null || item.getBuyNum() <= 0) {
+                log.error("商品库存锁定参数错误: outTradeNo={}, item={}", outTradeNo, item);
+                throw new BizException(BizCodeEnum.ORDER_CONFIRM_LOCK_PRODUCT_FAIL);
+            }
+            buyNumMap.merge(item.getProductId(), item.getBuyNum(), Integer::sum);
+        }
 
-        // 批量查询
-        List<ProductVO> productVOList = this.findProductsByIdBatch(productIdList);
+        List<OrderItemRequest> lockItemList = buyNumMap.entrySet().stream().map(entry -> {
+            OrderItemRequest request = new OrderItemRequest();
+            request.setProductId(entry.getKey());
+            request.setBuyNum(entry.getValue());
+            return request;
+        }).collect(Collectors.toList());
+
+        // 一条语句批量锁定，影响行数不等于商品数说明有商品库存不足或不存在
+        int lockRows = productManager.lockStockBatch(lockItemList);
+        if (lockRows != lockItemList.size()) {
+            log.error("商品库存锁定失败: outTradeNo={}, expectedRows={}, lockRows={}", outTradeNo, lockItemList.size(), lockRows);
+            throw new BizException(BizCodeEnum.ORDER_CONFIRM_LOCK_PRODUCT_FAIL);
+        }
 
-        // 分组
+        // 批量查询商品标题
+        List<ProductVO> productVOList = this.findProductsByIdBatch(new ArrayList<>(buyNumMap.keySet()));
         Map<Long, ProductVO> productMap = productVOList.stream().collect(Collectors.toMap(ProductVO::getId, Function.identity()));
 
-        for (OrderItemRequest item : itemList) {
-            // 锁定商品记录
-            boolean result = productManager.lockStock(item.getProductId(), item.getBuyNum());
-            if (result) {
-                // 锁定成功，插入商品product_task记录
-                ProductVO productVO = productMap.get(item.getProductId());
-                ProductTaskDO productTaskDO = new ProductTaskDO();
-                productTaskDO.setBuyNum(item.getBuyNum());
-                productTaskDO.setLockState(StockTaskStateEnum.LOCK.name());
-                productTaskDO.setProductId(item.getProductId());
-                productTaskDO.setProductName(productVO.getTitle());
-                productTaskDO.setOutTradeNo(outTradeNo);
-                productTaskManager.insert(productTaskDO);
-                log.info("商品库存锁定成功-插入商品product_task成功:{}", productTaskDO);
-
-                // 发送MQ延迟消息，用于超时释放商品库存（30分钟后）
-                ProductMessage productMessage = new ProductMessage();
-                productMessage.setOutTradeNo(outTradeNo);
-                productMessage.setTaskId(productTaskDO.getId());
-
-                // 使用 RabbitMQUtil 发送延迟消息，30分钟后自动释放商品库存
-                Long delayTime = 30 * 60 * 1000L; // 30分钟延迟时间（毫秒）
-                rabbitMQUtil.sendDelayMessage(
-                        rabbitMQConfig.getEventExchange(), 
-                        rabbitMQConfig.getStockReleaseDelayRoutingKey(), 
-                        productMessage, 
-                        delayTime
-                );
-                
-                log.info("商品库存锁定延迟消息发送成功: outTradeNo={}, taskId={}, delayTime={}ms", 
-                        outTradeNo, productTaskDO.getId(), delayTime);
-            } else {
-                // 锁定失败，抛出异常
-                log.error("商品库存锁定失败: productId={}, buyNum={}", item.getProductId(), item.getBuyNum());
-                throw new BizException(BizCodeEnum.ORDER_CONFIRM_LOCK_PRODUCT_FAIL);
-            }
+        // 批量插入商品product_task记录
+        Date now = new Date();
+        Date expireTime = new Date(now.getTime() + 30 * 60 * 1000L);
+        List<ProductTaskDO> productTaskDOList = lockItemList.stream().map(item -> {
+            ProductVO productVO = productMap.get(item.getProductId());
+            ProductTaskDO productTaskDO = new ProductTaskDO();
+            productTaskDO.setBuyNum(item.getBuyNum());
+            productTaskDO.setLockState(StockTaskStateEnum.LOCK.name());
+            productTaskDO.setProductId(item.getProductId());
+            productTaskDO.setProductName(productVO != null ? productVO.getTitle() : null);
+            productTaskDO.setOutTradeNo(outTradeNo);
+            productTaskDO.setExpireTime(expireTime);
+            productTaskDO.setCreateTime(now);
+            return productTaskDO;
+        }).collect(Collectors.toList());
+
+        int insertRows = productTaskManager.insertBatch(productTaskDOList);
+        if (insertRows != productTaskDOList.size()) {
+            log.error("插入商品product_task失败: outTradeNo={}, expectedRows={}, insertRows={}", outTradeNo, productTaskDOList.size(), insertRows);
+            throw new BizException(BizCodeEnum.ORDER_CONFIRM_ADD_STOCK_TASK_FAIL);
         }
+        log.info("商品库存锁定成功-批量插入商品product_task成功: outTradeNo={}, count={}", outTradeNo, insertRows);
+
+        // 超时释放由订单服务按订单号注册的延迟任务统一触发，此处不再单独发送延迟消息
         return JsonData.buildSuccess();
     }
 
@@ -460,6 +505,35 @@ public class ProductServiceImpl implements ProductService {
         }
     }
 
+    /**
+     * 商品可用库存，锁定库存时已从stock中扣减，stock即为可用库存，lock_stock不再重复扣除
+     */
+    private int availableStock(ProductDO productDO) {
+        return productDO.getStock() == null ? 0 : productDO.getStock();
+    }
+
+    private int resolvePageSize(ProductQueryRequest queryRequest) {
+        return queryRequest.getPageSize() == null || queryRequest.getPageSize() <= 0
+                ? listProperties.getDefaultPageSize()
+                : Math.min(queryRequest.getPageSize(), listProperties.getMaxPageSize());
+    }
+
+    /**
+     * 查询一页商品：带游标时按 (排序字段, id) 定位，不受页码深度影响；否则按页码偏移，超过最大偏移量时拒绝
+     */
+    private List<ProductDO> queryPage(ProductQueryRequest queryRequest, int pageSize) {
+        if (StringUtils.hasText(queryRequest.getCursor())) {
+            ProductCursorDTO cursor = ProductCursorDTO.decode(queryRequest.getCursor());
+            return productManager.listByCursor(queryRequest, cursor, pageSize);
+        }
+        int pageNum = queryRequest.getPageNum() == null || queryRequest.getPageNum() <= 0 ? 1 : queryRequest.getPageNum();
+        long offset = (long) (pageNum - 1) * pageSize;
+        if (offset > listProperties.getMaxOffset()) {
+            throw new BizException(BizCodeEnum.PRODUCT_PAGE_TOO_DEEP);
+        }
+        return productManager.pageByQuery(queryRequest, offset, pageSize);
+    }
+
     private LoginUser validateLogin() {
         LoginUser currentUser = LoginInterceptor.threadLocal.get();
         if (currentUser == null) {
@@ -513,29 +587,21 @@ public class ProductServiceImpl implements ProductService {
 
             log.info("批量获取商品详情: productIds={}", productIds);
 
-            List<ProductDO> productDOList = productManager.listByIds(productIds);
+            List<ProductDO> productDOList = productCacheManager.listByIds(productIds, false);
 
             if (productDOList.isEmpty()) {
                 log.warn("未找到任何商品: productIds={}", productIds);
                 return JsonData.buildSuccess(List.of());
             }
 
-            // 转换为VO对象，这里返回Map格式方便购物车服务使用
-            Map<String, Object> productMap = new HashMap<>();
+            // 返回类型化的商品快照，调用方按类型反序列化
+            List<ProductSnapshotDTO> snapshots = new ArrayList<>(productDOList.size());
             for (ProductDO productDO : productDOList) {
-                Map<String, Object> productInfo = new HashMap<>();
-                productInfo.put("id", productDO.getId());
-                productInfo.put("title", productDO.getTitle());
-                productInfo.put("coverImg", productDO.getCoverImg());
-                productInfo.put("price", productDO.getPrice());
-                productInfo.put("stock", productDO.getStock());
-                productInfo.put("status", productDO.getStatus());
-
-                productMap.put(productDO.getId().toString(), productInfo);
+                snapshots.add(productConverter.convertToSnapshot(productDO));
             }
 
             log.info("批量获取商品详情成功: count={}", productDOList.size());
-            return JsonData.buildSuccess(productMap);
+            return JsonData.buildSuccess(snapshots);
 
         } catch (Exception e) {
             log.error("批量获取商品详情失败: productIds={}", productIds, e);
@@ -556,7 +622,8 @@ public class ProductServiceImpl implements ProductService {
 
             log.info("验证商品库存: productId={}, quantity={}", productId, quantity);
 
-            ProductDO productDO = productManager.selectById(productId);
+            // 校验库存时读取最新库存，静态信息仍走缓存
+            ProductDO productDO = productCacheManager.getById(productId, true);
             if (productDO == null) {
                 log.warn("商品不存在: productId={}", productId);
                 return JsonData.buildError("商品不存在");
@@ -575,7 +642,7 @@ public class ProductServiceImpl implements ProductService {
             }
 
             // 检查库存是否充足
-            Integer availableStock = productDO.getStock() - (productDO.getLockStock() != null ? productDO.getLockStock() : 0);
+            int availableStock = availableStock(productDO);
             if (availableStock < quantity) {
                 log.warn("库存不足: productId={}, 需要数量={}, 可用库存={}", productId, quantity, availableStock);
                 return JsonData.buildError("库存不足，当前可用库存：" + availableStock);
@@ -597,6 +664,45 @@ public class ProductServiceImpl implements ProductService {
         }
     }
 
+    @Override
+    public JsonData validateStockBatch(List<ValidateStockRequest> items) {
+        // 合并同一商品的数量，保持请求中的先后顺序
+        Map<Long, Integer> quantityMap = new LinkedHashMap<>();
+        for (ValidateStockRequest item : items) {
+            if (item.getProductId() == null || item.getQuantity() == null || item.getQuantity() <= 0) {
+                return JsonData.buildError("商品ID和验证数量不能为空，数量必须大于0");
+            }
+            quantityMap.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+
+        // 一次IN查询获取全部商品的最新库存，静态信息走缓存
+        Map<Long, ProductDO> productMap = productCacheManager.listByIds(new ArrayList<>(quantityMap.keySet()), true)
+                .stream().collect(Collectors.toMap(ProductDO::getId, Function.identity()));
+
+        List<StockAvailabilityVO> resultList = new ArrayList<>(quantityMap.size());
+        for (Map.Entry<Long, Integer> entry : quantityMap.entrySet()) {
+            Long productId = entry.getKey();
+            Integer quantity = entry.getValue();
+            ProductDO productDO = productMap.get(productId);
+            if (productDO == null) {
+                resultList.add(new StockAvailabilityVO(productId, quantity, 0, false, "商品不存在"));
+                continue;
+            }
+            int availableStock = availableStock(productDO);
+            if (!ProductStatusEnum.ONLINE.getCode().equals(productDO.getStatus())) {
+                resultList.add(new StockAvailabilityVO(productId, quantity, availableStock, false, "商品已下架"));
+            } else if (availableStock < quantity) {
+                resultList.add(new StockAvailabilityVO(productId, quantity, availableStock, false, "库存不足，当前可用库存：" + availableStock));
+            } else {
+                resultList.add(new StockAvailabilityVO(productId, quantity, availableStock, true, null));
+            }
+        }
+
+        long unavailable = resultList.stream().filter(result -> !result.getAvailable()).count();
+        log.info("批量验证商品库存完成: count={}, unavailable={}", resultList.size(), unavailable);
+        return JsonData.buildSuccess(resultList);
+    }
+
     @Override
     public List<ProductVO> findProductsByIdBatch(List<Long> productIds) {
         try {
@@ -604,7 +710,7 @@ public class ProductServiceImpl implements ProductService {
                 return List.of();
             }
 
-            List<ProductDO> productDOList = productManager.listByIds(productIds);
+            List<ProductDO> productDOList = productCacheManager.listByIds(productIds, false);
             return productConverter.convertToVOList(productDOList);
         } catch (Exception e) {
             log.error("批量查询商品失败: productIds={}", productIds, e);
@@ -619,15 +725,16 @@ public class ProductServiceImpl implements ProductService {
      * @return
      */
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public boolean releaseProductStock(ProductMessage productMessage) {
         if (productMessage == null) {
             log.warn("商品消息为空");
             return true;
         }
 
+        // 整单维度的消息，按订单号释放全部锁定的工作单
         if (productMessage.getTaskId() == null) {
-            log.warn("任务ID为空，消息体为:{}", productMessage);
-            return true;
+            return releaseProductStockByOrder(productMessage);
         }
 
         // 查询工作单状态
@@ -641,14 +748,9 @@ public class ProductServiceImpl implements ProductService {
         if (taskDO.getLockState().equalsIgnoreCase(StockTaskStateEnum.LOCK.name())) {
 
             // 查询订单状态
-            QueryOrderStateRequest queryRequest = new QueryOrderStateRequest();
-            queryRequest.setOutTradeNo(productMessage.getOutTradeNo());
-
-            JsonData jsonData = orderFeignService.queryProductOrderState(queryRequest);
-
-            if (jsonData.getCode() == 0) {
-                String state = jsonData.getData().toString();
+            String state = queryOrderState(productMessage.getOutTradeNo());
 
+            if (state != null) {
                 if (OrderStateEnum.NEW.name().equalsIgnoreCase(state)) {
                     // 状态是NEW新建状态，则返回给消息队列重新投递
                     log.warn("订单状态是NEW,返回给消息队列，重新投递:{}", productMessage);
@@ -685,4 +787,85 @@ public class ProductServiceImpl implements ProductService {
             return true;
         }
     }
+
+    /**
+     * 按订单号释放商品库存
+     *
+     * @param productMessage
+     * @return
+     */
+    private boolean releaseProductStockByOrder(ProductMessage productMessage) {
+        String outTradeNo = productMessage.getOutTradeNo();
+        if (outTradeNo == null || outTradeNo.trim().isEmpty()) {
+            log.warn("任务ID和订单号均为空，消息体为:{}", productMessage);
+            return true;
+        }
+
+        // 只处理lock状态的工作单
+        List<ProductTaskDO> taskDOList = productTaskManager.listByOutTradeNo(outTradeNo, StockTaskStateEnum.LOCK.name());
+        if (taskDOList.isEmpty()) {
+            log.warn("订单不存在LOCK状态的工作单，消息体为:{}", productMessage);
+            return true;
+        }
+
+        String state = queryOrderState(outTradeNo);
+        if (state != null) {
+            if (OrderStateEnum.NEW.name().equalsIgnoreCase(state)) {
+                // 状态是NEW新建状态，则返回给消息队列重新投递
+                log.warn("订单状态是NEW,返回给消息队列，重新投递:{}", productMessage);
+                return false;
+            }
+
+            if (OrderStateEnum.PAY.name().equalsIgnoreCase(state)) {
+                int rows = productTaskManager.updateLockStateByOutTradeNo(outTradeNo,
+                        StockTaskStateEnum.LOCK.name(), StockTaskStateEnum.FINISH.name());
+                log.info("订单已经支付，修改库存锁定工作单FINISH状态: outTradeNo={}, rows={}", outTradeNo, rows);
+                return true;
+            }
+        }
+
+        // 订单不存在，或者订单被取消，修改task状态为CANCEL，条件更新保证并发消费时只释放一次
+        log.warn("订单不存在，或者订单被取消，确认消息,修改task状态为CANCEL,恢复商品库存,message:{}", productMessage);
+        int rows = productTaskManager.updateLockStateByOutTradeNo(outTradeNo,
+                StockTaskStateEnum.LOCK.name(), StockTaskStateEnum.CANCEL.name());
+        if (rows == 0) {
+            log.warn("工作单已被其他消费者处理，消息体为:{}", productMessage);
+            return true;
+        }
+        if (rows != taskDOList.size()) {
+            // 部分工作单被并发修改，回滚后重新投递，避免按过期的工作单列表释放库存
+            log.warn("工作单状态已被并发修改，回滚并重新投递: outTradeNo={}, expectedRows={}, rows={}", outTradeNo, taskDOList.size(), rows);
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return false;
+        }
+
+        List<OrderItemRequest> releaseItemList = taskDOList.stream().map(taskDO -> {
+            OrderItemRequest request = new OrderItemRequest();
+            request.setProductId(taskDO.getProductId());
+            request.setBuyNum(taskDO.getBuyNum());
+            return request;
+        }).collect(Collectors.toList());
+
+        int releaseRows = productManager.releaseLockStockBatch(releaseItemList);
+        if (releaseRows == releaseItemList.size()) {
+            log.info("成功恢复商品库存: outTradeNo={}, productCount={}", outTradeNo, releaseRows);
+        } else {
+            log.warn("部分商品恢复库存失败: outTradeNo={}, expectedRows={}, releaseRows={}", outTradeNo, releaseItemList.size(), releaseRows);
+        }
+        return true;
+    }
+
+    /**
+     * 查询订单状态，查询失败返回null
+     */
+    private String queryOrderState(String outTradeNo) {
+        QueryOrderStateRequest queryRequest = new QueryOrderStateRequest();
+        queryRequest.setOutTradeNo(outTradeNo);
+
+        JsonData jsonData = orderFeignService.queryProductOrderState(queryRequest);
+        if (jsonData.getCode() == 0 && jsonData.getData() != null) {
+            return jsonData.getData().toString();
+        }
+        return null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,172 @@
+package fun.timu.shop.product.manager;
+
+import fun.timu.shop.common.request.OrderItemRequest;
+import fun.timu.shop.product.config.InventoryProperties;
+import fun.timu.shop.product.manager.impl.InventoryLedgerManagerImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Redis库存引擎与SQL锁库存的吞吐量对比
+ * 需要本地Redis和MySQL，使用 -Dinventory.benchmark=true 开启
+ *
+ * @author zhengke
+ */
+@EnabledIfSystemProperty(named = "inventory.benchmark", matches = "true")
+public class InventoryLedgerBenchmarkTest {
+
+    private static final int THREAD_COUNT = Integer.getInteger("inventory.benchmark.threads", 32);
+    private static final int OPS_PER_THREAD = Integer.getInteger("inventory.benchmark.ops", 500);
+    private static final long PRODUCT_ID = Long.getLong("inventory.benchmark.productId", 1L);
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private InventoryProperties inventoryProperties;
+    private InventoryLedgerManager ledger;
+
+    @BeforeEach
+    public void setUp() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                System.getProperty("inventory.benchmark.redisHost", "127.0.0.1"),
+                Integer.getInteger("inventory.benchmark.redisPort", 6379)));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+
+        inventoryProperties = new InventoryProperties();
+        inventoryProperties.setEnabled(true);
+        inventoryProperties.setHotProductIds(Set.of(PRODUCT_ID));
+        inventoryProperties.getRedis().setKeyPrefix("inventory:{benchmark}:product:");
+        inventoryProperties.getRedis().setDirtyKey("inventory:{benchmark}:dirty");
+
+        // 预置库存，跳过从MySQL加载
+        redisTemplate.opsForHash().putAll(inventoryProperties.getRedis().getKeyPrefix() + PRODUCT_ID, Map.of(
+                "stock", String.valueOf(THREAD_COUNT * OPS_PER_THREAD),
+                "lock_stock", "0",
+                "pending_stock", "0",
+                "pending_lock_stock", "0"));
+
+        ledger = new InventoryLedgerManagerImpl(connectionFactory, null, null, inventoryProperties);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        redisTemplate.delete(List.of(inventoryProperties.getRedis().getKeyPrefix() + PRODUCT_ID,
+                inventoryProperties.getRedis().getDirtyKey()));
+        connectionFactory.destroy();
+    }
+
+    @Test
+    public void testLedgerThroughput() throws InterruptedException {
+        OrderItemRequest item = new OrderItemRequest();
+        item.setProductId(PRODUCT_ID);
+        item.setBuyNum(1);
+        List<OrderItemRequest> items = List.of(item);
+
+        AtomicInteger success = new AtomicInteger();
+        long duration = runConcurrently(() -> {
+            if (ledger.lockStock(items)) {
+                success.incrementAndGet();
+            }
+        });
+
+        System.out.println("Redis库存引擎: 线程数=" + THREAD_COUNT + ", 锁定成功=" + success.get()
+                + ", 耗时=" + duration + "ms, 吞吐量=" + (success.get() * 1000L / Math.max(duration, 1)) + " ops/s");
+
+        assertEquals(THREAD_COUNT * OPS_PER_THREAD, success.get(), "库存充足时应该全部锁定成功");
+        Object stock = redisTemplate.opsForHash().get(inventoryProperties.getRedis().getKeyPrefix() + PRODUCT_ID, "stock");
+        assertEquals("0", stock, "锁定后可用库存应该为0，不能超卖");
+        assertFalse(ledger.lockStock(items), "库存为0时应该锁定失败");
+    }
+
+    @Test
+    public void testSqlThroughput() throws Exception {
+        String url = System.getProperty("inventory.benchmark.jdbcUrl",
+                "jdbc:mysql://localhost:3306/shop_product?useSSL=false&serverTimezone=Asia/Shanghai&allowPublicKeyRetrieval=true");
+        String username = System.getProperty("inventory.benchmark.jdbcUser", "root");
+        String password = System.getProperty("inventory.benchmark.jdbcPassword", "123456");
+
+        AtomicInteger success = new AtomicInteger();
+        ThreadLocal<Connection> connections = ThreadLocal.withInitial(() -> {
+            try {
+                return DriverManager.getConnection(url, username, password);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        long duration = runConcurrently(() -> {
+            try (PreparedStatement statement = connections.get().prepareStatement(
+                    "UPDATE product SET stock = stock - 1, lock_stock = lock_stock + 1 WHERE id = ? AND stock >= 1 AND del_flag = 0")) {
+                statement.setLong(1, PRODUCT_ID);
+                if (statement.executeUpdate() > 0) {
+                    success.incrementAndGet();
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        System.out.println("SQL锁库存: 线程数=" + THREAD_COUNT + ", 锁定成功=" + success.get()
+                + ", 耗时=" + duration + "ms, 吞吐量=" + (success.get() * 1000L / Math.max(duration, 1)) + " ops/s");
+
+        // 恢复测试商品的库存
+        try (Connection connection = DriverManager.getConnection(url, username, password);
+             PreparedStatement statement = connection.prepareStatement(
+                     "UPDATE product SET stock = stock + ?, lock_stock = lock_stock - ? WHERE id = ?")) {
+            statement.setInt(1, success.get());
+            statement.setInt(2, success.get());
+            statement.setLong(3, PRODUCT_ID);
+            statement.executeUpdate();
+        }
+        assertTrue(success.get() > 0, "SQL路径应该至少锁定成功一次");
+    }
+
+    /**
+     * 多线程执行操作，返回总耗时（毫秒）
+     */
+    private long runConcurrently(Runnable operation) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch doneLatch = new CountDownLatch(THREAD_COUNT);
+
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            executor.submit(() -> {
+                try {
+                    startLatch.await();
+                    for (int j = 0; j < OPS_PER_THREAD; j++) {
+                        operation.run();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    doneLatch.countDown();
+                }
+            });
+        }
+
+        long startTime = System.currentTimeMillis();
+        startLatch.countDown();
+        doneLatch.await();
+        long duration = System.currentTimeMillis() - startTime;
+        executor.shutdown();
+        return duration;
+    }
+}
@@ -0,0 +1,79 @@
+package fun.timu.shop.user.config;
+
+import fun.timu.shop.common.config.BaseRabbitMQConfig;
+import lombok.Data;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 用户服务 RabbitMQ 配置类
+ * 用户注册后发布注册事件，由优惠券服务监听发放新用户福利
+ */
+@Configuration
+@Data
+public class RabbitMQConfig extends BaseRabbitMQConfig {
+
+    /**
+     * 交换机
+     */
+    @Value("${mqconfig.user_event_exchange}")
+    private String eventExchange;
+
+    /**
+     * 用户注册事件路由key
+     */
+    @Value("${mqconfig.user_register_routing_key}")
+    private String userRegisterRoutingKey;
+
+    /**
+     * 用户注册队列，由优惠券服务监听发放新用户福利
+     */
+    @Value("${mqconfig.user_register_queue}")
+    private String userRegisterQueue;
+
+    /**
+     * 消息转换器
+     *
+     * @return MessageConverter
+     */
+    @Bean
+    public MessageConverter messageConverter() {
+        return createMessageConverter();
+    }
+
+    /**
+     * 创建交换机 Topic类型
+     * 用户服务专用交换机
+     *
+     * @return Exchange
+     */
+    @Bean
+    public Exchange userEventExchange() {
+        return createTopicExchange(eventExchange, true, false);
+    }
+
+    /**
+     * 用户注册队列，用户注册后直接投递，由优惠券服务监听
+     *
+     * @return Queue
+     */
+    @Bean
+    public Queue userRegisterQueue() {
+        return createQueue(userRegisterQueue, true, false, false);
+    }
+
+    /**
+     * 用户注册队列绑定关系建立
+     *
+     * @return Binding
+     */
+    @Bean
+    public Binding userRegisterBinding() {
+        return createBinding(userRegisterQueue, eventExchange, userRegisterRoutingKey);
+    }
+}
@@ -7,11 +7,14 @@ import fun.timu.shop.common.enums.SendCodeEnum;
 import fun.timu.shop.common.interceptor.LoginInterceptor;
 import fun.timu.shop.common.model.LoginUser;
 import fun.timu.shop.common.model.TokenPairVO;
+import fun.timu.shop.common.model.UserRegisteredMessage;
 import fun.timu.shop.common.request.NewUserBenefitsRequest;
 import fun.timu.shop.common.util.CommonUtil;
 import fun.timu.shop.common.util.JWTUtil;
 import fun.timu.shop.common.util.JsonData;
+import fun.timu.shop.common.util.RabbitMQUtil;
 import fun.timu.shop.user.components.FileService;
+import fun.timu.shop.user.config.RabbitMQConfig;
 import fun.timu.shop.user.controller.request.RefreshTokenRequest;
 import fun.timu.shop.user.controller.request.UserLoginRequest;
 import fun.timu.shop.user.controller.request.UserRegisterRequest;
@@ -53,6 +56,8 @@ public class UserServiceImpl implements UserService {
     private final RefreshTokenManager refreshTokenManager;
     private final IdGeneratorComponent idGeneratorComponent;
     private final CouponFeignService couponFeignService;
+    private final RabbitMQUtil rabbitMQUtil;
+    private final RabbitMQConfig rabbitMQConfig;
 
     /**
      * 用户注册
@@ -97,7 +102,7 @@ public class UserServiceImpl implements UserService {
             int rows = userManager.insert(userDO);
             log.info("rows:{},注册成功:{}, 生成的用户ID:{}", rows, userDO.toString(), userId);
 
-            //新用户注册成功，初始化信息，发放福利等 TODO
+            //新用户注册成功，发布注册事件异步发放福利
             userRegisterInitTask(userDO);
             return JsonData.buildSuccess();
         } else {
@@ -252,11 +257,32 @@ public class UserServiceImpl implements UserService {
 
     /**
      * 用户注册，初始化福利信息
-     * 为新用户发放注册福利优惠券
+     * 发布用户注册事件，由优惠券服务按批次发放新用户福利，注册不再等待发券；发布失败时降级为同步RPC发放
      *
      * @param userDO 新注册的用户信息
      */
     private void userRegisterInitTask(UserDO userDO) {
+        UserRegisteredMessage message = new UserRegisteredMessage();
+        message.setMessageId(idGeneratorComponent.generateId());
+        message.setUserId(userDO.getId());
+        message.setUserName(userDO.getName());
+        message.setRegisterTime(userDO.getCreateTime());
+
+        try {
+            rabbitMQUtil.sendMessage(rabbitMQConfig.getEventExchange(), rabbitMQConfig.getUserRegisterRoutingKey(), message);
+            return;
+        } catch (Exception e) {
+            log.error("发布用户注册事件失败，改为同步发放新用户福利: userId={}", userDO.getId(), e);
+        }
+        grantNewUserBenefits(userDO);
+    }
+
+    /**
+     * 同步调用优惠券服务为新用户发放注册福利优惠券
+     *
+     * @param userDO 新注册的用户信息
+     */
+    private void grantNewUserBenefits(UserDO userDO) {
         try {
             log.info("开始为新用户发放福利: userId={}, email={}", userDO.getId(), userDO.getMail());
 
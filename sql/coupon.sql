@@ -70,11 +70,13 @@ CREATE TABLE `coupon_record`
 
     #                        基础信息 `update_time`            datetime       DEFAULT NULL COMMENT '更新时间',
     `del_flag`               tinyint(1) DEFAULT 0 COMMENT '删除标记 0正常 1删除',
+    `claim_seq`              int(11) NOT NULL DEFAULT 1 COMMENT '同一用户领取同一优惠券的序号，从1开始',
 
     PRIMARY KEY (`id`),
+    UNIQUE KEY               `uk_coupon_user_seq` (`coupon_id`, `user_id`, `claim_seq`) COMMENT '领券幂等，并发重复领取时插入冲突',
     KEY                      `idx_coupon_id` (`coupon_id`),
     KEY                      `idx_user_id` (`user_id`),
-    KEY                      `idx_use_state` (`use_state`),
+    KEY                      `idx_state_end_time` (`use_state`, `end_time`, `id`) COMMENT '过期标记按结束时间分批遍历',
     KEY                      `idx_order_id` (`order_id`)
 ) ENGINE=InnoDB AUTO_INCREMENT=141 DEFAULT CHARSET=utf8mb4;
 
@@ -87,39 +87,39 @@ INSERT INTO `coupon` (
 INSERT INTO `coupon_record` (
     `id`, `coupon_id`, `create_time`, `use_state`, `user_id`, `user_name`, `coupon_title`,
     `start_time`, `end_time`, `order_id`, `price`, `condition_price`, `use_time`,
-    `actual_discount_amount`, `receive_channel`, `share_user_id`, `update_time`, `del_flag`
+    `actual_discount_amount`, `receive_channel`, `share_user_id`, `update_time`, `del_flag`, `claim_seq`
 ) VALUES
 -- 新用户券使用记录（减少一些记录，让ID=1券能再次领取）
 (1, 1, '2025-07-20 10:30:00', 'USED', 339416063609409536, '测试用户', '新用户专享20元无门槛券',
  '2025-01-01 00:00:00', '2025-12-31 23:59:59', 10001, 20.00, 0.00, '2025-07-21 15:20:00',
- 20.00, 'AUTO', NULL, '2025-07-21 15:20:00', 0),
+ 20.00, 'AUTO', NULL, '2025-07-21 15:20:00', 0, 1),
 
 (2, 2, '2025-07-19 14:20:00', 'USED', 339416063609409536, '测试用户', '新用户专享50元券',
  '2025-01-01 00:00:00', '2025-12-31 23:59:59', 10002, 50.00, 199.00, '2025-07-20 09:15:00',
- 50.00, 'AUTO', NULL, '2025-07-20 09:15:00', 0),
+ 50.00, 'AUTO', NULL, '2025-07-20 09:15:00', 0, 1),
 
 -- 任务券记录（减少签到券记录，让ID=3券能再次领取）
 (4, 3, '2025-07-15 08:00:00', 'USED', 339416063609409536, '测试用户', '连续签到7天奖励券',
  '2025-07-01 00:00:00', '2025-08-31 23:59:59', 10003, 15.00, 99.00, '2025-07-16 20:30:00',
- 15.00, 'ACTIVITY', NULL, '2025-07-16 20:30:00', 0),
+ 15.00, 'ACTIVITY', NULL, '2025-07-16 20:30:00', 0, 1),
 
 (5, 4, '2025-07-18 12:30:00', 'NEW', 339416063609409536, '测试用户', '分享好友奖励券',
  '2025-07-01 00:00:00', '2025-09-30 23:59:59', NULL, 10.00, 50.00, NULL,
- NULL, 'SHARE', 339416063609409536, '2025-07-18 12:30:00', 0),
+ NULL, 'SHARE', 339416063609409536, '2025-07-18 12:30:00', 0, 1),
 
 (6, 4, '2025-07-19 15:20:00', 'NEW', 339416063609409536, '测试用户', '分享好友奖励券',
  '2025-07-01 00:00:00', '2025-09-30 23:59:59', NULL, 10.00, 50.00, NULL,
- NULL, 'SHARE', 339416063609409536, '2025-07-19 15:20:00', 0),
+ NULL, 'SHARE', 339416063609409536, '2025-07-19 15:20:00', 0, 2),
 
 -- 促销券记录（只保留一条夏日券记录）
 (7, 5, '2025-07-16 10:00:00', 'USED', 339416063609409536, '测试用户', '夏日狂欢100元券',
  '2025-07-15 00:00:00', '2025-08-31 23:59:59', 10004, 100.00, 500.00, '2025-07-17 11:45:00',
- 100.00, 'ACTIVITY', NULL, '2025-07-17 11:45:00', 0),
+ 100.00, 'ACTIVITY', NULL, '2025-07-17 11:45:00', 0, 1),
 
 -- 过期券记录
 (10, 8, '2025-06-05 10:20:00', 'EXPIRED', 339416063609409536, '测试用户', '618购物节券',
  '2025-06-01 00:00:00', '2025-06-18 23:59:59', NULL, 80.00, 300.00, NULL,
- NULL, 'ACTIVITY', NULL, '2025-06-19 00:00:01', 0);
+ NULL, 'ACTIVITY', NULL, '2025-06-19 00:00:01', 0, 1);
 
 # 查询统计信息
 SELECT 
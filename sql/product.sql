@@ -48,7 +48,11 @@ CREATE TABLE
         KEY `idx_status` (`status`),
         KEY `idx_sort` (`sort`),
         KEY `idx_sales` (`sales_count`),
-        KEY `idx_del_flag` (`del_flag`)
+        KEY `idx_del_flag` (`del_flag`),
+        KEY `idx_list_sort` (`del_flag`, `status`, `sort`, `id`) COMMENT '列表按权重游标翻页',
+        KEY `idx_list_price` (`del_flag`, `status`, `price`, `id`) COMMENT '列表按价格游标翻页',
+        KEY `idx_list_sales` (`del_flag`, `status`, `sales_count`, `id`) COMMENT '列表按销量游标翻页',
+        KEY `idx_list_create_time` (`del_flag`, `status`, `create_time`, `id`) COMMENT '列表按创建时间游标翻页'
     ) ENGINE = InnoDB AUTO_INCREMENT = 5 DEFAULT CHARSET = utf8mb4 COMMENT = '商品表';
 
 CREATE TABLE